@@ -0,0 +1,129 @@
+package io.lumify.benchmark;
+
+import io.lumify.core.util.FanOutInputStream;
+import io.lumify.core.util.TeeInputStream;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link TeeInputStream} with {@link FanOutInputStream} splitting one source to several concurrent readers.
+ */
+@Category(BenchmarkCategory.class)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FanOutInputStreamBenchmark {
+    private static final int DATA_SIZE = 8 * 1024 * 1024;
+
+    @Param({"2", "6"})
+    public int readerCount;
+
+    @Param({"1", "8192"})
+    public int readSize;
+
+    private byte[] data;
+    private ExecutorService readerPool;
+
+    @Setup
+    public void setUp() {
+        // TeeInputStream.read() returns signed bytes, so keep the data positive to let its readers reach the end
+        data = new byte[DATA_SIZE];
+        Random random = new Random(0);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) random.nextInt(Byte.MAX_VALUE);
+        }
+        readerPool = Executors.newCachedThreadPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        readerPool.shutdownNow();
+    }
+
+    @Benchmark
+    public long teeInputStream() throws Exception {
+        TeeInputStream in = new TeeInputStream(new ByteArrayInputStream(data), readerCount);
+        List<Future<Long>> readers = startReaders(in.getTees());
+        in.loopUntilTeesAreClosed();
+        return sum(readers);
+    }
+
+    @Benchmark
+    public long fanOutInputStream() throws Exception {
+        FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream(data), readerCount);
+        List<Future<Long>> readers = startReaders(in.getTees());
+        in.loopUntilTeesAreClosed();
+        return sum(readers);
+    }
+
+    @Test
+    public void benchmark() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FanOutInputStreamBenchmark.class.getName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+
+    private List<Future<Long>> startReaders(InputStream[] tees) {
+        List<Future<Long>> readers = new ArrayList<>(tees.length);
+        for (final InputStream tee : tees) {
+            readers.add(readerPool.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    try {
+                        return readSize == 1 ? readBytes(tee) : readChunks(tee, readSize);
+                    } finally {
+                        tee.close();
+                    }
+                }
+            }));
+        }
+        return readers;
+    }
+
+    private static long readBytes(InputStream in) throws Exception {
+        long checksum = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            checksum += b;
+        }
+        return checksum;
+    }
+
+    private static long readChunks(InputStream in, int chunkSize) throws Exception {
+        long checksum = 0;
+        byte[] buffer = new byte[chunkSize];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            checksum += read;
+        }
+        return checksum;
+    }
+
+    private static long sum(List<Future<Long>> readers) throws Exception {
+        long total = 0;
+        for (Future<Long> reader : readers) {
+            total += reader.get();
+        }
+        return total;
+    }
+}
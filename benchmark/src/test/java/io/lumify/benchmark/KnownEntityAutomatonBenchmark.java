@@ -0,0 +1,110 @@
+package io.lumify.benchmark;
+
+import io.lumify.knownEntity.KnownEntityAutomaton;
+import org.apache.commons.io.IOUtils;
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.SearchResult;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the object based {@link AhoCorasick} tree, searched over the fully read text, with the primitive array
+ * {@link KnownEntityAutomaton} matching the same text as a stream.
+ */
+@Category(BenchmarkCategory.class)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KnownEntityAutomatonBenchmark {
+    private static final int TEXT_SIZE = 1024 * 1024;
+    private static final String[] SYLLABLES = {"an", "ber", "co", "da", "el", "fi", "go", "ha", "is", "jo", "ka", "lu", "mi", "no", "or", "pe", "ra", "so", "ti", "vo"};
+
+    @Param({"1000", "100000"})
+    public int dictionarySize;
+
+    private byte[] text;
+    private AhoCorasick tree;
+    private KnownEntityAutomaton automaton;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(0);
+        String[] names = new String[dictionarySize];
+        tree = new AhoCorasick();
+        KnownEntityAutomaton.Builder builder = new KnownEntityAutomaton.Builder();
+        for (int i = 0; i < dictionarySize; i++) {
+            names[i] = randomWord(random) + " " + randomWord(random);
+            tree.add(names[i], names[i]);
+            builder.add(names[i], "person", names[i]);
+        }
+        tree.prepare();
+        automaton = builder.build();
+
+        StringBuilder textBuilder = new StringBuilder();
+        while (textBuilder.length() < TEXT_SIZE) {
+            if (random.nextInt(20) == 0) {
+                textBuilder.append(names[random.nextInt(names.length)]);
+            } else {
+                textBuilder.append(randomWord(random));
+            }
+            textBuilder.append(random.nextInt(10) == 0 ? ". " : " ");
+        }
+        text = textBuilder.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public long ahoCorasick() throws Exception {
+        String textString = IOUtils.toString(new ByteArrayInputStream(text), "UTF-8");
+        Iterator<SearchResult<Object>> searchResults = tree.search(textString.toCharArray());
+        long checksum = 0;
+        while (searchResults.hasNext()) {
+            SearchResult<Object> searchResult = searchResults.next();
+            checksum += searchResult.getLastIndex() * searchResult.getOutputs().size();
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long knownEntityAutomaton() throws Exception {
+        final long[] checksum = new long[1];
+        automaton.match(new InputStreamReader(new ByteArrayInputStream(text), "UTF-8"), new KnownEntityAutomaton.MatchListener() {
+            @Override
+            public void match(int entry, int start, int end) {
+                checksum[0] += end;
+            }
+        });
+        return checksum[0];
+    }
+
+    @Test
+    public void benchmark() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(KnownEntityAutomatonBenchmark.class.getName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllableCount = 2 + random.nextInt(2);
+        for (int i = 0; i < syllableCount; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+}
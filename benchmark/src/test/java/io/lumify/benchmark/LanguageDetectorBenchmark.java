@@ -0,0 +1,107 @@
+package io.lumify.benchmark;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.util.LangProfile;
+import io.lumify.translate.LanguageDetector;
+import io.lumify.translate.LanguageProfileTable;
+import io.lumify.translate.TranslateGraphPropertyWorker;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares detecting the language of a text the way the translate worker used to, reading the whole text and running
+ * the langdetect {@link Detector} over its hash map of probabilities, with the {@link LanguageDetector} reading a
+ * bounded sample of the stream and looking n-grams up in the memory mapped {@link LanguageProfileTable}.
+ */
+@Category(BenchmarkCategory.class)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LanguageDetectorBenchmark {
+    private static final String[] PARAGRAPHS = {
+            "Der schnelle braune Fuchs springt über den faulen Hund, während der Bauer von der Veranda seines Hauses zusieht. ",
+            "Am Abend ziehen dunkle Wolken über das Tal und die Kinder laufen lachend nach Hause, bevor der Regen beginnt. ",
+            "Die Versammlung der Gemeinde beschloss nach langer Diskussion, die alte Brücke über den Fluss zu erneuern. "
+    };
+
+    @Param({"1000", "1000000"})
+    public int textSize;
+
+    private File directory;
+    private byte[] text;
+    private LanguageDetector languageDetector;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = new File(FileUtils.getTempDirectory(), "languageDetectorBenchmark-" + System.nanoTime());
+        if (!directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File profileDirectory = new File(directory, "profiles");
+        if (!profileDirectory.mkdirs()) {
+            throw new IOException("Could not create " + profileDirectory);
+        }
+
+        LanguageProfileTable.Builder builder = new LanguageProfileTable.Builder();
+        for (String profileFileName : TranslateGraphPropertyWorker.getProfileFilesList()) {
+            String profile = TranslateGraphPropertyWorker.getFileAsString(profileFileName);
+            FileUtils.writeStringToFile(new File(profileDirectory, profileFileName), profile, "UTF-8");
+            builder.addProfile(new LangProfile(new JSONObject(profile)));
+        }
+        DetectorFactory.clear();
+        DetectorFactory.loadProfile(profileDirectory);
+
+        File tableFile = new File(directory, "languageProfiles.table");
+        try (OutputStream out = new FileOutputStream(tableFile)) {
+            builder.build().writeTo(out);
+        }
+        languageDetector = new LanguageDetector(LanguageProfileTable.load(tableFile));
+
+        StringBuilder textBuilder = new StringBuilder();
+        for (int i = 0; textBuilder.length() < textSize; i++) {
+            textBuilder.append(PARAGRAPHS[i % PARAGRAPHS.length]);
+        }
+        text = textBuilder.substring(0, textSize).getBytes("UTF-8");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public String detector() throws Exception {
+        String textString = IOUtils.toString(new ByteArrayInputStream(text), "UTF-8");
+        Detector detector = DetectorFactory.create();
+        detector.append(textString);
+        return detector.detect();
+    }
+
+    @Benchmark
+    public String languageDetector() throws Exception {
+        return languageDetector.detect(new InputStreamReader(new ByteArrayInputStream(text), "UTF-8"), 50);
+    }
+
+    @Test
+    public void benchmark() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LanguageDetectorBenchmark.class.getName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
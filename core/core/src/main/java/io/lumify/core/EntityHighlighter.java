@@ -1,9 +1,13 @@
 package io.lumify.core;
 
+import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.video.VideoFrameInfo;
 import io.lumify.core.ingest.video.VideoPropertyHelper;
 import io.lumify.core.ingest.video.VideoTranscript;
+import io.lumify.core.model.termMention.IndexedTermMention;
+import io.lumify.core.model.textHighlighting.IndexedTermMentionOffsetItem;
 import io.lumify.core.model.textHighlighting.OffsetItem;
+import io.lumify.core.model.textHighlighting.TermMentionOffsetItem;
 import io.lumify.core.model.textHighlighting.VertexOffsetItem;
 import io.lumify.web.clientapi.model.SandboxStatus;
 import io.lumify.core.util.GraphUtil;
@@ -14,6 +18,7 @@ import org.json.JSONObject;
 import org.securegraph.Authorizations;
 import org.securegraph.Vertex;
 
+import java.io.*;
 import java.util.*;
 
 public class EntityHighlighter {
@@ -22,74 +27,167 @@ public class EntityHighlighter {
         return getHighlightedText(text, offsetItems);
     }
 
-    // TODO: change to use an InputStream?
+    /**
+     * Writes the highlighted html of the characters from rangeStart (inclusive) to rangeEnd (exclusive) of the text.
+     * Term mentions which cross the edges of the range are cut off at the edges. If the text can not be read to the
+     * end, the open spans are still closed before the error is thrown, so the html written so far is well formed.
+     */
+    public void writeHighlightedText(Reader text, Iterable<Vertex> termMentions, String workspaceId, Authorizations authorizations, long rangeStart, long rangeEnd, Writer out) throws IOException {
+        List<OffsetItem> offsetItems = convertTermMentionsToOffsetItems(termMentions, workspaceId, authorizations);
+        writeHighlightedText(text, offsetItems, rangeStart, rangeEnd, out);
+    }
+
     public static String getHighlightedText(String text, List<OffsetItem> offsetItems) throws JSONException {
+        StringWriter out = new StringWriter();
+        try {
+            writeHighlightedText(new StringReader(text), offsetItems, 0, Long.MAX_VALUE, out);
+        } catch (IOException ex) {
+            throw new LumifyException("Could not highlight text", ex);
+        }
+        return out.toString();
+    }
+
+    public static void writeHighlightedText(Reader text, List<OffsetItem> offsetItems, long rangeStart, long rangeEnd, Writer out) throws IOException {
         Collections.sort(offsetItems);
-        StringBuilder result = new StringBuilder();
-        PriorityQueue<Integer> endOffsets = new PriorityQueue<>();
-        int lastStart = 0;
-        for (int i = 0; i < offsetItems.size(); i++) {
-            OffsetItem offsetItem = offsetItems.get(i);
-
-            boolean overlapsPreviousItem = false;
-            if (offsetItem instanceof VertexOffsetItem) {
-                for (int j = 0; j < i; j++) {
-                    OffsetItem compareItem = offsetItems.get(j);
-                    if (compareItem instanceof VertexOffsetItem
-                            && (OffsetItem.getOffset(compareItem.getEnd()) >= OffsetItem.getOffset(offsetItem.getEnd())
-                            || OffsetItem.getOffset(compareItem.getEnd()) > OffsetItem.getOffset(offsetItem.getStart()))) {
-                        overlapsPreviousItem = true;
-                        offsetItems.remove(i--);
-                        break;
-                    }
-                }
-            }
-            if (overlapsPreviousItem) {
+        offsetItems = removeOverlappingVertexOffsetItems(offsetItems);
+
+        TextCursor cursor = new TextCursor(text, out);
+        cursor.skipTo(rangeStart);
+        PriorityQueue<Long> endOffsets = new PriorityQueue<>();
+        for (OffsetItem offsetItem : offsetItems) {
+            long start = OffsetItem.getOffset(offsetItem.getStart());
+            long end = OffsetItem.getOffset(offsetItem.getEnd());
+            if (start < 0 || end < 0) {
                 continue;
             }
-            if (OffsetItem.getOffset(offsetItem.getStart()) < 0 || OffsetItem.getOffset(offsetItem.getEnd()) < 0) {
+            if (!offsetItem.shouldHighlight()) {
                 continue;
             }
-            if (!offsetItem.shouldHighlight()) {
+            if (start >= rangeEnd) {
+                break;
+            }
+            if (start < rangeStart && end <= rangeStart) {
                 continue;
             }
+            start = Math.max(start, rangeStart);
+            end = Math.min(end, rangeEnd);
 
-            while (endOffsets.size() > 0 && endOffsets.peek() <= OffsetItem.getOffset(offsetItem.getStart())) {
-                int end = endOffsets.poll();
-                result.append(StringEscapeUtils.escapeHtml(safeSubstring(text, lastStart, end)));
-                result.append("</span>");
-                lastStart = end;
+            while (endOffsets.size() > 0 && endOffsets.peek() <= start) {
+                cursor.copyTo(endOffsets.poll());
+                out.write("</span>");
             }
-            result.append(StringEscapeUtils.escapeHtml(safeSubstring(text, lastStart, (int) OffsetItem.getOffset(offsetItem.getStart()))));
-
-            JSONObject infoJson = offsetItem.getInfoJson();
+            cursor.copyTo(start);
 
-            result.append("<span");
-            result.append(" class=\"");
-            result.append(StringUtils.join(offsetItem.getCssClasses(), " "));
-            result.append("\"");
+            out.write("<span");
+            out.write(" class=\"");
+            out.write(StringUtils.join(offsetItem.getCssClasses(), " "));
+            out.write("\"");
             if (offsetItem.getTitle() != null) {
-                result.append(" title=\"");
-                result.append(StringEscapeUtils.escapeHtml(offsetItem.getTitle()));
-                result.append("\"");
+                out.write(" title=\"");
+                writeEscaped(offsetItem.getTitle(), out);
+                out.write("\"");
             }
-            result.append(" data-info=\"");
-            result.append(StringEscapeUtils.escapeHtml(infoJson.toString()));
-            result.append("\"");
-            result.append(">");
-            endOffsets.add((int) OffsetItem.getOffset(offsetItem.getEnd()));
-            lastStart = (int) OffsetItem.getOffset(offsetItem.getStart());
+            out.write(" data-info=\"");
+            writeEscaped(offsetItem.getInfoJson().toString(), out);
+            out.write("\"");
+            out.write(">");
+            endOffsets.add(end);
         }
 
         while (endOffsets.size() > 0) {
-            int end = endOffsets.poll();
-            result.append(StringEscapeUtils.escapeHtml(safeSubstring(text, lastStart, end)));
-            result.append("</span>");
-            lastStart = end;
+            cursor.copyTo(endOffsets.poll());
+            out.write("</span>");
+        }
+        cursor.copyTo(rangeEnd);
+        if (cursor.readError != null) {
+            throw new IOException("Could not read the text after " + cursor.offset + " characters", cursor.readError);
+        }
+    }
+
+    /**
+     * Drops each vertex offset item which starts before, or ends within, an earlier vertex offset item. The items must
+     * be sorted.
+     *
+     * @return the remaining items in order, the given list is left unchanged
+     */
+    private static List<OffsetItem> removeOverlappingVertexOffsetItems(List<OffsetItem> offsetItems) {
+        List<OffsetItem> results = new ArrayList<>(offsetItems.size());
+        long maxVertexOffsetItemEnd = -1;
+        for (OffsetItem offsetItem : offsetItems) {
+            if (offsetItem instanceof TermMentionOffsetItem) {
+                long start = OffsetItem.getOffset(offsetItem.getStart());
+                long end = OffsetItem.getOffset(offsetItem.getEnd());
+                if (maxVertexOffsetItemEnd >= end || maxVertexOffsetItemEnd > start) {
+                    continue;
+                }
+                maxVertexOffsetItemEnd = Math.max(maxVertexOffsetItemEnd, end);
+            }
+            results.add(offsetItem);
+        }
+        return results;
+    }
+
+    private static void writeEscaped(String str, Writer out) throws IOException {
+        StringEscapeUtils.escapeHtml(out, str.replace('\u00A0', ' '));
+    }
+
+    /**
+     * Reads the text once, writing the escaped characters up to each requested offset. A failure to read the text is
+     * kept and treated as the end of the text, so the caller can still finish the html.
+     */
+    private static class TextCursor {
+        private final Reader text;
+        private final Writer out;
+        private final char[] buffer = new char[8192];
+        private long offset;
+        private boolean endOfText;
+        private IOException readError;
+
+        private TextCursor(Reader text, Writer out) {
+            this.text = text;
+            this.out = out;
         }
-        result.append(StringEscapeUtils.escapeHtml(safeSubstring(text, lastStart)));
 
-        return result.toString().replaceAll("&nbsp;", " ");
+        public void skipTo(long newOffset) throws IOException {
+            while (offset < newOffset && !endOfText) {
+                try {
+                    long skipped = text.skip(newOffset - offset);
+                    if (skipped <= 0) {
+                        endOfText = text.read() == -1;
+                        if (!endOfText) {
+                            offset++;
+                        }
+                    } else {
+                        offset += skipped;
+                    }
+                } catch (IOException ex) {
+                    readFailed(ex);
+                }
+            }
+        }
+
+        public void copyTo(long newOffset) throws IOException {
+            while (offset < newOffset && !endOfText) {
+                int read;
+                try {
+                    read = text.read(buffer, 0, (int) Math.min(buffer.length, newOffset - offset));
+                } catch (IOException ex) {
+                    readFailed(ex);
+                    return;
+                }
+                if (read == -1) {
+                    endOfText = true;
+                    return;
+                }
+                writeEscaped(new String(buffer, 0, read), out);
+                offset += read;
+            }
+        }
+
+        private void readFailed(IOException ex) {
+            readError = ex;
+            endOfText = true;
+        }
     }
 
     public VideoTranscript getHighlightedVideoTranscript(VideoTranscript videoTranscript, Iterable<Vertex> termMentions, String workspaceId, Authorizations authorizations) {
@@ -97,7 +195,7 @@ public class EntityHighlighter {
         return getHighlightedVideoTranscript(videoTranscript, offsetItems);
     }
 
-    private VideoTranscript getHighlightedVideoTranscript(VideoTranscript videoTranscript, List<OffsetItem> offsetItems) {
+    public VideoTranscript getHighlightedVideoTranscript(VideoTranscript videoTranscript, List<OffsetItem> offsetItems) {
         Map<Integer, List<OffsetItem>> videoTranscriptOffsetItems = convertOffsetItemsToVideoTranscriptOffsetItems(videoTranscript, offsetItems);
         return getHighlightedVideoTranscript(videoTranscript, videoTranscriptOffsetItems);
     }
@@ -148,17 +246,6 @@ public class EntityHighlighter {
         return videoTranscriptEntryIndex;
     }
 
-    private static String safeSubstring(String text, int beginIndex) {
-        beginIndex = Math.min(beginIndex, text.length());
-        return text.substring(beginIndex);
-    }
-
-    private static String safeSubstring(String text, int beginIndex, int endIndex) {
-        beginIndex = Math.min(beginIndex, text.length());
-        endIndex = Math.min(endIndex, text.length());
-        return text.substring(beginIndex, endIndex);
-    }
-
     public List<OffsetItem> convertTermMentionsToOffsetItems(Iterable<Vertex> termMentions, String workspaceId, Authorizations authorizations) {
         ArrayList<OffsetItem> termMetadataOffsetItems = new ArrayList<>();
         for (Vertex termMention : termMentions) {
@@ -168,4 +255,14 @@ public class EntityHighlighter {
         }
         return termMetadataOffsetItems;
     }
+
+    public List<OffsetItem> convertIndexedTermMentionsToOffsetItems(List<IndexedTermMention> termMentions, String workspaceId) {
+        ArrayList<OffsetItem> termMetadataOffsetItems = new ArrayList<>(termMentions.size());
+        for (IndexedTermMention termMention : termMentions) {
+            String visibility = termMention.getVisibility().getVisibilityString();
+            SandboxStatus sandboxStatus = GraphUtil.getSandboxStatusFromVisibilityString(visibility, workspaceId);
+            termMetadataOffsetItems.add(new IndexedTermMentionOffsetItem(termMention, sandboxStatus));
+        }
+        return termMetadataOffsetItems;
+    }
 }
@@ -45,7 +45,6 @@ public class Configuration {
     public static final String WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_ENABLED = "webAppEmbedded.longRunningProcessRunner.enabled";
     public static final boolean WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_ENABLED_DEFAULT = true;
     public static final String WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_THREAD_COUNT = "webAppEmbedded.longRunningProcessRunner.threadCount";
-    public static final int WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_THREAD_COUNT_DEFAULT = 1;
     public static final String WEB_APP_EMBEDDED_GRAPH_PROPERTY_WORKER_RUNNER_ENABLED = "webAppEmbedded.graphPropertyWorkerRunner.enabled";
     public static final boolean WEB_APP_EMBEDDED_GRAPH_PROPERTY_WORKER_RUNNER_ENABLED_DEFAULT = true;
     public static final String WEB_APP_EMBEDDED_GRAPH_PROPERTY_WORKER_RUNNER_THREAD_COUNT = "webAppEmbedded.graphPropertyWorkerRunner.threadCount";
@@ -60,11 +59,74 @@ public class Configuration {
     public static final String WEB_GEOCODER_ENABLED = WEB_PROPERTIES_PREFIX + "geocoder.enabled";
     public static final String DEV_MODE = "devMode";
     public static final String DEFAULT_SEARCH_RESULT_COUNT = "search.defaultSearchCount";
+    public static final String SEARCH_CONVERSION_BATCH_SIZE = "search.conversion.batchSize";
+    public static final int SEARCH_CONVERSION_BATCH_SIZE_DEFAULT = 25;
+    public static final String SEARCH_CONVERSION_THREAD_COUNT = "search.conversion.threadCount";
+    public static final String FIND_RELATED_BATCH_SIZE = "findRelated.batchSize";
+    public static final int FIND_RELATED_BATCH_SIZE_DEFAULT = 500;
+    public static final String FIND_RELATED_THREAD_COUNT = "findRelated.threadCount";
     public static final String LOCK_REPOSITORY_PATH_PREFIX = "lockRepository.pathPrefix";
     public static final String USER_SESSION_COUNTER_PATH_PREFIX = "userSessionCounter.pathPrefix";
+    public static final String USER_SESSION_COUNTER_GOSSIP_INTERVAL_MS = "userSessionCounter.gossipIntervalMs";
+    public static final int USER_SESSION_COUNTER_GOSSIP_INTERVAL_MS_DEFAULT = 1000;
+    public static final String SECURITY_CONTEXT_CACHE_SIZE = "securityContext.cache.size";
+    public static final int SECURITY_CONTEXT_CACHE_SIZE_DEFAULT = 10000;
+    public static final String SECURITY_CONTEXT_CACHE_EXPIRE_SECONDS = "securityContext.cache.expireSeconds";
+    public static final int SECURITY_CONTEXT_CACHE_EXPIRE_SECONDS_DEFAULT = 60;
     public static final String DEFAULT_TIME_ZONE = "default.timeZone";
     public static final String RABBITMQ_PREFETCH_COUNT = "rabbitmq.prefetch.count";
+    public static final String RABBITMQ_CONSUMER_CHANNEL_COUNT = "rabbitmq.consumer.channelCount";
+    public static final int RABBITMQ_CONSUMER_CHANNEL_COUNT_DEFAULT = 1;
+    public static final String RABBITMQ_CONSUMER_HANDOFF_QUEUE_SIZE = "rabbitmq.consumer.handoffQueueSize";
+    public static final int RABBITMQ_CONSUMER_HANDOFF_QUEUE_SIZE_DEFAULT = 1000;
+    public static final String RABBITMQ_PUBLISH_BATCH_SIZE = "rabbitmq.publish.batchSize";
+    public static final int RABBITMQ_PUBLISH_BATCH_SIZE_DEFAULT = 1;
+    public static final String RABBITMQ_ACK_BATCH_SIZE = "rabbitmq.ack.batchSize";
+    public static final int RABBITMQ_ACK_BATCH_SIZE_DEFAULT = 1;
+    public static final String RABBITMQ_BATCH_FLUSH_INTERVAL_MS = "rabbitmq.batch.flushIntervalMs";
+    public static final int RABBITMQ_BATCH_FLUSH_INTERVAL_MS_DEFAULT = 100;
+    public static final String BROADCAST_COALESCE_WINDOW_MS = "broadcast.coalesce.windowMs";
+    public static final int BROADCAST_COALESCE_WINDOW_MS_DEFAULT = 250;
+    public static final String FORMULA_RESULT_CACHE_SIZE = "formula.resultCache.size";
+    public static final int FORMULA_RESULT_CACHE_SIZE_DEFAULT = 10000;
+    public static final String FILE_IMPORT_BATCH_SIZE = "fileImport.batchSize";
+    public static final int FILE_IMPORT_BATCH_SIZE_DEFAULT = 100;
+    public static final String FILE_IMPORT_THREAD_COUNT = "fileImport.threadCount";
+    public static final String FILE_IMPORT_IN_MEMORY_MAX_BYTES = "fileImport.inMemoryMaxBytes";
+    public static final int FILE_IMPORT_IN_MEMORY_MAX_BYTES_DEFAULT = 1024 * 1024;
+    public static final String FIND_PATH_MAX_VERTEX_IDS = "findPath.maxVertexIds";
+    public static final int FIND_PATH_MAX_VERTEX_IDS_DEFAULT = 1000000;
+    public static final String FIND_PATH_TIMEOUT_SECONDS = "findPath.timeoutSeconds";
+    public static final int FIND_PATH_TIMEOUT_SECONDS_DEFAULT = 300;
+    public static final String THUMBNAIL_CACHE_MAX_BYTES = "thumbnail.cache.maxBytes";
+    public static final int THUMBNAIL_CACHE_MAX_BYTES_DEFAULT = 64 * 1024 * 1024;
+    public static final String THUMBNAIL_CACHE_EXPIRE_SECONDS = "thumbnail.cache.expireSeconds";
+    public static final int THUMBNAIL_CACHE_EXPIRE_SECONDS_DEFAULT = 600;
+    public static final String THUMBNAIL_PRERENDER_WIDTHS = "thumbnail.prerenderWidths";
+    public static final String THUMBNAIL_PRERENDER_WIDTHS_DEFAULT = "150,800";
+    public static final String LONG_RUNNING_PROCESS_PROGRESS_INTERVAL_MS = "longRunningProcess.progress.intervalMs";
+    public static final int LONG_RUNNING_PROCESS_PROGRESS_INTERVAL_MS_DEFAULT = 1000;
+    public static final String LONG_RUNNING_PROCESS_PROGRESS_MIN_CHANGE_PERCENT = "longRunningProcess.progress.minChangePercent";
+    public static final int LONG_RUNNING_PROCESS_PROGRESS_MIN_CHANGE_PERCENT_DEFAULT = 1;
+    public static final String LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT = "longRunningProcess.executor.threadCount";
+    public static final int LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT_DEFAULT = 4;
+    public static final String LONG_RUNNING_PROCESS_EXECUTOR_MAX_QUEUED = "longRunningProcess.executor.maxQueued";
+    public static final int LONG_RUNNING_PROCESS_EXECUTOR_MAX_QUEUED_DEFAULT = 100;
+    public static final String LONG_RUNNING_PROCESS_EXECUTOR_MAX_BATCH_THREADS = "longRunningProcess.executor.maxBatchThreads";
+    public static final String LONG_RUNNING_PROCESS_EXECUTOR_MAX_MEMORY_MB = "longRunningProcess.executor.maxMemoryMb";
+    public static final String LONG_RUNNING_PROCESS_EXECUTOR_CANCEL_CHECK_INTERVAL_MS = "longRunningProcess.executor.cancelCheckIntervalMs";
+    public static final int LONG_RUNNING_PROCESS_EXECUTOR_CANCEL_CHECK_INTERVAL_MS_DEFAULT = 5000;
+    public static final String LONG_RUNNING_PROCESS_TYPE_PREFIX = "longRunningProcess.type.";
+    public static final String LONG_RUNNING_PROCESS_TYPE_LANE_DEFAULT = "interactive";
+    public static final int LONG_RUNNING_PROCESS_TYPE_TIMEOUT_SECONDS_DEFAULT = 3600;
+    public static final int LONG_RUNNING_PROCESS_TYPE_MEMORY_MB_DEFAULT = 256;
     public static final String QUEUE_PREFIX = "queue.prefix";
+    public static final String GRAPH_PROPERTY_RUNNER_CONCURRENCY = "graphPropertyRunner.concurrency";
+    public static final int GRAPH_PROPERTY_RUNNER_CONCURRENCY_DEFAULT = 1;
+    public static final String GRAPH_PROPERTY_RUNNER_MAX_IN_FLIGHT = "graphPropertyRunner.maxInFlight";
+    public static final String GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_DIRECTORY = "graphPropertyRunner.localFileCache.directory";
+    public static final String GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_MAX_SIZE = "graphPropertyRunner.localFileCache.maxSizeBytes";
+    public static final long GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_MAX_SIZE_DEFAULT = 2L * 1024 * 1024 * 1024;
     private final ConfigurationLoader configurationLoader;
     private final LumifyResourceBundleManager lumifyResourceBundleManager;
 
@@ -1,6 +1,8 @@
 package io.lumify.core.formula;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.exception.LumifyException;
@@ -11,49 +13,59 @@ import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.web.clientapi.model.ClientApiOntology;
 import io.lumify.web.clientapi.model.ClientApiVertex;
 import io.lumify.web.clientapi.model.util.ObjectMapperFactory;
-import org.apache.commons.io.IOUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 import org.securegraph.Authorizations;
+import org.securegraph.Direction;
+import org.securegraph.Metadata;
+import org.securegraph.Property;
 import org.securegraph.Vertex;
+import org.securegraph.property.StreamingPropertyValue;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Evaluates the ontology title, subtitle and time formulas with the same JavaScript the web client uses.
+ * <p/>
+ * JavaScript scopes are expensive to create, so they are kept in a pool per locale and time zone and borrowed for a
+ * single evaluation by whichever thread needs one. The scripts loaded into each scope are compiled once per JVM and
+ * vertices are handed to the formulas as JavaScript objects built directly from the client api objects. Results are
+ * cached by vertex id, the vertex's properties, visibility and, when a formula uses them, edge labels, the workspace,
+ * locale and time zone.
+ */
 public class FormulaEvaluator {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(FormulaEvaluator.class);
     private Configuration configuration;
     private OntologyRepository ontologyRepository;
-    private static final ThreadLocal<Map<String, ScriptableObject>> threadLocalScope = new ThreadLocal<>();
+    private final ConcurrentMap<String, Queue<ScriptableObject>> scopePools = new ConcurrentHashMap<>();
+    private final Cache<List<Object>, String> resultCache;
+    private volatile Boolean edgeLabelsUsed;
 
     @Inject
     public FormulaEvaluator(Configuration configuration, OntologyRepository ontologyRepository) {
         this.configuration = configuration;
         this.ontologyRepository = ontologyRepository;
+        int resultCacheSize = configuration.getInt(Configuration.FORMULA_RESULT_CACHE_SIZE, Configuration.FORMULA_RESULT_CACHE_SIZE_DEFAULT);
+        this.resultCache = resultCacheSize > 0 ? CacheBuilder.newBuilder().maximumSize(resultCacheSize).<List<Object>, String>build() : null;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if (Context.getCurrentContext() != null) {
-            LOGGER.warn("close() method not called to clean up JavaScript Context");
-        }
-    }
-
+    /**
+     * Scopes are no longer bound to the calling thread and a JavaScript context is only entered for the length of an
+     * evaluation, so there is nothing left to clean up. Kept for existing callers.
+     */
     public void close() {
-        synchronized (threadLocalScope) {
-            if (Context.getCurrentContext() != null) {
-                Context.exit();
-                threadLocalScope.remove();
-            }
-        }
     }
 
     public String evaluateTitleFormula(Vertex vertex, UserContext userContext, Authorizations authorizations) {
@@ -70,39 +82,116 @@ public class FormulaEvaluator {
 
     private String evaluateFormula(String type, Vertex vertex, UserContext userContext, Authorizations authorizations) {
         checkNotNull(userContext, "userContext cannot be null");
-        Scriptable scope = getScriptable(userContext.getLocale(), userContext.getTimeZone());
-
-        String json = toJson(vertex, userContext.getWorkspaceId(), authorizations);
-        Function function = (Function) scope.get("evaluate" + type + "FormulaJson", scope);
-        Object result = function.call(Context.getCurrentContext(), scope, scope, new Object[]{json});
+        List<Object> cacheKey = resultCache == null || vertex == null ? null : getResultCacheKey(type, vertex, userContext, authorizations);
+        if (cacheKey != null) {
+            String result = resultCache.getIfPresent(cacheKey);
+            if (result != null) {
+                return result;
+            }
+        }
 
-        return (String) Context.jsToJava(result, String.class);
+        String result = evaluateFormulaInScope(type, vertex, userContext, authorizations);
+        if (cacheKey != null && result != null) {
+            resultCache.put(cacheKey, result);
+        }
+        return result;
     }
 
-    protected Scriptable getScriptable(Locale locale, String timeZone) {
-        synchronized (threadLocalScope) {
-            Map<String, ScriptableObject> map = threadLocalScope.get();
-            if (map == null) {
-                map = new HashMap<>();
-                threadLocalScope.set(map);
-            }
-            String mapKey = locale.toString() + timeZone;
-            ScriptableObject scope = map.get(mapKey);
-            if (scope == null) {
-                scope = setupContext(getOntologyJson(), getConfigurationJson(locale), timeZone);
-                map.put(mapKey, scope);
+    private String evaluateFormulaInScope(String type, Vertex vertex, UserContext userContext, Authorizations authorizations) {
+        Context context = enterContext();
+        try {
+            String scopeKey = userContext.getLocale().toString() + userContext.getTimeZone();
+            ScriptableObject scope = borrowScope(scopeKey, userContext.getLocale(), userContext.getTimeZone());
+            try {
+                ClientApiVertex clientApiVertex = toClientApiVertex(vertex, userContext.getWorkspaceId(), authorizations);
+                Scriptable vertexScriptable = ScriptableConverter.toScriptable(context, scope, clientApiVertex);
+                Function function = (Function) scope.get("evaluate" + type + "Formula", scope);
+                Object result = function.call(context, scope, scope, new Object[]{vertexScriptable});
+                return (String) Context.jsToJava(result, String.class);
+            } finally {
+                getScopePool(scopeKey).offer(scope);
             }
-            return scope;
+        } finally {
+            Context.exit();
         }
     }
 
-    protected static ScriptableObject setupContext(String ontologyJson, String configurationJson, String timeZone) {
-        if (Context.getCurrentContext() != null) {
-            Context.exit();
-            threadLocalScope.remove();
+    private ScriptableObject borrowScope(String scopeKey, Locale locale, String timeZone) {
+        ScriptableObject scope = getScopePool(scopeKey).poll();
+        if (scope == null) {
+            LOGGER.debug("creating formula scope for %s", scopeKey);
+            scope = setupContext(getOntologyJson(), getConfigurationJson(locale), timeZone);
+        }
+        return scope;
+    }
+
+    private Queue<ScriptableObject> getScopePool(String scopeKey) {
+        Queue<ScriptableObject> scopePool = scopePools.get(scopeKey);
+        if (scopePool == null) {
+            scopePool = new ConcurrentLinkedQueue<>();
+            Queue<ScriptableObject> existingScopePool = scopePools.putIfAbsent(scopeKey, scopePool);
+            if (existingScopePool != null) {
+                scopePool = existingScopePool;
+            }
         }
+        return scopePool;
+    }
+
+    private static Context enterContext() {
         Context context = Context.enter();
         context.setLanguageVersion(Context.VERSION_1_6);
+        return context;
+    }
+
+    /**
+     * Covers everything {@link #toClientApiVertex} hands to the formulas: the vertex's properties, visibility and edge
+     * labels, and the workspace its sandbox status is computed for. The ontology and configuration the formulas also
+     * read are loaded once per scope for a locale and time zone, so the locale and time zone stand in for them.
+     * <p/>
+     * The key holds the property values themselves and is compared with equals, so a hit is never a different vertex
+     * state. Streaming values are only flagged as streaming to the formulas, never read, so they are left out.
+     */
+    private List<Object> getResultCacheKey(String type, Vertex vertex, UserContext userContext, Authorizations authorizations) {
+        Set<String> edgeLabels = null;
+        if (authorizations != null && isEdgeLabelsUsed()) {
+            edgeLabels = new HashSet<>();
+            for (String edgeLabel : vertex.getEdgeLabels(Direction.BOTH, authorizations)) {
+                edgeLabels.add(edgeLabel);
+            }
+        }
+        return Arrays.asList(type, vertex.getId(), vertex.getVisibility().toString(), getPropertiesKey(vertex), edgeLabels,
+                userContext.getWorkspaceId(), userContext.getLocale(), userContext.getTimeZone());
+    }
+
+    private static Set<List<Object>> getPropertiesKey(Vertex vertex) {
+        Set<List<Object>> propertiesKey = new HashSet<>();
+        for (Property property : vertex.getProperties()) {
+            Set<List<Object>> metadataKey = new HashSet<>();
+            for (Metadata.Entry entry : property.getMetadata().entrySet()) {
+                metadataKey.add(Arrays.asList(entry.getKey(), entry.getVisibility().toString(), entry.getValue()));
+            }
+            Object value = property.getValue();
+            propertiesKey.add(Arrays.asList(property.getName(), property.getKey(), property.getVisibility().toString(),
+                    value instanceof StreamingPropertyValue ? StreamingPropertyValue.class : value, metadataKey));
+        }
+        return propertiesKey;
+    }
+
+    /**
+     * Reading edge labels is a graph query of its own, so they are only part of the cache key when a formula in the
+     * ontology refers to them. Decided once, the same way the ontology is only loaded once per scope.
+     */
+    private boolean isEdgeLabelsUsed() {
+        Boolean edgeLabelsUsed = this.edgeLabelsUsed;
+        if (edgeLabelsUsed == null) {
+            edgeLabelsUsed = getOntologyJson().contains("edgeLabels");
+            this.edgeLabelsUsed = edgeLabelsUsed;
+        }
+        return edgeLabelsUsed;
+    }
+
+    protected static ScriptableObject setupContext(String ontologyJson, String configurationJson, String timeZone) {
+        Context context = Context.getCurrentContext();
 
         final RequireJsSupport browserSupport = new RequireJsSupport();
 
@@ -149,20 +238,12 @@ public class FormulaEvaluator {
     }
 
     private static Object evaluateFile(ScriptableObject scope, String filename) {
-        InputStream is = FormulaEvaluator.class.getResourceAsStream(filename);
-        if (is != null) {
-            try {
-                return Context.getCurrentContext().evaluateString(scope, IOUtils.toString(is), filename, 0, null);
-            } catch (IOException e) {
-                LOGGER.error("File not readable %s", filename);
-            }
-        } else LOGGER.error("File not found %s", filename);
-        return null;
+        Context context = Context.getCurrentContext();
+        return RequireJsSupport.getCompiledScript(context, filename).exec(context, scope);
     }
 
-    protected String toJson(Vertex vertex, String workspaceId, Authorizations authorizations) {
-        ClientApiVertex v = ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations);
-        return v.toString();
+    protected ClientApiVertex toClientApiVertex(Vertex vertex, String workspaceId, Authorizations authorizations) {
+        return ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations);
     }
 
     public static class UserContext {
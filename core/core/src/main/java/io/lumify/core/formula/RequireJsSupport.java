@@ -5,17 +5,21 @@ import io.lumify.core.util.LumifyLoggerFactory;
 import org.apache.commons.io.IOUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class RequireJsSupport extends ScriptableObject {
 
     private static final long serialVersionUID = 1L;
     private static LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(RequireJsSupport.class);
+    private static final ConcurrentMap<String, Script> compiledScripts = new ConcurrentHashMap<>();
 
     @Override
     public String getClassName() {
@@ -51,20 +55,33 @@ public class RequireJsSupport extends ScriptableObject {
 
     public static String readFile(Context cx, Scriptable thisObj, Object[] args,
                             Function funObj) throws FileNotFoundException, IOException {
-        RequireJsSupport shell = (RequireJsSupport) getTopLevelScope(thisObj);
         if (args.length == 1) {
-            return shell.getFileContents(Context.toString(args[0]));
+            return getFileContents(Context.toString(args[0]));
         }
         return null;
     }
 
     private void processSource(Context cx, String filename)
             throws FileNotFoundException, IOException {
-        String fileContents = getFileContents(filename);
-        cx.evaluateString(this, fileContents, filename, 1, null);
+        getCompiledScript(cx, filename).exec(cx, this);
+    }
+
+    /**
+     * Scripts are compiled once per JVM and executed in every scope that loads them.
+     */
+    public static Script getCompiledScript(Context cx, String filename) {
+        Script script = compiledScripts.get(filename);
+        if (script == null) {
+            script = cx.compileString(getFileContents(filename), filename, 1, null);
+            Script existingScript = compiledScripts.putIfAbsent(filename, script);
+            if (existingScript != null) {
+                script = existingScript;
+            }
+        }
+        return script;
     }
 
-    private String getFileContents(String file) {
+    private static String getFileContents(String file) {
         InputStream is = RequireJsSupport.class.getResourceAsStream(file);
         if (is != null) {
             try {
@@ -0,0 +1,119 @@
+package io.lumify.core.formula;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.lumify.web.clientapi.model.ClientApiElement;
+import io.lumify.web.clientapi.model.ClientApiProperty;
+import io.lumify.web.clientapi.model.ClientApiVertex;
+import io.lumify.web.clientapi.model.util.ObjectMapperFactory;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds JavaScript objects with the same shape as the client api JSON directly from the client api objects, so
+ * formulas are passed a vertex without writing it to a JSON string and parsing it again in JavaScript.
+ */
+public class ScriptableConverter {
+    public static Scriptable toScriptable(Context context, Scriptable scope, ClientApiVertex vertex) {
+        Scriptable result = toScriptable(context, scope, (ClientApiElement) vertex);
+        result.put("type", result, "vertex");
+        result.put("edgeLabels", result, toJavaScript(context, scope, vertex.getEdgeLabels()));
+        if (vertex.getScore() != null) {
+            result.put("score", result, vertex.getScore());
+        }
+        return result;
+    }
+
+    private static Scriptable toScriptable(Context context, Scriptable scope, ClientApiElement element) {
+        Scriptable result = context.newObject(scope);
+        result.put("id", result, element.getId());
+        Object[] properties = new Object[element.getProperties().size()];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = toScriptable(context, scope, element.getProperties().get(i));
+        }
+        result.put("properties", result, context.newArray(scope, properties));
+        putIfNotNull(result, "sandboxStatus", element.getSandboxStatus() == null ? null : element.getSandboxStatus().name());
+        putIfNotNull(result, "visibilitySource", element.getVisibilitySource());
+        return result;
+    }
+
+    private static Scriptable toScriptable(Context context, Scriptable scope, ClientApiProperty property) {
+        Scriptable result = context.newObject(scope);
+        putIfNotNull(result, "sandboxStatus", property.getSandboxStatus() == null ? null : property.getSandboxStatus().name());
+        putIfNotNull(result, "key", property.getKey());
+        putIfNotNull(result, "name", property.getName());
+        result.put("streamingPropertyValue", result, property.isStreamingPropertyValue());
+        result.put("metadata", result, toJavaScript(context, scope, property.getMetadata()));
+        putIfNotNull(result, "value", toJavaScript(context, scope, property.getValue()));
+        return result;
+    }
+
+    public static Object toJavaScript(Context context, Scriptable scope, Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Enum) {
+            return ((Enum) value).name();
+        }
+        if (value instanceof Map) {
+            Scriptable result = context.newObject(scope);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                putIfNotNull(result, entry.getKey().toString(), toJavaScript(context, scope, entry.getValue()));
+            }
+            return result;
+        }
+        if (value instanceof Iterable) {
+            List<Object> items = new ArrayList<>();
+            for (Object item : (Iterable) value) {
+                items.add(toJavaScript(context, scope, item));
+            }
+            return context.newArray(scope, items.toArray());
+        }
+        if (value instanceof JsonNode) {
+            return toJavaScript(context, scope, (JsonNode) value);
+        }
+        return toJavaScript(context, scope, (JsonNode) ObjectMapperFactory.getInstance().valueToTree(value));
+    }
+
+    private static Object toJavaScript(Context context, Scriptable scope, JsonNode node) {
+        if (node.isObject()) {
+            Scriptable result = context.newObject(scope);
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                putIfNotNull(result, field.getKey(), toJavaScript(context, scope, field.getValue()));
+            }
+            return result;
+        }
+        if (node.isArray()) {
+            Object[] items = new Object[node.size()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = toJavaScript(context, scope, node.get(i));
+            }
+            return context.newArray(scope, items);
+        }
+        if (node.isNumber()) {
+            return node.doubleValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        if (node.isNull()) {
+            return null;
+        }
+        return node.asText();
+    }
+
+    private static void putIfNotNull(Scriptable object, String name, Object value) {
+        if (value != null) {
+            object.put(name, object, value);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package io.lumify.core.ingest;
 import com.google.inject.Inject;
 import io.lumify.core.bootstrap.InjectHelper;
 import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.FileImportSupportingFileHandler.AddSupportingFilesResult;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
@@ -13,30 +14,33 @@ import io.lumify.core.security.VisibilityTranslator;
 import io.lumify.core.user.User;
 import io.lumify.core.util.*;
 import io.lumify.web.clientapi.model.VisibilityJson;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.json.JSONObject;
 import org.securegraph.*;
 import org.securegraph.property.StreamingPropertyValue;
+import org.securegraph.query.Compare;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.securegraph.util.IterableUtils.toList;
 
 public class FileImport {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(FileImport.class);
     public static final String MULTI_VALUE_KEY = FileImport.class.getName();
+    private static final int EXISTING_VERTEX_QUERY_HITS_PER_HASH = 10;
     private final VisibilityTranslator visibilityTranslator;
     private final Graph graph;
     private final WorkQueueRepository workQueueRepository;
     private final WorkspaceRepository workspaceRepository;
     private final Configuration configuration;
+    private final int batchSize;
+    private final int threadCount;
+    private final long inMemoryMaxBytes;
     private List<FileImportSupportingFileHandler> fileImportSupportingFileHandlers;
 
     @Inject
@@ -52,6 +56,9 @@ public class FileImport {
         this.workQueueRepository = workQueueRepository;
         this.workspaceRepository = workspaceRepository;
         this.configuration = configuration;
+        this.batchSize = configuration.getInt(Configuration.FILE_IMPORT_BATCH_SIZE, Configuration.FILE_IMPORT_BATCH_SIZE_DEFAULT);
+        this.threadCount = configuration.getInt(Configuration.FILE_IMPORT_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
+        this.inMemoryMaxBytes = configuration.getInt(Configuration.FILE_IMPORT_IN_MEMORY_MAX_BYTES, Configuration.FILE_IMPORT_IN_MEMORY_MAX_BYTES_DEFAULT);
     }
 
     public void importDirectory(File dataDir, boolean queueDuplicates, String visibilitySource, Workspace workspace, User user, Authorizations authorizations) throws IOException {
@@ -63,32 +70,168 @@ public class FileImport {
             return;
         }
 
-        int totalFileCount = files.length;
-        int fileCount = 0;
+        List<File> filesToImport = new ArrayList<>();
+        for (File f : files) {
+            if (f.getName().startsWith(".") || f.length() == 0) {
+                continue;
+            }
+            if (isSupportingFile(f)) {
+                continue;
+            }
+            filesToImport.add(f);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-file-import-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Map<String, Vertex> importedVertices = new HashMap<>();
         int importedFileCount = 0;
         try {
-            for (File f : files) {
-                if (f.getName().startsWith(".") || f.length() == 0) {
-                    continue;
+            for (int i = 0; i < filesToImport.size(); i += batchSize) {
+                List<File> batch = filesToImport.subList(i, Math.min(i + batchSize, filesToImport.size()));
+                LOGGER.debug("Importing files (%d-%d/%d) from %s", i + 1, i + batch.size(), filesToImport.size(), dataDir);
+                importedFileCount += importBatch(executor, batch, importedVertices, queueDuplicates, visibilitySource, workspace, user, authorizations);
+            }
+        } finally {
+            executor.shutdownNow();
+            graph.flush();
+        }
+
+        LOGGER.debug("Imported %d, skipped %d files from %s", importedFileCount, filesToImport.size() - importedFileCount, dataDir);
+    }
+
+    /**
+     * Hashes the files in parallel, looks up the hashes which were already imported with one query, saves the new
+     * files in parallel and then flushes, adds them to the workspace and queues them once for the whole batch.
+     * Files with the same content as a file imported earlier in the import, or as an existing vertex, are treated
+     * the same way as by {@link #importFile}.
+     *
+     * @param importedVertices the vertices of the files imported so far by hash, updated with this batch
+     * @return the number of files which were imported or already existed
+     */
+    private int importBatch(ExecutorService executor, List<File> files, Map<String, Vertex> importedVertices, boolean queueDuplicates, String visibilitySource, final Workspace workspace, User user, final Authorizations authorizations) {
+        List<Future<HashedFile>> hashedFileFutures = new ArrayList<>();
+        for (final File f : files) {
+            hashedFileFutures.add(executor.submit(new Callable<HashedFile>() {
+                @Override
+                public HashedFile call() throws Exception {
+                    return hashFile(f);
                 }
-                if (isSupportingFile(f)) {
-                    continue;
+            }));
+        }
+
+        int importedFileCount = 0;
+        Map<String, HashedFile> newFiles = new LinkedHashMap<>();
+        List<Vertex> duplicateVertices = new ArrayList<>();
+        List<String> duplicateNewFileHashes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            HashedFile hashedFile = getResult(hashedFileFutures.get(i), files.get(i));
+            if (hashedFile == null) {
+                continue;
+            }
+            String hash = hashedFile.getHash();
+            if (importedVertices.containsKey(hash) || newFiles.containsKey(hash)) {
+                LOGGER.warn("file %s has the same hash %s as a file already imported", hashedFile.getFile().getAbsolutePath(), hash);
+                importedFileCount++;
+                if (importedVertices.containsKey(hash)) {
+                    duplicateVertices.add(importedVertices.get(hash));
+                } else {
+                    duplicateNewFileHashes.add(hash);
                 }
+                continue;
+            }
+            newFiles.put(hash, hashedFile);
+        }
+
+        for (Map.Entry<String, Vertex> existingVertex : findExistingVerticesWithHashes(newFiles.keySet(), authorizations).entrySet()) {
+            LOGGER.warn("vertex already exists with hash %s", existingVertex.getKey());
+            newFiles.remove(existingVertex.getKey());
+            importedVertices.put(existingVertex.getKey(), existingVertex.getValue());
+            duplicateVertices.add(existingVertex.getValue());
+            importedFileCount++;
+        }
 
-                LOGGER.debug("Importing file (%d/%d): %s", fileCount + 1, totalFileCount, f.getAbsolutePath());
-                try {
-                    importFile(f, queueDuplicates, visibilitySource, workspace, user, authorizations);
-                    importedFileCount++;
-                } catch (Exception ex) {
-                    LOGGER.error("Could not import %s", f.getAbsolutePath(), ex);
+        final String defaultVisibilitySource = visibilitySource;
+        List<Future<ImportedFile>> importedFileFutures = new ArrayList<>();
+        for (final HashedFile hashedFile : newFiles.values()) {
+            importedFileFutures.add(executor.submit(new Callable<ImportedFile>() {
+                @Override
+                public ImportedFile call() throws Exception {
+                    return saveFile(hashedFile, defaultVisibilitySource, workspace, authorizations);
                 }
-                fileCount++;
+            }));
+        }
+        List<ImportedFile> importedFiles = new ArrayList<>();
+        int fileIndex = 0;
+        for (HashedFile hashedFile : newFiles.values()) {
+            ImportedFile importedFile = getResult(importedFileFutures.get(fileIndex++), hashedFile.getFile());
+            if (importedFile != null) {
+                importedFiles.add(importedFile);
+                importedVertices.put(hashedFile.getHash(), importedFile.getVertex());
             }
-        } finally {
+        }
+        // duplicates of files saved above can only be resolved now, a file which could not be saved has no vertex
+        for (String hash : duplicateNewFileHashes) {
+            Vertex vertex = importedVertices.get(hash);
+            if (vertex != null) {
+                duplicateVertices.add(vertex);
+            }
+        }
+        if (importedFiles.size() > 0) {
             graph.flush();
         }
+        if (queueDuplicates && duplicateVertices.size() > 0) {
+            pushOnQueue(duplicateVertices, MULTI_VALUE_KEY, LumifyProperties.RAW.getPropertyName(), workspace, visibilitySource);
+        }
+        if (importedFiles.size() == 0) {
+            return importedFileCount;
+        }
+
+        if (workspace != null) {
+            List<WorkspaceRepository.Update> updates = new ArrayList<>();
+            for (ImportedFile importedFile : importedFiles) {
+                updates.add(new WorkspaceRepository.Update(importedFile.getVertex().getId(), null, null));
+            }
+            workspaceRepository.updateEntitiesOnWorkspace(workspace, updates, user);
+        }
 
-        LOGGER.debug(String.format("Imported %d, skipped %d files from %s", importedFileCount, fileCount - importedFileCount, dataDir));
+        Map<String, List<Vertex>> verticesByVisibilitySource = new HashMap<>();
+        for (ImportedFile importedFile : importedFiles) {
+            List<Vertex> vertices = verticesByVisibilitySource.get(importedFile.getVisibilitySource());
+            if (vertices == null) {
+                vertices = new ArrayList<>();
+                verticesByVisibilitySource.put(importedFile.getVisibilitySource(), vertices);
+            }
+            vertices.add(importedFile.getVertex());
+        }
+        for (Map.Entry<String, List<Vertex>> vertices : verticesByVisibilitySource.entrySet()) {
+            pushOnQueue(vertices.getValue(), MULTI_VALUE_KEY, LumifyProperties.RAW.getPropertyName(), workspace, vertices.getKey());
+        }
+        for (ImportedFile importedFile : importedFiles) {
+            for (String propertyName : importedFile.getPropertiesToQueue()) {
+                pushOnQueue(importedFile.getVertex(), propertyName, workspace, importedFile.getVisibilitySource());
+            }
+        }
+        return importedFileCount + importedFiles.size();
+    }
+
+    private <T> T getResult(Future<T> future, File f) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LumifyException("Interrupted while importing " + f.getAbsolutePath(), ex);
+        } catch (ExecutionException ex) {
+            LOGGER.error("Could not import %s", f.getAbsolutePath(), ex.getCause());
+            return null;
+        }
     }
 
     private boolean isSupportingFile(File f) {
@@ -103,7 +246,8 @@ public class FileImport {
     public Vertex importFile(File f, boolean queueDuplicates, String visibilitySource, Workspace workspace, User user, Authorizations authorizations) throws Exception {
         ensureInitialized();
 
-        String hash = calculateFileHash(f);
+        HashedFile hashedFile = hashFile(f);
+        String hash = hashedFile.getHash();
 
         Vertex vertex = findExistingVertexWithHash(hash, authorizations);
         if (vertex != null) {
@@ -114,9 +258,30 @@ public class FileImport {
             return vertex;
         }
 
+        ImportedFile importedFile = saveFile(hashedFile, visibilitySource, workspace, authorizations);
+        vertex = importedFile.getVertex();
+        graph.flush();
+
+        if (workspace != null) {
+            workspaceRepository.updateEntityOnWorkspace(workspace, vertex.getId(), null, null, user);
+        }
+
+        LOGGER.debug("File %s imported. vertex id: %s", f.getAbsolutePath(), vertex.getId());
+        pushOnQueue(vertex, MULTI_VALUE_KEY, LumifyProperties.RAW.getPropertyName(), workspace, importedFile.getVisibilitySource());
+        for (String propertyName : importedFile.getPropertiesToQueue()) {
+            pushOnQueue(vertex, propertyName, workspace, importedFile.getVisibilitySource());
+        }
+        return vertex;
+    }
+
+    /**
+     * Saves the vertex of the file without flushing the graph or queueing it.
+     */
+    private ImportedFile saveFile(HashedFile hashedFile, String visibilitySource, Workspace workspace, Authorizations authorizations) throws Exception {
+        File f = hashedFile.getFile();
         List<FileImportSupportingFileHandler.AddSupportingFilesResult> addSupportingFilesResults = new ArrayList<>();
 
-        try (FileInputStream fileInputStream = new FileInputStream(f)) {
+        try (InputStream fileInputStream = hashedFile.openInputStream()) {
             JSONObject metadataJson = loadMetadataJson(f);
             String predefinedId = null;
             if (metadataJson != null) {
@@ -146,7 +311,7 @@ public class FileImport {
             LumifyProperties.VISIBILITY_JSON.setProperty(vertexBuilder, visibilityJson, visibility);
             LumifyProperties.RAW.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, rawValue, propertyMetadata, visibility);
             LumifyProperties.TITLE.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, f.getName(), propertyMetadata, visibility);
-            LumifyProperties.CONTENT_HASH.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, hash, propertyMetadata, visibility);
+            LumifyProperties.CONTENT_HASH.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, hashedFile.getHash(), propertyMetadata, visibility);
             LumifyProperties.FILE_NAME.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, f.getName(), propertyMetadata, visibility);
             LumifyProperties.FILE_NAME_EXTENSION.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, FilenameUtils.getExtension(f.getName()), propertyMetadata, visibility);
             LumifyProperties.CREATE_DATE.addPropertyValue(vertexBuilder, MULTI_VALUE_KEY, new Date(f.lastModified()), propertyMetadata, visibility);
@@ -158,21 +323,12 @@ public class FileImport {
                 }
             }
 
-            vertex = vertexBuilder.save(authorizations);
-            graph.flush();
-
-            if (workspace != null) {
-                workspaceRepository.updateEntityOnWorkspace(workspace, vertex.getId(), null, null, user);
-            }
-
-            LOGGER.debug("File %s imported. vertex id: %s", f.getAbsolutePath(), vertex.getId());
-            pushOnQueue(vertex, MULTI_VALUE_KEY, LumifyProperties.RAW.getPropertyName(), workspace, visibilitySource);
+            Vertex vertex = vertexBuilder.save(authorizations);
+            List<String> propertiesToQueue = new ArrayList<>();
             for (AddSupportingFilesResult result : addSupportingFilesResults) {
-                for (String propertyName : result.getPropertiesToQueue()) {
-                    pushOnQueue(vertex, propertyName, workspace, visibilitySource);
-                }
+                propertiesToQueue.addAll(result.getPropertiesToQueue());
             }
-            return vertex;
+            return new ImportedFile(vertex, visibilitySource, propertiesToQueue);
         } finally {
             for (FileImportSupportingFileHandler.AddSupportingFilesResult addSupportingFilesResult : addSupportingFilesResults) {
                 addSupportingFilesResult.close();
@@ -230,20 +386,97 @@ public class FileImport {
         }
     }
 
+    private void pushOnQueue(List<Vertex> vertices, String propertyKey, String propertyName, Workspace workspace, String visibilitySource) {
+        LOGGER.debug("pushing %d vertices [%s] on to %s queue", vertices.size(), propertyName, WorkQueueRepository.GRAPH_PROPERTY_QUEUE_NAME);
+        String workspaceId = workspace == null ? null : workspace.getWorkspaceId();
+        this.workQueueRepository.pushGraphPropertyQueue(vertices, null, null, null, null);
+        this.workQueueRepository.pushGraphPropertyQueue(vertices, propertyKey, propertyName, workspaceId, visibilitySource);
+    }
+
     private Vertex findExistingVertexWithHash(String hash, Authorizations authorizations) {
-        Iterator<Vertex> existingVertices = this.graph.query(authorizations)
-                .has(LumifyProperties.CONTENT_HASH.getPropertyName(), hash)
-                .vertices()
-                .iterator();
-        if (existingVertices.hasNext()) {
-            return existingVertices.next();
+        return findExistingVerticesWithHashes(Collections.singleton(hash), authorizations).get(hash);
+    }
+
+    private Map<String, Vertex> findExistingVerticesWithHashes(Collection<String> hashes, Authorizations authorizations) {
+        Map<String, Vertex> existingVertices = new HashMap<>();
+        if (hashes.size() == 0) {
+            return existingVertices;
         }
-        return null;
+        Iterable<Vertex> vertices = this.graph.query(authorizations)
+                .has(LumifyProperties.CONTENT_HASH.getPropertyName(), Compare.IN, hashes.toArray(new String[hashes.size()]))
+                .limit(hashes.size() * EXISTING_VERTEX_QUERY_HITS_PER_HASH)
+                .vertices();
+        for (Vertex vertex : vertices) {
+            for (Object hash : vertex.getPropertyValues(LumifyProperties.CONTENT_HASH.getPropertyName())) {
+                if (hashes.contains(hash) && !existingVertices.containsKey(hash)) {
+                    existingVertices.put((String) hash, vertex);
+                }
+            }
+        }
+        return existingVertices;
     }
 
-    private String calculateFileHash(File f) throws IOException {
+    /**
+     * Small files are read once into memory and hashed, so saving them doesn't read them from disk again.
+     */
+    private HashedFile hashFile(File f) throws IOException {
+        if (f.length() <= inMemoryMaxBytes) {
+            byte[] data = FileUtils.readFileToByteArray(f);
+            return new HashedFile(f, RowKeyHelper.buildSHA256KeyString(data), data);
+        }
         try (FileInputStream fileInputStream = new FileInputStream(f)) {
-            return RowKeyHelper.buildSHA256KeyString(fileInputStream);
+            return new HashedFile(f, RowKeyHelper.buildSHA256KeyString(fileInputStream), null);
+        }
+    }
+
+    private static class HashedFile {
+        private final File file;
+        private final String hash;
+        private final byte[] data;
+
+        public HashedFile(File file, String hash, byte[] data) {
+            this.file = file;
+            this.hash = hash;
+            this.data = data;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public InputStream openInputStream() throws FileNotFoundException {
+            if (data != null) {
+                return new ByteArrayInputStream(data);
+            }
+            return new FileInputStream(file);
+        }
+    }
+
+    private static class ImportedFile {
+        private final Vertex vertex;
+        private final String visibilitySource;
+        private final List<String> propertiesToQueue;
+
+        public ImportedFile(Vertex vertex, String visibilitySource, List<String> propertiesToQueue) {
+            this.vertex = vertex;
+            this.visibilitySource = visibilitySource;
+            this.propertiesToQueue = propertiesToQueue;
+        }
+
+        public Vertex getVertex() {
+            return vertex;
+        }
+
+        public String getVisibilitySource() {
+            return visibilitySource;
+        }
+
+        public List<String> getPropertiesToQueue() {
+            return propertiesToQueue;
         }
     }
 
@@ -0,0 +1,88 @@
+package io.lumify.core.ingest;
+
+import com.google.inject.Inject;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
+import io.lumify.core.ingest.graphProperty.GraphPropertyWorker;
+import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerPrepareData;
+import io.lumify.core.model.artifactThumbnails.ArtifactThumbnailRepository;
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.securegraph.Element;
+import org.securegraph.Property;
+import org.securegraph.Vertex;
+import org.securegraph.property.StreamingPropertyValue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders the thumbnails of the standard sizes when an image is ingested, so the first users to see the image don't
+ * wait for it to be decoded. The thumbnails are rendered again when the image's orientation is found, since that
+ * happens after the image is ingested.
+ */
+public class ImageThumbnailGraphPropertyWorker extends GraphPropertyWorker {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(ImageThumbnailGraphPropertyWorker.class);
+    private ArtifactThumbnailRepository artifactThumbnailRepository;
+    private List<Integer> widths;
+    private String yAxisFlippedIri;
+    private String clockwiseRotationIri;
+
+    @Override
+    public void prepare(GraphPropertyWorkerPrepareData workerPrepareData) throws Exception {
+        super.prepare(workerPrepareData);
+        widths = new ArrayList<>();
+        String widthsString = getConfiguration().get(Configuration.THUMBNAIL_PRERENDER_WIDTHS, Configuration.THUMBNAIL_PRERENDER_WIDTHS_DEFAULT);
+        for (String width : widthsString.split(",")) {
+            if (width.trim().length() > 0) {
+                widths.add(Integer.parseInt(width.trim()));
+            }
+        }
+        yAxisFlippedIri = getOntologyRepository().getPropertyIRIByIntent("media.yAxisFlipped");
+        clockwiseRotationIri = getOntologyRepository().getPropertyIRIByIntent("media.clockwiseRotation");
+    }
+
+    @Override
+    public void execute(InputStream in, GraphPropertyWorkData data) throws Exception {
+        Vertex vertex = (Vertex) data.getElement();
+        StreamingPropertyValue rawPropertyValue = LumifyProperties.RAW.getPropertyValue(vertex);
+        if (rawPropertyValue == null) {
+            return;
+        }
+
+        for (int width : widths) {
+            try (InputStream rawIn = rawPropertyValue.getInputStream()) {
+                artifactThumbnailRepository.createThumbnail(vertex, "raw", rawIn, new int[]{width, width}, getUser());
+            }
+            LOGGER.debug("rendered %d thumbnail of %s", width, vertex.getId());
+        }
+    }
+
+    @Override
+    public boolean isHandled(Element element, Property property) {
+        if (property == null || !(element instanceof Vertex) || widths.size() == 0) {
+            return false;
+        }
+
+        if (property.getName().equals(yAxisFlippedIri) || property.getName().equals(clockwiseRotationIri)) {
+            return isImage(element.getProperty(LumifyProperties.RAW.getPropertyName()));
+        }
+
+        return property.getName().equals(LumifyProperties.RAW.getPropertyName()) && isImage(property);
+    }
+
+    private static boolean isImage(Property rawProperty) {
+        if (rawProperty == null) {
+            return false;
+        }
+        String mimeType = LumifyProperties.MIME_TYPE.getMetadataValue(rawProperty.getMetadata(), null);
+        return mimeType != null && mimeType.startsWith("image");
+    }
+
+    @Inject
+    public void setArtifactThumbnailRepository(ArtifactThumbnailRepository artifactThumbnailRepository) {
+        this.artifactThumbnailRepository = artifactThumbnailRepository;
+    }
+}
@@ -16,5 +16,9 @@ public abstract class WorkerSpout {
 
     }
 
+    /**
+     * Gets the next tuple, waiting briefly for one to arrive. Returns null if none arrived so the caller can check
+     * whether it should keep running; callers do not sleep between calls.
+     */
     public abstract WorkerTuple nextTuple() throws Exception;
 }
@@ -10,12 +10,12 @@ import io.lumify.core.model.user.UserRepository;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.security.VisibilityTranslator;
 import io.lumify.core.user.User;
+import io.lumify.core.util.FanOutInputStream;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.core.util.ServiceLoaderUtil;
-import io.lumify.core.util.TeeInputStream;
-import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.fs.FileSystem;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.securegraph.*;
 import org.securegraph.property.StreamingPropertyValue;
@@ -25,8 +25,10 @@ import java.io.*;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
 
 import static org.securegraph.util.IterableUtils.toList;
 
@@ -34,17 +36,21 @@ public class GraphPropertyRunner {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(GraphPropertyRunner.class);
     private Graph graph;
     private Authorizations authorizations;
-    private List<GraphPropertyThreadedWrapper> workerWrappers;
+    private List<List<GraphPropertyThreadedWrapper>> workerWrapperLanes;
+    private int concurrency;
     private User user;
     private UserRepository userRepository;
     private Configuration configuration;
     private WorkQueueRepository workQueueRepository;
     private VisibilityTranslator visibilityTranslator;
-    private boolean shouldRun;
+    private LocalFileCache localFileCache;
+    private volatile boolean shouldRun;
+    private long laneShutdownTimeoutMillis = TimeUnit.MINUTES.toMillis(1);
 
     public void prepare(User user) {
         this.user = user;
         this.authorizations = this.userRepository.getAuthorizations(this.user);
+        this.concurrency = Math.max(1, configuration.getInt(Configuration.GRAPH_PROPERTY_RUNNER_CONCURRENCY, Configuration.GRAPH_PROPERTY_RUNNER_CONCURRENCY_DEFAULT));
         prepareWorkers();
     }
 
@@ -60,31 +66,52 @@ public class GraphPropertyRunner {
                 this.user,
                 this.authorizations,
                 InjectHelper.getInjector());
-        Collection<GraphPropertyWorker> workers = InjectHelper.getInjectedServices(GraphPropertyWorker.class, configuration);
-        this.workerWrappers = new ArrayList<>(workers.size());
+        // each lane gets its own worker instances, since workers are not thread-safe, and its own wrapper threads so
+        // that streaming tees of concurrent tuples never wait on each other
         boolean failedToPrepareAtLeastOneGraphPropertyWorker = false;
-        for (GraphPropertyWorker worker : workers) {
-            try {
-                LOGGER.debug("preparing: %s", worker.getClass().getName());
-                worker.prepare(workerPrepareData);
-            } catch (Exception ex) {
-                LOGGER.error("Could not prepare graph property worker %s", worker.getClass().getName(), ex);
-                failedToPrepareAtLeastOneGraphPropertyWorker = true;
-            }
+        List<List<GraphPropertyThreadedWrapper>> workerWrapperLanes = new ArrayList<>(concurrency);
+        for (int lane = 0; lane < concurrency; lane++) {
+            Collection<GraphPropertyWorker> workers = InjectHelper.getInjectedServices(GraphPropertyWorker.class, configuration);
+            List<GraphPropertyThreadedWrapper> workerWrappers = new ArrayList<>(workers.size());
+            for (GraphPropertyWorker worker : workers) {
+                try {
+                    LOGGER.debug("preparing: %s", worker.getClass().getName());
+                    worker.prepare(workerPrepareData);
+                } catch (Exception ex) {
+                    LOGGER.error("Could not prepare graph property worker %s", worker.getClass().getName(), ex);
+                    failedToPrepareAtLeastOneGraphPropertyWorker = true;
+                }
 
-            GraphPropertyThreadedWrapper wrapper = new GraphPropertyThreadedWrapper(worker);
-            InjectHelper.inject(wrapper);
-            workerWrappers.add(wrapper);
-            Thread thread = new Thread(wrapper);
-            String workerName = worker.getClass().getName();
-            thread.setName("graphPropertyWorker-" + workerName);
-            thread.start();
+                GraphPropertyThreadedWrapper wrapper = new GraphPropertyThreadedWrapper(worker);
+                InjectHelper.inject(wrapper);
+                workerWrappers.add(wrapper);
+                Thread thread = new Thread(wrapper);
+                String workerName = worker.getClass().getName();
+                thread.setName("graphPropertyWorker-" + workerName + (concurrency > 1 ? "-" + lane : ""));
+                thread.start();
+            }
+            workerWrapperLanes.add(workerWrappers);
         }
+        this.workerWrapperLanes = workerWrapperLanes;
+
         if (failedToPrepareAtLeastOneGraphPropertyWorker) {
             throw new LumifyException("Failed to initialize at least one graph property worker. See the log for more details.");
         }
     }
 
+    /**
+     * Prepares the runner with lanes of already prepared workers, one lane per unit of concurrency.
+     */
+    void prepare(Authorizations authorizations, List<List<GraphPropertyThreadedWrapper>> workerWrapperLanes) {
+        this.authorizations = authorizations;
+        this.concurrency = workerWrapperLanes.size();
+        this.workerWrapperLanes = workerWrapperLanes;
+    }
+
+    void setLaneShutdownTimeoutMillis(long laneShutdownTimeoutMillis) {
+        this.laneShutdownTimeoutMillis = laneShutdownTimeoutMillis;
+    }
+
     private FileSystem getFileSystem() {
         FileSystem hdfsFileSystem;
         org.apache.hadoop.conf.Configuration conf = configuration.toHadoopConfiguration();
@@ -119,6 +146,10 @@ public class GraphPropertyRunner {
     }
 
     public void process(JSONObject json) throws Exception {
+        process(json, workerWrapperLanes.get(0));
+    }
+
+    private void process(JSONObject json, List<GraphPropertyThreadedWrapper> workerWrappers) throws Exception {
         String propertyKey = json.optString("propertyKey");
         String propertyName = json.optString("propertyName");
         String workspaceId = json.optString("workspaceId");
@@ -130,7 +161,7 @@ public class GraphPropertyRunner {
             if (vertex == null) {
                 throw new LumifyException("Could not find vertex with id " + graphVertexId);
             }
-            safeExecute(vertex, propertyKey, propertyName, workspaceId, visibilitySource);
+            safeExecute(workerWrappers, vertex, json, propertyKey, propertyName, workspaceId, visibilitySource);
             return;
         }
 
@@ -140,14 +171,26 @@ public class GraphPropertyRunner {
             if (edge == null) {
                 throw new LumifyException("Could not find edge with id " + graphEdgeId);
             }
-            safeExecute(edge, propertyKey, propertyName, workspaceId, visibilitySource);
+            safeExecute(workerWrappers, edge, json, propertyKey, propertyName, workspaceId, visibilitySource);
             return;
         }
 
         throw new LumifyException("Could not find graphVertexId or graphEdgeId");
     }
 
-    private void safeExecute(Element element, String propertyKey, String propertyName, String workspaceId, String visibilitySource) throws Exception {
+    private void safeExecute(List<GraphPropertyThreadedWrapper> workerWrappers, Element element, JSONObject json, String propertyKey, String propertyName, String workspaceId, String visibilitySource) throws Exception {
+        JSONArray properties = json.optJSONArray("properties");
+        if (properties == null) {
+            safeExecute(workerWrappers, element, propertyKey, propertyName, workspaceId, visibilitySource);
+            return;
+        }
+        for (int i = 0; i < properties.length(); i++) {
+            JSONObject property = properties.getJSONObject(i);
+            safeExecute(workerWrappers, element, property.optString("propertyKey"), property.optString("propertyName"), workspaceId, visibilitySource);
+        }
+    }
+
+    private void safeExecute(List<GraphPropertyThreadedWrapper> workerWrappers, Element element, String propertyKey, String propertyName, String workspaceId, String visibilitySource) throws Exception {
         Property property;
         if ((propertyKey == null || propertyKey.length() == 0) && (propertyName == null || propertyName.length() == 0)) {
             property = null;
@@ -162,13 +205,13 @@ public class GraphPropertyRunner {
                 return;
             }
         }
-        safeExecute(element, property, workspaceId, visibilitySource);
+        safeExecute(workerWrappers, element, property, workspaceId, visibilitySource);
     }
 
-    private void safeExecute(Element element, Property property, String workspaceId, String visibilitySource) throws Exception {
+    private void safeExecute(List<GraphPropertyThreadedWrapper> workerWrappers, Element element, Property property, String workspaceId, String visibilitySource) throws Exception {
         String propertyText = property == null ? "[none]" : (property.getKey() + ":" + property.getName());
 
-        List<GraphPropertyThreadedWrapper> interestedWorkerWrappers = findInterestedWorkers(element, property);
+        List<GraphPropertyThreadedWrapper> interestedWorkerWrappers = findInterestedWorkers(workerWrappers, element, property);
         if (interestedWorkerWrappers.size() == 0) {
             LOGGER.info("Could not find interested workers for element %s property %s", element.getId(), propertyText);
             return;
@@ -202,46 +245,46 @@ public class GraphPropertyRunner {
 
     private void safeExecuteStreamingPropertyValue(List<GraphPropertyThreadedWrapper> interestedWorkerWrappers, GraphPropertyWorkData workData, StreamingPropertyValue streamingPropertyValue) throws Exception {
         String[] workerNames = graphPropertyThreadedWrapperToNames(interestedWorkerWrappers);
-        InputStream in = streamingPropertyValue.getInputStream();
-        File tempFile = null;
+        InputStream in = null;
+        LocalFileCache.CachedFile cachedFile = null;
         try {
             boolean requiresLocalFile = isLocalFileRequired(interestedWorkerWrappers);
             if (requiresLocalFile) {
-                tempFile = copyToTempFile(in, workData);
-                in = new FileInputStream(tempFile);
+                cachedFile = getLocalFile(workData, streamingPropertyValue);
+                workData.setLocalFile(cachedFile.getFile());
+                in = new FileInputStream(cachedFile.getFile());
+            } else {
+                in = streamingPropertyValue.getInputStream();
             }
 
-            TeeInputStream teeInputStream = new TeeInputStream(in, workerNames);
+            FanOutInputStream fanOutInputStream = new FanOutInputStream(in, workerNames);
             for (int i = 0; i < interestedWorkerWrappers.size(); i++) {
-                interestedWorkerWrappers.get(i).enqueueWork(teeInputStream.getTees()[i], workData);
+                interestedWorkerWrappers.get(i).enqueueWork(fanOutInputStream.getTees()[i], workData);
             }
-            teeInputStream.loopUntilTeesAreClosed();
+            fanOutInputStream.loopUntilTeesAreClosed();
             for (GraphPropertyThreadedWrapper interestedWorkerWrapper : interestedWorkerWrappers) {
                 interestedWorkerWrapper.dequeueResult();
             }
         } finally {
-            if (tempFile != null) {
-                if (!tempFile.delete()) {
-                    LOGGER.warn("Could not delete temp file %s", tempFile.getAbsolutePath());
-                }
+            if (in != null) {
+                in.close();
+            }
+            if (cachedFile != null) {
+                cachedFile.close();
             }
         }
     }
 
-    private File copyToTempFile(InputStream in, GraphPropertyWorkData workData) throws IOException {
+    private LocalFileCache.CachedFile getLocalFile(GraphPropertyWorkData workData, StreamingPropertyValue streamingPropertyValue) throws IOException {
         String fileExt = LumifyProperties.FILE_NAME_EXTENSION.getPropertyValue(workData.getElement());
         if (fileExt == null) {
             fileExt = "data";
         }
-        File tempFile = File.createTempFile("graphPropertyBolt", fileExt);
-        workData.setLocalFile(tempFile);
-        try (OutputStream tempFileOut = new FileOutputStream(tempFile)) {
-            IOUtils.copy(in, tempFileOut);
-        } finally {
-            in.close();
-
+        String key = LocalFileCache.createKey(workData.getElement(), workData.getProperty(), streamingPropertyValue);
+        if (key == null) {
+            return localFileCache.acquireByContent(fileExt, streamingPropertyValue);
         }
-        return tempFile;
+        return localFileCache.acquire(key, fileExt, streamingPropertyValue);
     }
 
     private boolean isLocalFileRequired(List<GraphPropertyThreadedWrapper> interestedWorkerWrappers) {
@@ -253,7 +296,7 @@ public class GraphPropertyRunner {
         return false;
     }
 
-    private List<GraphPropertyThreadedWrapper> findInterestedWorkers(Element element, Property property) {
+    private List<GraphPropertyThreadedWrapper> findInterestedWorkers(List<GraphPropertyThreadedWrapper> workerWrappers, Element element, Property property) {
         Set<String> graphPropertyWorkerWhiteList = IterableUtils.toSet(LumifyProperties.GRAPH_PROPERTY_WORKER_WHITE_LIST.getPropertyValues(element));
         Set<String> graphPropertyWorkerBlackList = IterableUtils.toSet(LumifyProperties.GRAPH_PROPERTY_WORKER_BLACK_LIST.getPropertyValues(element));
 
@@ -282,8 +325,11 @@ public class GraphPropertyRunner {
     }
 
     public void shutdown() {
-        for (GraphPropertyThreadedWrapper wrapper : this.workerWrappers) {
-            wrapper.stop();
+        for (List<GraphPropertyThreadedWrapper> workerWrappers : this.workerWrapperLanes) {
+            for (GraphPropertyThreadedWrapper wrapper : workerWrappers) {
+                wrapper.stop();
+                wrapper.getWorker().shutdown();
+            }
         }
     }
 
@@ -312,13 +358,28 @@ public class GraphPropertyRunner {
         this.visibilityTranslator = visibilityTranslator;
     }
 
+    @Inject
+    public void setLocalFileCache(LocalFileCache localFileCache) {
+        this.localFileCache = localFileCache;
+    }
+
     public void run() throws Exception {
-        WorkerSpout workerSpout = prepareGraphPropertyWorkerSpout();
+        run(prepareGraphPropertyWorkerSpout());
+    }
+
+    void run(WorkerSpout workerSpout) throws Exception {
         shouldRun = true;
+        if (concurrency > 1) {
+            runConcurrent(workerSpout);
+        } else {
+            runSerial(workerSpout);
+        }
+    }
+
+    private void runSerial(WorkerSpout workerSpout) throws Exception {
         while (shouldRun) {
             GraphPropertyWorkerTuple tuple = (GraphPropertyWorkerTuple) workerSpout.nextTuple();
             if (tuple == null) {
-                Thread.sleep(100);
                 continue;
             }
             try {
@@ -331,10 +392,167 @@ public class GraphPropertyRunner {
         }
     }
 
+    /**
+     * Keeps up to maxInFlight tuples outstanding, processing them on one single threaded lane per unit of
+     * concurrency. Tuples are assigned to lanes by element id so work on the same element stays in order.
+     * All acks and fails happen on this thread so the spout is never used concurrently. Tuples still outstanding
+     * when the lanes do not finish in time on shutdown are failed so they are delivered again.
+     */
+    private void runConcurrent(WorkerSpout workerSpout) throws Exception {
+        int maxInFlight = Math.max(concurrency, configuration.getInt(Configuration.GRAPH_PROPERTY_RUNNER_MAX_IN_FLIGHT, concurrency * 2));
+        LOGGER.info("running graph property runner with concurrency %d (max in flight: %d)", concurrency, maxInFlight);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Set<GraphPropertyWorkerTuple> outstandingTuples = new HashSet<>();
+        BlockingQueue<CompletedTuple> completedTuples = new LinkedBlockingQueue<>();
+        List<ExecutorService> laneExecutors = createLaneExecutors();
+        try {
+            while (shouldRun) {
+                CompletedTuple completedTuple;
+                while ((completedTuple = completedTuples.poll()) != null) {
+                    ackOrFail(workerSpout, completedTuple, inFlight, outstandingTuples);
+                }
+
+                if (!inFlight.tryAcquire()) {
+                    waitForCompletedTuple(workerSpout, completedTuples, inFlight, outstandingTuples);
+                    continue;
+                }
+
+                GraphPropertyWorkerTuple tuple;
+                try {
+                    tuple = (GraphPropertyWorkerTuple) workerSpout.nextTuple();
+                } catch (Exception ex) {
+                    inFlight.release();
+                    throw ex;
+                }
+                if (tuple == null) {
+                    inFlight.release();
+                    waitForCompletedTuple(workerSpout, completedTuples, inFlight, outstandingTuples);
+                    continue;
+                }
+
+                int lane = getLaneIndex(tuple.getJson());
+                outstandingTuples.add(tuple);
+                laneExecutors.get(lane).execute(new ProcessTupleRunnable(tuple, workerWrapperLanes.get(lane), completedTuples));
+            }
+        } finally {
+            for (ExecutorService laneExecutor : laneExecutors) {
+                laneExecutor.shutdown();
+            }
+            long shutdownDeadline = System.currentTimeMillis() + laneShutdownTimeoutMillis;
+            for (ExecutorService laneExecutor : laneExecutors) {
+                long remainingMillis = Math.max(0, shutdownDeadline - System.currentTimeMillis());
+                if (!laneExecutor.awaitTermination(remainingMillis, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("timed out waiting for graph property runner lane to finish");
+                    // queued tuples must not start after they are failed below
+                    laneExecutor.shutdownNow();
+                }
+            }
+            CompletedTuple completedTuple;
+            while ((completedTuple = completedTuples.poll()) != null) {
+                ackOrFail(workerSpout, completedTuple, inFlight, outstandingTuples);
+            }
+            for (GraphPropertyWorkerTuple tuple : outstandingTuples) {
+                LOGGER.warn("failing unfinished tuple on shutdown: %s", tuple);
+                workerSpout.fail(tuple.getMessageId());
+                inFlight.release();
+            }
+            outstandingTuples.clear();
+        }
+    }
+
+    private List<ExecutorService> createLaneExecutors() {
+        List<ExecutorService> laneExecutors = new ArrayList<>(concurrency);
+        for (int lane = 0; lane < concurrency; lane++) {
+            final String threadName = "graphPropertyRunner-lane-" + lane;
+            laneExecutors.add(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r);
+                    thread.setName(threadName);
+                    return thread;
+                }
+            }));
+        }
+        return laneExecutors;
+    }
+
+    private int getLaneIndex(JSONObject json) {
+        String elementId = json.optString("graphVertexId");
+        if (elementId == null || elementId.length() == 0) {
+            elementId = json.optString("graphEdgeId");
+        }
+        if (elementId == null || elementId.length() == 0) {
+            return 0;
+        }
+        return (elementId.hashCode() & Integer.MAX_VALUE) % concurrency;
+    }
+
+    private void waitForCompletedTuple(WorkerSpout workerSpout, BlockingQueue<CompletedTuple> completedTuples, Semaphore inFlight, Set<GraphPropertyWorkerTuple> outstandingTuples) throws InterruptedException {
+        CompletedTuple completedTuple = completedTuples.poll(100, TimeUnit.MILLISECONDS);
+        if (completedTuple != null) {
+            ackOrFail(workerSpout, completedTuple, inFlight, outstandingTuples);
+        }
+    }
+
+    private void ackOrFail(WorkerSpout workerSpout, CompletedTuple completedTuple, Semaphore inFlight, Set<GraphPropertyWorkerTuple> outstandingTuples) {
+        outstandingTuples.remove(completedTuple.getTuple());
+        try {
+            if (completedTuple.getError() == null) {
+                workerSpout.ack(completedTuple.getTuple().getMessageId());
+            } else {
+                workerSpout.fail(completedTuple.getTuple().getMessageId());
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
     public void stop() {
         shouldRun = false;
     }
 
+    private class ProcessTupleRunnable implements Runnable {
+        private final GraphPropertyWorkerTuple tuple;
+        private final List<GraphPropertyThreadedWrapper> workerWrappers;
+        private final BlockingQueue<CompletedTuple> completedTuples;
+
+        public ProcessTupleRunnable(GraphPropertyWorkerTuple tuple, List<GraphPropertyThreadedWrapper> workerWrappers, BlockingQueue<CompletedTuple> completedTuples) {
+            this.tuple = tuple;
+            this.workerWrappers = workerWrappers;
+            this.completedTuples = completedTuples;
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+            try {
+                process(tuple.getJson(), workerWrappers);
+            } catch (Throwable ex) {
+                LOGGER.error("Could not process tuple: %s", tuple, ex);
+                error = ex;
+            }
+            completedTuples.add(new CompletedTuple(tuple, error));
+        }
+    }
+
+    private static class CompletedTuple {
+        private final GraphPropertyWorkerTuple tuple;
+        private final Throwable error;
+
+        public CompletedTuple(GraphPropertyWorkerTuple tuple, Throwable error) {
+            this.tuple = tuple;
+            this.error = error;
+        }
+
+        public GraphPropertyWorkerTuple getTuple() {
+            return tuple;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
     protected WorkerSpout prepareGraphPropertyWorkerSpout() {
         WorkerSpout spout = workQueueRepository.createWorkerSpout();
         spout.open();
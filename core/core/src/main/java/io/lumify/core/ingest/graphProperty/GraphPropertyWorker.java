@@ -9,6 +9,7 @@ import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.properties.MediaLumifyProperties;
 import io.lumify.core.model.user.AuthorizationRepository;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
+import io.lumify.core.model.workspace.Workspace;
 import io.lumify.core.model.workspace.WorkspaceRepository;
 import io.lumify.core.security.VisibilityTranslator;
 import io.lumify.core.user.User;
@@ -21,6 +22,9 @@ import org.securegraph.property.StreamingPropertyValue;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public abstract class GraphPropertyWorker {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(GraphPropertyWorker.class);
@@ -64,6 +68,13 @@ public abstract class GraphPropertyWorker {
         return false;
     }
 
+    /**
+     * Called once when the runner shuts down so workers can release threads and other resources they hold.
+     */
+    public void shutdown() {
+
+    }
+
     protected User getUser() {
         return this.workerPrepareData.getUser();
     }
@@ -189,4 +200,17 @@ public abstract class GraphPropertyWorker {
         graph.flush();
         getWorkspaceRepository().updateEntityOnWorkspace(data.getWorkspaceId(), vertex.getId(), false, null, getUser());
     }
+
+    protected void addVerticesToWorkspaceIfNeeded(GraphPropertyWorkData data, Collection<Vertex> vertices) {
+        if (data.getWorkspaceId() == null || vertices.size() == 0) {
+            return;
+        }
+        graph.flush();
+        List<WorkspaceRepository.Update> updates = new ArrayList<>();
+        for (Vertex vertex : vertices) {
+            updates.add(new WorkspaceRepository.Update(vertex.getId(), false, null));
+        }
+        Workspace workspace = getWorkspaceRepository().findById(data.getWorkspaceId(), getUser());
+        getWorkspaceRepository().updateEntitiesOnWorkspace(workspace, updates, getUser());
+    }
 }
@@ -0,0 +1,413 @@
+package io.lumify.core.ingest.graphProperty;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.apache.commons.io.IOUtils;
+import org.securegraph.Element;
+import org.securegraph.Property;
+import org.securegraph.property.StreamingPropertyValue;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Size bounded, least recently used cache of streaming property values spilled to local disk for graph property
+ * workers that require a local file. Files are named by a hash of the element, property and value so the same
+ * value re-queued for another property is only copied once, and every worker interested in it shares the same
+ * read-only file. Values without a modified date are named by a hash of their content instead. Files in use are
+ * never evicted. With a maximum size of 0 nothing is cached and every caller gets its own copy, deleted once closed.
+ * <p/>
+ * Each process locks its own numbered subdirectory of the cache directory, so processes sharing a cache directory
+ * never load or evict each other's files, and a restarted process picks up the files of a previous one.
+ */
+@Singleton
+public class LocalFileCache {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(LocalFileCache.class);
+    private static final String PARTIAL_FILE_SUFFIX = ".partial";
+    private static final String LOCK_FILE_NAME = ".lock";
+    private final File directory;
+    private final RandomAccessFile lockFile;
+    private final long maxSizeBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSizeBytes;
+
+    @Inject
+    public LocalFileCache(Configuration configuration) {
+        this(
+                new File(configuration.get(Configuration.GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_DIRECTORY, new File(System.getProperty("java.io.tmpdir"), "lumify-gpw-cache").getAbsolutePath())),
+                Long.parseLong(configuration.get(Configuration.GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_MAX_SIZE, Long.toString(Configuration.GRAPH_PROPERTY_RUNNER_LOCAL_FILE_CACHE_MAX_SIZE_DEFAULT)))
+        );
+    }
+
+    public LocalFileCache(File directory, long maxSizeBytes) {
+        this.maxSizeBytes = maxSizeBytes;
+        int index = 0;
+        RandomAccessFile lockFile;
+        while ((lockFile = tryLock(getProcessDirectory(directory, index))) == null) {
+            index++;
+        }
+        this.directory = getProcessDirectory(directory, index);
+        this.lockFile = lockFile;
+        loadExistingFiles();
+    }
+
+    private static File getProcessDirectory(File directory, int index) {
+        File processDirectory = new File(directory, Integer.toString(index));
+        if (!processDirectory.exists() && !processDirectory.mkdirs()) {
+            throw new LumifyException("Could not create local file cache directory: " + processDirectory.getAbsolutePath());
+        }
+        return processDirectory;
+    }
+
+    /**
+     * @return the open lock file if this process now holds the lock of the directory, otherwise null
+     */
+    private static RandomAccessFile tryLock(File directory) {
+        File file = new File(directory, LOCK_FILE_NAME);
+        RandomAccessFile lockFile = null;
+        try {
+            lockFile = new RandomAccessFile(file, "rw");
+            FileLock lock;
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException ex) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockFile.close();
+                return null;
+            }
+            return lockFile;
+        } catch (IOException ex) {
+            if (lockFile != null) {
+                try {
+                    lockFile.close();
+                } catch (IOException closeEx) {
+                    LOGGER.warn("Could not close local file cache lock %s", file.getAbsolutePath(), closeEx);
+                }
+            }
+            throw new LumifyException("Could not lock local file cache directory: " + directory.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Creates the cache key for a streaming property value. Properties do not carry a write timestamp so the
+     * modified date metadata and the value length stand in for it.
+     *
+     * @return the key or null if the property has no modified date, in which case the value should be cached with
+     * {@link #acquireByContent(String, StreamingPropertyValue)}
+     */
+    public static String createKey(Element element, Property property, StreamingPropertyValue value) {
+        Date modifiedDate = LumifyProperties.MODIFIED_DATE.getMetadataValue(property.getMetadata());
+        if (modifiedDate == null) {
+            return null;
+        }
+        return element.getId()
+                + "|" + property.getKey()
+                + "|" + property.getName()
+                + "|" + value.getLength()
+                + "|" + modifiedDate.getTime();
+    }
+
+    /**
+     * Releases the lock on the cache directory. The files are kept for the next process using the directory.
+     */
+    public void close() throws IOException {
+        lockFile.close();
+    }
+
+    /**
+     * Gets the local file for the given key, copying the streaming property value to disk if it is not already
+     * cached. The returned {@link CachedFile} must be closed once the file is no longer in use.
+     */
+    public CachedFile acquire(String key, String fileExtension, StreamingPropertyValue value) throws IOException {
+        if (maxSizeBytes <= 0) {
+            return acquireUncached(fileExtension, value);
+        }
+        String fileName = Hashing.sha1().hashString(key, Charsets.UTF_8).toString() + "." + fileExtension.replaceAll("[^A-Za-z0-9]", "");
+        Entry entry;
+        boolean load;
+        synchronized (this) {
+            entry = entries.get(fileName);
+            load = entry == null;
+            if (load) {
+                entry = new Entry(new File(directory, fileName));
+                entries.put(fileName, entry);
+            }
+            entry.referenceCount++;
+        }
+
+        if (load) {
+            try {
+                entry.load(value);
+            } catch (IOException | RuntimeException ex) {
+                synchronized (this) {
+                    entries.remove(fileName);
+                }
+                entry.loadFailed(ex);
+                throw ex;
+            }
+            synchronized (this) {
+                totalSizeBytes += entry.size;
+                evict();
+            }
+        } else {
+            LOGGER.debug("local file cache hit: %s", key);
+            try {
+                entry.awaitLoaded();
+            } catch (IOException ex) {
+                release(entry);
+                throw ex;
+            }
+        }
+        return new CachedFile(entry);
+    }
+
+    /**
+     * Copies the streaming property value to disk and names the file by a hash of its content, for values which have
+     * no stable key. The value is always read, but values with the same content share one file.
+     */
+    public CachedFile acquireByContent(String fileExtension, StreamingPropertyValue value) throws IOException {
+        if (maxSizeBytes <= 0) {
+            return acquireUncached(fileExtension, value);
+        }
+        File partialFile = File.createTempFile("content-", PARTIAL_FILE_SUFFIX, directory);
+        String fileName;
+        try {
+            fileName = copy(value, partialFile) + "." + fileExtension.replaceAll("[^A-Za-z0-9]", "");
+        } catch (IOException | RuntimeException ex) {
+            deletePartialFile(partialFile);
+            throw ex;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(fileName);
+            if (entry == null) {
+                entry = new Entry(new File(directory, fileName));
+                try {
+                    entry.rename(partialFile);
+                } catch (IOException ex) {
+                    deletePartialFile(partialFile);
+                    throw ex;
+                }
+                entries.put(fileName, entry);
+                totalSizeBytes += entry.size;
+                entry.referenceCount++;
+                evict();
+                return new CachedFile(entry);
+            }
+            entry.referenceCount++;
+        }
+
+        LOGGER.debug("local file cache content hit: %s", fileName);
+        deletePartialFile(partialFile);
+        try {
+            entry.awaitLoaded();
+        } catch (IOException ex) {
+            release(entry);
+            throw ex;
+        }
+        return new CachedFile(entry);
+    }
+
+    /**
+     * Caching is disabled, so the value is copied to a file of its own which is deleted once it is closed, without
+     * hashing it or sharing it with other callers.
+     */
+    private CachedFile acquireUncached(String fileExtension, StreamingPropertyValue value) throws IOException {
+        File file = File.createTempFile("uncached-", "." + fileExtension.replaceAll("[^A-Za-z0-9]", ""), directory);
+        try (InputStream in = value.getInputStream(); OutputStream out = new FileOutputStream(file)) {
+            IOUtils.copy(in, out);
+        } catch (IOException | RuntimeException ex) {
+            deletePartialFile(file);
+            throw ex;
+        }
+        Entry entry = new Entry(file);
+        entry.loaded(file.length());
+        return new CachedFile(entry, true);
+    }
+
+    /**
+     * Copies the value to the file.
+     *
+     * @return a hash of the content
+     */
+    private static String copy(StreamingPropertyValue value, File file) throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = value.getInputStream(); OutputStream out = new FileOutputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void deletePartialFile(File partialFile) {
+        if (partialFile.exists() && !partialFile.delete()) {
+            LOGGER.warn("Could not delete partial local file cache entry %s", partialFile.getAbsolutePath());
+        }
+    }
+
+    public synchronized long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.referenceCount--;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalSizeBytes > maxSizeBytes && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.referenceCount > 0 || !entry.isLoaded()) {
+                continue;
+            }
+            it.remove();
+            totalSizeBytes -= entry.size;
+            LOGGER.debug("evicting local file cache entry: %s", entry.file.getAbsolutePath());
+            if (!entry.file.delete()) {
+                LOGGER.warn("Could not delete local file cache entry %s", entry.file.getAbsolutePath());
+            }
+        }
+    }
+
+    private synchronized void loadExistingFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (!file.isFile() || file.getName().equals(LOCK_FILE_NAME)) {
+                continue;
+            }
+            if (file.getName().endsWith(PARTIAL_FILE_SUFFIX)) {
+                if (!file.delete()) {
+                    LOGGER.warn("Could not delete partial local file cache entry %s", file.getAbsolutePath());
+                }
+                continue;
+            }
+            Entry entry = new Entry(file);
+            entry.loaded(file.length());
+            entries.put(file.getName(), entry);
+            totalSizeBytes += entry.size;
+        }
+        LOGGER.info("local file cache %s: found %d existing files (%d bytes)", directory.getAbsolutePath(), entries.size(), totalSizeBytes);
+        evict();
+    }
+
+    public class CachedFile implements Closeable {
+        private final Entry entry;
+        private final boolean uncached;
+        private boolean closed;
+
+        private CachedFile(Entry entry) {
+            this(entry, false);
+        }
+
+        private CachedFile(Entry entry, boolean uncached) {
+            this.entry = entry;
+            this.uncached = uncached;
+        }
+
+        public File getFile() {
+            return entry.file;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (uncached) {
+                    if (!entry.file.delete()) {
+                        LOGGER.warn("Could not delete uncached local file %s", entry.file.getAbsolutePath());
+                    }
+                } else {
+                    release(entry);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final File file;
+        private final CountDownLatch loadedLatch = new CountDownLatch(1);
+        private long size;
+        private int referenceCount;
+        private Exception loadError;
+
+        public Entry(File file) {
+            this.file = file;
+        }
+
+        public void load(StreamingPropertyValue value) throws IOException {
+            File partialFile = new File(file.getParentFile(), file.getName() + PARTIAL_FILE_SUFFIX);
+            try (InputStream in = value.getInputStream(); OutputStream out = new FileOutputStream(partialFile)) {
+                IOUtils.copy(in, out);
+            }
+            try {
+                rename(partialFile);
+            } catch (IOException ex) {
+                deletePartialFile(partialFile);
+                throw ex;
+            }
+        }
+
+        public void rename(File partialFile) throws IOException {
+            if (!partialFile.setReadOnly()) {
+                LOGGER.warn("Could not mark local file cache entry read only %s", partialFile.getAbsolutePath());
+            }
+            if (!partialFile.renameTo(file)) {
+                throw new IOException("Could not rename " + partialFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+            }
+            loaded(file.length());
+        }
+
+        public void loaded(long size) {
+            this.size = size;
+            loadedLatch.countDown();
+        }
+
+        public void loadFailed(Exception ex) {
+            this.loadError = ex;
+            loadedLatch.countDown();
+        }
+
+        public boolean isLoaded() {
+            return loadedLatch.getCount() == 0;
+        }
+
+        public void awaitLoaded() throws IOException {
+            try {
+                loadedLatch.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted waiting for local file cache entry " + file.getAbsolutePath(), e);
+            }
+            if (loadError != null) {
+                throw new IOException("Could not load local file cache entry " + file.getAbsolutePath(), loadError);
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import io.lumify.core.model.audit.AuditAction;
 import io.lumify.core.model.ontology.Concept;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.termMention.TermMentionBuilder;
+import io.lumify.core.model.termMention.TermMentionIndex;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import org.securegraph.Element;
@@ -45,6 +46,7 @@ public abstract class RegexGraphPropertyWorker extends GraphPropertyWorker {
 
         Vertex sourceVertex = (Vertex) data.getElement();
 
+        TermMentionIndex.Batch termMentionIndexBatch = new TermMentionIndex.Batch(sourceVertex);
         List<Vertex> termMentions = new ArrayList<>();
         while (matcher.find()) {
             final String patternGroup = matcher.group();
@@ -60,9 +62,11 @@ public abstract class RegexGraphPropertyWorker extends GraphPropertyWorker {
                     .conceptIri(getConcept().getIRI())
                     .visibilityJson(data.getVisibilityJson())
                     .process(getClass().getName())
+                    .indexBatch(termMentionIndexBatch)
                     .save(getGraph(), getVisibilityTranslator(), getAuthorizations());
             termMentions.add(termMention);
         }
+        termMentionIndexBatch.save(getAuthorizations());
         applyTermMentionFilters(sourceVertex, termMentions);
         getAuditRepository().auditAnalyzedBy(AuditAction.ANALYZED_BY, sourceVertex, getClass().getSimpleName(), getUser(), sourceVertex.getVisibility());
         pushTextUpdated(data);
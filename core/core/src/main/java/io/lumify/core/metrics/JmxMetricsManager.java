@@ -2,6 +2,7 @@ package io.lumify.core.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
@@ -51,4 +52,9 @@ public class JmxMetricsManager implements MetricsManager {
     public Timer timer(final String name) {
         return getRegistry().timer(name);
     }
+
+    @Override
+    public Meter meter(final String name) {
+        return getRegistry().meter(name);
+    }
 }
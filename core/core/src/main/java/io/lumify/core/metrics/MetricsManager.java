@@ -1,6 +1,7 @@
 package io.lumify.core.metrics;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
@@ -52,4 +53,13 @@ public interface MetricsManager {
      * @return the requested Timer
      */
     Timer timer(final String name);
+
+    /**
+     * Get the Meter with the given name, creating it if
+     * it does not exist.
+     *
+     * @param name the name of the Meter
+     * @return the requested Meter
+     */
+    Meter meter(final String name);
 }
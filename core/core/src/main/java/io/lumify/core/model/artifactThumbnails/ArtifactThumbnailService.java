@@ -0,0 +1,93 @@
+package io.lumify.core.model.artifactThumbnails;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.exception.LumifyResourceNotFoundException;
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.user.User;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.securegraph.Vertex;
+import org.securegraph.property.StreamingPropertyValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves thumbnails from an in-memory cache bounded by the size of the thumbnail data, falling back to the
+ * {@link ArtifactThumbnailRepository} and finally to creating the thumbnail from the raw property. Concurrent requests
+ * for the same thumbnail wait for a single load instead of each decoding the original image. Entries expire so
+ * thumbnails rendered again after an image's orientation changes are picked up.
+ */
+@Singleton
+public class ArtifactThumbnailService {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(ArtifactThumbnailService.class);
+    private final ArtifactThumbnailRepository artifactThumbnailRepository;
+    private final Cache<String, ArtifactThumbnail> thumbnailCache;
+
+    @Inject
+    public ArtifactThumbnailService(
+            final ArtifactThumbnailRepository artifactThumbnailRepository,
+            final Configuration configuration) {
+        this.artifactThumbnailRepository = artifactThumbnailRepository;
+        this.thumbnailCache = CacheBuilder.newBuilder()
+                .maximumWeight(configuration.getInt(Configuration.THUMBNAIL_CACHE_MAX_BYTES, Configuration.THUMBNAIL_CACHE_MAX_BYTES_DEFAULT))
+                .weigher(new Weigher<String, ArtifactThumbnail>() {
+                    @Override
+                    public int weigh(String key, ArtifactThumbnail thumbnail) {
+                        return thumbnail.getThumbnailData().length;
+                    }
+                })
+                .expireAfterWrite(configuration.getInt(Configuration.THUMBNAIL_CACHE_EXPIRE_SECONDS, Configuration.THUMBNAIL_CACHE_EXPIRE_SECONDS_DEFAULT), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return the thumbnail or null if the vertex has no raw property to create it from
+     */
+    public ArtifactThumbnail getThumbnail(final Vertex artifactVertex, final String thumbnailType, final int width, final int height, final User user) {
+        String cacheKey = new BigTableArtifactThumbnailRowKey(artifactVertex.getId(), thumbnailType, width, height).toString();
+        try {
+            return thumbnailCache.get(cacheKey, new Callable<ArtifactThumbnail>() {
+                @Override
+                public ArtifactThumbnail call() throws Exception {
+                    return loadThumbnail(artifactVertex, thumbnailType, width, height, user);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof LumifyResourceNotFoundException) {
+                return null;
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new LumifyException("Could not get thumbnail of " + artifactVertex.getId(), ex.getCause());
+        }
+    }
+
+    private ArtifactThumbnail loadThumbnail(Vertex artifactVertex, String thumbnailType, int width, int height, User user) throws IOException {
+        ArtifactThumbnail thumbnail = artifactThumbnailRepository.getThumbnail(artifactVertex.getId(), thumbnailType, width, height, user);
+        if (thumbnail != null && thumbnail.getThumbnailData() != null) {
+            LOGGER.debug("Cache hit for: %s (%s) %d x %d", artifactVertex.getId(), thumbnailType, width, height);
+            return thumbnail;
+        }
+
+        LOGGER.info("Cache miss for: %s (%s) %d x %d", artifactVertex.getId(), thumbnailType, width, height);
+        StreamingPropertyValue rawPropertyValue = LumifyProperties.RAW.getPropertyValue(artifactVertex);
+        if (rawPropertyValue == null) {
+            throw new LumifyResourceNotFoundException("Could not find raw property of " + artifactVertex.getId());
+        }
+        try (InputStream in = rawPropertyValue.getInputStream()) {
+            return artifactThumbnailRepository.createThumbnail(artifactVertex, thumbnailType, in, new int[]{width, height}, user);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.lumify.core.model.longRunningProcess;
+
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.securegraph.*;
+
+import java.util.*;
+
+/**
+ * Finds the simple paths of at most a given number of hops between two vertices by searching breadth first from both
+ * ends at once, always growing the smaller frontier. Only the ids of adjacent vertices are loaded for each frontier,
+ * and the search gives up once it holds more vertex ids than its budget or runs past its time limit. Both limits and
+ * {@link ProgressListener#checkCanceled()} are checked after every expanded vertex and every path found, so a canceled
+ * search stops without finishing the level or the path enumeration it is in.
+ */
+public class BidirectionalPathFinder {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(BidirectionalPathFinder.class);
+    private static final double SEARCH_PROGRESS = 0.8;
+    private final Graph graph;
+    private final long maxVertexIds;
+    private final long timeoutMs;
+
+    public interface ProgressListener {
+        void progress(double progressPercent, String message);
+
+        /**
+         * Throws to stop the search, for example when the process running it was canceled.
+         */
+        void checkCanceled();
+    }
+
+    /**
+     * @param maxVertexIds the number of vertex ids (visited vertices, adjacency entries and path entries) the search
+     *                     may hold in memory
+     * @param timeoutMs    how long the search may run for
+     */
+    public BidirectionalPathFinder(Graph graph, long maxVertexIds, long timeoutMs) {
+        this.graph = graph;
+        this.maxVertexIds = maxVertexIds;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public List<Path> findPaths(String sourceVertexId, String destVertexId, int hops, ProgressListener progressListener, Authorizations authorizations) {
+        Search search = new Search(destVertexId, hops, progressListener, authorizations);
+        search.sourceDepths.put(sourceVertexId, 0);
+        search.destDepths.put(destVertexId, 0);
+        List<String> sourceFrontier = Collections.singletonList(sourceVertexId);
+        List<String> destFrontier = Collections.singletonList(destVertexId);
+        int sourceDepth = 0;
+        int destDepth = 0;
+
+        // Every edge on a path of at most sourceDepth + destDepth hops touches a vertex expanded by one of the two
+        // searches, so once the depths add up to the hops (or either side runs out of vertices) the collected
+        // adjacency holds all the paths.
+        progressListener.progress(0.0, "Searching for paths");
+        while (sourceDepth + destDepth < hops && !sourceFrontier.isEmpty() && !destFrontier.isEmpty()) {
+            if (sourceFrontier.size() <= destFrontier.size()) {
+                sourceDepth++;
+                sourceFrontier = search.expand(sourceFrontier, search.sourceDepths, sourceDepth);
+            } else {
+                destDepth++;
+                destFrontier = search.expand(destFrontier, search.destDepths, destDepth);
+            }
+            progressListener.progress(
+                    SEARCH_PROGRESS * (sourceDepth + destDepth) / hops,
+                    String.format("Searched %d hops from the source and %d hops from the destination (%d vertices)", sourceDepth, destDepth, search.sourceDepths.size() + search.destDepths.size())
+            );
+        }
+        search.unknownDestDistance = destFrontier.isEmpty() ? Integer.MAX_VALUE : destDepth + 1;
+
+        Set<String> pathVertexIds = new HashSet<>();
+        pathVertexIds.add(sourceVertexId);
+        search.addPaths(new Path(sourceVertexId), sourceVertexId, hops, pathVertexIds);
+        LOGGER.debug("found %d paths from %s to %s in %d hops holding %d vertex ids", search.paths.size(), sourceVertexId, destVertexId, hops, search.vertexIdCount);
+        progressListener.progress(SEARCH_PROGRESS, String.format("Found %d paths", search.paths.size()));
+        return search.paths;
+    }
+
+    private class Search {
+        private final String destVertexId;
+        private final int hops;
+        private final ProgressListener progressListener;
+        private final Authorizations authorizations;
+        private final long endTime;
+        private final Map<String, Integer> sourceDepths = new HashMap<>();
+        private final Map<String, Integer> destDepths = new HashMap<>();
+        private final Map<String, Set<String>> adjacency = new HashMap<>();
+        private final List<Path> paths = new ArrayList<>();
+        private int unknownDestDistance;
+        private long vertexIdCount;
+
+        private Search(String destVertexId, int hops, ProgressListener progressListener, Authorizations authorizations) {
+            this.destVertexId = destVertexId;
+            this.hops = hops;
+            this.progressListener = progressListener;
+            this.authorizations = authorizations;
+            this.endTime = System.currentTimeMillis() + timeoutMs;
+        }
+
+        /**
+         * Loads the adjacent vertex ids of the frontier and returns the vertices first reached at the given depth.
+         */
+        private List<String> expand(List<String> frontier, Map<String, Integer> depths, int depth) {
+            List<String> nextFrontier = new ArrayList<>();
+            for (Vertex vertex : graph.getVertices(frontier, FetchHint.EDGE_REFS, authorizations)) {
+                for (String adjacentVertexId : vertex.getVertexIds(Direction.BOTH, authorizations)) {
+                    addAdjacency(vertex.getId(), adjacentVertexId);
+                    addAdjacency(adjacentVertexId, vertex.getId());
+                    if (!depths.containsKey(adjacentVertexId)) {
+                        depths.put(adjacentVertexId, depth);
+                        nextFrontier.add(adjacentVertexId);
+                        vertexIdCount++;
+                    }
+                }
+                checkBudget();
+            }
+            return nextFrontier;
+        }
+
+        private void addAdjacency(String vertexId, String adjacentVertexId) {
+            Set<String> adjacentVertexIds = adjacency.get(vertexId);
+            if (adjacentVertexIds == null) {
+                adjacentVertexIds = new LinkedHashSet<>();
+                adjacency.put(vertexId, adjacentVertexIds);
+            }
+            if (adjacentVertexIds.add(adjacentVertexId)) {
+                vertexIdCount++;
+            }
+        }
+
+        private void addPaths(Path path, String vertexId, int remainingHops, Set<String> pathVertexIds) {
+            if (vertexId.equals(destVertexId)) {
+                paths.add(path);
+                vertexIdCount += hops - remainingHops + 1;
+                checkBudget();
+                return;
+            }
+            if (remainingHops == 0) {
+                return;
+            }
+            Set<String> adjacentVertexIds = adjacency.get(vertexId);
+            if (adjacentVertexIds == null) {
+                return;
+            }
+            for (String adjacentVertexId : adjacentVertexIds) {
+                if (pathVertexIds.contains(adjacentVertexId) || getMinDestDistance(adjacentVertexId) > remainingHops - 1) {
+                    continue;
+                }
+                pathVertexIds.add(adjacentVertexId);
+                addPaths(new Path(path, adjacentVertexId), adjacentVertexId, remainingHops - 1, pathVertexIds);
+                pathVertexIds.remove(adjacentVertexId);
+            }
+        }
+
+        private int getMinDestDistance(String vertexId) {
+            Integer destDepth = destDepths.get(vertexId);
+            return destDepth == null ? unknownDestDistance : destDepth;
+        }
+
+        private void checkBudget() {
+            if (vertexIdCount > maxVertexIds) {
+                throw new LumifyException(String.format("Gave up finding paths after visiting more than %d vertex ids, try fewer hops", maxVertexIds));
+            }
+            if (System.currentTimeMillis() > endTime) {
+                throw new LumifyException(String.format("Gave up finding paths after %d seconds, try fewer hops", timeoutMs / 1000));
+            }
+            progressListener.checkCanceled();
+        }
+    }
+}
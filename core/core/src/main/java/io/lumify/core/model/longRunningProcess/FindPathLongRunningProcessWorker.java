@@ -1,16 +1,15 @@
 package io.lumify.core.model.longRunningProcess;
 
 import com.google.inject.Inject;
+import io.lumify.core.config.Configuration;
 import io.lumify.core.model.user.AuthorizationRepository;
 import io.lumify.core.util.ClientApiConverter;
-import io.lumify.web.clientapi.model.ClientApiElement;
 import io.lumify.web.clientapi.model.ClientApiVertex;
 import io.lumify.web.clientapi.model.ClientApiVertexFindPathResponse;
 import org.json.JSONObject;
 import org.securegraph.*;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -18,6 +17,7 @@ public class FindPathLongRunningProcessWorker extends LongRunningProcessWorker {
     private Graph graph;
     private AuthorizationRepository authorizationRepository;
     private LongRunningProcessRepository longRunningProcessRepository;
+    private Configuration configuration;
 
     @Override
     public boolean isHandled(JSONObject longRunningProcessQueueItem) {
@@ -36,21 +36,39 @@ public class FindPathLongRunningProcessWorker extends LongRunningProcessWorker {
         int hops = findPath.getHops();
         String workspaceId = findPath.getWorkspaceId();
 
-        ClientApiVertexFindPathResponse results = new ClientApiVertexFindPathResponse();
-        ProgressCallback progressCallback = new ProgressCallback() {
+        int maxVertexIds = configuration.getInt(Configuration.FIND_PATH_MAX_VERTEX_IDS, Configuration.FIND_PATH_MAX_VERTEX_IDS_DEFAULT);
+        long timeoutMs = configuration.getInt(Configuration.FIND_PATH_TIMEOUT_SECONDS, Configuration.FIND_PATH_TIMEOUT_SECONDS_DEFAULT) * 1000L;
+        BidirectionalPathFinder pathFinder = new BidirectionalPathFinder(graph, maxVertexIds, timeoutMs);
+        List<Path> paths = pathFinder.findPaths(sourceVertex.getId(), destVertex.getId(), hops, new BidirectionalPathFinder.ProgressListener() {
             @Override
-            public void progress(double progressPercent, Step step, Integer edgeIndex, Integer vertexCount) {
-                longRunningProcessRepository.reportProgress(longRunningProcessQueueItem, progressPercent, step.formatMessage(edgeIndex, vertexCount));
+            public void progress(double progressPercent, String message) {
+                longRunningProcessRepository.reportProgress(longRunningProcessQueueItem, progressPercent, message);
             }
-        };
-        Iterable<Path> paths = graph.findPaths(sourceVertex, destVertex, hops, progressCallback, authorizations);
+
+            @Override
+            public void checkCanceled() {
+                longRunningProcessRepository.checkCanceled(longRunningProcessQueueItem);
+            }
+        }, authorizations);
+
+        Set<String> vertexIds = new HashSet<>();
+        for (Path path : paths) {
+            for (String vertexId : path) {
+                vertexIds.add(vertexId);
+            }
+        }
+        longRunningProcessRepository.reportProgress(longRunningProcessQueueItem, 0.9, String.format("Loading %d vertices", vertexIds.size()));
+        Map<String, ClientApiVertex> clientApiVertices = new HashMap<>();
+        for (Vertex vertex : graph.getVertices(vertexIds, authorizations)) {
+            clientApiVertices.put(vertex.getId(), ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations));
+        }
+
+        ClientApiVertexFindPathResponse results = new ClientApiVertexFindPathResponse();
         for (Path path : paths) {
-            List<ClientApiElement> clientApiElementPath = ClientApiConverter.toClientApi(graph.getVerticesInOrder(path, authorizations), workspaceId, authorizations);
-            List<ClientApiVertex> clientApiVertexPath = new ArrayList<ClientApiVertex>();
-            for (ClientApiElement e : clientApiElementPath) {
-                clientApiVertexPath.add((ClientApiVertex) e);
+            List<ClientApiVertex> clientApiVertexPath = toClientApiVertexPath(path, clientApiVertices);
+            if (clientApiVertexPath != null) {
+                results.getPaths().add(clientApiVertexPath);
             }
-            results.getPaths().add(clientApiVertexPath);
         }
 
         String resultsString = ClientApiConverter.clientApiToString(results);
@@ -59,6 +77,21 @@ public class FindPathLongRunningProcessWorker extends LongRunningProcessWorker {
         longRunningProcessQueueItem.put("resultsCount", results.getPaths().size());
     }
 
+    /**
+     * @return the converted vertices of the path or null if one of them could not be loaded
+     */
+    private List<ClientApiVertex> toClientApiVertexPath(Path path, Map<String, ClientApiVertex> clientApiVertices) {
+        List<ClientApiVertex> clientApiVertexPath = new ArrayList<>();
+        for (String vertexId : path) {
+            ClientApiVertex clientApiVertex = clientApiVertices.get(vertexId);
+            if (clientApiVertex == null) {
+                return null;
+            }
+            clientApiVertexPath.add(clientApiVertex);
+        }
+        return clientApiVertexPath;
+    }
+
     private Authorizations getAuthorizations(String[] authorizations) {
         return authorizationRepository.createAuthorizations(authorizations);
     }
@@ -73,6 +106,11 @@ public class FindPathLongRunningProcessWorker extends LongRunningProcessWorker {
         this.longRunningProcessRepository = longRunningProcessRepository;
     }
 
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
     @Inject
     public void setGraph(Graph graph) {
         this.graph = graph;
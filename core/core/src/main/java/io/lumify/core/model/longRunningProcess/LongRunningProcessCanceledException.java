@@ -0,0 +1,19 @@
+package io.lumify.core.model.longRunningProcess;
+
+import io.lumify.core.exception.LumifyException;
+
+/**
+ * Thrown to a worker reporting progress on a long running process that was canceled or ran past its timeout.
+ */
+public class LongRunningProcessCanceledException extends LumifyException {
+    private final String longRunningProcessId;
+
+    public LongRunningProcessCanceledException(String longRunningProcessId, String message) {
+        super(message);
+        this.longRunningProcessId = longRunningProcessId;
+    }
+
+    public String getLongRunningProcessId() {
+        return longRunningProcessId;
+    }
+}
@@ -0,0 +1,398 @@
+package io.lumify.core.model.longRunningProcess;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import com.google.inject.Inject;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.metrics.MetricsManager;
+import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs long running processes on a pool of threads.
+ * <p/>
+ * Queued processes are kept per lane and per user. Interactive processes are always started before batch processes,
+ * and batch processes never take the last thread, so a quick job is not stuck behind long ones. With a single thread
+ * there is no thread to keep free, so batch processes then only start while nothing else is running or queued. Find
+ * path is a batch process unless configured otherwise, other types are interactive. Within a lane the users take
+ * turns. Each process type reserves a memory budget while it runs and processes wait until their budget fits.
+ * <p/>
+ * Cancellation is cooperative: a canceled process, or one running past the timeout of its type, is marked canceled in
+ * the {@link LongRunningProcessProgressTracker} and stops at its worker's next progress report or cancel check.
+ * Processes canceled on another server are found by checking the saved flag of the running processes every few
+ * seconds.
+ */
+public class LongRunningProcessExecutor {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(LongRunningProcessExecutor.class);
+    private static final Set<String> BATCH_TYPES_DEFAULT = Collections.singleton("findPath");
+    private final Object lock = new Object();
+    private final Map<Lane, LinkedHashMap<String, Deque<Job>>> queues = new EnumMap<>(Lane.class);
+    private final List<Job> runningJobs = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private int queuedCount;
+    private long reservedMemoryBytes;
+    private boolean shutdown;
+    private int maxQueued;
+    private int maxBatchThreads;
+    private long maxMemoryBytes;
+    private ScheduledExecutorService cancelChecker;
+    private LongRunningProcessRunner longRunningProcessRunner;
+    private LongRunningProcessRepository longRunningProcessRepository;
+    private LongRunningProcessProgressTracker progressTracker;
+    private UserRepository userRepository;
+    private Configuration configuration;
+    private MetricsManager metricsManager;
+    private String metricsNamePrefix;
+    private Timer queueWaitTimer;
+    private Timer runTimer;
+    private Counter queuedCounter;
+    private Counter runningCounter;
+
+    public enum Lane {
+        INTERACTIVE,
+        BATCH
+    }
+
+    public void prepare(Map map, int threadCount) {
+        longRunningProcessRunner.prepare(map);
+
+        maxQueued = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_MAX_QUEUED, Configuration.LONG_RUNNING_PROCESS_EXECUTOR_MAX_QUEUED_DEFAULT);
+        maxBatchThreads = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_MAX_BATCH_THREADS, threadCount - 1);
+        String maxMemoryMb = configuration.get(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_MAX_MEMORY_MB, null);
+        maxMemoryBytes = maxMemoryMb == null ? Runtime.getRuntime().maxMemory() / 2 : Long.parseLong(maxMemoryMb) * 1024 * 1024;
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new LinkedHashMap<String, Deque<Job>>());
+        }
+
+        metricsNamePrefix = metricsManager.getNamePrefix(this);
+        queueWaitTimer = metricsManager.timer(metricsNamePrefix + "queueWait");
+        runTimer = metricsManager.timer(metricsNamePrefix + "run");
+        queuedCounter = metricsManager.counter(metricsNamePrefix + "queued");
+        runningCounter = metricsManager.counter(metricsNamePrefix + "running");
+
+        LOGGER.debug("long running process threads: %d (batch: %d), memory: %d bytes", threadCount, maxBatchThreads, maxMemoryBytes);
+        for (int i = 0; i < threadCount; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runJobs();
+                }
+            });
+            t.setName("long-running-process-" + t.getId());
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+
+        long cancelCheckIntervalMs = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_CANCEL_CHECK_INTERVAL_MS, Configuration.LONG_RUNNING_PROCESS_EXECUTOR_CANCEL_CHECK_INTERVAL_MS_DEFAULT);
+        cancelChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "long-running-process-cancel-checker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        cancelChecker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkCanceled();
+                } catch (Throwable ex) {
+                    LOGGER.error("Could not check for canceled long running processes", ex);
+                }
+            }
+        }, cancelCheckIntervalMs, cancelCheckIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the process, waiting while the queue is full. The message is completed once the process finishes, or
+     * completed with an error right away if the executor is shut down.
+     */
+    public void submit(WorkQueueRepository.LongRunningProcessMessage longRunningProcessMessage) throws InterruptedException {
+        Job job = new Job(longRunningProcessMessage);
+        boolean queued = false;
+        synchronized (lock) {
+            while (queuedCount >= maxQueued && !shutdown) {
+                lock.wait();
+            }
+            if (!shutdown) {
+                LinkedHashMap<String, Deque<Job>> userQueues = queues.get(job.lane);
+                Deque<Job> userQueue = userQueues.get(job.userId);
+                if (userQueue == null) {
+                    userQueue = new ArrayDeque<>();
+                    userQueues.put(job.userId, userQueue);
+                }
+                userQueue.addLast(job);
+                queuedCount++;
+                queuedCounter.inc();
+                lock.notifyAll();
+                queued = true;
+            }
+        }
+        if (!queued) {
+            job.message.complete(new LumifyException("Long running process executor is shut down, could not run " + job.id));
+            return;
+        }
+        LOGGER.debug("queued long running process %s (type: %s, user: %s, lane: %s)", job.id, job.type, job.userId, job.lane);
+    }
+
+    /**
+     * Stops starting processes. Running processes finish, queued ones are completed with an error.
+     */
+    public void shutdown() {
+        List<Job> queuedJobs = new ArrayList<>();
+        synchronized (lock) {
+            shutdown = true;
+            for (LinkedHashMap<String, Deque<Job>> userQueues : queues.values()) {
+                for (Deque<Job> userQueue : userQueues.values()) {
+                    queuedJobs.addAll(userQueue);
+                }
+                userQueues.clear();
+            }
+            queuedCount = 0;
+            lock.notifyAll();
+        }
+        if (cancelChecker != null) {
+            cancelChecker.shutdownNow();
+        }
+        for (Job job : queuedJobs) {
+            queuedCounter.dec();
+            job.message.complete(new LumifyException("Long running process executor is shut down, could not run " + job.id));
+        }
+    }
+
+    private void runJobs() {
+        while (true) {
+            Job job;
+            try {
+                job = takeNextJob();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (job == null) {
+                return;
+            }
+            try {
+                runJob(job);
+            } finally {
+                synchronized (lock) {
+                    runningJobs.remove(job);
+                    reservedMemoryBytes -= job.memoryBytes;
+                    lock.notifyAll();
+                }
+                runningCounter.dec();
+                progressTracker.remove(job.id);
+            }
+        }
+    }
+
+    private Job takeNextJob() throws InterruptedException {
+        synchronized (lock) {
+            while (!shutdown) {
+                Job job = pollNextJob();
+                if (job != null) {
+                    job.startTime = System.currentTimeMillis();
+                    runningJobs.add(job);
+                    reservedMemoryBytes += job.memoryBytes;
+                    queuedCount--;
+                    lock.notifyAll();
+                    return job;
+                }
+                lock.wait();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Takes the first job which may start from the next user in turn, interactive jobs first. Batch jobs over the limit
+     * may still start when the executor is idle, otherwise they would never run with a limit of zero.
+     */
+    private Job pollNextJob() {
+        for (Lane lane : Lane.values()) {
+            if (lane == Lane.BATCH && getRunningCount(Lane.BATCH) >= maxBatchThreads && !runningJobs.isEmpty()) {
+                continue;
+            }
+            Iterator<Map.Entry<String, Deque<Job>>> it = queues.get(lane).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Deque<Job>> userQueue = it.next();
+                Job job = userQueue.getValue().peekFirst();
+                if (!runningJobs.isEmpty() && reservedMemoryBytes + job.memoryBytes > maxMemoryBytes) {
+                    continue;
+                }
+                userQueue.getValue().removeFirst();
+                it.remove();
+                if (!userQueue.getValue().isEmpty()) {
+                    queues.get(lane).put(userQueue.getKey(), userQueue.getValue());
+                }
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private int getRunningCount(Lane lane) {
+        int count = 0;
+        for (Job job : runningJobs) {
+            if (job.lane == lane) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void runJob(Job job) {
+        long startTime = job.startTime;
+        long queueWaitMs = startTime - job.queuedTime;
+        queueWaitTimer.update(queueWaitMs, TimeUnit.MILLISECONDS);
+        metricsManager.timer(metricsNamePrefix + job.type + ".queueWait").update(queueWaitMs, TimeUnit.MILLISECONDS);
+        queuedCounter.dec();
+        runningCounter.inc();
+
+        try {
+            String canceledReason = progressTracker.getCanceledReason(job.id);
+            if (canceledReason == null && isSavedCanceled(job.id)) {
+                canceledReason = "Canceled";
+            }
+            if (canceledReason != null) {
+                longRunningProcessRunner.skipCanceled(job.item, canceledReason);
+            } else {
+                LOGGER.debug("starting long running process %s after waiting %dms", job.id, queueWaitMs);
+                longRunningProcessRunner.process(job.item);
+            }
+            job.message.complete();
+        } catch (Throwable ex) {
+            LOGGER.error("Failed to process long running process: %s", job.item);
+            job.message.complete(ex);
+        }
+
+        long runMs = System.currentTimeMillis() - startTime;
+        runTimer.update(runMs, TimeUnit.MILLISECONDS);
+        metricsManager.timer(metricsNamePrefix + job.type + ".run").update(runMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkCanceled() {
+        List<Job> jobs;
+        List<Job> canceledQueuedJobs = new ArrayList<>();
+        synchronized (lock) {
+            jobs = new ArrayList<>(runningJobs);
+            for (LinkedHashMap<String, Deque<Job>> userQueues : queues.values()) {
+                Iterator<Deque<Job>> userQueueIt = userQueues.values().iterator();
+                while (userQueueIt.hasNext()) {
+                    Deque<Job> userQueue = userQueueIt.next();
+                    Iterator<Job> jobIt = userQueue.iterator();
+                    while (jobIt.hasNext()) {
+                        Job job = jobIt.next();
+                        if (progressTracker.getCanceledReason(job.id) != null) {
+                            jobIt.remove();
+                            queuedCount--;
+                            canceledQueuedJobs.add(job);
+                        }
+                    }
+                    if (userQueue.isEmpty()) {
+                        userQueueIt.remove();
+                    }
+                }
+            }
+            lock.notifyAll();
+        }
+
+        long now = System.currentTimeMillis();
+        for (Job job : jobs) {
+            if (progressTracker.getCanceledReason(job.id) != null) {
+                continue;
+            }
+            if (now - job.startTime > job.timeoutMs) {
+                LOGGER.warn("long running process %s ran past its timeout of %dms", job.id, job.timeoutMs);
+                progressTracker.cancel(job.id, String.format("Timed out after %d seconds", job.timeoutMs / 1000));
+            } else if (isSavedCanceled(job.id)) {
+                progressTracker.cancel(job.id, "Canceled");
+            }
+        }
+
+        for (Job job : canceledQueuedJobs) {
+            queuedCounter.dec();
+            try {
+                longRunningProcessRunner.skipCanceled(job.item, progressTracker.getCanceledReason(job.id));
+                job.message.complete();
+            } catch (Throwable ex) {
+                job.message.complete(ex);
+            }
+            progressTracker.remove(job.id);
+        }
+    }
+
+    private boolean isSavedCanceled(String longRunningProcessId) {
+        JSONObject json = longRunningProcessRepository.findById(longRunningProcessId, userRepository.getSystemUser());
+        return json != null && json.optBoolean("canceled", false);
+    }
+
+    private class Job {
+        private final WorkQueueRepository.LongRunningProcessMessage message;
+        private final JSONObject item;
+        private final String id;
+        private final String userId;
+        private final String type;
+        private final Lane lane;
+        private final long timeoutMs;
+        private final long memoryBytes;
+        private final long queuedTime;
+        // set under the lock before the job is added to the running jobs, so the cancel checker never sees it unset
+        private long startTime;
+
+        private Job(WorkQueueRepository.LongRunningProcessMessage message) {
+            this.message = message;
+            this.item = message.getMessage();
+            this.id = item.getString("id");
+            this.userId = item.optString("userId", "");
+            this.type = item.optString("type", "");
+            String typePrefix = Configuration.LONG_RUNNING_PROCESS_TYPE_PREFIX + type + ".";
+            String laneDefault = BATCH_TYPES_DEFAULT.contains(type) ? Lane.BATCH.name() : Configuration.LONG_RUNNING_PROCESS_TYPE_LANE_DEFAULT;
+            this.lane = Lane.valueOf(configuration.get(typePrefix + "lane", laneDefault).toUpperCase());
+            this.timeoutMs = configuration.getInt(typePrefix + "timeoutSeconds", Configuration.LONG_RUNNING_PROCESS_TYPE_TIMEOUT_SECONDS_DEFAULT) * 1000L;
+            this.memoryBytes = configuration.getInt(typePrefix + "memoryMb", Configuration.LONG_RUNNING_PROCESS_TYPE_MEMORY_MB_DEFAULT) * 1024L * 1024L;
+            this.queuedTime = System.currentTimeMillis();
+        }
+    }
+
+    @Inject
+    public void setLongRunningProcessRunner(LongRunningProcessRunner longRunningProcessRunner) {
+        this.longRunningProcessRunner = longRunningProcessRunner;
+    }
+
+    @Inject
+    public void setLongRunningProcessRepository(LongRunningProcessRepository longRunningProcessRepository) {
+        this.longRunningProcessRepository = longRunningProcessRepository;
+    }
+
+    @Inject
+    public void setProgressTracker(LongRunningProcessProgressTracker progressTracker) {
+        this.progressTracker = progressTracker;
+    }
+
+    @Inject
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Inject
+    public void setMetricsManager(MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+    }
+}
@@ -0,0 +1,137 @@
+package io.lumify.core.model.longRunningProcess;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the latest progress of the long running processes running in this process in memory and decides when it is
+ * worth saving and broadcasting: at most once per interval, and only when the progress has moved by the minimum change
+ * or the message has changed. Finished progress is always saved.
+ * <p/>
+ * Processes can also be marked canceled here so the next progress report of the worker stops it.
+ */
+@Singleton
+public class LongRunningProcessProgressTracker {
+    private static final long EXPIRE_MINUTES = 60;
+    private final long intervalMs;
+    private final double minChange;
+    private final Cache<String, Progress> progresses;
+
+    @Inject
+    public LongRunningProcessProgressTracker(Configuration configuration) {
+        this.intervalMs = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_PROGRESS_INTERVAL_MS, Configuration.LONG_RUNNING_PROCESS_PROGRESS_INTERVAL_MS_DEFAULT);
+        this.minChange = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_PROGRESS_MIN_CHANGE_PERCENT, Configuration.LONG_RUNNING_PROCESS_PROGRESS_MIN_CHANGE_PERCENT_DEFAULT) / 100.0;
+        this.progresses = CacheBuilder.newBuilder()
+                .expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * @return true if the progress should be saved and broadcast
+     */
+    public boolean update(String longRunningProcessId, double progressPercent, String message) {
+        return update(longRunningProcessId, progressPercent, message, System.currentTimeMillis());
+    }
+
+    boolean update(String longRunningProcessId, double progressPercent, String message, long time) {
+        Progress progress = getOrCreateProgress(longRunningProcessId);
+        synchronized (progress) {
+            progress.progressPercent = progressPercent;
+            progress.message = message;
+            if (!shouldSave(progress, time)) {
+                return false;
+            }
+            progress.savedTime = time;
+            progress.savedProgressPercent = progressPercent;
+            progress.savedMessage = message;
+            return true;
+        }
+    }
+
+    private boolean shouldSave(Progress progress, long time) {
+        if (progress.savedTime < 0 || progress.progressPercent >= 1.0) {
+            return true;
+        }
+        if (time - progress.savedTime < intervalMs) {
+            return false;
+        }
+        if (Math.abs(progress.progressPercent - progress.savedProgressPercent) >= minChange) {
+            return true;
+        }
+        return progress.message == null ? progress.savedMessage != null : !progress.message.equals(progress.savedMessage);
+    }
+
+    /**
+     * @return the latest progress reported in this process or null if none was reported recently
+     */
+    public Progress getProgress(String longRunningProcessId) {
+        return progresses.getIfPresent(longRunningProcessId);
+    }
+
+    public void cancel(String longRunningProcessId, String reason) {
+        Progress progress = getOrCreateProgress(longRunningProcessId);
+        synchronized (progress) {
+            if (progress.canceledReason == null) {
+                progress.canceledReason = reason;
+            }
+        }
+    }
+
+    /**
+     * @return why the process was canceled or null if it was not
+     */
+    public String getCanceledReason(String longRunningProcessId) {
+        Progress progress = progresses.getIfPresent(longRunningProcessId);
+        return progress == null ? null : progress.getCanceledReason();
+    }
+
+    public void remove(String longRunningProcessId) {
+        progresses.invalidate(longRunningProcessId);
+    }
+
+    private Progress getOrCreateProgress(String longRunningProcessId) {
+        try {
+            return progresses.get(longRunningProcessId, new Callable<Progress>() {
+                @Override
+                public Progress call() throws Exception {
+                    return new Progress();
+                }
+            });
+        } catch (ExecutionException ex) {
+            throw new LumifyException("Could not track progress of " + longRunningProcessId, ex);
+        }
+    }
+
+    public static class Progress {
+        private double progressPercent;
+        private String message;
+        private long savedTime = -1;
+        private double savedProgressPercent;
+        private String savedMessage;
+        private String canceledReason;
+
+        public synchronized boolean hasProgress() {
+            return savedTime >= 0;
+        }
+
+        public synchronized double getProgressPercent() {
+            return progressPercent;
+        }
+
+        public synchronized String getMessage() {
+            return message;
+        }
+
+        public synchronized String getCanceledReason() {
+            return canceledReason;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.lumify.core.model.longRunningProcess;
 
+import com.google.inject.Inject;
 import io.lumify.core.user.User;
 import org.json.JSONObject;
 import org.securegraph.Authorizations;
@@ -12,6 +13,7 @@ public abstract class LongRunningProcessRepository {
     public static final String LONG_RUNNING_PROCESS_TO_USER_EDGE_IRI = "http://lumify.io/longRunningProcess#hasLongRunningProcess";
     public static final String LONG_RUNNING_PROCESS_ID_PREFIX = "LONG_RUNNING_PROCESS_";
     public static final String OWL_IRI = "http://lumify.io/longRunningProcess";
+    private LongRunningProcessProgressTracker progressTracker;
 
     public abstract String enqueue(JSONObject longRunningProcessQueueItem, User user, Authorizations authorizations);
 
@@ -26,9 +28,69 @@ public abstract class LongRunningProcessRepository {
 
     public abstract JSONObject findById(String longRunningProcessId, User user);
 
-    public abstract void cancel(String longRunningProcessId, User user);
+    /**
+     * Marks the process canceled. A process running in this process stops at the next progress report or
+     * {@link #checkCanceled} of its worker, others once the {@link LongRunningProcessExecutor} running them sees the
+     * saved flag.
+     */
+    public void cancel(String longRunningProcessId, User user) {
+        if (progressTracker != null) {
+            progressTracker.cancel(longRunningProcessId, "Canceled");
+        }
+        saveCanceled(longRunningProcessId, user);
+    }
+
+    protected abstract void saveCanceled(String longRunningProcessId, User user);
+
+    /**
+     * Workers may report progress thousands of times, so the progress is kept in memory and only saved and broadcast
+     * when the {@link LongRunningProcessProgressTracker} allows it.
+     */
+    public void reportProgress(JSONObject longRunningProcessQueueItem, double progressPercent, String message) {
+        checkCanceled(longRunningProcessQueueItem);
+        if (progressTracker != null && !progressTracker.update(longRunningProcessQueueItem.getString("id"), progressPercent, message)) {
+            return;
+        }
+        saveProgress(longRunningProcessQueueItem, progressPercent, message);
+    }
+
+    /**
+     * Workers which go a long time between progress reports can call this to stop sooner when they are canceled.
+     *
+     * @throws LongRunningProcessCanceledException if the process was canceled or ran past its timeout
+     */
+    public void checkCanceled(JSONObject longRunningProcessQueueItem) {
+        if (progressTracker == null) {
+            return;
+        }
+        String longRunningProcessId = longRunningProcessQueueItem.getString("id");
+        String canceledReason = progressTracker.getCanceledReason(longRunningProcessId);
+        if (canceledReason != null) {
+            throw new LongRunningProcessCanceledException(longRunningProcessId, canceledReason);
+        }
+    }
+
+    protected abstract void saveProgress(JSONObject longRunningProcessQueueItem, double progressPercent, String message);
 
-    public abstract void reportProgress(JSONObject longRunningProcessQueueItem, double progressPercent, String message);
+    /**
+     * Copies the progress reported in this process which has not been saved yet into the json of an unfinished process.
+     */
+    protected JSONObject addUnsavedProgress(String longRunningProcessId, JSONObject longRunningProcessQueueItem) {
+        if (progressTracker == null || longRunningProcessQueueItem == null || longRunningProcessQueueItem.has("endTime")) {
+            return longRunningProcessQueueItem;
+        }
+        LongRunningProcessProgressTracker.Progress progress = progressTracker.getProgress(longRunningProcessId);
+        if (progress != null && progress.hasProgress()) {
+            longRunningProcessQueueItem.put("progress", progress.getProgressPercent());
+            longRunningProcessQueueItem.put("progressMessage", progress.getMessage());
+        }
+        return longRunningProcessQueueItem;
+    }
 
     public abstract void delete(String longRunningProcessId, User authUser);
+
+    @Inject
+    public void setProgressTracker(LongRunningProcessProgressTracker progressTracker) {
+        this.progressTracker = progressTracker;
+    }
 }
@@ -69,7 +69,12 @@ public class LongRunningProcessRunner {
                     longRunningProcessRepository.ack(longRunningProcessQueueItem);
                     workQueueRepository.broadcastLongRunningProcessChange(longRunningProcessQueueItem);
                 } catch (Throwable ex) {
-                    LOGGER.error("Failed to process long running process queue item", ex);
+                    if (ex instanceof LongRunningProcessCanceledException) {
+                        LOGGER.info("Stopped long running process %s: %s", longRunningProcessQueueItem.optString("id"), ex.getMessage());
+                        longRunningProcessQueueItem.put("canceled", true);
+                    } else {
+                        LOGGER.error("Failed to process long running process queue item", ex);
+                    }
                     longRunningProcessQueueItem.put("error", ex.getMessage());
                     longRunningProcessQueueItem.put("endTime", System.currentTimeMillis());
                     longRunningProcessRepository.nak(longRunningProcessQueueItem, ex);
@@ -80,6 +85,18 @@ public class LongRunningProcessRunner {
         }
     }
 
+    /**
+     * Finishes a queue item which was canceled before it started.
+     */
+    public void skipCanceled(JSONObject longRunningProcessQueueItem, String reason) {
+        LOGGER.info("Skipping canceled long running process %s", longRunningProcessQueueItem.optString("id"));
+        longRunningProcessQueueItem.put("canceled", true);
+        longRunningProcessQueueItem.put("error", reason);
+        longRunningProcessQueueItem.put("endTime", System.currentTimeMillis());
+        longRunningProcessRepository.nak(longRunningProcessQueueItem, new LongRunningProcessCanceledException(longRunningProcessQueueItem.optString("id"), reason));
+        workQueueRepository.broadcastLongRunningProcessChange(longRunningProcessQueueItem);
+    }
+
     @Inject
     public void setUserRepository(UserRepository userRepository) {
         this.userRepository = userRepository;
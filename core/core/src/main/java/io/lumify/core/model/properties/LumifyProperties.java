@@ -86,6 +86,8 @@ public class LumifyProperties {
     public static final StringLumifyProperty TERM_MENTION_FOR_ELEMENT_ID = new StringLumifyProperty("http://lumify.io/termMention#forElementId");
     public static final TermMentionForProperty TERM_MENTION_FOR_TYPE = new TermMentionForProperty("http://lumify.io/termMention#forType");
     public static final StringLumifyProperty TERM_MENTION_SNIPPET = new StringLumifyProperty("http://lumify.io/termMention#snippet");
+    public static final ByteArrayLumifyProperty TERM_MENTION_INDEX = new ByteArrayLumifyProperty("http://lumify.io/termMention#index");
+    public static final BooleanLumifyProperty TERM_MENTION_INDEXED = new BooleanLumifyProperty("http://lumify.io/termMention#indexed");
     public static final String TERM_MENTION_LABEL_HAS_TERM_MENTION = "http://lumify.io/termMention#hasTermMention";
     public static final String TERM_MENTION_LABEL_RESOLVED_TO = "http://lumify.io/termMention#resolvedTo";
 
@@ -0,0 +1,112 @@
+package io.lumify.core.model.termMention;
+
+import org.securegraph.Visibility;
+
+/**
+ * A term mention as stored in the {@link TermMentionIndex} of its source vertex.
+ */
+public class IndexedTermMention implements Comparable<IndexedTermMention> {
+    private final String id;
+    private final String sourceVertexId;
+    private final String propertyKey;
+    private final long start;
+    private final long end;
+    private final String conceptIri;
+    private final String title;
+    private final String process;
+    private final String resolvedToVertexId;
+    private final String resolvedEdgeId;
+    private final TermMentionFor termMentionFor;
+    private final Visibility visibility;
+
+    public IndexedTermMention(
+            String id,
+            String sourceVertexId,
+            String propertyKey,
+            long start,
+            long end,
+            String conceptIri,
+            String title,
+            String process,
+            String resolvedToVertexId,
+            String resolvedEdgeId,
+            TermMentionFor termMentionFor,
+            Visibility visibility) {
+        this.id = id;
+        this.sourceVertexId = sourceVertexId;
+        this.propertyKey = propertyKey;
+        this.start = start;
+        this.end = end;
+        this.conceptIri = conceptIri;
+        this.title = title;
+        this.process = process;
+        this.resolvedToVertexId = resolvedToVertexId;
+        this.resolvedEdgeId = resolvedEdgeId;
+        this.termMentionFor = termMentionFor;
+        this.visibility = visibility;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSourceVertexId() {
+        return sourceVertexId;
+    }
+
+    public String getPropertyKey() {
+        return propertyKey;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public String getConceptIri() {
+        return conceptIri;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getProcess() {
+        return process;
+    }
+
+    public String getResolvedToVertexId() {
+        return resolvedToVertexId;
+    }
+
+    public String getResolvedEdgeId() {
+        return resolvedEdgeId;
+    }
+
+    public TermMentionFor getTermMentionFor() {
+        return termMentionFor;
+    }
+
+    public Visibility getVisibility() {
+        return visibility;
+    }
+
+    @Override
+    public int compareTo(IndexedTermMention other) {
+        if (start != other.start) {
+            return start < other.start ? -1 : 1;
+        }
+        if (end != other.end) {
+            return end < other.end ? -1 : 1;
+        }
+        return id.compareTo(other.id);
+    }
+
+    @Override
+    public String toString() {
+        return "id: " + id + ", start: " + start + ", end: " + end + ", title: " + title;
+    }
+}
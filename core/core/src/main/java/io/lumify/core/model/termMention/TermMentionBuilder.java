@@ -23,6 +23,7 @@ public class TermMentionBuilder {
     private Vertex resolvedToVertex;
     private Edge resolvedEdge;
     private String snippet;
+    private TermMentionIndex.Batch indexBatch;
 
     public TermMentionBuilder() {
 
@@ -135,6 +136,15 @@ public class TermMentionBuilder {
         return this;
     }
 
+    /**
+     * Adds the term mention to the index batch of the source vertex instead of writing it to the index right away.
+     * The caller saves the batch once all term mentions of the text are saved.
+     */
+    public TermMentionBuilder indexBatch(TermMentionIndex.Batch indexBatch) {
+        this.indexBatch = indexBatch;
+        return this;
+    }
+
     /**
      * The concept type of this term mention.
      */
@@ -155,6 +165,8 @@ public class TermMentionBuilder {
      * <p/>
      * Source  -- Has --> Term    -- Resolved To --> Resolved
      * Vertex             Mention                    Vertex
+     * <p/>
+     * The term mention is also added to the {@link TermMentionIndex} of the source vertex.
      */
     public Vertex save(Graph graph, VisibilityTranslator visibilityTranslator, Authorizations authorizations) {
         checkNotNull(sourceVertex, "sourceVertex cannot be null");
@@ -205,6 +217,13 @@ public class TermMentionBuilder {
             LumifyProperties.TERM_MENTION_VISIBILITY_JSON.setProperty(resolvedToEdgeBuilder, this.visibilityJson, visibility);
             resolvedToEdgeBuilder.save(authorizations);
         }
+        String resolvedToVertexId = this.resolvedToVertex == null ? null : this.resolvedToVertex.getId();
+        if (this.indexBatch != null) {
+            checkArgument(this.indexBatch.getSourceVertex().getId().equals(this.sourceVertex.getId()), "indexBatch must be for the source vertex");
+            this.indexBatch.add(termMentionVertex, resolvedToVertexId, authorizations);
+        } else {
+            TermMentionIndex.add(this.sourceVertex, termMentionVertex, resolvedToVertexId, authorizations);
+        }
 
         return termMentionVertex;
     }
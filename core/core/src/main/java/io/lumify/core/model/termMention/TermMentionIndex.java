@@ -0,0 +1,220 @@
+package io.lumify.core.model.termMention;
+
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.model.properties.LumifyProperties;
+import org.securegraph.*;
+import org.securegraph.mutation.ExistingElementMutation;
+import org.securegraph.search.IndexHint;
+
+import java.io.*;
+import java.util.*;
+
+import static org.securegraph.util.IterableUtils.singleOrDefault;
+
+/**
+ * Keeps a packed copy of each term mention on its source vertex so the term mentions of a text property can be read
+ * with the source vertex instead of loading every term mention vertex.
+ * <p/>
+ * Each term mention is one {@link LumifyProperties#TERM_MENTION_INDEX} property keyed by the term mention id, with the
+ * visibility of the term mention, so the graph applies the same authorizations and hiding to the index as to the term
+ * mention vertices and concurrent extractors never overwrite each other's entries. The
+ * {@link LumifyProperties#TERM_MENTION_INDEXED} property keyed by the text property key marks the text properties
+ * whose term mentions are all in the index; term mentions saved before the index existed are added the first time a
+ * new term mention is saved for the text property.
+ * <p/>
+ * The index is never searched, so it is written with {@link IndexHint#DO_NOT_INDEX} and the search index does not
+ * reindex the source vertex and its text for every term mention. Extractors saving many term mentions of one text
+ * can collect them in a {@link Batch} to write them all in one mutation.
+ */
+public class TermMentionIndex {
+    private static final int VERSION = 1;
+
+    /**
+     * @return the term mentions of the text property sorted by offset or null if the text property has not been indexed
+     */
+    public static List<IndexedTermMention> find(Vertex sourceVertex, String propertyKey) {
+        if (!LumifyProperties.TERM_MENTION_INDEXED.hasProperty(sourceVertex, propertyKey)) {
+            return null;
+        }
+        List<IndexedTermMention> termMentions = new ArrayList<>();
+        for (Property property : LumifyProperties.TERM_MENTION_INDEX.getProperties(sourceVertex)) {
+            byte[] data = LumifyProperties.TERM_MENTION_INDEX.getPropertyValue(property);
+            IndexedTermMention termMention = decode(property.getKey(), sourceVertex.getId(), data, property.getVisibility());
+            if (propertyKey.equals(termMention.getPropertyKey())) {
+                termMentions.add(termMention);
+            }
+        }
+        Collections.sort(termMentions);
+        return termMentions;
+    }
+
+    public static void add(Vertex sourceVertex, Vertex termMention, String resolvedToVertexId, Authorizations authorizations) {
+        Batch batch = new Batch(sourceVertex);
+        batch.add(termMention, resolvedToVertexId, authorizations);
+        batch.save(authorizations);
+    }
+
+    /**
+     * Must be called before the term mention vertex is removed.
+     */
+    public static void remove(Graph graph, Vertex termMention, Authorizations authorizations) {
+        for (Vertex sourceVertex : getSourceVertices(graph, termMention, authorizations)) {
+            LumifyProperties.TERM_MENTION_INDEX.removeProperty(sourceVertex, termMention.getId(), authorizations);
+        }
+    }
+
+    public static void markHidden(Graph graph, Vertex termMention, Visibility hiddenVisibility, Authorizations authorizations) {
+        for (Vertex sourceVertex : getSourceVertices(graph, termMention, authorizations)) {
+            Property property = sourceVertex.getProperty(termMention.getId(), LumifyProperties.TERM_MENTION_INDEX.getPropertyName());
+            if (property != null) {
+                sourceVertex.markPropertyHidden(property, hiddenVisibility, authorizations);
+            }
+        }
+    }
+
+    public static void updateVisibility(Graph graph, Vertex termMention, Visibility newVisibility, Authorizations authorizations) {
+        for (Vertex sourceVertex : getSourceVertices(graph, termMention, authorizations)) {
+            if (!LumifyProperties.TERM_MENTION_INDEX.hasProperty(sourceVertex, termMention.getId())) {
+                continue;
+            }
+            ExistingElementMutation<Vertex> m = sourceVertex.prepareMutation();
+            m.setIndexHint(IndexHint.DO_NOT_INDEX);
+            LumifyProperties.TERM_MENTION_INDEX.alterVisibility(m, termMention.getId(), newVisibility);
+            m.save(authorizations);
+        }
+    }
+
+    private static Iterable<Vertex> getSourceVertices(Graph graph, Vertex termMention, Authorizations authorizations) {
+        return graph.getVertices(termMention.getVertexIds(Direction.IN, LumifyProperties.TERM_MENTION_LABEL_HAS_TERM_MENTION, authorizations), authorizations);
+    }
+
+    static byte[] encode(Vertex termMention, String resolvedToVertexId) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(LumifyProperties.TERM_MENTION_PROPERTY_KEY.getPropertyValue(termMention));
+            out.writeLong(LumifyProperties.TERM_MENTION_START_OFFSET.getPropertyValue(termMention, 0));
+            out.writeLong(LumifyProperties.TERM_MENTION_END_OFFSET.getPropertyValue(termMention, 0));
+            writeOptionalString(out, LumifyProperties.TERM_MENTION_CONCEPT_TYPE.getPropertyValue(termMention));
+            writeOptionalString(out, LumifyProperties.TERM_MENTION_TITLE.getPropertyValue(termMention));
+            writeOptionalString(out, LumifyProperties.TERM_MENTION_PROCESS.getPropertyValue(termMention));
+            writeOptionalString(out, resolvedToVertexId);
+            writeOptionalString(out, LumifyProperties.TERM_MENTION_RESOLVED_EDGE_ID.getPropertyValue(termMention));
+            TermMentionFor termMentionFor = LumifyProperties.TERM_MENTION_FOR_TYPE.getPropertyValue(termMention);
+            writeOptionalString(out, termMentionFor == null ? null : termMentionFor.name());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new LumifyException("Could not encode term mention " + termMention.getId(), ex);
+        }
+    }
+
+    static IndexedTermMention decode(String termMentionId, String sourceVertexId, byte[] data, Visibility visibility) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new LumifyException("Unexpected term mention index version " + version + " of " + termMentionId);
+            }
+            String propertyKey = in.readUTF();
+            long start = in.readLong();
+            long end = in.readLong();
+            String conceptIri = readOptionalString(in);
+            String title = readOptionalString(in);
+            String process = readOptionalString(in);
+            String resolvedToVertexId = readOptionalString(in);
+            String resolvedEdgeId = readOptionalString(in);
+            String termMentionFor = readOptionalString(in);
+            return new IndexedTermMention(
+                    termMentionId,
+                    sourceVertexId,
+                    propertyKey,
+                    start,
+                    end,
+                    conceptIri,
+                    title,
+                    process,
+                    resolvedToVertexId,
+                    resolvedEdgeId,
+                    termMentionFor == null ? null : TermMentionFor.valueOf(termMentionFor),
+                    visibility
+            );
+        } catch (IOException ex) {
+            throw new LumifyException("Could not decode term mention " + termMentionId, ex);
+        }
+    }
+
+    /**
+     * Collects the index entries of term mentions of one source vertex and writes them with a single mutation.
+     */
+    public static class Batch {
+        private final Vertex sourceVertex;
+        private final ExistingElementMutation<Vertex> mutation;
+        private final Set<String> termMentionIds = new HashSet<>();
+        private final Set<String> indexedPropertyKeys = new HashSet<>();
+
+        public Batch(Vertex sourceVertex) {
+            this.sourceVertex = sourceVertex;
+            this.mutation = sourceVertex.prepareMutation();
+            this.mutation.setIndexHint(IndexHint.DO_NOT_INDEX);
+        }
+
+        public Vertex getSourceVertex() {
+            return sourceVertex;
+        }
+
+        /**
+         * The term mention vertex must already be saved, so that term mentions saved before the text property was
+         * indexed are found along with it.
+         */
+        public void add(Vertex termMention, String resolvedToVertexId, Authorizations authorizations) {
+            String propertyKey = LumifyProperties.TERM_MENTION_PROPERTY_KEY.getPropertyValue(termMention);
+            if (propertyKey == null) {
+                return;
+            }
+            addEntry(termMention, resolvedToVertexId);
+            if (indexedPropertyKeys.add(propertyKey) && !LumifyProperties.TERM_MENTION_INDEXED.hasProperty(sourceVertex, propertyKey)) {
+                addExisting(propertyKey, authorizations);
+                LumifyProperties.TERM_MENTION_INDEXED.addPropertyValue(mutation, propertyKey, true, new Visibility(TermMentionRepository.VISIBILITY_STRING));
+            }
+        }
+
+        private void addExisting(String propertyKey, Authorizations authorizations) {
+            for (Vertex termMention : sourceVertex.getVertices(Direction.OUT, LumifyProperties.TERM_MENTION_LABEL_HAS_TERM_MENTION, authorizations)) {
+                if (termMentionIds.contains(termMention.getId())
+                        || !propertyKey.equals(LumifyProperties.TERM_MENTION_PROPERTY_KEY.getPropertyValue(termMention))) {
+                    continue;
+                }
+                String resolvedToVertexId = singleOrDefault(termMention.getVertexIds(Direction.OUT, LumifyProperties.TERM_MENTION_LABEL_RESOLVED_TO, authorizations), null);
+                addEntry(termMention, resolvedToVertexId);
+            }
+        }
+
+        private void addEntry(Vertex termMention, String resolvedToVertexId) {
+            termMentionIds.add(termMention.getId());
+            LumifyProperties.TERM_MENTION_INDEX.addPropertyValue(mutation, termMention.getId(), encode(termMention, resolvedToVertexId), termMention.getVisibility());
+        }
+
+        public void save(Authorizations authorizations) {
+            if (termMentionIds.size() == 0) {
+                return;
+            }
+            mutation.save(authorizations);
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+}
@@ -13,6 +13,9 @@ import org.securegraph.mutation.ExistingElementMutation;
 import org.securegraph.util.FilterIterable;
 import org.securegraph.util.JoinIterable;
 
+import java.util.EnumSet;
+import java.util.List;
+
 import static org.securegraph.util.IterableUtils.single;
 import static org.securegraph.util.IterableUtils.singleOrDefault;
 
@@ -41,6 +44,21 @@ public class TermMentionRepository {
         };
     }
 
+    /**
+     * Reads the term mentions of a text property from the {@link TermMentionIndex} of the source vertex.
+     *
+     * @return the term mentions sorted by offset or null if the text property has not been indexed, in which case
+     * {@link #findBySourceGraphVertexAndPropertyKey(String, String, Authorizations)} must be used.
+     */
+    public List<IndexedTermMention> findIndexedBySourceGraphVertexAndPropertyKey(String sourceVertexId, String propertyKey, Authorizations authorizations) {
+        Authorizations authorizationsWithTermMention = getAuthorizations(authorizations);
+        Vertex sourceVertex = graph.getVertex(sourceVertexId, EnumSet.of(FetchHint.PROPERTIES), authorizationsWithTermMention);
+        if (sourceVertex == null) {
+            return null;
+        }
+        return TermMentionIndex.find(sourceVertex, propertyKey);
+    }
+
     public Iterable<Vertex> findBySourceGraphVertex(String sourceVertexId, Authorizations authorizations) {
         Authorizations authorizationsWithTermMention = getAuthorizations(authorizations);
         Vertex sourceVertex = graph.getVertex(sourceVertexId, authorizationsWithTermMention);
@@ -189,6 +207,7 @@ public class TermMentionRepository {
         for (Property property : termMention.getProperties()) {
             m.alterPropertyVisibility(property, newVisibilityWithTermMention);
         }
+        TermMentionIndex.updateVisibility(graph, termMention, newVisibilityWithTermMention, authorizationsWithTermMention);
         Property refPropertyVisibility = LumifyProperties.TERM_MENTION_REF_PROPERTY_VISIBILITY.getProperty(termMention);
         if (refPropertyVisibility != null) {
             LumifyProperties.TERM_MENTION_REF_PROPERTY_VISIBILITY.setProperty(m, newVisibility.getVisibilityString(), refPropertyVisibility.getMetadata(), newVisibilityWithTermMention);
@@ -212,11 +231,13 @@ public class TermMentionRepository {
 
     public void delete(Vertex termMention, Authorizations authorizations) {
         Authorizations authorizationsWithTermMention = getAuthorizations(authorizations);
+        TermMentionIndex.remove(graph, termMention, authorizationsWithTermMention);
         graph.removeVertex(termMention, authorizationsWithTermMention);
     }
 
     public void markHidden(Vertex termMention, Visibility hiddenVisibility, Authorizations authorizations) {
         Authorizations authorizationsWithTermMention = getAuthorizations(authorizations);
+        TermMentionIndex.markHidden(graph, termMention, hiddenVisibility, authorizationsWithTermMention);
         graph.markVertexHidden(termMention, hiddenVisibility, authorizationsWithTermMention);
     }
 
@@ -369,6 +390,7 @@ public class TermMentionRepository {
 
         graph.addEdge(LumifyProperties.TERM_MENTION_LABEL_HAS_TERM_MENTION + termMentionVertexId, sourceVertex, termMention, LumifyProperties.TERM_MENTION_LABEL_HAS_TERM_MENTION, visibility, authorizations);
         graph.addEdge(LumifyProperties.TERM_MENTION_LABEL_RESOLVED_TO + termMentionVertexId, termMention, vertex, LumifyProperties.TERM_MENTION_LABEL_RESOLVED_TO, visibility, authorizations);
+        TermMentionIndex.add(sourceVertex, termMention, vertex.getId(), authorizations);
 
         graph.flush();
         LOGGER.debug("added source info: %s", termMention.getId());
@@ -434,6 +456,7 @@ public class TermMentionRepository {
     public void removeSourceInfoEdgeFromVertex(String vertexId, String sourceInfoElementId, String propertyKey, String propertyName, LumifyVisibility lumifyVisibility, Authorizations authorizations) {
         Vertex termMention = findTermMention(vertexId, sourceInfoElementId, propertyKey, propertyName, lumifyVisibility.getVisibility(), authorizations);
         if (termMention != null) {
+            TermMentionIndex.remove(graph, termMention, authorizations);
             graph.removeVertex(termMention, authorizations);
         }
     }
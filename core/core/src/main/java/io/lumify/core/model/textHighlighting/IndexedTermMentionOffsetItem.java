@@ -0,0 +1,67 @@
+package io.lumify.core.model.textHighlighting;
+
+import io.lumify.core.model.termMention.IndexedTermMention;
+import io.lumify.core.model.termMention.TermMentionFor;
+import io.lumify.web.clientapi.model.SandboxStatus;
+
+/**
+ * The same as a {@link VertexOffsetItem} but read from the term mention index of the source vertex.
+ */
+public class IndexedTermMentionOffsetItem extends TermMentionOffsetItem {
+    private final IndexedTermMention termMention;
+
+    public IndexedTermMentionOffsetItem(IndexedTermMention termMention, SandboxStatus sandboxStatus) {
+        super(sandboxStatus);
+        this.termMention = termMention;
+    }
+
+    @Override
+    public long getStart() {
+        return termMention.getStart();
+    }
+
+    @Override
+    public long getEnd() {
+        return termMention.getEnd();
+    }
+
+    @Override
+    public String getConceptIri() {
+        return termMention.getConceptIri();
+    }
+
+    @Override
+    public String getId() {
+        return termMention.getId();
+    }
+
+    @Override
+    public String getProcess() {
+        return termMention.getProcess();
+    }
+
+    @Override
+    public String getSourceVertexId() {
+        return termMention.getSourceVertexId();
+    }
+
+    @Override
+    public String getResolvedToVertexId() {
+        return termMention.getResolvedToVertexId();
+    }
+
+    @Override
+    public String getResolvedToEdgeId() {
+        return termMention.getResolvedEdgeId();
+    }
+
+    @Override
+    public TermMentionFor getTermMentionFor() {
+        return termMention.getTermMentionFor();
+    }
+
+    @Override
+    public String getTitle() {
+        return termMention.getTitle();
+    }
+}
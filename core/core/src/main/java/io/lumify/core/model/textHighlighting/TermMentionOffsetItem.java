@@ -0,0 +1,61 @@
+package io.lumify.core.model.textHighlighting;
+
+import io.lumify.core.model.ontology.OntologyRepository;
+import io.lumify.core.model.termMention.TermMentionFor;
+import io.lumify.web.clientapi.model.SandboxStatus;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The info and css classes of a term mention, whether it is read from its vertex or from the term mention index.
+ */
+public abstract class TermMentionOffsetItem extends OffsetItem {
+    private final SandboxStatus sandboxStatus;
+
+    protected TermMentionOffsetItem(SandboxStatus sandboxStatus) {
+        this.sandboxStatus = sandboxStatus;
+    }
+
+    @Override
+    public String getType() {
+        return OntologyRepository.ENTITY_CONCEPT_IRI;
+    }
+
+    public abstract String getConceptIri();
+
+    @Override
+    public SandboxStatus getSandboxStatus() {
+        return sandboxStatus;
+    }
+
+    @Override
+    public JSONObject getInfoJson() {
+        try {
+            JSONObject infoJson = super.getInfoJson();
+            infoJson.put("title", getTitle());
+            if (getConceptIri() != null) {
+                infoJson.put("http://lumify.io#conceptType", getConceptIri());
+            }
+            return infoJson;
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public List<String> getCssClasses() {
+        List<String> classes = new ArrayList<>();
+        TermMentionFor termMentionFor = getTermMentionFor();
+        if (termMentionFor == null) {
+            termMentionFor = TermMentionFor.VERTEX;
+        }
+        classes.add(termMentionFor.toString().toLowerCase());
+        if (getResolvedToVertexId() != null) {
+            classes.add("resolved");
+        }
+        return classes;
+    }
+}
@@ -1,30 +1,23 @@
 package io.lumify.core.model.textHighlighting;
 
-import io.lumify.core.model.ontology.OntologyRepository;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.termMention.TermMentionFor;
 import io.lumify.core.model.termMention.TermMentionRepository;
 import io.lumify.web.clientapi.model.SandboxStatus;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.securegraph.Authorizations;
 import org.securegraph.Direction;
 import org.securegraph.Vertex;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.securegraph.util.IterableUtils.singleOrDefault;
 
-public class VertexOffsetItem extends OffsetItem {
+public class VertexOffsetItem extends TermMentionOffsetItem {
     private final Vertex termMention;
-    private final SandboxStatus sandboxStatus;
     private final Authorizations authorizations;
 
     public VertexOffsetItem(Vertex termMention, SandboxStatus sandboxStatus, Authorizations authorizations) {
+        super(sandboxStatus);
         this.termMention = termMention;
-        this.sandboxStatus = sandboxStatus;
         this.authorizations = authorizations;
 
         String[] authArray = this.authorizations.getAuthorizations();
@@ -48,10 +41,6 @@ public class VertexOffsetItem extends OffsetItem {
     }
 
     @Override
-    public String getType() {
-        return OntologyRepository.ENTITY_CONCEPT_IRI;
-    }
-
     public String getConceptIri() {
         return LumifyProperties.TERM_MENTION_CONCEPT_TYPE.getPropertyValue(termMention);
     }
@@ -86,11 +75,6 @@ public class VertexOffsetItem extends OffsetItem {
         return LumifyProperties.TERM_MENTION_FOR_TYPE.getPropertyValue(termMention);
     }
 
-    @Override
-    public SandboxStatus getSandboxStatus() {
-        return sandboxStatus;
-    }
-
     public String getTitle() {
         return LumifyProperties.TERM_MENTION_TITLE.getPropertyValue(termMention);
     }
@@ -102,32 +86,4 @@ public class VertexOffsetItem extends OffsetItem {
         }
         return true;
     }
-
-    @Override
-    public JSONObject getInfoJson() {
-        try {
-            JSONObject infoJson = super.getInfoJson();
-            infoJson.put("title", getTitle());
-            if (getConceptIri() != null) {
-                infoJson.put("http://lumify.io#conceptType", getConceptIri());
-            }
-            return infoJson;
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    @Override
-    public List<String> getCssClasses() {
-        List<String> classes = new ArrayList<>();
-        TermMentionFor termMentionFor = getTermMentionFor();
-        if (termMentionFor == null) {
-            termMentionFor = TermMentionFor.VERTEX;
-        }
-        classes.add(termMentionFor.toString().toLowerCase());
-        if (getResolvedToVertexId() != null) {
-            classes.add("resolved");
-        }
-        return classes;
-    }
 }
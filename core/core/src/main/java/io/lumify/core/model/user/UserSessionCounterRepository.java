@@ -1,90 +1,184 @@
 package io.lumify.core.model.user;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import io.lumify.core.config.Configuration;
-import io.lumify.core.exception.LumifyException;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
-import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.atomic.AtomicValue;
-import org.apache.curator.framework.recipes.atomic.DistributedAtomicInteger;
-import org.apache.curator.retry.BoundedExponentialBackoffRetry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.json.JSONObject;
 
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Counts the sessions of each user. Sessions on this web node are counted in memory, and every gossip interval the
+ * node publishes its counts to an ephemeral ZooKeeper node and reads the counts published by the other web nodes.
+ * Connecting and disconnecting never waits on ZooKeeper, and the counts of a web node which goes away are dropped
+ * along with its ephemeral node.
+ */
+@Singleton
 public class UserSessionCounterRepository {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(UserSessionCounterRepository.class);
     public static final String DEFAULT_PATH_PREFIX = "/lumify/userSessionCounters/";
-    private static final int BASE_SLEEP_TIME_MS = 10;
-    private static final int MAX_SLEEP_TIME_MS = 2000;
-    private static final int MAX_RETRIES = 5;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
     private final CuratorFramework curatorFramework;
-    private final String pathPrefix;
+    private final String nodesPath;
+    private final String nodePath;
+    private final Map<String, Integer> localCounts = new HashMap<>();
+    private final AtomicBoolean localCountsChanged = new AtomicBoolean(true);
+    private volatile Map<String, Integer> remoteCounts = new HashMap<>();
 
     @Inject
     public UserSessionCounterRepository(final CuratorFramework curatorFramework,
                                         final Configuration configuration) {
+        this(curatorFramework, configuration, true);
+    }
+
+    /**
+     * @param gossipInBackground false to only gossip when {@link #gossip()} is called
+     */
+    UserSessionCounterRepository(final CuratorFramework curatorFramework,
+                                 final Configuration configuration,
+                                 boolean gossipInBackground) {
         this.curatorFramework = curatorFramework;
-        this.pathPrefix = configuration.get(Configuration.USER_SESSION_COUNTER_PATH_PREFIX, DEFAULT_PATH_PREFIX);
+        String pathPrefix = configuration.get(Configuration.USER_SESSION_COUNTER_PATH_PREFIX, DEFAULT_PATH_PREFIX);
+        this.nodesPath = pathPrefix + "nodes";
+        this.nodePath = nodesPath + "/" + UUID.randomUUID().toString();
+        if (!gossipInBackground) {
+            return;
+        }
+
+        long gossipIntervalMs = configuration.getInt(Configuration.USER_SESSION_COUNTER_GOSSIP_INTERVAL_MS, Configuration.USER_SESSION_COUNTER_GOSSIP_INTERVAL_MS_DEFAULT);
+        ScheduledExecutorService gossipExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-user-session-counter-gossip");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        gossipExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gossip();
+                } catch (Exception ex) {
+                    LOGGER.error("Could not exchange user session counts", ex);
+                }
+            }
+        }, 0, gossipIntervalMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * @return the number of sessions the user has on all web nodes, including the new one
+     */
     public int incrementAndGet(String userId) {
-        LOGGER.debug("incrementing user session counter for %s", userId);
-
-        int count = adjustAndGet(userId, Direction.INCREMENT);
+        int localCount;
+        synchronized (localCounts) {
+            Integer count = localCounts.get(userId);
+            localCount = (count == null ? 0 : count) + 1;
+            localCounts.put(userId, localCount);
+        }
+        localCountsChanged.set(true);
 
+        int count = localCount + getRemoteCount(userId);
         LOGGER.debug("user session counter for %s is now %d", userId, count);
         return count;
     }
 
+    /**
+     * @return the number of sessions the user has left on all web nodes
+     */
     public int decrementAndGet(String userId) {
-        LOGGER.debug("decrementing user session counter for %s", userId);
-
-        int count = adjustAndGet(userId, Direction.DECREMENT);
-        if (count < 1) {
-            removeCounter(userId);
+        int localCount;
+        synchronized (localCounts) {
+            Integer count = localCounts.get(userId);
+            localCount = (count == null ? 0 : count) - 1;
+            if (localCount < 1) {
+                localCount = 0;
+                localCounts.remove(userId);
+            } else {
+                localCounts.put(userId, localCount);
+            }
         }
+        localCountsChanged.set(true);
 
+        int count = localCount + getRemoteCount(userId);
         LOGGER.debug("user session counter for %s is now %d", userId, count);
         return count;
     }
 
-    private int adjustAndGet(String userId, Direction direction) {
-        RetryPolicy retryPolicy = new BoundedExponentialBackoffRetry(BASE_SLEEP_TIME_MS, MAX_SLEEP_TIME_MS, MAX_RETRIES);
-        DistributedAtomicInteger distributedAtomicInteger = new DistributedAtomicInteger(curatorFramework, counterPath(userId), retryPolicy);
+    /**
+     * @return the number of sessions the user has on all web nodes, as of the last gossip from the other nodes
+     */
+    public int getSessionCount(String userId) {
+        int localCount;
+        synchronized (localCounts) {
+            Integer count = localCounts.get(userId);
+            localCount = count == null ? 0 : count;
+        }
+        return localCount + getRemoteCount(userId);
+    }
 
-        try {
-            distributedAtomicInteger.initialize(0); // this will respect an existing value but set uninitialized values to 0
-        } catch (Exception e) {
-            throw new LumifyException("failed to initialize counter for " + userId);
+    private int getRemoteCount(String userId) {
+        Integer count = remoteCounts.get(userId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Publishes this node's counts if they changed (or the ephemeral node was lost with the ZooKeeper session), then
+     * sums the counts published by the other web nodes.
+     */
+    void gossip() throws Exception {
+        if (localCountsChanged.getAndSet(false) || curatorFramework.checkExists().forPath(nodePath) == null) {
+            JSONObject snapshot;
+            synchronized (localCounts) {
+                snapshot = new JSONObject(localCounts);
+            }
+            try {
+                publish(snapshot.toString().getBytes(UTF8));
+            } catch (Exception ex) {
+                localCountsChanged.set(true);
+                throw ex;
+            }
         }
 
-        try {
-            AtomicValue<Integer> count = direction == Direction.INCREMENT ? distributedAtomicInteger.increment() : distributedAtomicInteger.decrement();
-            if (count.succeeded()) {
-                return count.postValue();
-            } else {
-                throw new LumifyException("failed to " + direction + " counter for " + userId);
+        Map<String, Integer> counts = new HashMap<>();
+        String nodeName = nodePath.substring(nodesPath.length() + 1);
+        for (String child : curatorFramework.getChildren().forPath(nodesPath)) {
+            if (child.equals(nodeName)) {
+                continue;
+            }
+            byte[] data;
+            try {
+                data = curatorFramework.getData().forPath(nodesPath + "/" + child);
+            } catch (KeeperException.NoNodeException ex) {
+                continue;
+            }
+            JSONObject nodeCounts = new JSONObject(new String(data, UTF8));
+            Iterator keys = nodeCounts.keys();
+            while (keys.hasNext()) {
+                String userId = (String) keys.next();
+                Integer count = counts.get(userId);
+                counts.put(userId, (count == null ? 0 : count) + nodeCounts.getInt(userId));
             }
-        } catch (Exception e) {
-            throw new LumifyException("failed to " + direction + " counter for " + userId, e);
         }
+        remoteCounts = counts;
     }
 
-    private void removeCounter(String userId) {
-        LOGGER.debug("removing user session counter for %s", userId);
+    private void publish(byte[] data) throws Exception {
         try {
-            curatorFramework.delete().inBackground().forPath(counterPath(userId));
-        } catch (Exception e) {
-            throw new LumifyException("failed to remove user session counter for " + userId, e);
+            curatorFramework.setData().forPath(nodePath, data);
+        } catch (KeeperException.NoNodeException ex) {
+            curatorFramework.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(nodePath, data);
         }
     }
-
-    private String counterPath(String userId) {
-        return pathPrefix + userId;
-    }
-
-    public enum Direction {
-        INCREMENT,
-        DECREMENT
-    }
 }
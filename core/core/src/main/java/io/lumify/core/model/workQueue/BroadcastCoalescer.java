@@ -0,0 +1,283 @@
+package io.lumify.core.model.workQueue;
+
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges property change and text updated broadcasts for the same element and workspace that occur within a short
+ * window. At the end of the window one propertiesChange message per workspace is sent listing every changed element.
+ * Only the message of sandboxed changes is limited to the users of the workspace.
+ */
+public class BroadcastCoalescer {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(BroadcastCoalescer.class);
+    public static final int MAX_CHANGES_PER_MESSAGE = 1000;
+    private final long windowMs;
+    private final WorkQueueRepository.BroadcastConsumer output;
+    private final Map<ChangeKey, Change> changes = new LinkedHashMap<>();
+    private ScheduledExecutorService flushExecutor;
+    private boolean flushScheduled;
+
+    public BroadcastCoalescer(long windowMs, WorkQueueRepository.BroadcastConsumer output) {
+        this.windowMs = windowMs;
+        this.output = output;
+    }
+
+    /**
+     * @param sandboxed true if the property is sandboxed in the workspace and only its users may see the change
+     */
+    public void propertyChange(String elementIdKey, String elementId, String workspaceId, boolean sandboxed, String propertyKey, String propertyName) {
+        boolean flush;
+        synchronized (changes) {
+            Change change = getOrCreateChange(elementIdKey, elementId, workspaceId, sandboxed);
+            change.propertyChange = true;
+            if (propertyName != null) {
+                change.properties.add(new PropertyKeyName(propertyKey, propertyName));
+            } else {
+                change.elementChange = true;
+            }
+            flush = changes.size() >= MAX_CHANGES_PER_MESSAGE;
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    public void textUpdated(String vertexId, String workspaceId) {
+        boolean flush;
+        synchronized (changes) {
+            getOrCreateChange("graphVertexId", vertexId, workspaceId, workspaceId != null).textUpdated = true;
+            flush = changes.size() >= MAX_CHANGES_PER_MESSAGE;
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    private Change getOrCreateChange(String elementIdKey, String elementId, String workspaceId, boolean sandboxed) {
+        ChangeKey key = new ChangeKey(elementIdKey, elementId, new Scope(workspaceId, sandboxed));
+        Change change = changes.get(key);
+        if (change == null) {
+            change = new Change(key);
+            changes.put(key, change);
+        }
+        if (!flushScheduled) {
+            getFlushExecutor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (Throwable ex) {
+                        LOGGER.error("Could not flush coalesced broadcasts", ex);
+                    }
+                }
+            }, windowMs, TimeUnit.MILLISECONDS);
+            flushScheduled = true;
+        }
+        return change;
+    }
+
+    /**
+     * Sends everything collected so far.
+     */
+    public void flush() {
+        List<Change> changesToSend;
+        synchronized (changes) {
+            flushScheduled = false;
+            if (changes.size() == 0) {
+                return;
+            }
+            changesToSend = new ArrayList<>(changes.values());
+            changes.clear();
+        }
+
+        Map<Scope, JSONArray> changesByScope = new LinkedHashMap<>();
+        for (Change change : changesToSend) {
+            JSONArray scopeChanges = changesByScope.get(change.key.scope);
+            if (scopeChanges == null) {
+                scopeChanges = new JSONArray();
+                changesByScope.put(change.key.scope, scopeChanges);
+            }
+            scopeChanges.put(change.toJson());
+        }
+        for (Map.Entry<Scope, JSONArray> entry : changesByScope.entrySet()) {
+            output.broadcastReceived(createPropertiesChangeJson(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    public void shutdown() {
+        flush();
+        synchronized (changes) {
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+                flushExecutor = null;
+            }
+        }
+    }
+
+    private static JSONObject createPropertiesChangeJson(Scope scope, JSONArray changes) {
+        JSONObject json = new JSONObject();
+        json.put("type", "propertiesChange");
+        if (scope.sandboxed) {
+            JSONObject permissions = new JSONObject();
+            JSONArray workspaces = new JSONArray();
+            workspaces.put(scope.workspaceId);
+            permissions.put("workspaces", workspaces);
+            json.put("permissions", permissions);
+        }
+
+        JSONObject dataJson = new JSONObject();
+        dataJson.putOpt("workspaceId", scope.workspaceId);
+        dataJson.put("changes", changes);
+        json.put("data", dataJson);
+        return json;
+    }
+
+    private ScheduledExecutorService getFlushExecutor() {
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "broadcast-coalescer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return flushExecutor;
+    }
+
+    private static class Scope {
+        private final String workspaceId;
+        private final boolean sandboxed;
+
+        public Scope(String workspaceId, boolean sandboxed) {
+            this.workspaceId = workspaceId;
+            this.sandboxed = sandboxed && workspaceId != null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Scope scope = (Scope) o;
+            return sandboxed == scope.sandboxed
+                    && (workspaceId == null ? scope.workspaceId == null : workspaceId.equals(scope.workspaceId));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = workspaceId != null ? workspaceId.hashCode() : 0;
+            result = 31 * result + (sandboxed ? 1 : 0);
+            return result;
+        }
+    }
+
+    private static class ChangeKey {
+        private final String elementIdKey;
+        private final String elementId;
+        private final Scope scope;
+
+        public ChangeKey(String elementIdKey, String elementId, Scope scope) {
+            this.elementIdKey = elementIdKey;
+            this.elementId = elementId;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ChangeKey changeKey = (ChangeKey) o;
+            return elementIdKey.equals(changeKey.elementIdKey)
+                    && elementId.equals(changeKey.elementId)
+                    && scope.equals(changeKey.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = elementIdKey.hashCode();
+            result = 31 * result + elementId.hashCode();
+            result = 31 * result + scope.hashCode();
+            return result;
+        }
+    }
+
+    private static class Change {
+        private final ChangeKey key;
+        private final Set<PropertyKeyName> properties = new LinkedHashSet<>();
+        private boolean propertyChange;
+        private boolean elementChange;
+        private boolean textUpdated;
+
+        public Change(ChangeKey key) {
+            this.key = key;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put(key.elementIdKey, key.elementId);
+            json.putOpt("workspaceId", key.scope.workspaceId);
+            json.put("propertyChange", propertyChange);
+            if (key.elementIdKey.equals("graphEdgeId")) {
+                // a change without a property name is pushed when an edge is created
+                json.put("edgeCreated", elementChange);
+            }
+            json.put("textUpdated", textUpdated);
+            JSONArray propertiesJson = new JSONArray();
+            for (PropertyKeyName property : properties) {
+                JSONObject propertyJson = new JSONObject();
+                propertyJson.putOpt("propertyKey", property.propertyKey);
+                propertyJson.putOpt("propertyName", property.propertyName);
+                propertiesJson.put(propertyJson);
+            }
+            json.put("properties", propertiesJson);
+            return json;
+        }
+    }
+
+    private static class PropertyKeyName {
+        private final String propertyKey;
+        private final String propertyName;
+
+        public PropertyKeyName(String propertyKey, String propertyName) {
+            this.propertyKey = propertyKey;
+            this.propertyName = propertyName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PropertyKeyName that = (PropertyKeyName) o;
+            return (propertyKey == null ? that.propertyKey == null : propertyKey.equals(that.propertyKey))
+                    && (propertyName == null ? that.propertyName == null : propertyName.equals(that.propertyName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = propertyKey != null ? propertyKey.hashCode() : 0;
+            result = 31 * result + (propertyName != null ? propertyName.hashCode() : 0);
+            return result;
+        }
+    }
+}
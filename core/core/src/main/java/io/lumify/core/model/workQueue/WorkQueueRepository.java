@@ -9,13 +9,17 @@ import io.lumify.core.model.notification.SystemNotification;
 import io.lumify.core.model.notification.SystemNotificationRepository;
 import io.lumify.core.model.notification.UserNotification;
 import io.lumify.core.model.notification.UserNotificationRepository;
+import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.user.UserRepository;
 import io.lumify.core.user.User;
 import io.lumify.core.util.ClientApiConverter;
+import io.lumify.core.util.GraphUtil;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.web.clientapi.model.ClientApiWorkspace;
+import io.lumify.web.clientapi.model.SandboxStatus;
 import io.lumify.web.clientapi.model.UserStatus;
+import io.lumify.web.clientapi.model.VisibilityJson;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.securegraph.*;
@@ -29,12 +33,28 @@ public abstract class WorkQueueRepository {
     protected static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(WorkQueueRepository.class);
     public static String GRAPH_PROPERTY_QUEUE_NAME = "graphProperty";
     public static String LONG_RUNNING_PROCESS_QUEUE_NAME = "longRunningProcess";
+    public static final String BROADCAST_ROUTING_KEY_GLOBAL = "global";
+    private static final String BROADCAST_ROUTING_KEY_WORKSPACE_PREFIX = "workspace.";
+    private static final String BROADCAST_ROUTING_KEY_USER_PREFIX = "user.";
     private final Graph graph;
+    private final BroadcastCoalescer broadcastCoalescer;
 
     @Inject
     protected WorkQueueRepository(Graph graph, Configuration configuration) {
         this.graph = graph;
 
+        int coalesceWindowMs = configuration.getInt(Configuration.BROADCAST_COALESCE_WINDOW_MS, Configuration.BROADCAST_COALESCE_WINDOW_MS_DEFAULT);
+        if (coalesceWindowMs > 0) {
+            this.broadcastCoalescer = new BroadcastCoalescer(coalesceWindowMs, new BroadcastConsumer() {
+                @Override
+                public void broadcastReceived(JSONObject json) {
+                    broadcastJson(json);
+                }
+            });
+        } else {
+            this.broadcastCoalescer = null;
+        }
+
         String prefix = configuration.get(Configuration.QUEUE_PREFIX, null);
         if (prefix != null) {
             GRAPH_PROPERTY_QUEUE_NAME = prefix + "-" + GRAPH_PROPERTY_QUEUE_NAME;
@@ -80,6 +100,36 @@ public abstract class WorkQueueRepository {
                                        String workspaceId, String visibilitySource) {
         getGraph().flush();
         checkNotNull(element);
+        JSONObject data = getGraphPropertyQueueJson(element, propertyKey, propertyName, workspaceId, visibilitySource);
+        pushOnQueue(GRAPH_PROPERTY_QUEUE_NAME, FlushFlag.DEFAULT, data);
+
+        broadcastPropertyChange(element, propertyKey, propertyName, workspaceId);
+    }
+
+    /**
+     * Pushes the same property of many elements, flushing the graph once and publishing the messages together
+     * instead of once per element.
+     */
+    public void pushGraphPropertyQueue(final List<? extends Element> elements, String propertyKey, final String propertyName,
+                                       String workspaceId, String visibilitySource) {
+        if (elements.size() == 0) {
+            return;
+        }
+        getGraph().flush();
+        for (Element element : elements) {
+            checkNotNull(element);
+            JSONObject data = getGraphPropertyQueueJson(element, propertyKey, propertyName, workspaceId, visibilitySource);
+            pushOnQueue(GRAPH_PROPERTY_QUEUE_NAME, FlushFlag.NO_FLUSH, data);
+        }
+        flush();
+
+        for (Element element : elements) {
+            broadcastPropertyChange(element, propertyKey, propertyName, workspaceId);
+        }
+    }
+
+    private JSONObject getGraphPropertyQueueJson(Element element, String propertyKey, String propertyName,
+                                                 String workspaceId, String visibilitySource) {
         JSONObject data = new JSONObject();
         if (element instanceof Vertex) {
             data.put("graphVertexId", element.getId());
@@ -95,9 +145,38 @@ public abstract class WorkQueueRepository {
         }
         data.put("propertyKey", propertyKey);
         data.put("propertyName", propertyName);
+        return data;
+    }
+
+    /**
+     * Pushes a single message for many properties of the same name on one element, the graph property runner executes
+     * the workers for each of the properties in turn.
+     */
+    public void pushGraphPropertiesQueue(final Element element, final List<String> propertyKeys, final String propertyName) {
+        getGraph().flush();
+        checkNotNull(element);
+        JSONObject data = new JSONObject();
+        if (element instanceof Vertex) {
+            data.put("graphVertexId", element.getId());
+        } else if (element instanceof Edge) {
+            data.put("graphEdgeId", element.getId());
+        } else {
+            throw new LumifyException("Unexpected element type: " + element.getClass().getName());
+        }
+
+        JSONArray properties = new JSONArray();
+        for (String propertyKey : propertyKeys) {
+            JSONObject property = new JSONObject();
+            property.put("propertyKey", propertyKey);
+            property.put("propertyName", propertyName);
+            properties.put(property);
+        }
+        data.put("properties", properties);
         pushOnQueue(GRAPH_PROPERTY_QUEUE_NAME, FlushFlag.DEFAULT, data);
 
-        broadcastPropertyChange(element, propertyKey, propertyName, workspaceId);
+        for (String propertyKey : propertyKeys) {
+            broadcastPropertyChange(element, propertyKey, propertyName, null);
+        }
     }
 
     public void pushLongRunningProcessQueue(JSONObject queueItem) {
@@ -179,6 +258,11 @@ public abstract class WorkQueueRepository {
     }
 
     protected void broadcastTextUpdated(String vertexId) {
+        if (broadcastCoalescer != null && vertexId != null) {
+            broadcastCoalescer.textUpdated(vertexId, null);
+            return;
+        }
+
         JSONObject dataJson = new JSONObject();
         if (vertexId != null) {
             dataJson.put("graphVertexId", vertexId);
@@ -203,6 +287,18 @@ public abstract class WorkQueueRepository {
         broadcastJson(json);
     }
 
+    /**
+     * Tells web servers that the authorizations or privileges of the user changed so they drop what they cached.
+     */
+    public void pushUserAccessChange(User user) {
+        JSONObject json = new JSONObject();
+        json.put("type", "userAccessChange");
+        JSONObject data = new JSONObject();
+        data.put("userId", user.getUserId());
+        json.put("data", data);
+        broadcastJson(json);
+    }
+
     public void pushUserCurrentWorkspaceChange(User user, String workspaceId) {
         broadcastUserWorkspaceChange(user, workspaceId);
     }
@@ -264,6 +360,36 @@ public abstract class WorkQueueRepository {
         return permissions;
     }
 
+    private JSONObject getPermissionsWithWorkspace(String workspaceId) {
+        JSONObject permissions = new JSONObject();
+        JSONArray workspaces = new JSONArray();
+        workspaces.put(workspaceId);
+        permissions.put("workspaces", workspaces);
+        return permissions;
+    }
+
+    /**
+     * Only changes to properties still sandboxed in the workspace are limited to its users, changes to public or
+     * published properties are broadcast to everyone. Properties that no longer exist, such as deleted ones, fall back
+     * to the sandbox status of the element.
+     */
+    protected boolean isPropertySandboxed(Element element, String propertyKey, String propertyName, String workspaceId) {
+        if (workspaceId == null) {
+            return false;
+        }
+        Property property = null;
+        if (propertyName != null) {
+            property = propertyKey == null ? element.getProperty(propertyName) : element.getProperty(propertyKey, propertyName);
+        }
+        VisibilityJson visibilityJson;
+        if (property != null) {
+            visibilityJson = LumifyProperties.VISIBILITY_JSON.getMetadataValue(property.getMetadata());
+        } else {
+            visibilityJson = LumifyProperties.VISIBILITY_JSON.getPropertyValue(element);
+        }
+        return GraphUtil.getSandboxStatusFromVisibilityJsonString(visibilityJson, workspaceId) == SandboxStatus.PRIVATE;
+    }
+
     public void pushSessionExpiration(String userId, String sessionId) {
         JSONObject json = new JSONObject();
         json.put("type", "sessionExpiration");
@@ -324,6 +450,18 @@ public abstract class WorkQueueRepository {
     }
 
     protected void broadcastPropertyChange(Element element, String propertyKey, String propertyName, String workspaceId) {
+        if (broadcastCoalescer != null) {
+            if (element instanceof Vertex) {
+                boolean sandboxed = isPropertySandboxed(element, propertyKey, propertyName, workspaceId);
+                broadcastCoalescer.propertyChange("graphVertexId", element.getId(), workspaceId, sandboxed, propertyKey, propertyName);
+                return;
+            } else if (element instanceof Edge) {
+                boolean sandboxed = isPropertySandboxed(element, propertyKey, propertyName, workspaceId);
+                broadcastCoalescer.propertyChange("graphEdgeId", element.getId(), workspaceId, sandboxed, propertyKey, propertyName);
+                return;
+            }
+        }
+
         try {
             JSONObject json;
             if (element instanceof Vertex) {
@@ -363,13 +501,17 @@ public abstract class WorkQueueRepository {
     }
 
     protected JSONObject getBroadcastPropertyChangeJson(Vertex graphVertex, String propertyKey, String propertyName, String workspaceId) {
-        // TODO: only broadcast to workspace users if sandboxStatus is PRIVATE
         JSONObject json = new JSONObject();
         json.put("type", "propertyChange");
+        if (isPropertySandboxed(graphVertex, propertyKey, propertyName, workspaceId)) {
+            json.put("permissions", getPermissionsWithWorkspace(workspaceId));
+        }
 
         JSONObject dataJson = new JSONObject();
         dataJson.put("graphVertexId", graphVertex.getId());
         dataJson.putOpt("workspaceId", workspaceId);
+        dataJson.putOpt("propertyKey", propertyKey);
+        dataJson.putOpt("propertyName", propertyName);
 
         json.put("data", dataJson);
 
@@ -377,13 +519,17 @@ public abstract class WorkQueueRepository {
     }
 
     protected JSONObject getBroadcastPropertyChangeJson(Edge edge, String propertyKey, String propertyName, String workspaceId) {
-        // TODO: only broadcast to workspace users if sandboxStatus is PRIVATE
         JSONObject json = new JSONObject();
         json.put("type", "propertyChange");
+        if (isPropertySandboxed(edge, propertyKey, propertyName, workspaceId)) {
+            json.put("permissions", getPermissionsWithWorkspace(workspaceId));
+        }
 
         JSONObject dataJson = new JSONObject();
         dataJson.put("graphEdgeId", edge.getId());
         dataJson.putOpt("workspaceId", workspaceId);
+        dataJson.putOpt("propertyKey", propertyKey);
+        dataJson.putOpt("propertyName", propertyName);
 
         json.put("data", dataJson);
 
@@ -404,14 +550,64 @@ public abstract class WorkQueueRepository {
         return graph;
     }
 
+    /**
+     * Subscribes to every broadcast message regardless of its routing key.
+     */
     public abstract void subscribeToBroadcastMessages(BroadcastConsumer broadcastConsumer);
 
+    /**
+     * Subscribes to global broadcast messages plus messages routed to keys added with {@link #addBroadcastRoute(String)}.
+     * Implementations that cannot route deliver every message.
+     */
+    public void subscribeToRoutedBroadcastMessages(BroadcastConsumer broadcastConsumer) {
+        subscribeToBroadcastMessages(broadcastConsumer);
+    }
+
+    public void addBroadcastRoute(String routingKey) {
+
+    }
+
+    public void removeBroadcastRoute(String routingKey) {
+
+    }
+
+    public static String getWorkspaceBroadcastRoutingKey(String workspaceId) {
+        return BROADCAST_ROUTING_KEY_WORKSPACE_PREFIX + workspaceId;
+    }
+
+    public static String getUserBroadcastRoutingKey(String userId) {
+        return BROADCAST_ROUTING_KEY_USER_PREFIX + userId;
+    }
+
+    /**
+     * Gets the routing key of a broadcast message from its permissions. Messages restricted to a single user are
+     * routed to that user, messages restricted to a single workspace are routed to that workspace and everything else
+     * is global.
+     */
+    public static String getBroadcastRoutingKey(JSONObject json) {
+        JSONObject permissions = json.optJSONObject("permissions");
+        if (permissions == null) {
+            return BROADCAST_ROUTING_KEY_GLOBAL;
+        }
+        JSONArray users = permissions.optJSONArray("users");
+        if (users != null && users.length() == 1) {
+            return getUserBroadcastRoutingKey(users.getString(0));
+        }
+        JSONArray workspaces = permissions.optJSONArray("workspaces");
+        if (users == null && workspaces != null && workspaces.length() == 1) {
+            return getWorkspaceBroadcastRoutingKey(workspaces.getString(0));
+        }
+        return BROADCAST_ROUTING_KEY_GLOBAL;
+    }
+
     public abstract LongRunningProcessMessage getNextLongRunningProcessMessage();
 
     public abstract WorkerSpout createWorkerSpout();
 
     public void shutdown() {
-
+        if (broadcastCoalescer != null) {
+            broadcastCoalescer.shutdown();
+        }
     }
 
     public void broadcastPublishVertexDelete(Vertex vertex) {
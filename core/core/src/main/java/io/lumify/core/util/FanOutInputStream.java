@@ -0,0 +1,315 @@
+package io.lumify.core.util;
+
+import io.lumify.core.metrics.PausableTimerContext;
+import io.lumify.core.metrics.PausableTimerContextAware;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Splits a source stream into several reader streams which share a single ring buffer. This is a replacement
+ * for {@link TeeInputStream} with the same usage: hand each of {@link #getTees()} to a consumer thread and call
+ * {@link #loopUntilTeesAreClosed()} on the producing thread.
+ * <p/>
+ * Each reader keeps its own cursor into the buffer. Readers copy data without holding the lock whenever data is
+ * available, the producer fills the buffer from the source in bulk without holding the lock, and threads only
+ * block (and are only woken) when a reader runs out of data or the producer runs out of space.
+ */
+public class FanOutInputStream {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(FanOutInputStream.class);
+    private static final int DEFAULT_BUFFER_SIZE = 1 * 1024 * 1024;
+    public static final int LOOP_REPORT_INTERVAL = 10 * 1000; // report to the user every 10 seconds that a queue is waiting
+    private final InputStream source;
+    private final Reader[] readers;
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private volatile long writePosition; /* total number of bytes read from the source */
+    private volatile boolean sourceComplete;
+    private volatile IOException sourceError;
+    private volatile boolean producerWaiting;
+    private volatile long producerWakeupPosition; /* readers at or past this position wake a waiting producer */
+
+    public FanOutInputStream(InputStream source, String[] splitNames) {
+        this(source, splitNames, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FanOutInputStream(InputStream source, int splits) {
+        this(source, new String[splits], DEFAULT_BUFFER_SIZE);
+    }
+
+    public FanOutInputStream(InputStream source, int splits, int bufferSize) {
+        this(source, new String[splits], bufferSize);
+    }
+
+    public FanOutInputStream(InputStream source, String[] splitNames, int bufferSize) {
+        this.source = source;
+        this.buffer = new byte[bufferSize];
+        this.writePosition = 0;
+        this.sourceComplete = false;
+        this.readers = new Reader[splitNames.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Reader(splitNames[i]);
+        }
+    }
+
+    public InputStream[] getTees() {
+        return readers;
+    }
+
+    public void close() throws IOException {
+        for (InputStream reader : readers) {
+            reader.close();
+        }
+    }
+
+    public int getMaxNonblockingReadLength(int teeIndex) {
+        return readers[teeIndex].getMaxNonblockingReadLength();
+    }
+
+    /**
+     * Reads the source into the buffer until every reader has been closed.
+     */
+    public void loopUntilTeesAreClosed() throws Exception {
+        long lastReport = System.currentTimeMillis();
+        while (true) {
+            int writeIndex;
+            int writeLength;
+            lock.lock();
+            try {
+                producerWaiting = true;
+                long free;
+                while (true) {
+                    long lowestReadPosition = findLowestReadPosition();
+                    if (lowestReadPosition == Long.MAX_VALUE) {
+                        return;
+                    }
+                    free = buffer.length - (writePosition - lowestReadPosition);
+                    if (!sourceComplete && free > 0) {
+                        break;
+                    }
+                    // wait for a quarter of the buffer to free up rather than waking on every read
+                    producerWakeupPosition = sourceComplete ? Long.MAX_VALUE : writePosition - buffer.length + Math.max(1, buffer.length / 4);
+                    if (findLowestReadPosition() >= producerWakeupPosition) {
+                        continue;
+                    }
+                    spaceAvailable.await(LOOP_REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (LOGGER.isDebugEnabled() && System.currentTimeMillis() > lastReport + LOOP_REPORT_INTERVAL) {
+                        Reader slowestReader = findReaderWithLowestReadPosition();
+                        if (slowestReader != null) {
+                            LOGGER.debug("Waiting for tee: %s (offset: %d)", slowestReader.splitName, slowestReader.position);
+                        }
+                        lastReport = System.currentTimeMillis();
+                    }
+                }
+                writeIndex = (int) (writePosition % buffer.length);
+                writeLength = (int) Math.min(free, buffer.length - writeIndex);
+            } finally {
+                producerWaiting = false;
+                lock.unlock();
+            }
+
+            // the region being written is not visible to any reader until writePosition moves past it
+            int read;
+            try {
+                read = source.read(buffer, writeIndex, writeLength);
+            } catch (IOException ex) {
+                lock.lock();
+                try {
+                    sourceError = ex;
+                    sourceComplete = true;
+                    dataAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                throw ex;
+            }
+
+            lock.lock();
+            try {
+                if (read == -1) {
+                    sourceComplete = true;
+                } else {
+                    writePosition += read;
+                }
+                dataAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long findLowestReadPosition() {
+        long lowestReadPosition = Long.MAX_VALUE;
+        for (Reader reader : readers) {
+            long position = reader.position;
+            if (position < lowestReadPosition) {
+                lowestReadPosition = position;
+            }
+        }
+        return lowestReadPosition;
+    }
+
+    private Reader findReaderWithLowestReadPosition() {
+        Reader readerWithLowestReadPosition = null;
+        for (Reader reader : readers) {
+            if (!reader.closed && (readerWithLowestReadPosition == null || reader.position < readerWithLowestReadPosition.position)) {
+                readerWithLowestReadPosition = reader;
+            }
+        }
+        return readerWithLowestReadPosition;
+    }
+
+    private class Reader extends InputStream implements PausableTimerContextAware {
+        private final String splitName;
+        private final byte[] singleByte = new byte[1];
+        private volatile boolean closed;
+        private volatile long position; /* only written by the reading thread, Long.MAX_VALUE once closed */
+        private PausableTimerContext pausableTimerContext;
+
+        public Reader(String splitName) {
+            this.splitName = splitName;
+            this.closed = false;
+            this.position = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int readLength = read(singleByte, 0, 1);
+            if (readLength == -1) {
+                return -1;
+            }
+            return singleByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            pauseTimer();
+            try {
+                long available = waitForData();
+                if (available <= 0) {
+                    return -1;
+                }
+                int readLength = (int) Math.min(len, available);
+                int readIndex = (int) (position % buffer.length);
+
+                // read from readIndex to end of buffer then wrap to the start of the buffer
+                int partialReadLength = Math.min(buffer.length - readIndex, readLength);
+                System.arraycopy(buffer, readIndex, b, off, partialReadLength);
+                if (readLength > partialReadLength) {
+                    System.arraycopy(buffer, 0, b, off + partialReadLength, readLength - partialReadLength);
+                }
+
+                if (!closed) {
+                    position += readLength;
+                }
+                if (producerWaiting && position >= producerWakeupPosition) {
+                    signalSpaceAvailable();
+                }
+                return readLength;
+            } finally {
+                resumeTimer();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return getMaxNonblockingReadLength();
+        }
+
+        private long waitForData() throws IOException {
+            long available = writePosition - position;
+            if (available > 0 && !closed) {
+                return available;
+            }
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        return -1;
+                    }
+                    available = writePosition - position;
+                    if (available > 0) {
+                        return available;
+                    }
+                    if (sourceError != null) {
+                        throw new IOException("Could not read source stream", sourceError);
+                    }
+                    if (sourceComplete) {
+                        return -1;
+                    }
+                    try {
+                        dataAvailable.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException("Fan out buffer wait failed", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signalSpaceAvailable() {
+            lock.lock();
+            try {
+                spaceAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            LOGGER.debug("Closing tee: " + splitName);
+            try {
+                super.close();
+            } finally {
+                lock.lock();
+                try {
+                    closed = true;
+                    position = Long.MAX_VALUE;
+                    spaceAvailable.signal();
+                    dataAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        public int getMaxNonblockingReadLength() {
+            if (closed) {
+                return 0;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, writePosition - position);
+        }
+
+        @Override
+        public void setPausableTimerContext(PausableTimerContext pausableTimerContext) {
+            this.pausableTimerContext = pausableTimerContext;
+        }
+
+        private void resumeTimer() {
+            if (this.pausableTimerContext != null) {
+                this.pausableTimerContext.resume();
+            }
+        }
+
+        private void pauseTimer() {
+            if (this.pausableTimerContext != null) {
+                this.pausableTimerContext.pause();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.lumify.core.util;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * 64 bit DCT based perceptual hash of an image. Rescaled, recompressed or otherwise visually identical copies of an
+ * image hash to the same or a nearby value, so it can be used to find images which were already OCRed.
+ */
+public class PerceptualHash {
+    private static final int SIZE = 32;
+    private static final int LOW_FREQUENCY_SIZE = 8;
+    private static final double[][] COSINES = new double[SIZE][SIZE];
+
+    static {
+        for (int u = 0; u < SIZE; u++) {
+            for (int x = 0; x < SIZE; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SIZE));
+            }
+        }
+    }
+
+    public static long hash(BufferedImage image) {
+        double[][] pixels = toGrayscale(image);
+        double[][] dct = dct(pixels);
+
+        double[] lowFrequencies = new double[LOW_FREQUENCY_SIZE * LOW_FREQUENCY_SIZE];
+        for (int u = 0; u < LOW_FREQUENCY_SIZE; u++) {
+            for (int v = 0; v < LOW_FREQUENCY_SIZE; v++) {
+                lowFrequencies[u * LOW_FREQUENCY_SIZE + v] = dct[u][v];
+            }
+        }
+
+        // the DC term is the average brightness of the image, leave it out of the average
+        double total = 0;
+        for (int i = 1; i < lowFrequencies.length; i++) {
+            total += lowFrequencies[i];
+        }
+        double average = total / (lowFrequencies.length - 1);
+
+        long hash = 0;
+        for (int i = 0; i < lowFrequencies.length; i++) {
+            if (lowFrequencies[i] > average) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    private static double[][] toGrayscale(BufferedImage image) {
+        BufferedImage scaled = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, SIZE, SIZE, null);
+        } finally {
+            g.dispose();
+        }
+
+        double[][] pixels = new double[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                pixels[y][x] = scaled.getRaster().getSample(x, y, 0);
+            }
+        }
+        return pixels;
+    }
+
+    private static double[][] dct(double[][] pixels) {
+        double[][] result = new double[LOW_FREQUENCY_SIZE][LOW_FREQUENCY_SIZE];
+        for (int u = 0; u < LOW_FREQUENCY_SIZE; u++) {
+            for (int v = 0; v < LOW_FREQUENCY_SIZE; v++) {
+                double sum = 0;
+                for (int y = 0; y < SIZE; y++) {
+                    for (int x = 0; x < SIZE; x++) {
+                        sum += COSINES[u][y] * COSINES[v][x] * pixels[y][x];
+                    }
+                }
+                result[u][v] = sum;
+            }
+        }
+        return result;
+    }
+}
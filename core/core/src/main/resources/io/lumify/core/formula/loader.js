@@ -71,14 +71,14 @@ var timerLoop = makeWindowTimer(this, function () { });
 
 require(['util/vertex/formatters'], function(F) {
     var createFunction = function(name) {
-            return function(json) {
-                 return F.vertex[name](JSON.parse(json));
+            return function(vertex) {
+                 return F.vertex[name](vertex);
             }
         };
 
-    window.evaluateTitleFormulaJson = createFunction('title');
-    window.evaluateTimeFormulaJson = createFunction('time');
-    window.evaluateSubtitleFormulaJson = createFunction('subtitle');
+    window.evaluateTitleFormula = createFunction('title');
+    window.evaluateTimeFormula = createFunction('time');
+    window.evaluateSubtitleFormula = createFunction('subtitle');
 });
 
 timerLoop();
\ No newline at end of file
@@ -19,11 +19,17 @@ import org.securegraph.Visibility;
 import org.securegraph.inmemory.InMemoryAuthorizations;
 import org.securegraph.inmemory.InMemoryGraph;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -167,6 +173,79 @@ public class EntityHighlighterTest {
                 highlightText);
     }
 
+    @Test
+    public void testWriteHighlightedTextRange() throws Exception {
+        String text = "This is a test sentence";
+        List<OffsetItem> offsetItems = new ArrayList<OffsetItem>();
+        offsetItems.add(mockOffsetItem(0, 4, "first"));
+        offsetItems.add(mockOffsetItem(5, 9, "second"));
+        offsetItems.add(mockOffsetItem(15, 23, "third"));
+
+        StringWriter out = new StringWriter();
+        EntityHighlighter.writeHighlightedText(new StringReader(text), offsetItems, 7, 18, out);
+        assertEquals("<span class=\"second\" data-info=\"{}\"> a</span> test <span class=\"third\" data-info=\"{}\">sen</span>", out.toString());
+
+        out = new StringWriter();
+        EntityHighlighter.writeHighlightedText(new StringReader(text), offsetItems, 20, 100, out);
+        assertEquals("<span class=\"third\" data-info=\"{}\">nce</span>", out.toString());
+    }
+
+    @Test
+    public void testWriteHighlightedTextClosesSpansWhenTheTextFailsToRead() throws Exception {
+        List<OffsetItem> offsetItems = new ArrayList<OffsetItem>();
+        offsetItems.add(mockOffsetItem(0, 4, "first"));
+        offsetItems.add(mockOffsetItem(5, 14, "second"));
+        Reader text = new FilterReader(new StringReader("This is a test sentence")) {
+            private int offset;
+
+            @Override
+            public int read(char[] buffer, int off, int len) throws IOException {
+                if (offset >= 7) {
+                    throw new IOException("read failed");
+                }
+                int read = super.read(buffer, off, Math.min(len, 7 - offset));
+                offset += read;
+                return read;
+            }
+        };
+
+        StringWriter out = new StringWriter();
+        try {
+            EntityHighlighter.writeHighlightedText(text, offsetItems, 0, Long.MAX_VALUE, out);
+            fail("expected the read error");
+        } catch (IOException ex) {
+            assertEquals("read failed", ex.getCause().getMessage());
+        }
+        assertEquals("<span class=\"first\" data-info=\"{}\">This</span> <span class=\"second\" data-info=\"{}\">is</span>", out.toString());
+    }
+
+    @Test
+    public void testWriteHighlightedTextDoesNotChangeTheOffsetItems() throws Exception {
+        List<OffsetItem> offsetItems = new ArrayList<OffsetItem>();
+        offsetItems.add(mockOffsetItem(0, 9, "first"));
+        offsetItems.add(mockOffsetItem(5, 14, "overlapping"));
+
+        assertEquals("<span class=\"first\" data-info=\"{}\">This is a</span> test sentence", EntityHighlighter.getHighlightedText("This is a test sentence", offsetItems));
+        assertEquals(2, offsetItems.size());
+    }
+
+    @Test
+    public void testGetHighlightedTextReplacesNonBreakingSpaces() throws Exception {
+        List<OffsetItem> offsetItems = new ArrayList<OffsetItem>();
+        offsetItems.add(mockOffsetItem(0, 3, "first"));
+        assertEquals("<span class=\"first\" data-info=\"{}\">a b</span> &amp;", EntityHighlighter.getHighlightedText("a\u00A0b\u00A0&", offsetItems));
+    }
+
+    private OffsetItem mockOffsetItem(long start, long end, String cssClass) {
+        OffsetItem offsetItem = mock(VertexOffsetItem.class);
+        when(offsetItem.getStart()).thenReturn(start);
+        when(offsetItem.getEnd()).thenReturn(end);
+        when(offsetItem.getCssClasses()).thenReturn(asList(new String[]{cssClass}));
+        when(offsetItem.shouldHighlight()).thenReturn(true);
+        when(offsetItem.getInfoJson()).thenReturn(new JSONObject());
+        return offsetItem;
+    }
+
     private List<String> asList(String[] strings) {
         List<String> results = new ArrayList<String>();
         Collections.addAll(results, strings);
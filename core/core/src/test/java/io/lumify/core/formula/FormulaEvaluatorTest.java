@@ -4,6 +4,8 @@ import io.lumify.core.config.Configuration;
 import io.lumify.core.config.ConfigurationLoader;
 import io.lumify.core.config.HashMapConfigurationLoader;
 import io.lumify.core.model.ontology.OntologyRepository;
+import io.lumify.web.clientapi.model.ClientApiVertex;
+import io.lumify.web.clientapi.model.util.ObjectMapperFactory;
 import org.apache.commons.io.IOUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -12,8 +14,13 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.securegraph.Authorizations;
+import org.securegraph.Property;
 import org.securegraph.Vertex;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -28,7 +35,12 @@ import static org.junit.Assert.assertTrue;
 public class FormulaEvaluatorTest {
 
     private static FormulaEvaluator evaluator;
+    private static Configuration configuration;
+    private static String ontologyJson;
+    private static String configurationJson;
+    private static String vertexJson;
     private static FormulaEvaluator.UserContext userContext;
+    private static final AtomicInteger toClientApiVertexCount = new AtomicInteger();
 
     @Mock
     private static OntologyRepository ontologyRepository;
@@ -37,17 +49,21 @@ public class FormulaEvaluatorTest {
     public static void setUp() throws Exception {
         Map<String, String> map = new HashMap<>();
         ConfigurationLoader configurationLoader = new HashMapConfigurationLoader(map);
-        Configuration configuration = configurationLoader.createConfiguration();
+        configuration = configurationLoader.createConfiguration();
 
         Locale locale = Locale.getDefault();
         String timeZone = TimeZone.getDefault().getDisplayName();
         userContext = new FormulaEvaluator.UserContext(locale, timeZone, null);
 
-        final String ontologyJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("ontology.json"), "utf-8");
-        final String configurationJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("configuration.json"), "utf-8");
-        final String vertexJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("vertex.json"), "utf-8");
+        ontologyJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("ontology.json"), "utf-8");
+        configurationJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("configuration.json"), "utf-8");
+        vertexJson = IOUtils.toString(FormulaEvaluatorTest.class.getResourceAsStream("vertex.json"), "utf-8");
 
-        evaluator = new FormulaEvaluator(configuration, ontologyRepository) {
+        evaluator = createEvaluator(ontologyJson);
+    }
+
+    private static FormulaEvaluator createEvaluator(final String ontologyJson) {
+        return new FormulaEvaluator(configuration, ontologyRepository) {
             @Override
             protected String getOntologyJson() {
                 return ontologyJson;
@@ -59,8 +75,13 @@ public class FormulaEvaluatorTest {
             }
 
             @Override
-            protected String toJson(Vertex vertex, String workspaceId, Authorizations authorizations) {
-                return vertexJson;
+            protected ClientApiVertex toClientApiVertex(Vertex vertex, String workspaceId, Authorizations authorizations) {
+                toClientApiVertexCount.incrementAndGet();
+                try {
+                    return ObjectMapperFactory.getInstance().readValue(vertexJson, ClientApiVertex.class);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Could not read vertex", ex);
+                }
             }
         };
     }
@@ -91,6 +112,62 @@ public class FormulaEvaluatorTest {
         assertEquals("2014-11-20", evaluator.evaluateTimeFormula(null, userContext, null));
     }
 
+    @Test
+    public void testCachesResultsUntilVertexChanges() {
+        InMemoryGraph graph = InMemoryGraph.create();
+        Authorizations authorizations = new InMemoryAuthorizations();
+        Visibility visibility = new Visibility("");
+        Vertex vertex = graph.prepareVertex("v1", visibility)
+                .setProperty("http://lumify.io/dev#titleFormulaEntityPropA", "Prop A Value", visibility)
+                .save(authorizations);
+
+        int count = toClientApiVertexCount.get();
+        assertEquals("Prop A Value, Prop B Value", evaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals("Prop A Value, Prop B Value", evaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals(count + 1, toClientApiVertexCount.get());
+
+        vertex.setProperty("http://lumify.io/dev#titleFormulaEntityPropA", "Changed Value", visibility, authorizations);
+        assertEquals("Prop A Value, Prop B Value", evaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals(count + 2, toClientApiVertexCount.get());
+    }
+
+    @Test
+    public void testCachesResultsUntilEdgeLabelsChange() {
+        String titleFormula = "(prop('http://lumify.io/dev#titleFormulaEntityPropB') || '')";
+        FormulaEvaluator edgeLabelsEvaluator = createEvaluator(ontologyJson.replace(titleFormula, titleFormula + " + vertex.edgeLabels.length"));
+        InMemoryGraph graph = InMemoryGraph.create();
+        Authorizations authorizations = new InMemoryAuthorizations();
+        Visibility visibility = new Visibility("");
+        Vertex vertex = graph.addVertex("v1", visibility, authorizations);
+        Vertex otherVertex = graph.addVertex("v2", visibility, authorizations);
+
+        int count = toClientApiVertexCount.get();
+        assertEquals("Prop A Value, Prop B Value1", edgeLabelsEvaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals("Prop A Value, Prop B Value1", edgeLabelsEvaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals(count + 1, toClientApiVertexCount.get());
+
+        graph.addEdge("e1", vertex, otherVertex, "http://lumify.io/dev#label", visibility, authorizations);
+        edgeLabelsEvaluator.evaluateTitleFormula(vertex, userContext, authorizations);
+        assertEquals(count + 2, toClientApiVertexCount.get());
+    }
+
+    @Test
+    public void testIgnoresEdgeLabelsWhenNoFormulaUsesThem() {
+        InMemoryGraph graph = InMemoryGraph.create();
+        Authorizations authorizations = new InMemoryAuthorizations();
+        Visibility visibility = new Visibility("");
+        Vertex vertex = graph.addVertex("v1", visibility, authorizations);
+        Vertex otherVertex = graph.addVertex("v2", visibility, authorizations);
+
+        int count = toClientApiVertexCount.get();
+        assertEquals("Prop A Value, Prop B Value", evaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals(count + 1, toClientApiVertexCount.get());
+
+        graph.addEdge("e1", vertex, otherVertex, "http://lumify.io/dev#label", visibility, authorizations);
+        assertEquals("Prop A Value, Prop B Value", evaluator.evaluateTitleFormula(vertex, userContext, authorizations));
+        assertEquals(count + 1, toClientApiVertexCount.get());
+    }
+
     @Test
     public void testThreading() throws InterruptedException {
         Thread[] threads = new Thread[4];
@@ -0,0 +1,185 @@
+package io.lumify.core.ingest;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Module;
+import io.lumify.core.bootstrap.InjectHelper;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
+import io.lumify.core.model.workspace.WorkspaceRepository;
+import io.lumify.core.security.DirectVisibilityTranslator;
+import io.lumify.core.util.RowKeyHelper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.securegraph.Authorizations;
+import org.securegraph.Element;
+import org.securegraph.Metadata;
+import org.securegraph.VertexBuilder;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileImportTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private WorkQueueRepository workQueueRepository;
+
+    @Mock
+    private WorkspaceRepository workspaceRepository;
+
+    private InMemoryGraph graph;
+    private Authorizations authorizations;
+    private Map<String, String> config;
+    private List<String> queuedRawVertexIds;
+
+    @Before
+    public void before() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations();
+        config = new HashMap<>();
+        queuedRawVertexIds = new ArrayList<>();
+        final Configuration configuration = new Configuration(null, config);
+        InjectHelper.inject(this, new InjectHelper.ModuleMaker() {
+            @Override
+            public Module createModule() {
+                return new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                    }
+                };
+            }
+
+            @Override
+            public Configuration getConfiguration() {
+                return configuration;
+            }
+        }, configuration);
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                for (Object element : (List) invocation.getArguments()[0]) {
+                    queuedRawVertexIds.add(((Element) element).getId());
+                }
+                return null;
+            }
+        }).when(workQueueRepository).pushGraphPropertyQueue(any(List.class), eq(FileImport.MULTI_VALUE_KEY), eq(LumifyProperties.RAW.getPropertyName()), anyString(), anyString());
+    }
+
+    @After
+    public void after() {
+        InjectHelper.shutdown();
+    }
+
+    @Test
+    public void testImportDirectoryQueuesDuplicates() throws Exception {
+        File directory = createFiles();
+        String existingVertexId = addExistingVertex("ccc");
+
+        createFileImport().importDirectory(directory, true, "", null, null, authorizations);
+
+        assertEquals(3, count(graph.getVertices(authorizations)));
+        List<String> rawVertexIds = getVertexIdsWithContent("aaa");
+        rawVertexIds.add(getVertexIdsWithContent("aaa").get(0));
+        rawVertexIds.addAll(getVertexIdsWithContent("bbb"));
+        rawVertexIds.add(existingVertexId);
+        assertEquals(sorted(rawVertexIds), sorted(queuedRawVertexIds));
+    }
+
+    @Test
+    public void testImportDirectoryQueuesDuplicatesAcrossBatches() throws Exception {
+        config.put(Configuration.FILE_IMPORT_BATCH_SIZE, "1");
+        File directory = createFiles();
+
+        createFileImport().importDirectory(directory, true, "", null, null, authorizations);
+
+        assertEquals(3, count(graph.getVertices(authorizations)));
+        assertEquals(2, Collections.frequency(queuedRawVertexIds, getVertexIdsWithContent("aaa").get(0)));
+        assertEquals(4, queuedRawVertexIds.size());
+    }
+
+    @Test
+    public void testImportDirectoryDoesNotQueueDuplicates() throws Exception {
+        File directory = createFiles();
+        addExistingVertex("ccc");
+
+        createFileImport().importDirectory(directory, false, "", null, null, authorizations);
+
+        assertEquals(3, count(graph.getVertices(authorizations)));
+        List<String> rawVertexIds = getVertexIdsWithContent("aaa");
+        rawVertexIds.addAll(getVertexIdsWithContent("bbb"));
+        assertEquals(sorted(rawVertexIds), sorted(queuedRawVertexIds));
+    }
+
+    private FileImport createFileImport() {
+        return new FileImport(new DirectVisibilityTranslator(), graph, workQueueRepository, workspaceRepository, new Configuration(null, config));
+    }
+
+    /**
+     * Creates a.txt and c.txt with the same content, b.txt and d.txt.
+     */
+    private File createFiles() throws IOException {
+        File directory = temporaryFolder.newFolder("import");
+        FileUtils.writeStringToFile(new File(directory, "a.txt"), "aaa");
+        FileUtils.writeStringToFile(new File(directory, "b.txt"), "bbb");
+        FileUtils.writeStringToFile(new File(directory, "c.txt"), "aaa");
+        FileUtils.writeStringToFile(new File(directory, "d.txt"), "ccc");
+        return directory;
+    }
+
+    private String addExistingVertex(String content) {
+        Visibility visibility = new Visibility("");
+        VertexBuilder vertexBuilder = graph.prepareVertex("existing", visibility);
+        LumifyProperties.CONTENT_HASH.addPropertyValue(vertexBuilder, FileImport.MULTI_VALUE_KEY, RowKeyHelper.buildSHA256KeyString(content.getBytes()), new Metadata(), visibility);
+        vertexBuilder.save(authorizations);
+        graph.flush();
+        return "existing";
+    }
+
+    private List<String> getVertexIdsWithContent(String content) {
+        String hash = RowKeyHelper.buildSHA256KeyString(content.getBytes());
+        List<String> vertexIds = new ArrayList<>();
+        for (Element vertex : graph.getVertices(authorizations)) {
+            if (vertex.getPropertyValues(LumifyProperties.CONTENT_HASH.getPropertyName()).iterator().next().equals(hash)) {
+                vertexIds.add(vertex.getId());
+            }
+        }
+        return vertexIds;
+    }
+
+    private static int count(Iterable<?> iterable) {
+        int count = 0;
+        for (Object ignored : iterable) {
+            count++;
+        }
+        return count;
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
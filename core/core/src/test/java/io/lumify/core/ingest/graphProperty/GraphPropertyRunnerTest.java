@@ -0,0 +1,264 @@
+package io.lumify.core.ingest.graphProperty;
+
+import io.lumify.core.config.Configuration;
+import io.lumify.core.ingest.WorkerSpout;
+import io.lumify.core.ingest.WorkerTuple;
+import io.lumify.core.security.DirectVisibilityTranslator;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.securegraph.Authorizations;
+import org.securegraph.Element;
+import org.securegraph.Property;
+import org.securegraph.VertexBuilder;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GraphPropertyRunnerTest {
+    private static final String PROPERTY_NAME = "name";
+    private static final int SEQUENCE_NUMBER_COUNT = 200;
+    private InMemoryGraph graph;
+    private Authorizations authorizations;
+    private Map<String, String> config;
+
+    @Before
+    public void before() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations();
+        config = new HashMap<>();
+        // the property key of each work item is its sequence number, so the workers can tell the items apart
+        for (int i = 0; i < 20; i++) {
+            VertexBuilder vertexBuilder = graph.prepareVertex("v" + i, new Visibility(""));
+            for (int sequenceNumber = 0; sequenceNumber < SEQUENCE_NUMBER_COUNT; sequenceNumber++) {
+                vertexBuilder.addPropertyValue(Integer.toString(sequenceNumber), PROPERTY_NAME, "value", new Visibility(""));
+            }
+            vertexBuilder.save(authorizations);
+        }
+        graph.flush();
+    }
+
+    @Test
+    public void testLanesNeverShareWorkers() throws Exception {
+        List<TestWorker> workers = new ArrayList<>();
+        GraphPropertyRunner runner = createRunner(4, workers);
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(createItem("v" + (i % 20), i));
+        }
+        TestSpout spout = new TestSpout(runner, items);
+
+        runner.run(spout);
+
+        assertEquals(200, spout.acked.size());
+        assertEquals(0, spout.failed.size());
+        int executeCount = 0;
+        for (TestWorker worker : workers) {
+            assertTrue(worker.maxConcurrentExecutions <= 1);
+            executeCount += worker.sequenceNumbers.size();
+        }
+        assertEquals(200, executeCount);
+    }
+
+    @Test
+    public void testTuplesOfTheSameElementStayInOrder() throws Exception {
+        List<TestWorker> workers = new ArrayList<>();
+        GraphPropertyRunner runner = createRunner(3, workers);
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            items.add(createItem("v1", i));
+        }
+
+        runner.run(new TestSpout(runner, items));
+
+        int workersUsed = 0;
+        for (TestWorker worker : workers) {
+            if (worker.sequenceNumbers.size() == 0) {
+                continue;
+            }
+            workersUsed++;
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, (int) worker.sequenceNumbers.get(i));
+            }
+        }
+        assertEquals(1, workersUsed);
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        config.put(Configuration.GRAPH_PROPERTY_RUNNER_MAX_IN_FLIGHT, "3");
+        List<TestWorker> workers = new ArrayList<>();
+        GraphPropertyRunner runner = createRunner(2, workers);
+        for (TestWorker worker : workers) {
+            worker.sleepMillis = 2;
+        }
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            items.add(createItem("v" + (i % 20), i));
+        }
+        TestSpout spout = new TestSpout(runner, items);
+
+        runner.run(spout);
+
+        assertEquals(40, spout.acked.size());
+        assertTrue("in flight " + spout.maxInFlight, spout.maxInFlight <= 3);
+    }
+
+    @Test
+    public void testFailsTupleWhenWorkerFails() throws Exception {
+        List<TestWorker> workers = new ArrayList<>();
+        GraphPropertyRunner runner = createRunner(2, workers);
+        for (TestWorker worker : workers) {
+            worker.failSequenceNumber = 3;
+        }
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(createItem("v" + i, i));
+        }
+        TestSpout spout = new TestSpout(runner, items);
+
+        runner.run(spout);
+
+        assertEquals(9, spout.acked.size());
+        assertEquals(Arrays.<Object>asList(3), spout.failed);
+    }
+
+    @Test
+    public void testFailsTuplesStillRunningAfterShutdownTimeout() throws Exception {
+        List<TestWorker> workers = new ArrayList<>();
+        GraphPropertyRunner runner = createRunner(2, workers);
+        runner.setLaneShutdownTimeoutMillis(100);
+        CountDownLatch blocked = new CountDownLatch(1);
+        for (TestWorker worker : workers) {
+            worker.blockSequenceNumber = 0;
+            worker.blocked = blocked;
+        }
+        List<JSONObject> items = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            items.add(createItem("v" + i, i));
+        }
+        TestSpout spout = new TestSpout(runner, items);
+        spout.stopWhenEmpty = true;
+
+        try {
+            runner.run(spout);
+        } finally {
+            blocked.countDown();
+        }
+
+        assertTrue("failed " + spout.failed, spout.failed.contains(0));
+        Set<Object> completed = new HashSet<>(spout.acked);
+        completed.addAll(spout.failed);
+        assertEquals(4, completed.size());
+        assertEquals(4, spout.acked.size() + spout.failed.size());
+    }
+
+    private GraphPropertyRunner createRunner(int concurrency, List<TestWorker> workers) {
+        GraphPropertyRunner runner = new GraphPropertyRunner();
+        runner.setGraph(graph);
+        runner.setConfiguration(new Configuration(null, config));
+        runner.setVisibilityTranslator(new DirectVisibilityTranslator());
+        List<List<GraphPropertyThreadedWrapper>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < concurrency; lane++) {
+            TestWorker worker = new TestWorker();
+            workers.add(worker);
+            lanes.add(Collections.singletonList(new GraphPropertyThreadedWrapper(worker)));
+        }
+        runner.prepare(authorizations, lanes);
+        return runner;
+    }
+
+    private JSONObject createItem(String vertexId, int sequenceNumber) {
+        JSONObject json = new JSONObject();
+        json.put("graphVertexId", vertexId);
+        json.put("propertyKey", Integer.toString(sequenceNumber));
+        json.put("propertyName", PROPERTY_NAME);
+        return json;
+    }
+
+    private static class TestSpout extends WorkerSpout {
+        private final GraphPropertyRunner runner;
+        private final Queue<JSONObject> items;
+        private final List<Object> acked = new CopyOnWriteArrayList<>();
+        private final List<Object> failed = new CopyOnWriteArrayList<>();
+        private int inFlight;
+        private int maxInFlight;
+        private boolean stopWhenEmpty;
+
+        public TestSpout(GraphPropertyRunner runner, List<JSONObject> items) {
+            this.runner = runner;
+            this.items = new LinkedList<>(items);
+        }
+
+        @Override
+        public WorkerTuple nextTuple() throws Exception {
+            JSONObject json = items.poll();
+            if (json == null) {
+                if (inFlight == 0 || stopWhenEmpty) {
+                    runner.stop();
+                }
+                Thread.sleep(1);
+                return null;
+            }
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+            return new GraphPropertyWorkerTuple(Integer.parseInt(json.getString("propertyKey")), json);
+        }
+
+        @Override
+        public void ack(Object msgId) {
+            inFlight--;
+            acked.add(msgId);
+        }
+
+        @Override
+        public void fail(Object msgId) {
+            inFlight--;
+            failed.add(msgId);
+        }
+    }
+
+    private static class TestWorker extends GraphPropertyWorker {
+        private final AtomicInteger concurrentExecutions = new AtomicInteger();
+        private final List<Integer> sequenceNumbers = new CopyOnWriteArrayList<>();
+        private volatile int maxConcurrentExecutions;
+        private int sleepMillis;
+        private int failSequenceNumber = -1;
+        private int blockSequenceNumber = -1;
+        private CountDownLatch blocked;
+
+        @Override
+        public void execute(InputStream in, GraphPropertyWorkData data) throws Exception {
+            int executions = concurrentExecutions.incrementAndGet();
+            maxConcurrentExecutions = Math.max(maxConcurrentExecutions, executions);
+            try {
+                int sequenceNumber = Integer.parseInt(data.getProperty().getKey());
+                if (sleepMillis > 0) {
+                    Thread.sleep(sleepMillis);
+                }
+                if (sequenceNumber == blockSequenceNumber) {
+                    blocked.await();
+                }
+                sequenceNumbers.add(sequenceNumber);
+                if (sequenceNumber == failSequenceNumber) {
+                    throw new Exception("failed " + sequenceNumber);
+                }
+            } finally {
+                concurrentExecutions.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isHandled(Element element, Property property) {
+            return property != null;
+        }
+    }
+}
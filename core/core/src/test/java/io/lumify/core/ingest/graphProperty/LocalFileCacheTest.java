@@ -0,0 +1,145 @@
+package io.lumify.core.ingest.graphProperty;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.securegraph.property.StreamingPropertyValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LocalFileCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testSameKeySharesFile() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 1000);
+        LocalFileCache.CachedFile first = cache.acquire("v1|raw", "mp4", createValue("abc"));
+        LocalFileCache.CachedFile second = cache.acquire("v1|raw", "mp4", createValue("not read"));
+
+        assertEquals(first.getFile(), second.getFile());
+        assertEquals("abc", FileUtils.readFileToString(second.getFile()));
+        assertTrue(first.getFile().getName().endsWith(".mp4"));
+        assertEquals(3, cache.getTotalSizeBytes());
+
+        first.close();
+        second.close();
+        assertTrue(first.getFile().exists());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 10);
+        LocalFileCache.CachedFile a = cache.acquire("a", "data", createValue("aaaaa"));
+        a.close();
+        LocalFileCache.CachedFile b = cache.acquire("b", "data", createValue("bbbbb"));
+        b.close();
+        cache.acquire("a", "data", createValue("aaaaa")).close();
+
+        LocalFileCache.CachedFile c = cache.acquire("c", "data", createValue("ccccc"));
+        assertTrue(a.getFile().exists());
+        assertFalse(b.getFile().exists());
+        assertTrue(c.getFile().exists());
+        assertEquals(10, cache.getTotalSizeBytes());
+        c.close();
+    }
+
+    @Test
+    public void testDoesNotEvictFilesInUse() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 0);
+        LocalFileCache.CachedFile a = cache.acquire("a", "data", createValue("aaaaa"));
+        assertTrue(a.getFile().exists());
+
+        a.close();
+        assertFalse(a.getFile().exists());
+        assertEquals(0, cache.getTotalSizeBytes());
+    }
+
+    @Test
+    public void testDoesNotShareFilesWhenCachingIsDisabled() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 0);
+        LocalFileCache.CachedFile first = cache.acquire("a", "data", createValue("aaaaa"));
+        LocalFileCache.CachedFile second = cache.acquire("a", "data", createValue("bbbbb"));
+        LocalFileCache.CachedFile byContent = cache.acquireByContent("data", createValue("aaaaa"));
+
+        assertNotEquals(first.getFile(), second.getFile());
+        assertNotEquals(first.getFile(), byContent.getFile());
+        assertEquals("bbbbb", FileUtils.readFileToString(second.getFile()));
+        assertTrue(first.getFile().getName().endsWith(".data"));
+        assertEquals(0, cache.getTotalSizeBytes());
+
+        first.close();
+        second.close();
+        byContent.close();
+        assertFalse(first.getFile().exists());
+        assertFalse(second.getFile().exists());
+        assertFalse(byContent.getFile().exists());
+        cache.close();
+    }
+
+    @Test
+    public void testReusesFilesFromPreviousRun() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 1000);
+        cache.acquire("a", "data", createValue("aaaaa")).close();
+        cache.close();
+
+        LocalFileCache reopenedCache = new LocalFileCache(directory, 1000);
+        assertEquals(5, reopenedCache.getTotalSizeBytes());
+        LocalFileCache.CachedFile a = reopenedCache.acquire("a", "data", createValue("not read"));
+        assertEquals("aaaaa", FileUtils.readFileToString(a.getFile()));
+        a.close();
+        reopenedCache.close();
+    }
+
+    @Test
+    public void testOpenCachesDoNotShareFiles() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 1000);
+        cache.acquire("a", "data", createValue("aaaaa")).close();
+
+        LocalFileCache otherCache = new LocalFileCache(directory, 0);
+        assertEquals(0, otherCache.getTotalSizeBytes());
+        LocalFileCache.CachedFile a = cache.acquire("a", "data", createValue("not read"));
+        assertTrue(a.getFile().exists());
+        assertEquals("aaaaa", FileUtils.readFileToString(a.getFile()));
+        a.close();
+        cache.close();
+        otherCache.close();
+    }
+
+    @Test
+    public void testAcquireByContent() throws IOException {
+        LocalFileCache cache = new LocalFileCache(directory, 1000);
+        LocalFileCache.CachedFile first = cache.acquireByContent("data", createValue("abc"));
+        LocalFileCache.CachedFile second = cache.acquireByContent("data", createValue("abc"));
+        LocalFileCache.CachedFile changed = cache.acquireByContent("data", createValue("abd"));
+
+        assertEquals(first.getFile(), second.getFile());
+        assertNotEquals(first.getFile(), changed.getFile());
+        assertEquals("abd", FileUtils.readFileToString(changed.getFile()));
+        assertEquals(6, cache.getTotalSizeBytes());
+        assertEquals(3, first.getFile().getParentFile().listFiles().length);
+        first.close();
+        second.close();
+        changed.close();
+        cache.close();
+    }
+
+    private StreamingPropertyValue createValue(String data) {
+        return new StreamingPropertyValue(new ByteArrayInputStream(data.getBytes()), byte[].class, data.length());
+    }
+}
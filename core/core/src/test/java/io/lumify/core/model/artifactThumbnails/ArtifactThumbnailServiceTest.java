@@ -0,0 +1,114 @@
+package io.lumify.core.model.artifactThumbnails;
+
+import io.lumify.core.config.Configuration;
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.user.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.securegraph.Authorizations;
+import org.securegraph.Vertex;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+import org.securegraph.property.StreamingPropertyValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ArtifactThumbnailServiceTest {
+    @Mock
+    private ArtifactThumbnailRepository artifactThumbnailRepository;
+
+    @Mock
+    private User user;
+
+    private InMemoryGraph graph;
+    private Authorizations authorizations;
+    private ArtifactThumbnailService artifactThumbnailService;
+
+    @Before
+    public void before() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations();
+        artifactThumbnailService = new ArtifactThumbnailService(artifactThumbnailRepository, new Configuration(null, new HashMap()));
+    }
+
+    @Test
+    public void testConcurrentRequestsCreateOnce() throws Exception {
+        final Vertex vertex = createImageVertex("v1");
+        final CountDownLatch createStarted = new CountDownLatch(1);
+        final CountDownLatch releaseCreate = new CountDownLatch(1);
+        when(artifactThumbnailRepository.createThumbnail(eq(vertex), eq("raw"), any(InputStream.class), any(int[].class), eq(user))).thenAnswer(new Answer<ArtifactThumbnail>() {
+            @Override
+            public ArtifactThumbnail answer(InvocationOnMock invocation) throws Throwable {
+                createStarted.countDown();
+                releaseCreate.await();
+                return new ArtifactThumbnail(new byte[]{1, 2, 3}, 0, "jpg");
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<ArtifactThumbnail>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(new Callable<ArtifactThumbnail>() {
+                    @Override
+                    public ArtifactThumbnail call() throws Exception {
+                        return artifactThumbnailService.getThumbnail(vertex, "raw", 150, 150, user);
+                    }
+                }));
+            }
+            assertTrue(createStarted.await(10, TimeUnit.SECONDS));
+            releaseCreate.countDown();
+
+            ArtifactThumbnail thumbnail = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<ArtifactThumbnail> future : futures) {
+                assertSame(thumbnail, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNotNull(artifactThumbnailService.getThumbnail(vertex, "raw", 150, 150, user));
+        verify(artifactThumbnailRepository, times(1)).getThumbnail("v1", "raw", 150, 150, user);
+        verify(artifactThumbnailRepository, times(1)).createThumbnail(eq(vertex), eq("raw"), any(InputStream.class), any(int[].class), eq(user));
+    }
+
+    @Test
+    public void testStoredThumbnailIsNotCreated() throws Exception {
+        Vertex vertex = createImageVertex("v1");
+        ArtifactThumbnail storedThumbnail = new ArtifactThumbnail(new byte[]{1}, 0, "png");
+        when(artifactThumbnailRepository.getThumbnail("v1", "raw", 800, 800, user)).thenReturn(storedThumbnail);
+
+        assertSame(storedThumbnail, artifactThumbnailService.getThumbnail(vertex, "raw", 800, 800, user));
+        verify(artifactThumbnailRepository, never()).createThumbnail(any(Vertex.class), any(String.class), any(InputStream.class), any(int[].class), any(User.class));
+    }
+
+    @Test
+    public void testNoRawProperty() {
+        Vertex vertex = graph.addVertex("v2", new Visibility(""), authorizations);
+        assertNull(artifactThumbnailService.getThumbnail(vertex, "raw", 150, 150, user));
+    }
+
+    private Vertex createImageVertex(String vertexId) {
+        Vertex vertex = graph.addVertex(vertexId, new Visibility(""), authorizations);
+        StreamingPropertyValue raw = new StreamingPropertyValue(new ByteArrayInputStream(new byte[]{0}), byte[].class);
+        LumifyProperties.RAW.setProperty(vertex, raw, new Visibility(""), authorizations);
+        return graph.getVertex(vertexId, authorizations);
+    }
+}
@@ -0,0 +1,124 @@
+package io.lumify.core.model.longRunningProcess;
+
+import io.lumify.core.exception.LumifyException;
+import org.junit.Before;
+import org.junit.Test;
+import org.securegraph.*;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BidirectionalPathFinderTest {
+    private InMemoryGraph graph;
+    private Authorizations authorizations;
+    private Visibility visibility;
+    private List<Double> progress;
+    private BidirectionalPathFinder.ProgressListener progressListener;
+    private int checksBeforeCancel;
+
+    @Before
+    public void before() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations();
+        visibility = new Visibility("");
+        progress = new ArrayList<>();
+        checksBeforeCancel = Integer.MAX_VALUE;
+        progressListener = new BidirectionalPathFinder.ProgressListener() {
+            @Override
+            public void progress(double progressPercent, String message) {
+                progress.add(progressPercent);
+            }
+
+            @Override
+            public void checkCanceled() {
+                if (checksBeforeCancel-- <= 0) {
+                    throw new LongRunningProcessCanceledException("test", "Canceled");
+                }
+            }
+        };
+
+        // a - b - c - d - e, with a shortcut a - f - d, a direct edge a - e and a branch b - g
+        for (String id : new String[]{"a", "b", "c", "d", "e", "f", "g"}) {
+            graph.addVertex(id, visibility, authorizations);
+        }
+        addEdge("a", "b");
+        addEdge("b", "c");
+        addEdge("d", "c");
+        addEdge("d", "e");
+        addEdge("a", "f");
+        addEdge("f", "d");
+        addEdge("e", "a");
+        addEdge("b", "g");
+        graph.flush();
+    }
+
+    @Test
+    public void testFindsAllSimplePathsWithinHops() {
+        BidirectionalPathFinder pathFinder = new BidirectionalPathFinder(graph, 1000, 60000);
+
+        assertEquals(toSet("a,e"), toStrings(pathFinder.findPaths("a", "e", 2, progressListener, authorizations)));
+        assertEquals(toSet("a,e", "a,f,d,e"), toStrings(pathFinder.findPaths("a", "e", 3, progressListener, authorizations)));
+        assertEquals(toSet("a,e", "a,f,d,e", "a,b,c,d,e"), toStrings(pathFinder.findPaths("a", "e", 4, progressListener, authorizations)));
+        assertEquals(toSet("c,b,a,e", "c,d,e", "c,b,a,f,d,e", "c,d,f,a,e"), toStrings(pathFinder.findPaths("c", "e", 5, progressListener, authorizations)));
+        assertEquals(toSet(), toStrings(pathFinder.findPaths("g", "e", 2, progressListener, authorizations)));
+    }
+
+    @Test
+    public void testReportsProgress() {
+        BidirectionalPathFinder pathFinder = new BidirectionalPathFinder(graph, 1000, 60000);
+        pathFinder.findPaths("a", "e", 4, progressListener, authorizations);
+
+        assertEquals(0.0, progress.get(0), 0.0001);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(0.8, progress.get(progress.size() - 1), 0.0001);
+    }
+
+    @Test(expected = LumifyException.class)
+    public void testGivesUpOverMemoryBudget() {
+        BidirectionalPathFinder pathFinder = new BidirectionalPathFinder(graph, 5, 60000);
+        pathFinder.findPaths("a", "e", 4, progressListener, authorizations);
+    }
+
+    @Test
+    public void testStopsWithinALevelWhenCanceled() {
+        BidirectionalPathFinder pathFinder = new BidirectionalPathFinder(graph, 1000, 60000);
+        checksBeforeCancel = 2;
+        try {
+            pathFinder.findPaths("b", "e", 4, progressListener, authorizations);
+            fail("expected the search to be canceled");
+        } catch (LongRunningProcessCanceledException ex) {
+            // b and e are expanded, then the search is canceled on the first of e's neighbors d and a
+            assertEquals(Arrays.asList(0.0, 0.2, 0.4), progress);
+        }
+    }
+
+    private void addEdge(String outVertexId, String inVertexId) {
+        graph.addEdge(outVertexId + inVertexId, graph.getVertex(outVertexId, authorizations), graph.getVertex(inVertexId, authorizations), "label", visibility, authorizations);
+    }
+
+    private static Set<String> toStrings(List<Path> paths) {
+        Set<String> results = new HashSet<>();
+        for (Path path : paths) {
+            StringBuilder result = new StringBuilder();
+            for (String vertexId : path) {
+                if (result.length() > 0) {
+                    result.append(',');
+                }
+                result.append(vertexId);
+            }
+            assertTrue("duplicate path " + result, results.add(result.toString()));
+        }
+        return results;
+    }
+
+    private static Set<String> toSet(String... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+}
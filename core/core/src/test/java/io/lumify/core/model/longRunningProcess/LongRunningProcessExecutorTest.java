@@ -0,0 +1,205 @@
+package io.lumify.core.model.longRunningProcess;
+
+import io.lumify.core.config.Configuration;
+import io.lumify.core.metrics.JmxMetricsManager;
+import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongRunningProcessExecutorTest {
+    @Mock
+    private LongRunningProcessRunner longRunningProcessRunner;
+
+    @Mock
+    private LongRunningProcessRepository longRunningProcessRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private Map<String, String> config;
+    private LongRunningProcessProgressTracker progressTracker;
+    private LongRunningProcessExecutor longRunningProcessExecutor;
+    private CountDownLatch blockerLatch;
+    private CountDownLatch blockerStartedLatch;
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<String, String> canceledReasons = Collections.synchronizedMap(new HashMap<String, String>());
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void before() {
+        config = new HashMap<>();
+        config.put(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_CANCEL_CHECK_INTERVAL_MS, "10");
+        config.put(Configuration.LONG_RUNNING_PROCESS_TYPE_PREFIX + "index.lane", "batch");
+        config.put(Configuration.LONG_RUNNING_PROCESS_TYPE_PREFIX + "slow.timeoutSeconds", "0");
+        blockerLatch = new CountDownLatch(1);
+        blockerStartedLatch = new CountDownLatch(1);
+
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                JSONObject item = (JSONObject) invocation.getArguments()[0];
+                String id = item.getString("id");
+                if (id.equals("blocker")) {
+                    blockerStartedLatch.countDown();
+                    blockerLatch.await(5, TimeUnit.SECONDS);
+                } else if (item.getString("type").equals("slow")) {
+                    long endTime = System.currentTimeMillis() + 5000;
+                    while (progressTracker.getCanceledReason(id) == null && System.currentTimeMillis() < endTime) {
+                        Thread.sleep(5);
+                    }
+                    canceledReasons.put(id, progressTracker.getCanceledReason(id));
+                }
+                processed.add(id);
+                return null;
+            }
+        }).when(longRunningProcessRunner).process(any(JSONObject.class));
+    }
+
+    private void prepare(int threadCount) {
+        Configuration configuration = new Configuration(null, config);
+        progressTracker = new LongRunningProcessProgressTracker(configuration);
+        longRunningProcessExecutor = new LongRunningProcessExecutor();
+        longRunningProcessExecutor.setLongRunningProcessRunner(longRunningProcessRunner);
+        longRunningProcessExecutor.setLongRunningProcessRepository(longRunningProcessRepository);
+        longRunningProcessExecutor.setProgressTracker(progressTracker);
+        longRunningProcessExecutor.setUserRepository(userRepository);
+        longRunningProcessExecutor.setConfiguration(configuration);
+        longRunningProcessExecutor.setMetricsManager(new JmxMetricsManager());
+        longRunningProcessExecutor.prepare(config, threadCount);
+    }
+
+    @Test
+    public void testRunsInteractiveFirstAndUsersInTurn() throws Exception {
+        prepare(1);
+        submit("blocker", "userA", "quick");
+        assertTrue(blockerStartedLatch.await(5, TimeUnit.SECONDS));
+        CountDownLatch done = submit("index1", "userA", "index");
+        submit("a1", "userA", "quick");
+        submit("a2", "userA", "quick");
+        submit("b1", "userB", "quick");
+        submit("a3", "userA", "quick");
+        blockerLatch.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker", "a1", "b1", "a2", "a3", "index1"), processed);
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testKeepsOneThreadFreeOfBatchProcesses() throws Exception {
+        config.put(Configuration.LONG_RUNNING_PROCESS_TYPE_PREFIX + "blocker.lane", "batch");
+        prepare(2);
+        submit("blocker", "userA", "blocker");
+        assertTrue(blockerStartedLatch.await(5, TimeUnit.SECONDS));
+        CountDownLatch indexDone = submit("index1", "userA", "index");
+        CountDownLatch quickDone = submit("p1", "userB", "quick");
+
+        assertTrue(quickDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1"), processed);
+        blockerLatch.countDown();
+        assertTrue(indexDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1", "blocker", "index1"), processed);
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testRunsBatchProcessesOnASingleThread() throws Exception {
+        prepare(1);
+        CountDownLatch done = submit("index1", "userA", "index");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("index1"), processed);
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testSkipsCanceledQueuedProcess() throws Exception {
+        prepare(1);
+        submit("blocker", "userA", "quick");
+        CountDownLatch done = submit("p1", "userA", "quick");
+        progressTracker.cancel("p1", "Canceled");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        verify(longRunningProcessRunner).skipCanceled(any(JSONObject.class), eq("Canceled"));
+        assertFalse(processed.contains("p1"));
+        blockerLatch.countDown();
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testCancelsProcessPastTimeout() throws Exception {
+        prepare(2);
+        CountDownLatch done = submit("p1", "userA", "slow");
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("Timed out after 0 seconds", canceledReasons.get("p1"));
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testRunsFindPathInTheBatchLane() throws Exception {
+        prepare(2);
+        submit("blocker", "userA", "findPath");
+        assertTrue(blockerStartedLatch.await(5, TimeUnit.SECONDS));
+        CountDownLatch findPathDone = submit("p1", "userB", "findPath");
+        CountDownLatch quickDone = submit("q1", "userB", "quick");
+
+        assertTrue(quickDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("q1"), processed);
+        blockerLatch.countDown();
+        assertTrue(findPathDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("q1", "blocker", "p1"), processed);
+        longRunningProcessExecutor.shutdown();
+    }
+
+    @Test
+    public void testFailsProcessesQueuedAtOrAfterShutdown() throws Exception {
+        prepare(1);
+        submit("blocker", "userA", "quick");
+        assertTrue(blockerStartedLatch.await(5, TimeUnit.SECONDS));
+        CountDownLatch queuedDone = submit("q1", "userA", "quick");
+
+        longRunningProcessExecutor.shutdown();
+        CountDownLatch lateDone = submit("q2", "userA", "quick");
+        assertTrue(queuedDone.await(5, TimeUnit.SECONDS));
+        assertTrue(lateDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("q1", "q2"), failed);
+        blockerLatch.countDown();
+    }
+
+    private CountDownLatch submit(final String id, String userId, String type) throws InterruptedException {
+        JSONObject item = new JSONObject();
+        item.put("id", id);
+        item.put("userId", userId);
+        item.put("type", type);
+        final CountDownLatch done = new CountDownLatch(1);
+        longRunningProcessExecutor.submit(new WorkQueueRepository.LongRunningProcessMessage(item) {
+            @Override
+            public void complete(Throwable ex) {
+                if (ex != null) {
+                    failed.add(id);
+                }
+                done.countDown();
+            }
+        });
+        return done;
+    }
+}
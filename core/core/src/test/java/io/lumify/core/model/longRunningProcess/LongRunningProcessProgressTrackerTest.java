@@ -0,0 +1,50 @@
+package io.lumify.core.model.longRunningProcess;
+
+import io.lumify.core.config.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class LongRunningProcessProgressTrackerTest {
+    private LongRunningProcessProgressTracker progressTracker;
+
+    @Before
+    public void before() {
+        progressTracker = new LongRunningProcessProgressTracker(new Configuration(null, new HashMap()));
+    }
+
+    @Test
+    public void testSavesAtMostOncePerInterval() {
+        assertTrue(progressTracker.update("p1", 0.0, "searching", 1000));
+        assertFalse(progressTracker.update("p1", 0.5, "searching", 1500));
+        assertEquals(0.5, progressTracker.getProgress("p1").getProgressPercent(), 0.0001);
+        assertTrue(progressTracker.update("p1", 0.6, "searching", 2000));
+        assertFalse(progressTracker.update("p1", 0.7, "searching", 2999));
+    }
+
+    @Test
+    public void testSkipsUnchangedProgress() {
+        assertTrue(progressTracker.update("p1", 0.5, "searching", 1000));
+        assertFalse(progressTracker.update("p1", 0.505, "searching", 5000));
+        assertTrue(progressTracker.update("p1", 0.505, "loading", 6000));
+        assertTrue(progressTracker.update("p1", 0.6, "loading", 7000));
+    }
+
+    @Test
+    public void testAlwaysSavesFinishedProgress() {
+        assertTrue(progressTracker.update("p1", 0.5, "searching", 1000));
+        assertTrue(progressTracker.update("p1", 1.0, "done", 1001));
+    }
+
+    @Test
+    public void testTracksProcessesSeparately() {
+        assertTrue(progressTracker.update("p1", 0.5, "searching", 1000));
+        assertTrue(progressTracker.update("p2", 0.5, "searching", 1001));
+        progressTracker.remove("p1");
+        assertNull(progressTracker.getProgress("p1"));
+        assertEquals("searching", progressTracker.getProgress("p2").getMessage());
+    }
+}
@@ -0,0 +1,141 @@
+package io.lumify.core.model.termMention;
+
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.core.model.user.AuthorizationRepository;
+import io.lumify.core.security.DirectVisibilityTranslator;
+import io.lumify.core.security.VisibilityTranslator;
+import io.lumify.web.clientapi.model.VisibilityJson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.securegraph.Authorizations;
+import org.securegraph.Vertex;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TermMentionIndexTest {
+    private static final String PROPERTY_KEY = "pk";
+    private static final String PERSON_IRI = "http://lumify.io/test/person";
+
+    @Mock
+    private AuthorizationRepository authorizationRepository;
+
+    private InMemoryGraph graph;
+    private Authorizations authorizations;
+    private Visibility visibility;
+    private VisibilityTranslator visibilityTranslator = new DirectVisibilityTranslator();
+    private TermMentionRepository termMentionRepository;
+
+    @Before
+    public void before() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations(TermMentionRepository.VISIBILITY_STRING);
+        visibility = new Visibility("");
+        when(authorizationRepository.createAuthorizations(any(Authorizations.class), anyString())).thenReturn(authorizations);
+        termMentionRepository = new TermMentionRepository(graph, authorizationRepository);
+    }
+
+    @Test
+    public void testSaveAndRemove() {
+        Vertex sourceVertex = graph.addVertex("source", visibility, authorizations);
+        Vertex resolvedVertex = graph.addVertex("joe", visibility, authorizations);
+        Vertex joe = createTermMention(sourceVertex, "joe", 18, 21, resolvedVertex);
+        createTermMention(sourceVertex, "paris", 5, 10, null);
+
+        List<IndexedTermMention> termMentions = termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations);
+        assertEquals(2, termMentions.size());
+        assertEquals("paris", termMentions.get(0).getTitle());
+        assertEquals(5, termMentions.get(0).getStart());
+        assertEquals(10, termMentions.get(0).getEnd());
+        assertNull(termMentions.get(0).getResolvedToVertexId());
+        assertEquals("joe", termMentions.get(1).getTitle());
+        assertEquals(joe.getId(), termMentions.get(1).getId());
+        assertEquals("source", termMentions.get(1).getSourceVertexId());
+        assertEquals(PERSON_IRI, termMentions.get(1).getConceptIri());
+        assertEquals("joe", termMentions.get(1).getResolvedToVertexId());
+        assertEquals(TermMentionFor.VERTEX, termMentions.get(1).getTermMentionFor());
+        assertEquals("termMention", termMentions.get(1).getVisibility().getVisibilityString());
+
+        assertNull(termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", "other", authorizations));
+
+        termMentionRepository.delete(graph.getVertex(joe.getId(), authorizations), authorizations);
+        termMentions = termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations);
+        assertEquals(1, termMentions.size());
+        assertEquals("paris", termMentions.get(0).getTitle());
+    }
+
+    @Test
+    public void testIndexesExistingTermMentions() {
+        Vertex sourceVertex = graph.addVertex("source", visibility, authorizations);
+        createTermMention(sourceVertex, "joe", 18, 21, null);
+        LumifyProperties.TERM_MENTION_INDEX.removeProperty(sourceVertex, "TM_-" + PROPERTY_KEY + "-18-21-test", authorizations);
+        LumifyProperties.TERM_MENTION_INDEXED.removeProperty(sourceVertex, PROPERTY_KEY, authorizations);
+        assertNull(termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations));
+
+        createTermMention(graph.getVertex("source", authorizations), "paris", 5, 10, null);
+        List<IndexedTermMention> termMentions = termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations);
+        assertEquals(2, termMentions.size());
+        assertEquals("paris", termMentions.get(0).getTitle());
+        assertEquals("joe", termMentions.get(1).getTitle());
+    }
+
+    @Test
+    public void testBatch() {
+        Vertex sourceVertex = graph.addVertex("source", visibility, authorizations);
+        createTermMention(sourceVertex, "joe", 18, 21, null);
+        LumifyProperties.TERM_MENTION_INDEX.removeProperty(sourceVertex, "TM_-" + PROPERTY_KEY + "-18-21-test", authorizations);
+        LumifyProperties.TERM_MENTION_INDEXED.removeProperty(sourceVertex, PROPERTY_KEY, authorizations);
+        sourceVertex = graph.getVertex("source", authorizations);
+
+        TermMentionIndex.Batch batch = new TermMentionIndex.Batch(sourceVertex);
+        new TermMentionBuilder()
+                .sourceVertex(sourceVertex)
+                .propertyKey(PROPERTY_KEY)
+                .start(5)
+                .end(10)
+                .title("paris")
+                .conceptIri(PERSON_IRI)
+                .visibilityJson(new VisibilityJson())
+                .process("test")
+                .indexBatch(batch)
+                .save(graph, visibilityTranslator, authorizations);
+        graph.flush();
+        assertNull(termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations));
+
+        batch.save(authorizations);
+        graph.flush();
+        List<IndexedTermMention> termMentions = termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey("source", PROPERTY_KEY, authorizations);
+        assertEquals(2, termMentions.size());
+        assertEquals("paris", termMentions.get(0).getTitle());
+        assertEquals("joe", termMentions.get(1).getTitle());
+    }
+
+    private Vertex createTermMention(Vertex sourceVertex, String title, long start, long end, Vertex resolvedToVertex) {
+        TermMentionBuilder termMentionBuilder = new TermMentionBuilder()
+                .sourceVertex(sourceVertex)
+                .propertyKey(PROPERTY_KEY)
+                .start(start)
+                .end(end)
+                .title(title)
+                .conceptIri(PERSON_IRI)
+                .visibilityJson(new VisibilityJson())
+                .process("test");
+        if (resolvedToVertex != null) {
+            termMentionBuilder.resolvedTo(resolvedToVertex, null);
+        }
+        Vertex termMention = termMentionBuilder.save(graph, visibilityTranslator, authorizations);
+        graph.flush();
+        return termMention;
+    }
+}
@@ -0,0 +1,204 @@
+package io.lumify.core.model.user;
+
+import io.lumify.core.config.Configuration;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.*;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserSessionCounterRepositoryTest {
+    private Map<String, byte[]> zooKeeperNodes;
+    private Map<String, CuratorFramework> zooKeeperNodeOwners;
+    private Configuration configuration;
+
+    @Before
+    public void before() {
+        zooKeeperNodes = new TreeMap<>();
+        zooKeeperNodeOwners = new HashMap<>();
+        configuration = new Configuration(null, new HashMap<String, String>());
+    }
+
+    @Test
+    public void testJoinAndLeave() throws Exception {
+        UserSessionCounterRepository node = createWebNode();
+
+        assertEquals(1, node.incrementAndGet("u1"));
+        assertEquals(2, node.incrementAndGet("u1"));
+        assertEquals(1, node.incrementAndGet("u2"));
+        assertEquals(1, node.decrementAndGet("u1"));
+        assertEquals(0, node.decrementAndGet("u1"));
+        assertEquals(0, node.decrementAndGet("u1"));
+        assertEquals(1, node.incrementAndGet("u1"));
+        assertEquals(1, node.getSessionCount("u2"));
+    }
+
+    @Test
+    public void testAggregatesCountsAcrossWebNodes() throws Exception {
+        UserSessionCounterRepository node1 = createWebNode();
+        UserSessionCounterRepository node2 = createWebNode();
+        node1.incrementAndGet("u1");
+        node1.incrementAndGet("u1");
+        node2.incrementAndGet("u1");
+        node2.incrementAndGet("u2");
+
+        node1.gossip();
+        node2.gossip();
+        node1.gossip();
+
+        assertEquals(3, node1.getSessionCount("u1"));
+        assertEquals(1, node1.getSessionCount("u2"));
+        assertEquals(3, node2.getSessionCount("u1"));
+        assertEquals(4, node2.incrementAndGet("u1"));
+        assertEquals(1, node1.decrementAndGet("u2"));
+        assertEquals(0, node2.decrementAndGet("u2"));
+
+        node2.gossip();
+        node1.gossip();
+        assertEquals(4, node1.getSessionCount("u1"));
+        assertEquals(0, node1.getSessionCount("u2"));
+    }
+
+    @Test
+    public void testDropsCountsOfExpiredWebNode() throws Exception {
+        CuratorFramework curatorFramework2 = createCuratorFramework();
+        UserSessionCounterRepository node1 = createWebNode();
+        UserSessionCounterRepository node2 = new UserSessionCounterRepository(curatorFramework2, configuration, false);
+        node1.incrementAndGet("u1");
+        node2.incrementAndGet("u1");
+        node1.gossip();
+        node2.gossip();
+        node1.gossip();
+        assertEquals(2, node1.getSessionCount("u1"));
+
+        expireSession(curatorFramework2);
+        node1.gossip();
+        assertEquals(1, node1.getSessionCount("u1"));
+
+        // the expired node publishes its counts again even though they did not change
+        node2.gossip();
+        node1.gossip();
+        assertEquals(2, node1.getSessionCount("u1"));
+    }
+
+    private UserSessionCounterRepository createWebNode() throws Exception {
+        return new UserSessionCounterRepository(createCuratorFramework(), configuration, false);
+    }
+
+    private void expireSession(CuratorFramework curatorFramework) {
+        synchronized (zooKeeperNodes) {
+            Iterator<Map.Entry<String, CuratorFramework>> it = zooKeeperNodeOwners.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CuratorFramework> owner = it.next();
+                if (owner.getValue() == curatorFramework) {
+                    zooKeeperNodes.remove(owner.getKey());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a client of a ZooKeeper kept in memory and shared by all clients of the test. The nodes a client creates
+     * are owned by it, as if they were ephemeral, until its session expires.
+     */
+    @SuppressWarnings("unchecked")
+    private CuratorFramework createCuratorFramework() throws Exception {
+        final CuratorFramework curatorFramework = mock(CuratorFramework.class);
+
+        ExistsBuilder existsBuilder = mock(ExistsBuilder.class);
+        when(curatorFramework.checkExists()).thenReturn(existsBuilder);
+        when(existsBuilder.forPath(anyString())).thenAnswer(new Answer<Stat>() {
+            @Override
+            public Stat answer(InvocationOnMock invocation) throws Throwable {
+                synchronized (zooKeeperNodes) {
+                    return zooKeeperNodes.containsKey((String) invocation.getArguments()[0]) ? new Stat() : null;
+                }
+            }
+        });
+
+        SetDataBuilder setDataBuilder = mock(SetDataBuilder.class);
+        when(curatorFramework.setData()).thenReturn(setDataBuilder);
+        when(setDataBuilder.forPath(anyString(), any(byte[].class))).thenAnswer(new Answer<Stat>() {
+            @Override
+            public Stat answer(InvocationOnMock invocation) throws Throwable {
+                String path = (String) invocation.getArguments()[0];
+                synchronized (zooKeeperNodes) {
+                    if (!zooKeeperNodes.containsKey(path)) {
+                        throw new KeeperException.NoNodeException(path);
+                    }
+                    zooKeeperNodes.put(path, (byte[]) invocation.getArguments()[1]);
+                }
+                return new Stat();
+            }
+        });
+
+        CreateBuilder createBuilder = mock(CreateBuilder.class);
+        ProtectACLCreateModePathAndBytesable<String> creatingParentsBuilder = mock(ProtectACLCreateModePathAndBytesable.class);
+        ACLBackgroundPathAndBytesable<String> withModeBuilder = mock(ACLBackgroundPathAndBytesable.class);
+        when(curatorFramework.create()).thenReturn(createBuilder);
+        when(createBuilder.creatingParentsIfNeeded()).thenReturn(creatingParentsBuilder);
+        when(creatingParentsBuilder.withMode(any(CreateMode.class))).thenReturn(withModeBuilder);
+        when(withModeBuilder.forPath(anyString(), any(byte[].class))).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                String path = (String) invocation.getArguments()[0];
+                synchronized (zooKeeperNodes) {
+                    if (zooKeeperNodes.containsKey(path)) {
+                        throw new KeeperException.NodeExistsException(path);
+                    }
+                    zooKeeperNodes.put(path, (byte[]) invocation.getArguments()[1]);
+                    zooKeeperNodeOwners.put(path, curatorFramework);
+                }
+                return path;
+            }
+        });
+
+        GetChildrenBuilder getChildrenBuilder = mock(GetChildrenBuilder.class);
+        when(curatorFramework.getChildren()).thenReturn(getChildrenBuilder);
+        when(getChildrenBuilder.forPath(anyString())).thenAnswer(new Answer<List<String>>() {
+            @Override
+            public List<String> answer(InvocationOnMock invocation) throws Throwable {
+                String prefix = invocation.getArguments()[0] + "/";
+                List<String> children = new ArrayList<>();
+                synchronized (zooKeeperNodes) {
+                    for (String path : zooKeeperNodes.keySet()) {
+                        if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0) {
+                            children.add(path.substring(prefix.length()));
+                        }
+                    }
+                }
+                return children;
+            }
+        });
+
+        GetDataBuilder getDataBuilder = mock(GetDataBuilder.class);
+        when(curatorFramework.getData()).thenReturn(getDataBuilder);
+        when(getDataBuilder.forPath(anyString())).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
+                String path = (String) invocation.getArguments()[0];
+                synchronized (zooKeeperNodes) {
+                    byte[] data = zooKeeperNodes.get(path);
+                    if (data == null) {
+                        throw new KeeperException.NoNodeException(path);
+                    }
+                    return data;
+                }
+            }
+        });
+        return curatorFramework;
+    }
+}
@@ -0,0 +1,107 @@
+package io.lumify.core.model.workQueue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BroadcastCoalescerTest {
+    @Test
+    public void testMergesChangesForTheSameElementAndWorkspace() {
+        final List<JSONObject> messages = new ArrayList<>();
+        BroadcastCoalescer coalescer = createCoalescer(messages, 60000);
+
+        coalescer.propertyChange("graphVertexId", "v1", "w1", true, "k1", "title");
+        coalescer.propertyChange("graphVertexId", "v1", "w1", true, "k1", "title");
+        coalescer.propertyChange("graphVertexId", "v1", "w1", true, "k2", "text");
+        coalescer.textUpdated("v1", "w1");
+        coalescer.textUpdated("v2", "w1");
+        coalescer.propertyChange("graphEdgeId", "e1", null, false, null, null);
+        coalescer.propertyChange("graphEdgeId", "e2", null, false, "k1", "title");
+        coalescer.flush();
+
+        assertEquals(2, messages.size());
+
+        JSONObject workspaceMessage = messages.get(0);
+        assertEquals("propertiesChange", workspaceMessage.getString("type"));
+        assertEquals("w1", workspaceMessage.getJSONObject("permissions").getJSONArray("workspaces").getString(0));
+        JSONArray workspaceChanges = workspaceMessage.getJSONObject("data").getJSONArray("changes");
+        assertEquals(2, workspaceChanges.length());
+        JSONObject v1Change = workspaceChanges.getJSONObject(0);
+        assertEquals("v1", v1Change.getString("graphVertexId"));
+        assertTrue(v1Change.getBoolean("propertyChange"));
+        assertTrue(v1Change.getBoolean("textUpdated"));
+        assertEquals(2, v1Change.getJSONArray("properties").length());
+        JSONObject v2Change = workspaceChanges.getJSONObject(1);
+        assertFalse(v2Change.getBoolean("propertyChange"));
+        assertTrue(v2Change.getBoolean("textUpdated"));
+
+        JSONObject publicMessage = messages.get(1);
+        assertFalse(publicMessage.has("permissions"));
+        JSONArray publicChanges = publicMessage.getJSONObject("data").getJSONArray("changes");
+        assertEquals(2, publicChanges.length());
+        assertEquals("e1", publicChanges.getJSONObject(0).getString("graphEdgeId"));
+        assertTrue(publicChanges.getJSONObject(0).getBoolean("edgeCreated"));
+        assertEquals("e2", publicChanges.getJSONObject(1).getString("graphEdgeId"));
+        assertFalse(publicChanges.getJSONObject(1).getBoolean("edgeCreated"));
+        assertFalse(v1Change.has("edgeCreated"));
+
+        coalescer.flush();
+        assertEquals(2, messages.size());
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testOnlyLimitsSandboxedChangesToTheWorkspace() {
+        final List<JSONObject> messages = new ArrayList<>();
+        BroadcastCoalescer coalescer = createCoalescer(messages, 60000);
+
+        coalescer.propertyChange("graphVertexId", "v1", "w1", true, "k1", "title");
+        coalescer.propertyChange("graphVertexId", "v1", "w1", false, "k2", "title");
+        coalescer.flush();
+
+        assertEquals(2, messages.size());
+        assertEquals("w1", messages.get(0).getJSONObject("permissions").getJSONArray("workspaces").getString(0));
+        JSONObject publishedMessage = messages.get(1);
+        assertFalse(publishedMessage.has("permissions"));
+        assertEquals("w1", publishedMessage.getJSONObject("data").getString("workspaceId"));
+        JSONObject publishedChange = publishedMessage.getJSONObject("data").getJSONArray("changes").getJSONObject(0);
+        assertEquals("k2", publishedChange.getJSONArray("properties").getJSONObject(0).getString("propertyKey"));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testFlushesAfterWindow() throws InterruptedException {
+        final List<JSONObject> messages = new ArrayList<>();
+        BroadcastCoalescer coalescer = createCoalescer(messages, 50);
+
+        coalescer.propertyChange("graphVertexId", "v1", null, false, "k1", "title");
+        for (int i = 0; i < 100; i++) {
+            synchronized (messages) {
+                if (messages.size() > 0) {
+                    break;
+                }
+            }
+            Thread.sleep(20);
+        }
+        synchronized (messages) {
+            assertEquals(1, messages.size());
+        }
+        coalescer.shutdown();
+    }
+
+    private BroadcastCoalescer createCoalescer(final List<JSONObject> messages, long windowMs) {
+        return new BroadcastCoalescer(windowMs, new WorkQueueRepository.BroadcastConsumer() {
+            @Override
+            public void broadcastReceived(JSONObject json) {
+                synchronized (messages) {
+                    messages.add(json);
+                }
+            }
+        });
+    }
+}
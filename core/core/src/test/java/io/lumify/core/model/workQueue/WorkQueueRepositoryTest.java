@@ -0,0 +1,57 @@
+package io.lumify.core.model.workQueue;
+
+import io.lumify.core.model.properties.LumifyProperties;
+import io.lumify.web.clientapi.model.VisibilityJson;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.securegraph.Authorizations;
+import org.securegraph.Metadata;
+import org.securegraph.Vertex;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class WorkQueueRepositoryTest {
+    @Test
+    public void testGetBroadcastRoutingKey() {
+        assertEquals("global", WorkQueueRepository.getBroadcastRoutingKey(new JSONObject("{type:'textUpdated'}")));
+        assertEquals("user.u1", WorkQueueRepository.getBroadcastRoutingKey(new JSONObject("{permissions:{users:['u1'],sessionIds:['s1']}}")));
+        assertEquals("global", WorkQueueRepository.getBroadcastRoutingKey(new JSONObject("{permissions:{users:['u1','u2']}}")));
+        assertEquals("workspace.w1", WorkQueueRepository.getBroadcastRoutingKey(new JSONObject("{permissions:{workspaces:['w1']}}")));
+        assertEquals("global", WorkQueueRepository.getBroadcastRoutingKey(new JSONObject("{permissions:{users:['u1','u2'],workspaces:['w1']}}")));
+    }
+
+    @Test
+    public void testGetBroadcastPropertyChangeJsonOnlyLimitsSandboxedProperties() {
+        InMemoryGraph graph = InMemoryGraph.create();
+        Authorizations authorizations = new InMemoryAuthorizations();
+        Visibility visibility = new Visibility("");
+        Vertex vertex = graph.addVertex("v1", visibility, authorizations);
+
+        VisibilityJson sandboxedVisibilityJson = new VisibilityJson();
+        sandboxedVisibilityJson.addWorkspace("w1");
+        Metadata sandboxedMetadata = new Metadata();
+        LumifyProperties.VISIBILITY_JSON.setMetadata(sandboxedMetadata, sandboxedVisibilityJson, visibility);
+        LumifyProperties.TITLE.addPropertyValue(vertex, "sandboxed", "Joe", sandboxedMetadata, visibility, authorizations);
+        LumifyProperties.TITLE.addPropertyValue(vertex, "published", "Joe", new Metadata(), visibility, authorizations);
+        vertex = graph.getVertex("v1", authorizations);
+
+        WorkQueueRepository workQueueRepository = mock(WorkQueueRepository.class, Mockito.CALLS_REAL_METHODS);
+        String title = LumifyProperties.TITLE.getPropertyName();
+
+        JSONObject sandboxedJson = workQueueRepository.getBroadcastPropertyChangeJson(vertex, "sandboxed", title, "w1");
+        assertEquals("w1", sandboxedJson.getJSONObject("permissions").getJSONArray("workspaces").getString(0));
+        assertEquals("w1", sandboxedJson.getJSONObject("data").getString("workspaceId"));
+
+        JSONObject publishedJson = workQueueRepository.getBroadcastPropertyChangeJson(vertex, "published", title, "w1");
+        assertFalse(publishedJson.has("permissions"));
+        assertEquals("w1", publishedJson.getJSONObject("data").getString("workspaceId"));
+        assertEquals(title, publishedJson.getJSONObject("data").getString("propertyName"));
+
+        assertFalse(workQueueRepository.getBroadcastPropertyChangeJson(vertex, "sandboxed", title, null).has("permissions"));
+    }
+}
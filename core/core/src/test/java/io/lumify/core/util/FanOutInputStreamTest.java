@@ -0,0 +1,174 @@
+package io.lumify.core.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FanOutInputStreamTest {
+    @Test
+    public void testReads() throws Exception {
+        byte[] temp = new byte[100];
+        int readLen;
+        byte[] data = createMockData(10);
+        InputStream source = new ByteArrayInputStream(data);
+        FanOutInputStream in = new FanOutInputStream(source, 2);
+        Thread producer = startProducer(in);
+        InputStream[] tees = in.getTees();
+
+        assertEquals(0, tees[0].read());
+        assertEquals(0, tees[1].read());
+
+        readLen = tees[0].read(temp, 0, 5);
+        assertEquals(5, readLen);
+        assertArrayEquals(Arrays.copyOfRange(data, 1, 6), Arrays.copyOfRange(temp, 0, 5));
+
+        readLen = IOUtils.read(tees[0], temp, 0, 4);
+        assertEquals(4, readLen);
+        assertArrayEquals(Arrays.copyOfRange(data, 6, 10), Arrays.copyOfRange(temp, 0, 4));
+        assertEquals(-1, tees[0].read(temp));
+
+        readLen = IOUtils.read(tees[1], temp, 0, 9);
+        assertEquals(9, readLen);
+        assertArrayEquals(Arrays.copyOfRange(data, 1, 10), Arrays.copyOfRange(temp, 0, 9));
+        assertEquals(-1, tees[1].read());
+
+        in.close();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void testReadsWithSmallBufferSize() throws Exception {
+        byte[] data = createMockData(1000);
+        FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream(data), 3, 7);
+        Thread producer = startProducer(in);
+        InputStream[] tees = in.getTees();
+
+        ReaderThread[] readers = new ReaderThread[tees.length];
+        for (int i = 0; i < tees.length; i++) {
+            readers[i] = new ReaderThread(tees[i], i + 1);
+            readers[i].start();
+        }
+        for (ReaderThread reader : readers) {
+            reader.join(10000);
+            assertNull(reader.error);
+            assertArrayEquals(data, reader.result);
+        }
+
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void testSingleByteReadsAreUnsigned() throws Exception {
+        byte[] data = new byte[]{(byte) 0xff, (byte) 0x80, 0x7f};
+        FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream(data), 1);
+        startProducer(in);
+        InputStream tee = in.getTees()[0];
+
+        assertEquals(0xff, tee.read());
+        assertEquals(0x80, tee.read());
+        assertEquals(0x7f, tee.read());
+        assertEquals(-1, tee.read());
+        in.close();
+    }
+
+    @Test
+    public void testCloseBeforeReadAll() throws Exception {
+        byte[] data = createMockData(4);
+        FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream(data), 2, 2);
+        Thread producer = startProducer(in);
+        InputStream[] tees = in.getTees();
+
+        tees[0].close();
+        assertEquals(-1, tees[0].read());
+
+        assertEquals(0, tees[1].read());
+        assertEquals(1, tees[1].read());
+        assertEquals(2, tees[1].read());
+        assertEquals(3, tees[1].read());
+        assertEquals(-1, tees[1].read());
+
+        in.close();
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+    }
+
+    @Test
+    public void testSourceError() throws Exception {
+        InputStream source = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("boom");
+            }
+        };
+        final FanOutInputStream in = new FanOutInputStream(source, 1);
+        startProducer(in);
+        try {
+            in.getTees()[0].read();
+            fail("expected an IOException");
+        } catch (IOException ex) {
+            assertEquals("boom", ex.getCause().getMessage());
+        }
+        in.close();
+    }
+
+    private Thread startProducer(final FanOutInputStream in) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    in.loopUntilTeesAreClosed();
+                } catch (Exception e) {
+                    // reported to the readers
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private byte[] createMockData(int len) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static class ReaderThread extends Thread {
+        private final InputStream in;
+        private final int chunkSize;
+        private byte[] result;
+        private Throwable error;
+
+        public ReaderThread(InputStream in, int chunkSize) {
+            this.in = in;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] temp = new byte[chunkSize];
+                int read;
+                while ((read = in.read(temp)) != -1) {
+                    out.write(temp, 0, read);
+                }
+                in.close();
+                result = out.toByteArray();
+            } catch (Throwable ex) {
+                error = ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package io.lumify.core.util;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerceptualHashTest {
+    @Test
+    public void testScaledImageHashesNearby() {
+        BufferedImage image = createImage(640, 480, 40);
+        BufferedImage scaled = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.drawImage(image, 0, 0, 320, 240, null);
+        g.dispose();
+
+        long hash = PerceptualHash.hash(image);
+        assertEquals(hash, PerceptualHash.hash(image));
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.hash(scaled)) <= 4);
+    }
+
+    @Test
+    public void testDifferentImagesHashApart() {
+        long hash1 = PerceptualHash.hash(createImage(640, 480, 40));
+        long hash2 = PerceptualHash.hash(createImage(640, 480, 100));
+        assertTrue(PerceptualHash.distance(hash1, hash2) > 10);
+    }
+
+    private static BufferedImage createImage(int width, int height, int stripeHeight) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        for (int y = 0; y < height; y += stripeHeight) {
+            g.fillRect(20, y, width - 40 - (y * 7) % (width / 2), stripeHeight / 2);
+        }
+        g.dispose();
+        return image;
+    }
+}
@@ -1,14 +1,17 @@
 package io.lumify.model.rabbitmq;
 
 import com.altamiracorp.bigtable.model.FlushFlag;
+import com.codahale.metrics.Meter;
 import com.google.inject.Inject;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.QueueingConsumer;
+import com.rabbitmq.client.ShutdownSignalException;
 import io.lumify.core.bootstrap.InjectHelper;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.WorkerSpout;
+import io.lumify.core.metrics.JmxMetricsManager;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
@@ -16,30 +19,114 @@ import org.json.JSONObject;
 import org.securegraph.Graph;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(RabbitMQWorkQueueRepository.class);
-    private static final String BROADCAST_EXCHANGE_NAME = "exBroadcast";
+    private static final String BROADCAST_EXCHANGE_NAME = "exBroadcastTopic";
+    private static final String LEGACY_BROADCAST_EXCHANGE_NAME = "exBroadcast";
     private final Connection connection;
     private final Channel channel;
+    private final Object channelLock = new Object();
+    private Channel publishChannel;
     private QueueingConsumer longRunningProcessCallback;
     private Set<String> declaredQueues = new HashSet<String>();
+    private final List<String> routedBroadcastQueueNames = new CopyOnWriteArrayList<>();
+    private final Object publishLock = new Object();
+    private final int publishBatchSize;
+    private final List<PendingPublish> pendingPublishes = new ArrayList<>();
+    private final int flushIntervalMs;
+    private ScheduledExecutorService publishFlushExecutor;
+    private final ConcurrentMap<String, Meter> publishMeters = new ConcurrentHashMap<>();
+    private JmxMetricsManager metricsManager;
+    private String metricsNamePrefix;
 
     @Inject
     public RabbitMQWorkQueueRepository(Graph graph, Configuration configuration) throws IOException {
         super(graph, configuration);
         this.connection = RabbitMQUtils.openConnection(configuration);
         this.channel = RabbitMQUtils.openChannel(this.connection);
-        this.channel.exchangeDeclare(BROADCAST_EXCHANGE_NAME, "fanout");
+        this.channel.exchangeDeclare(BROADCAST_EXCHANGE_NAME, "topic");
+        // Servers from before broadcasts were routed still listen on the fanout exchange. Forward everything to it so
+        // they keep seeing broadcasts during a rolling upgrade. Their own broadcasts only reach each other until the
+        // upgrade is finished.
+        this.channel.exchangeDeclare(LEGACY_BROADCAST_EXCHANGE_NAME, "fanout");
+        this.channel.exchangeBind(LEGACY_BROADCAST_EXCHANGE_NAME, BROADCAST_EXCHANGE_NAME, "#");
+
+        this.publishBatchSize = configuration.getInt(Configuration.RABBITMQ_PUBLISH_BATCH_SIZE, Configuration.RABBITMQ_PUBLISH_BATCH_SIZE_DEFAULT);
+        if (this.publishBatchSize > 1) {
+            this.flushIntervalMs = configuration.getInt(Configuration.RABBITMQ_BATCH_FLUSH_INTERVAL_MS, Configuration.RABBITMQ_BATCH_FLUSH_INTERVAL_MS_DEFAULT);
+        } else {
+            this.flushIntervalMs = 0;
+        }
+    }
+
+    /**
+     * Messages are published on their own channel, so a publish the broker refuses can not close the channel the
+     * consumers, acks and broadcast bindings use. The channel is opened again after it was closed.
+     */
+    private Channel getPublishChannel() throws IOException {
+        if (publishChannel == null || !publishChannel.isOpen()) {
+            publishChannel = RabbitMQUtils.openChannel(connection);
+            if (publishBatchSize > 1) {
+                // batches are only handed back to the caller once the broker has confirmed them
+                publishChannel.confirmSelect();
+            }
+        }
+        return publishChannel;
+    }
+
+    private void closePublishChannel() {
+        if (publishChannel == null) {
+            return;
+        }
+        try {
+            if (publishChannel.isOpen()) {
+                publishChannel.close();
+            }
+        } catch (IOException | ShutdownSignalException ex) {
+            LOGGER.debug("Could not close RabbitMQ publish channel", ex);
+        }
+        publishChannel = null;
+    }
+
+    /**
+     * Flushes the pending publishes every flush interval. Started once the metrics manager is injected, since a flush
+     * marks the publish meters.
+     */
+    private void startPublishFlushExecutor() {
+        if (flushIntervalMs <= 0 || publishFlushExecutor != null) {
+            return;
+        }
+        publishFlushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "rabbitmq-publish-flush");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        publishFlushExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable ex) {
+                    LOGGER.error("Could not flush pending RabbitMQ publishes", ex);
+                }
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
     protected void broadcastJson(JSONObject json) {
         try {
-            LOGGER.debug("publishing message to broadcast exchange [%s]: %s", BROADCAST_EXCHANGE_NAME, json.toString());
-            channel.basicPublish(BROADCAST_EXCHANGE_NAME, "", null, json.toString().getBytes());
+            String routingKey = getBroadcastRoutingKey(json);
+            LOGGER.debug("publishing message to broadcast exchange [%s] (%s): %s", BROADCAST_EXCHANGE_NAME, routingKey, json.toString());
+            synchronized (publishLock) {
+                getPublishChannel().basicPublish(BROADCAST_EXCHANGE_NAME, routingKey, null, json.toString().getBytes());
+            }
         } catch (IOException ex) {
             throw new LumifyException("Could not broadcast json", ex);
         }
@@ -47,29 +134,98 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
 
     @Override
     public void pushOnQueue(String queueName, FlushFlag flushFlag, JSONObject json) {
+        boolean flush;
         try {
-            ensureQueue(queueName);
             LOGGER.debug("enqueueing message to queue [%s]: %s", queueName, json.toString());
-            channel.basicPublish("", queueName, null, json.toString().getBytes());
+            byte[] body = json.toString().getBytes();
+            synchronized (publishLock) {
+                ensureQueue(queueName);
+                if (publishBatchSize <= 1) {
+                    getPublishChannel().basicPublish("", queueName, null, body);
+                    getPublishMeter(queueName).mark();
+                    return;
+                }
+                pendingPublishes.add(new PendingPublish(queueName, body));
+                flush = flushFlag == FlushFlag.FLUSH || pendingPublishes.size() >= publishBatchSize;
+            }
         } catch (Exception ex) {
             throw new LumifyException("Could not push on queue", ex);
         }
+        if (flush) {
+            flush();
+        }
+    }
+
+    private Meter getPublishMeter(String queueName) {
+        Meter meter = publishMeters.get(queueName);
+        if (meter == null) {
+            meter = metricsManager.meter(metricsNamePrefix + queueName + ".published");
+            Meter existingMeter = publishMeters.putIfAbsent(queueName, meter);
+            if (existingMeter != null) {
+                meter = existingMeter;
+            }
+        }
+        return meter;
     }
 
     private void ensureQueue(String queueName) throws IOException {
         if (!declaredQueues.contains(queueName)) {
-            channel.queueDeclare(queueName, true, false, false, null);
+            getPublishChannel().queueDeclare(queueName, true, false, false, null);
             declaredQueues.add(queueName);
         }
     }
 
+    /**
+     * Publishes any buffered messages and waits for the broker to confirm them. Messages are only dropped from the
+     * buffer once the broker confirmed all of them; otherwise every one of them is published again by the next flush,
+     * so a message the broker did take may be delivered twice.
+     */
     @Override
     public void flush() {
+        synchronized (publishLock) {
+            if (pendingPublishes.size() == 0) {
+                return;
+            }
+            boolean confirmed;
+            try {
+                Channel publishChannel = getPublishChannel();
+                for (PendingPublish pendingPublish : pendingPublishes) {
+                    publishChannel.basicPublish("", pendingPublish.queueName, null, pendingPublish.body);
+                }
+                confirmed = publishChannel.waitForConfirms();
+            } catch (InterruptedException ex) {
+                closePublishChannel();
+                Thread.currentThread().interrupt();
+                throw new LumifyException("Interrupted while flushing " + pendingPublishes.size() + " messages, they are kept for the next flush", ex);
+            } catch (IOException | ShutdownSignalException ex) {
+                closePublishChannel();
+                throw new LumifyException("Could not flush " + pendingPublishes.size() + " messages, they are kept for the next flush", ex);
+            }
+            if (!confirmed) {
+                throw new LumifyException("RabbitMQ did not confirm all of " + pendingPublishes.size() + " messages, they are kept for the next flush");
+            }
+            LOGGER.debug("flushed %d messages", pendingPublishes.size());
+            for (PendingPublish pendingPublish : pendingPublishes) {
+                getPublishMeter(pendingPublish.queueName).mark();
+            }
+            pendingPublishes.clear();
+        }
     }
 
     @Override
     public void shutdown() {
         super.shutdown();
+        if (publishFlushExecutor != null) {
+            publishFlushExecutor.shutdown();
+        }
+        try {
+            flush();
+        } catch (LumifyException ex) {
+            LOGGER.error("Could not flush pending RabbitMQ publishes", ex);
+        }
+        synchronized (publishLock) {
+            closePublishChannel();
+        }
         try {
             LOGGER.debug("Closing RabbitMQ channel");
             this.channel.close();
@@ -84,8 +240,10 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
     public void format() {
         try {
             LOGGER.info("deleting queue: %s", GRAPH_PROPERTY_QUEUE_NAME);
-            channel.queueDelete(GRAPH_PROPERTY_QUEUE_NAME);
-            channel.queueDelete(LONG_RUNNING_PROCESS_QUEUE_NAME);
+            synchronized (channelLock) {
+                channel.queueDelete(GRAPH_PROPERTY_QUEUE_NAME);
+                channel.queueDelete(LONG_RUNNING_PROCESS_QUEUE_NAME);
+            }
         } catch (IOException e) {
             throw new LumifyException("Could not delete queues", e);
         }
@@ -93,12 +251,52 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
 
     @Override
     public void subscribeToBroadcastMessages(final BroadcastConsumer broadcastConsumer) {
+        subscribeToBroadcastMessages(broadcastConsumer, "#");
+    }
+
+    @Override
+    public void subscribeToRoutedBroadcastMessages(BroadcastConsumer broadcastConsumer) {
+        String queueName = subscribeToBroadcastMessages(broadcastConsumer, BROADCAST_ROUTING_KEY_GLOBAL);
+        routedBroadcastQueueNames.add(queueName);
+    }
+
+    @Override
+    public void addBroadcastRoute(String routingKey) {
+        try {
+            synchronized (channelLock) {
+                for (String queueName : routedBroadcastQueueNames) {
+                    LOGGER.debug("binding broadcast queue %s to %s", queueName, routingKey);
+                    this.channel.queueBind(queueName, BROADCAST_EXCHANGE_NAME, routingKey);
+                }
+            }
+        } catch (IOException e) {
+            throw new LumifyException("Could not add broadcast route: " + routingKey, e);
+        }
+    }
+
+    @Override
+    public void removeBroadcastRoute(String routingKey) {
         try {
-            String queueName = this.channel.queueDeclare().getQueue();
-            this.channel.queueBind(queueName, BROADCAST_EXCHANGE_NAME, "");
+            synchronized (channelLock) {
+                for (String queueName : routedBroadcastQueueNames) {
+                    LOGGER.debug("unbinding broadcast queue %s from %s", queueName, routingKey);
+                    this.channel.queueUnbind(queueName, BROADCAST_EXCHANGE_NAME, routingKey);
+                }
+            }
+        } catch (IOException e) {
+            throw new LumifyException("Could not remove broadcast route: " + routingKey, e);
+        }
+    }
 
+    private String subscribeToBroadcastMessages(final BroadcastConsumer broadcastConsumer, String bindingKey) {
+        try {
+            String queueName;
             final QueueingConsumer callback = new QueueingConsumer(this.channel);
-            this.channel.basicConsume(queueName, true, callback);
+            synchronized (channelLock) {
+                queueName = this.channel.queueDeclare().getQueue();
+                this.channel.queueBind(queueName, BROADCAST_EXCHANGE_NAME, bindingKey);
+                this.channel.basicConsume(queueName, true, callback);
+            }
 
             final Thread t = new Thread(new Runnable() {
                 @Override
@@ -122,6 +320,7 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
             t.setName("rabbitmq-subscribe-" + broadcastConsumer.getClass().getName());
             t.setDaemon(true);
             t.start();
+            return queueName;
         } catch (IOException e) {
             throw new LumifyException("Could not subscribe to broadcasts", e);
         }
@@ -130,7 +329,7 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
     @Override
     public LongRunningProcessMessage getNextLongRunningProcessMessage() {
         try {
-            synchronized (this) {
+            synchronized (channelLock) {
                 if (longRunningProcessCallback == null) {
                     channel.queueDeclare(LONG_RUNNING_PROCESS_QUEUE_NAME, true, false, false, null);
                     longRunningProcessCallback = new QueueingConsumer(channel);
@@ -155,6 +354,23 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
         return InjectHelper.inject(new RabbitMQWorkQueueSpout(GRAPH_PROPERTY_QUEUE_NAME));
     }
 
+    @Inject
+    public void setMetricsManager(JmxMetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+        this.metricsNamePrefix = metricsManager.getNamePrefix(this);
+        startPublishFlushExecutor();
+    }
+
+    private static class PendingPublish {
+        private final String queueName;
+        private final byte[] body;
+
+        public PendingPublish(String queueName, byte[] body) {
+            this.queueName = queueName;
+            this.body = body;
+        }
+    }
+
     private class RabbitMQLongRunningProcessMessage extends LongRunningProcessMessage {
         private final long deliveryTag;
         private final long startTime;
@@ -173,11 +389,15 @@ public class RabbitMQWorkQueueRepository extends WorkQueueRepository {
                 }
                 long endTime = System.currentTimeMillis();
                 LOGGER.debug("ack'ing message from long running process queue [%s]: %s (work time: %dms)", LONG_RUNNING_PROCESS_QUEUE_NAME, getMessage().toString(), endTime - startTime);
-                channel.basicAck(deliveryTag, false);
+                synchronized (channelLock) {
+                    channel.basicAck(deliveryTag, false);
+                }
             } catch (Throwable ackException) {
                 LOGGER.error("problem in long running process thread", ex);
                 try {
-                    channel.basicNack(deliveryTag, false, false);
+                    synchronized (channelLock) {
+                        channel.basicNack(deliveryTag, false, false);
+                    }
                 } catch (IOException nackException) {
                     LOGGER.error("Could not nack message: " + deliveryTag, nackException);
                 }
@@ -1,28 +1,49 @@
 package io.lumify.model.rabbitmq;
 
+import com.codahale.metrics.Meter;
 import com.google.inject.Inject;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.QueueingConsumer;
+import com.rabbitmq.client.*;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.WorkerSpout;
 import io.lumify.core.ingest.WorkerTuple;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerTuple;
+import io.lumify.core.metrics.JmxMetricsManager;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Consumes a queue on one or more channels. Deliveries are pushed by each channel's consumer callback into a bounded
+ * handoff queue which {@link #nextTuple()} takes from, so a message is emitted as soon as it arrives. When the handoff
+ * queue is full the consumer callback blocks, which stops the connection from dispatching further deliveries until
+ * the runner catches up.
+ */
 public class RabbitMQWorkQueueSpout extends WorkerSpout {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(RabbitMQWorkQueueSpout.class);
     public static final int DEFAULT_RABBITMQ_PREFETCH_COUNT = 10;
+    private static final int NEXT_TUPLE_TIMEOUT_MS = 100;
     private final String queueName;
-    private Channel channel;
-    private QueueingConsumer consumer;
+    private final List<ChannelConsumer> consumers = new ArrayList<>();
+    private BlockingQueue<Delivery> handoffQueue;
     private Connection connection;
     private Configuration configuration;
+    private JmxMetricsManager metricsManager;
+    private volatile boolean closing;
+    private int ackBatchSize;
+    private long ackFlushIntervalMs;
+    private long lastAckFlushTime;
+    private Meter ackMeter;
+    private Meter nackMeter;
 
     public RabbitMQWorkQueueSpout(String queueName) {
         this.queueName = queueName;
@@ -31,13 +52,27 @@ public class RabbitMQWorkQueueSpout extends WorkerSpout {
     @Override
     public void open() {
         try {
+            int prefetchCount = configuration.getInt(Configuration.RABBITMQ_PREFETCH_COUNT, DEFAULT_RABBITMQ_PREFETCH_COUNT);
+            int channelCount = Math.max(1, configuration.getInt(Configuration.RABBITMQ_CONSUMER_CHANNEL_COUNT, Configuration.RABBITMQ_CONSUMER_CHANNEL_COUNT_DEFAULT));
+            int handoffQueueSize = configuration.getInt(Configuration.RABBITMQ_CONSUMER_HANDOFF_QUEUE_SIZE, prefetchCount > 0 ? prefetchCount * channelCount : Configuration.RABBITMQ_CONSUMER_HANDOFF_QUEUE_SIZE_DEFAULT);
+            this.ackBatchSize = configuration.getInt(Configuration.RABBITMQ_ACK_BATCH_SIZE, Configuration.RABBITMQ_ACK_BATCH_SIZE_DEFAULT);
+            this.ackFlushIntervalMs = configuration.getInt(Configuration.RABBITMQ_BATCH_FLUSH_INTERVAL_MS, Configuration.RABBITMQ_BATCH_FLUSH_INTERVAL_MS_DEFAULT);
+            this.lastAckFlushTime = System.currentTimeMillis();
+            String namePrefix = metricsManager.getNamePrefix(this, queueName);
+            this.ackMeter = metricsManager.meter(namePrefix + "acked");
+            this.nackMeter = metricsManager.meter(namePrefix + "nacked");
+
+            this.handoffQueue = new ArrayBlockingQueue<>(Math.max(1, handoffQueueSize));
             this.connection = RabbitMQUtils.openConnection(configuration);
-            this.channel = RabbitMQUtils.openChannel(this.connection);
-            this.channel.queueDeclare(queueName, true, false, false, null);
-            this.consumer = new QueueingConsumer(channel);
-            Integer prefetchCount = configuration.getInt(Configuration.RABBITMQ_PREFETCH_COUNT, DEFAULT_RABBITMQ_PREFETCH_COUNT);
-            this.channel.basicQos(prefetchCount, false);
-            this.channel.basicConsume(this.queueName, false, consumer);
+            LOGGER.info("consuming queue %s on %d channels (prefetch: %d, handoff queue size: %d)", queueName, channelCount, prefetchCount, handoffQueueSize);
+            for (int i = 0; i < channelCount; i++) {
+                Channel channel = RabbitMQUtils.openChannel(this.connection);
+                channel.queueDeclare(queueName, true, false, false, null);
+                channel.basicQos(prefetchCount, false);
+                ChannelConsumer consumer = new ChannelConsumer(channel);
+                consumers.add(consumer);
+                channel.basicConsume(this.queueName, false, consumer);
+            }
         } catch (IOException ex) {
             throw new LumifyException("Could not startup RabbitMQ", ex);
         }
@@ -46,9 +81,13 @@ public class RabbitMQWorkQueueSpout extends WorkerSpout {
     @Override
     public void close() {
         super.close();
+        closing = true;
+        flushAcks();
         try {
-            LOGGER.debug("Closing RabbitMQ channel");
-            this.channel.close();
+            for (ChannelConsumer consumer : consumers) {
+                LOGGER.debug("Closing RabbitMQ channel");
+                consumer.getChannel().close();
+            }
             LOGGER.debug("Closing RabbitMQ connection");
             this.connection.close();
         } catch (IOException ex) {
@@ -58,43 +97,169 @@ public class RabbitMQWorkQueueSpout extends WorkerSpout {
 
     @Override
     public WorkerTuple nextTuple() throws InterruptedException {
-        QueueingConsumer.Delivery delivery = this.consumer.nextDelivery(100);
+        Delivery delivery = this.handoffQueue.poll(NEXT_TUPLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
         if (delivery == null) {
+            checkConsumers();
+            flushAcks();
             return null;
         }
-        JSONObject json = new JSONObject(new String(delivery.getBody()));
+        if (ackBatchSize > 1) {
+            delivery.consumer.emitted(delivery.deliveryTag);
+            if (System.currentTimeMillis() - lastAckFlushTime >= ackFlushIntervalMs) {
+                flushAcks();
+            }
+        }
+        JSONObject json = new JSONObject(new String(delivery.body));
         LOGGER.debug("emit (%s): %s", this.queueName, json.toString());
-        return new GraphPropertyWorkerTuple(delivery.getEnvelope().getDeliveryTag(), json);
+        return new GraphPropertyWorkerTuple(delivery, json);
     }
 
     @Override
     public void ack(Object msgId) {
         super.ack(msgId);
-        long deliveryTag = (Long) msgId;
-        try {
-            this.channel.basicAck(deliveryTag, false);
-        } catch (IOException ex) {
-            LOGGER.error("Could not ack: %d", deliveryTag, ex);
+        Delivery delivery = (Delivery) msgId;
+        if (ackBatchSize <= 1) {
+            try {
+                delivery.consumer.getChannel().basicAck(delivery.deliveryTag, false);
+                ackMeter.mark();
+            } catch (IOException ex) {
+                LOGGER.error("Could not ack: %s", delivery, ex);
+            }
+            return;
+        }
+
+        if (delivery.consumer.acked(delivery.deliveryTag) >= ackBatchSize) {
+            delivery.consumer.flushAcks();
         }
     }
 
     @Override
     public void fail(Object msgId) {
         super.fail(msgId);
-        long deliveryTag = (Long) msgId;
+        Delivery delivery = (Delivery) msgId;
+        delivery.consumer.failed(delivery.deliveryTag);
         try {
-            this.channel.basicNack(deliveryTag, false, false);
+            delivery.consumer.getChannel().basicNack(delivery.deliveryTag, false, false);
+            nackMeter.mark();
         } catch (IOException ex) {
-            LOGGER.error("Could not ack: %d", deliveryTag, ex);
+            LOGGER.error("Could not nack: %s", delivery, ex);
         }
     }
 
-    protected QueueingConsumer getConsumer() {
-        return this.consumer;
+    private void flushAcks() {
+        lastAckFlushTime = System.currentTimeMillis();
+        for (ChannelConsumer consumer : consumers) {
+            consumer.flushAcks();
+        }
+    }
+
+    private void checkConsumers() {
+        for (ChannelConsumer consumer : consumers) {
+            ShutdownSignalException shutdownSignal = consumer.shutdownSignal;
+            if (shutdownSignal != null) {
+                throw new LumifyException("RabbitMQ channel consuming " + queueName + " was shut down", shutdownSignal);
+            }
+        }
     }
 
     @Inject
     public void setConfiguration(Configuration configuration) {
         this.configuration = configuration;
     }
+
+    @Inject
+    public void setMetricsManager(JmxMetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+    }
+
+    private class ChannelConsumer extends DefaultConsumer {
+        private final NavigableSet<Long> inFlightDeliveryTags = new TreeSet<>();
+        private final NavigableSet<Long> pendingAckDeliveryTags = new TreeSet<>();
+        private volatile ShutdownSignalException shutdownSignal;
+
+        public ChannelConsumer(Channel channel) {
+            super(channel);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+            try {
+                handoffQueue.put(new Delivery(this, envelope.getDeliveryTag(), body));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted handing off delivery " + envelope.getDeliveryTag(), ex);
+            }
+        }
+
+        @Override
+        public void handleCancel(String consumerTag) throws IOException {
+            LOGGER.warn("consumer of queue %s was cancelled by the broker", queueName);
+        }
+
+        @Override
+        public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+            if (!closing) {
+                LOGGER.error("consumer of queue %s was shut down", queueName, sig);
+                shutdownSignal = sig;
+            }
+        }
+
+        public synchronized void emitted(long deliveryTag) {
+            inFlightDeliveryTags.add(deliveryTag);
+        }
+
+        public synchronized int acked(long deliveryTag) {
+            inFlightDeliveryTags.remove(deliveryTag);
+            pendingAckDeliveryTags.add(deliveryTag);
+            return pendingAckDeliveryTags.size();
+        }
+
+        public synchronized void failed(long deliveryTag) {
+            inFlightDeliveryTags.remove(deliveryTag);
+        }
+
+        /**
+         * Acks every pending delivery tag below the oldest tag still being processed with a single multiple ack.
+         * Tags acked out of order behind a tag that is still in flight wait for a later flush.
+         */
+        public synchronized void flushAcks() {
+            if (pendingAckDeliveryTags.size() == 0) {
+                return;
+            }
+            long oldestInFlightDeliveryTag = inFlightDeliveryTags.isEmpty() ? Long.MAX_VALUE : inFlightDeliveryTags.first();
+            NavigableSet<Long> ackableDeliveryTags = pendingAckDeliveryTags.headSet(oldestInFlightDeliveryTag, false);
+            if (ackableDeliveryTags.size() == 0) {
+                return;
+            }
+            long deliveryTag = ackableDeliveryTags.last();
+            try {
+                getChannel().basicAck(deliveryTag, true);
+                ackMeter.mark(ackableDeliveryTags.size());
+                ackableDeliveryTags.clear();
+            } catch (IOException ex) {
+                LOGGER.error("Could not ack up to: %d", deliveryTag, ex);
+            }
+        }
+    }
+
+    /**
+     * A delivery handed off by a channel consumer, also used as the tuple message id since delivery tags are only
+     * unique per channel.
+     */
+    private static class Delivery {
+        private final ChannelConsumer consumer;
+        private final long deliveryTag;
+        private final byte[] body;
+
+        public Delivery(ChannelConsumer consumer, long deliveryTag, byte[] body) {
+            this.consumer = consumer;
+            this.deliveryTag = deliveryTag;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return consumer.getChannel().getChannelNumber() + ":" + deliveryTag;
+        }
+    }
 }
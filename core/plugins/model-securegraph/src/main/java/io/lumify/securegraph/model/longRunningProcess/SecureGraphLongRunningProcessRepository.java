@@ -117,11 +117,11 @@ public class SecureGraphLongRunningProcessRepository extends LongRunningProcessR
         if (vertex == null) {
             return null;
         }
-        return QUEUE_ITEM_JSON_PROPERTY.getPropertyValue(vertex);
+        return addUnsavedProgress(longRunningProcessId, QUEUE_ITEM_JSON_PROPERTY.getPropertyValue(vertex));
     }
 
     @Override
-    public void cancel(String longRunningProcessId, User user) {
+    protected void saveCanceled(String longRunningProcessId, User user) {
         Authorizations authorizations = getAuthorizations(userRepository.getSystemUser());
         Vertex vertex = this.graph.getVertex(longRunningProcessId, authorizations);
         checkNotNull(vertex, "Could not find long running process vertex: " + longRunningProcessId);
@@ -132,7 +132,7 @@ public class SecureGraphLongRunningProcessRepository extends LongRunningProcessR
     }
 
     @Override
-    public void reportProgress(JSONObject longRunningProcessQueueItem, double progressPercent, String message) {
+    protected void saveProgress(JSONObject longRunningProcessQueueItem, double progressPercent, String message) {
         String longRunningProcessGraphVertexId = longRunningProcessQueueItem.getString("id");
         Authorizations authorizations = getAuthorizations(userRepository.getSystemUser());
         Vertex vertex = this.graph.getVertex(longRunningProcessGraphVertexId, authorizations);
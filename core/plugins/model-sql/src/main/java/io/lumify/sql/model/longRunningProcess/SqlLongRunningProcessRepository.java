@@ -126,17 +126,20 @@ public class SqlLongRunningProcessRepository extends LongRunningProcessRepositor
     }
 
     @Override
-    public void cancel(String longRunningProcessId, User user) {
+    protected void saveCanceled(String longRunningProcessId, User user) {
         updateLongRunningProcess(longRunningProcessId, new UpdateLongRunningProcessAction() {
             @Override
             public void run(SqlLongRunningProcess longRunningProcess) {
                 longRunningProcess.setCanceled(true);
+                JSONObject json = new JSONObject(longRunningProcess.getJson());
+                json.put("canceled", true);
+                longRunningProcess.setJson(json.toString());
             }
         });
     }
 
     @Override
-    public void reportProgress(JSONObject longRunningProcessQueueItem, final double progressPercent, final String message) {
+    protected void saveProgress(JSONObject longRunningProcessQueueItem, final double progressPercent, final String message) {
         final JSONObject[] json = new JSONObject[1];
         updateLongRunningProcess(longRunningProcessQueueItem, new UpdateLongRunningProcessAction() {
             @Override
@@ -184,7 +187,7 @@ public class SqlLongRunningProcessRepository extends LongRunningProcessRepositor
     @Override
     public JSONObject findById(String longRunningProcessId, User user) {
         SqlLongRunningProcess sqlLongRunningProcess = findSqlLongRunningProcessById(longRunningProcessId);
-        return new JSONObject(sqlLongRunningProcess.getJson());
+        return addUnsavedProgress(longRunningProcessId, new JSONObject(sqlLongRunningProcess.getJson()));
     }
 
     @Override
@@ -13,6 +13,7 @@ import org.securegraph.Graph;
 import java.util.*;
 
 public class InMemoryWorkQueueRepository extends WorkQueueRepository {
+    private static final long NEXT_TUPLE_WAIT_MS = 100;
 
     private static Map<String, Queue<JSONObject>> queues = new HashMap<String, Queue<JSONObject>>();
     private List<BroadcastConsumer> broadcastConsumers = new ArrayList<BroadcastConsumer>();
@@ -82,7 +83,14 @@ public class InMemoryWorkQueueRepository extends WorkQueueRepository {
         return new WorkerSpout() {
             @Override
             public GraphPropertyWorkerTuple nextTuple() throws Exception {
-                JSONObject entry = queue.poll();
+                JSONObject entry;
+                synchronized (queue) {
+                    // wait briefly for an entry so callers polling in a loop do not spin on an empty queue
+                    if (queue.isEmpty()) {
+                        queue.wait(NEXT_TUPLE_WAIT_MS);
+                    }
+                    entry = queue.poll();
+                }
                 if (entry == null) {
                     return null;
                 }
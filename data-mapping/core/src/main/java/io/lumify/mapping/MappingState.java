@@ -5,6 +5,8 @@ import org.securegraph.Authorizations;
 import org.securegraph.Graph;
 import org.securegraph.Vertex;
 
+import java.util.Collection;
+
 /**
  * Maintains State information during a document mapping. This class
  * encapsulates the GraphPropertyWorkData of the input job and provides
@@ -71,4 +73,21 @@ public interface MappingState {
      * @param vertex the Vertex to add
      */
     void addVertexToWorkspaceIfNeeded(Vertex vertex);
+
+    /**
+     * Adds all of the target Vertices to the current workspace in a single
+     * update if necessary.
+     * @param vertices the Vertices to add
+     */
+    void addVerticesToWorkspaceIfNeeded(Collection<Vertex> vertices);
+
+    /**
+     * @return the number of rows written between graph flushes
+     */
+    int getBatchSize();
+
+    /**
+     * @return the number of threads used to map rows to Vertices
+     */
+    int getThreadCount();
 }
@@ -7,11 +7,14 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.mapping.DocumentMapping;
+import io.lumify.mapping.LumifyDataMappingException;
 import io.lumify.mapping.MappingState;
 import io.lumify.mapping.column.ColumnRelationshipMapping.RelationshipDef;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -20,6 +23,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.securegraph.Authorizations;
 import org.securegraph.EdgeBuilder;
 import org.securegraph.Graph;
@@ -90,68 +100,291 @@ public abstract class AbstractColumnDocumentMapping implements DocumentMapping {
      */
     protected abstract Iterable<Row> getRows(final InputStream input);
 
+    /**
+     * Maps the rows of the document in chunks on a pool of state.getThreadCount() threads while a single writer
+     * saves the mapped rows, in document order, and flushes the graph once every state.getBatchSize() rows.
+     * Reading the document stays sequential because a quoted value may span several lines.
+     */
     @Override
     public void mapDocument(final InputStream inputDoc, final MappingState state, final String vertexIdPrefix) {
+        int threadCount = Math.max(1, state.getThreadCount());
+        int batchSize = Math.max(1, state.getBatchSize());
+        int chunkSize = Math.max(1, batchSize / threadCount);
+        BatchWriter writer = new BatchWriter(state, batchSize);
+        if (threadCount == 1) {
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            for (Row row : getRows(inputDoc)) {
+                if (!row.isEmpty()) {
+                    chunk.add(row);
+                }
+                if (chunk.size() >= chunkSize) {
+                    writer.write(mapRows(chunk, state, vertexIdPrefix));
+                    chunk.clear();
+                }
+            }
+            writer.write(mapRows(chunk, state, vertexIdPrefix));
+            writer.finish();
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-column-mapping-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Deque<Future<List<MappedRow>>> inFlight = new ArrayDeque<>();
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            for (Row row : getRows(inputDoc)) {
+                if (!row.isEmpty()) {
+                    chunk.add(row);
+                }
+                if (chunk.size() >= chunkSize) {
+                    inFlight.add(executor.submit(new MapRowsTask(chunk, state, vertexIdPrefix)));
+                    chunk = new ArrayList<>(chunkSize);
+                    // bound the rows held in memory when parsing runs ahead of the writer
+                    while (inFlight.size() > threadCount * 2) {
+                        writer.write(getMappedRows(inFlight.removeFirst()));
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                inFlight.add(executor.submit(new MapRowsTask(chunk, state, vertexIdPrefix)));
+            }
+            while (!inFlight.isEmpty()) {
+                writer.write(getMappedRows(inFlight.removeFirst()));
+            }
+            writer.finish();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<MappedRow> getMappedRows(final Future<List<MappedRow>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LumifyDataMappingException("Interrupted while mapping rows", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new LumifyDataMappingException("Error mapping rows", ee.getCause());
+        }
+    }
+
+    /**
+     * Hashes each entity of the rows and prepares the builders of their Vertices. This does not read from or write
+     * to the graph, so it may run on any thread.
+     */
+    private List<MappedRow> mapRows(final List<Row> rows, final MappingState state, final String vertexIdPrefix) {
         Graph graph = state.getGraph();
         Visibility visibility = state.getData().getVisibility();
-        Authorizations auths = state.getAuthorizations();
-
-        for (Row row : getRows(inputDoc)) {
-            Map<String, Vertex> entityMap;
-            List<Vertex> newVertices;
-            boolean skipLine;
-            if (!row.isEmpty()) {
-                entityMap = new HashMap<>();
-                newVertices = new ArrayList<>();
-                skipLine = false;
-                for (EntityMapping entityMapping : entityMappings) {
-                    String hash = entityMapping.getMapping().getVertexHash(row);
-                    Vertex vertex = state.getVertex(hash);
-                    if (vertex == null) {
-                        try {
-                            String vertexId = String.format("%s%s", vertexIdPrefix, hash);
-                            VertexBuilder builder = graph.prepareVertex(vertexId, visibility);
-                            entityMapping.getMapping().createVertex(row, builder, state);
-                            vertex = builder.save(auths);
-                            newVertices.add(vertex);
-                            graph.flush();
-                            state.createHasEntityEdge(vertex);
-                            state.cacheVertex(hash, vertex);
-                            state.addVertexToWorkspaceIfNeeded(vertex);
-                        } catch (Exception e) {
-                            LOGGER.debug("Error processing entity during mapping", e);
-                            if (entityMapping.getMapping().isRequired()) {
-                                LOGGER.info(String.format("Unable to map required entity, skipping row %d", row.getRowNumber()));
-                                skipLine = true;
-                                break;
-                            }
-                        }
-                    }
-                    entityMap.put(entityMapping.getKey(), vertex);
+        List<MappedRow> mappedRows = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            List<MappedEntity> entities = new ArrayList<>(entityMappings.size());
+            for (EntityMapping entityMapping : entityMappings) {
+                String hash = entityMapping.getMapping().getVertexHash(row);
+                VertexBuilder builder = null;
+                Exception error = null;
+                try {
+                    String vertexId = String.format("%s%s", vertexIdPrefix, hash);
+                    builder = graph.prepareVertex(vertexId, visibility);
+                    entityMapping.getMapping().createVertex(row, builder, state);
+                } catch (Exception e) {
+                    builder = null;
+                    error = e;
                 }
-                // if all required entities were found, process relationships
-                if (!skipLine) {
-                    for (ColumnRelationshipMapping edgeMapping : relationshipMappings) {
-                        try {
-                            RelationshipDef relDef = edgeMapping.defineRelationship(entityMap, row);
-                            String edgeId = String.format("%s_%s_%s", relDef.getSource().getId(), relDef.getLabel(), relDef.getTarget().getId());
-                            EdgeBuilder builder = graph.prepareEdge(edgeId, relDef.getSource(), relDef.getTarget(), relDef.getLabel(), visibility);
-                            state.getData().setVisibilityJsonOnElement(builder);
-                            builder.save(auths);
-                        } catch (Exception ex) {
-                            throw new LumifyColumnMappingException(row, edgeMapping, ex);
-                        }
+                entities.add(new MappedEntity(entityMapping, hash, builder, error));
+            }
+            mappedRows.add(new MappedRow(row, entities));
+        }
+        return mappedRows;
+    }
+
+    private class MapRowsTask implements Callable<List<MappedRow>> {
+        private final List<Row> rows;
+        private final MappingState state;
+        private final String vertexIdPrefix;
+
+        public MapRowsTask(final List<Row> rows, final MappingState state, final String vertexIdPrefix) {
+            this.rows = rows;
+            this.state = state;
+            this.vertexIdPrefix = vertexIdPrefix;
+        }
+
+        @Override
+        public List<MappedRow> call() {
+            return mapRows(rows, state, vertexIdPrefix);
+        }
+    }
+
+    /**
+     * Saves mapped rows to the graph. Vertices are looked up by hash in the current batch before the MappingState so
+     * an entity repeated in many rows is only saved once per batch, and the graph is only flushed when a batch is
+     * complete.
+     */
+    private class BatchWriter {
+        private static final long PROGRESS_INTERVAL_MILLIS = 10000;
+
+        private final MappingState state;
+        private final Graph graph;
+        private final Visibility visibility;
+        private final Authorizations auths;
+        private final int batchSize;
+        private final Map<String, Vertex> batchVertices = new HashMap<>();
+        private final List<Vertex> batchNewVertices = new ArrayList<>();
+        private final Set<String> batchEdgeIds = new HashSet<>();
+        private final long startTime = System.currentTimeMillis();
+        private long lastProgressTime = startTime;
+        private int batchRowCount;
+        private long rowCount;
+
+        public BatchWriter(final MappingState state, final int batchSize) {
+            this.state = state;
+            this.graph = state.getGraph();
+            this.visibility = state.getData().getVisibility();
+            this.auths = state.getAuthorizations();
+            this.batchSize = batchSize;
+        }
+
+        public void write(final List<MappedRow> mappedRows) {
+            for (MappedRow mappedRow : mappedRows) {
+                write(mappedRow);
+                rowCount++;
+                if (++batchRowCount >= batchSize) {
+                    flush();
+                }
+            }
+        }
+
+        private void write(final MappedRow mappedRow) {
+            Row row = mappedRow.getRow();
+            // skip the row before saving anything if a required entity could not be mapped
+            for (MappedEntity entity : mappedRow.getEntities()) {
+                if (entity.getError() != null && findVertex(entity.getHash()) == null) {
+                    LOGGER.debug("Error processing entity during mapping", entity.getError());
+                    if (entity.getEntityMapping().getMapping().isRequired()) {
+                        LOGGER.info(String.format("Unable to map required entity, skipping row %d", row.getRowNumber()));
+                        return;
                     }
-                } else {
-                    // if line is skipped, remove any previously created vertices
-                    for (Vertex v : newVertices) {
-                        graph.removeVertex(v, auths);
-                        state.removeVertex(v);
+                }
+            }
+
+            Map<String, Vertex> entityMap = new HashMap<>();
+            for (MappedEntity entity : mappedRow.getEntities()) {
+                Vertex vertex = findVertex(entity.getHash());
+                if (vertex == null && entity.getBuilder() != null) {
+                    vertex = entity.getBuilder().save(auths);
+                    state.createHasEntityEdge(vertex);
+                    state.cacheVertex(entity.getHash(), vertex);
+                    batchVertices.put(entity.getHash(), vertex);
+                    batchNewVertices.add(vertex);
+                }
+                entityMap.put(entity.getEntityMapping().getKey(), vertex);
+            }
+
+            for (ColumnRelationshipMapping edgeMapping : relationshipMappings) {
+                try {
+                    RelationshipDef relDef = edgeMapping.defineRelationship(entityMap, row);
+                    String edgeId = String.format("%s_%s_%s", relDef.getSource().getId(), relDef.getLabel(), relDef.getTarget().getId());
+                    if (!batchEdgeIds.add(edgeId)) {
+                        continue;
                     }
+                    EdgeBuilder builder = graph.prepareEdge(edgeId, relDef.getSource(), relDef.getTarget(), relDef.getLabel(), visibility);
+                    state.getData().setVisibilityJsonOnElement(builder);
+                    builder.save(auths);
+                } catch (Exception ex) {
+                    throw new LumifyColumnMappingException(row, edgeMapping, ex);
                 }
-                graph.flush();
             }
         }
+
+        private Vertex findVertex(final String hash) {
+            Vertex vertex = batchVertices.get(hash);
+            if (vertex == null) {
+                vertex = state.getVertex(hash);
+            }
+            return vertex;
+        }
+
+        private void flush() {
+            graph.flush();
+            state.addVerticesToWorkspaceIfNeeded(batchNewVertices);
+            batchVertices.clear();
+            batchNewVertices.clear();
+            batchEdgeIds.clear();
+            batchRowCount = 0;
+
+            long now = System.currentTimeMillis();
+            if (now - lastProgressTime >= PROGRESS_INTERVAL_MILLIS) {
+                lastProgressTime = now;
+                LOGGER.info("Mapped %d rows (%.1f rows/sec)", rowCount, getRowsPerSecond(now));
+            }
+        }
+
+        public void finish() {
+            flush();
+            LOGGER.info("Finished mapping %d rows in %dms (%.1f rows/sec)", rowCount, System.currentTimeMillis() - startTime, getRowsPerSecond(System.currentTimeMillis()));
+        }
+
+        private double getRowsPerSecond(final long now) {
+            return rowCount * 1000.0 / Math.max(1, now - startTime);
+        }
+    }
+
+    private static class MappedRow {
+        private final Row row;
+        private final List<MappedEntity> entities;
+
+        public MappedRow(Row row, List<MappedEntity> entities) {
+            this.row = row;
+            this.entities = entities;
+        }
+
+        public Row getRow() {
+            return row;
+        }
+
+        public List<MappedEntity> getEntities() {
+            return entities;
+        }
+    }
+
+    private static class MappedEntity {
+        private final EntityMapping entityMapping;
+        private final String hash;
+        private final VertexBuilder builder;
+        private final Exception error;
+
+        public MappedEntity(EntityMapping entityMapping, String hash, VertexBuilder builder, Exception error) {
+            this.entityMapping = entityMapping;
+            this.hash = hash;
+            this.builder = builder;
+            this.error = error;
+        }
+
+        public EntityMapping getEntityMapping() {
+            return entityMapping;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public VertexBuilder getBuilder() {
+            return builder;
+        }
+
+        public Exception getError() {
+            return error;
+        }
     }
 
     private static class EntityMapping {
@@ -0,0 +1,226 @@
+package io.lumify.mapping.column;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
+import io.lumify.mapping.MappingState;
+import io.lumify.mapping.column.AbstractColumnDocumentMapping.Row;
+import io.lumify.mapping.xform.StringValueTransformer;
+import io.lumify.web.clientapi.model.VisibilityJson;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.securegraph.Authorizations;
+import org.securegraph.Direction;
+import org.securegraph.Graph;
+import org.securegraph.Metadata;
+import org.securegraph.Vertex;
+import org.securegraph.Visibility;
+import org.securegraph.inmemory.InMemoryAuthorizations;
+import org.securegraph.inmemory.InMemoryGraph;
+import org.securegraph.util.IterableUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AbstractColumnDocumentMappingTest {
+    private static final String PERSON_IRI = "http://lumify.io/test#person";
+    private static final String ORGANIZATION_IRI = "http://lumify.io/test#organization";
+    private static final String TITLE = "http://lumify.io#title";
+
+    @Mock
+    private GraphPropertyWorkData data;
+
+    private Graph graph;
+    private Authorizations authorizations;
+    private TestMapping mapping;
+
+    @Before
+    public void setup() {
+        graph = InMemoryGraph.create();
+        authorizations = new InMemoryAuthorizations();
+        when(data.getVisibility()).thenReturn(new Visibility(""));
+        when(data.getVisibilityJson()).thenReturn(new VisibilityJson());
+        when(data.createPropertyMetadata()).thenReturn(new Metadata());
+
+        Map<String, ColumnEntityMapping> entities = new HashMap<>();
+        entities.put("person", entity(PERSON_IRI, 0, true));
+        entities.put("organization", entity(ORGANIZATION_IRI, 1, false));
+        List<ColumnRelationshipMapping> relationships = new ArrayList<>();
+        relationships.add(new ConstantLabelColumnRelationshipMapping("person", "organization", "worksFor"));
+        mapping = new TestMapping(entities, relationships);
+    }
+
+    @Test
+    public void testMapDocumentSingleThreaded() {
+        doTestMapDocument(1, 2);
+    }
+
+    @Test
+    public void testMapDocumentMultiThreaded() {
+        doTestMapDocument(4, 3);
+    }
+
+    private void doTestMapDocument(final int threadCount, final int batchSize) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new ListRow(i, "person" + (i % 10), "organization" + (i % 3)));
+        }
+        rows.add(new ListRow(50));
+        mapping.setRows(rows);
+        TestMappingState state = new TestMappingState(threadCount, batchSize);
+
+        mapping.mapDocument(new ByteArrayInputStream(new byte[0]), state, "TEST_");
+
+        assertEquals(13, IterableUtils.count(graph.getVertices(authorizations)));
+        assertEquals(30, IterableUtils.count(graph.getEdges(authorizations)));
+        assertEquals(13, state.workspaceVertices.size());
+        assertEquals(13, state.hasEntityVertices.size());
+        Vertex person = state.getVertex(state.hashes.get("person3"));
+        assertEquals("person3", person.getPropertyValue(TITLE));
+        assertEquals(3, IterableUtils.count(person.getEdges(Direction.OUT, authorizations)));
+    }
+
+    private static ColumnEntityMapping entity(final String conceptIri, final int column, final boolean required) {
+        Map<String, ColumnValue<?>> properties = new HashMap<>();
+        properties.put(TITLE, new RequiredColumnValue<>(new SingleColumnValue<>(column, new StringValueTransformer(), null)));
+        return new ConstantConceptColumnEntityMapping(conceptIri, properties, required);
+    }
+
+    private static class TestMapping extends AbstractColumnDocumentMapping {
+        private List<Row> rows;
+
+        public TestMapping(Map<String, ColumnEntityMapping> entities, List<ColumnRelationshipMapping> relationships) {
+            super(entities, relationships);
+        }
+
+        public void setRows(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        protected Iterable<Row> getRows(InputStream input) {
+            return rows;
+        }
+    }
+
+    private static class ListRow implements Row {
+        private final long rowNumber;
+        private final List<String> values;
+
+        public ListRow(long rowNumber, String... values) {
+            this.rowNumber = rowNumber;
+            this.values = Arrays.asList(values);
+        }
+
+        @Override
+        public String get(int col) {
+            return values.get(col);
+        }
+
+        @Override
+        public int getColumnCount() {
+            return values.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        @Override
+        public long getRowNumber() {
+            return rowNumber;
+        }
+    }
+
+    private class TestMappingState implements MappingState {
+        private final int threadCount;
+        private final int batchSize;
+        private final Map<String, String> hashes = new HashMap<>();
+        private final Map<String, String> vertexIds = new HashMap<>();
+        private final List<Vertex> hasEntityVertices = new ArrayList<>();
+        private final List<Vertex> workspaceVertices = new ArrayList<>();
+
+        public TestMappingState(int threadCount, int batchSize) {
+            this.threadCount = threadCount;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public GraphPropertyWorkData getData() {
+            return data;
+        }
+
+        @Override
+        public Graph getGraph() {
+            return graph;
+        }
+
+        @Override
+        public Authorizations getAuthorizations() {
+            return authorizations;
+        }
+
+        @Override
+        public String getMultiKey() {
+            return "test";
+        }
+
+        @Override
+        public String getCachedVertexId(String hash) {
+            return vertexIds.get(hash);
+        }
+
+        @Override
+        public void cacheVertex(String hash, Vertex vertex) {
+            assertNull("vertex saved twice", vertexIds.put(hash, vertex.getId()));
+            hashes.put((String) vertex.getPropertyValue(TITLE), hash);
+        }
+
+        @Override
+        public void removeVertex(Vertex vertex) {
+            vertexIds.values().remove(vertex.getId());
+        }
+
+        @Override
+        public Vertex getVertex(String hash) {
+            String vertexId = vertexIds.get(hash);
+            return vertexId == null ? null : graph.getVertex(vertexId, authorizations);
+        }
+
+        @Override
+        public void createHasEntityEdge(Vertex entityVertex) {
+            hasEntityVertices.add(entityVertex);
+        }
+
+        @Override
+        public void addVertexToWorkspaceIfNeeded(Vertex vertex) {
+            workspaceVertices.add(vertex);
+        }
+
+        @Override
+        public void addVerticesToWorkspaceIfNeeded(Collection<Vertex> vertices) {
+            workspaceVertices.addAll(vertices);
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public int getThreadCount() {
+            return threadCount;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.web.clientapi.model.util.ClientApiConverter;
 import java.io.InputStream;
+import java.util.Collection;
 import org.securegraph.Element;
 import org.securegraph.Metadata;
 import org.securegraph.Property;
@@ -16,11 +17,16 @@ import org.securegraph.property.StreamingPropertyValue;
 
 public abstract class AbstractDocumentMappingGraphPropertyWorker<T extends DocumentMapping> extends GraphPropertyWorker {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(AbstractDocumentMappingGraphPropertyWorker.class);
+    public static final String BATCH_SIZE_CONFIG = "dataMapping.batchSize";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final String THREAD_COUNT_CONFIG = "dataMapping.threadCount";
 
     private final Class<T> mappingClass;
     private final String multiValueKey;
     private String hasEntityIri;
     private String conceptTypeIri;
+    private int batchSize;
+    private int threadCount;
 
     protected AbstractDocumentMappingGraphPropertyWorker(final Class<T> mapClass, final String valKey) {
         this.mappingClass = mapClass;
@@ -32,6 +38,8 @@ public abstract class AbstractDocumentMappingGraphPropertyWorker<T extends Docum
         super.prepare(workerPrepareData);
         hasEntityIri = getOntologyRepository().getRequiredRelationshipIRIByIntent("artifactHasEntity");
         conceptTypeIri = getOntologyRepository().getConceptIRIByIntent(getConceptIriIntent());
+        batchSize = getConfiguration().getInt(BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE);
+        threadCount = getConfiguration().getInt(THREAD_COUNT_CONFIG, Runtime.getRuntime().availableProcessors());
     }
 
     public String getHasEntityIri() {
@@ -42,6 +50,14 @@ public abstract class AbstractDocumentMappingGraphPropertyWorker<T extends Docum
         return conceptTypeIri;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
     /**
      * @return the intent used to identify the concept type IRI
      */
@@ -95,4 +111,14 @@ public abstract class AbstractDocumentMappingGraphPropertyWorker<T extends Docum
     public void addVertexToWorkspaceIfNeeded(GraphPropertyWorkData data, Vertex vertex) {
         super.addVertexToWorkspaceIfNeeded(data, vertex);
     }
+
+    /**
+     * Exposing publicly.
+     * @param data the work data
+     * @param vertices the vertices to add
+     */
+    @Override
+    public void addVerticesToWorkspaceIfNeeded(GraphPropertyWorkData data, Collection<Vertex> vertices) {
+        super.addVerticesToWorkspaceIfNeeded(data, vertices);
+    }
 }
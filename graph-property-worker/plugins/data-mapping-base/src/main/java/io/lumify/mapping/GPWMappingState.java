@@ -3,6 +3,7 @@ package io.lumify.mapping;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import org.securegraph.Authorizations;
@@ -107,4 +108,19 @@ public final class GPWMappingState implements MappingState {
     public void addVertexToWorkspaceIfNeeded(final Vertex vertex) {
         worker.addVertexToWorkspaceIfNeeded(data, vertex);
     }
+
+    @Override
+    public void addVerticesToWorkspaceIfNeeded(final Collection<Vertex> vertices) {
+        worker.addVerticesToWorkspaceIfNeeded(data, vertices);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return worker.getBatchSize();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return worker.getThreadCount();
+    }
 }
@@ -0,0 +1,420 @@
+package io.lumify.knownEntity;
+
+import io.lumify.core.exception.LumifyException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton over the known entity dictionaries kept entirely in primitive arrays. States are numbered
+ * in breadth first order with the root as state 0 and the transitions of each state are sorted by character, so a
+ * transition is a binary search and the whole automaton is a single block of bytes that can be written once with
+ * {@link #writeTo(OutputStream)} and memory mapped by every worker with {@link #load(File)}.
+ * <p/>
+ * Text is matched from a {@link Reader} one buffer at a time. Offsets reported to the {@link MatchListener} are char
+ * offsets from the start of the stream, the same offsets as indexes into the fully read string.
+ */
+public class KnownEntityAutomaton {
+    private static final int MAGIC = 0x4b454e41;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 3;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int ROOT_STATE = 0;
+    private static final int NO_STATE = -1;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int ROOT_TABLE_SIZE = 256;
+    private final ByteBuffer data;
+    private final int stateCount;
+    private final int entryCount;
+    private final IntBuffer transitionStarts;
+    private final IntBuffer transitionTargets;
+    private final IntBuffer failStates;
+    private final IntBuffer outputLinks;
+    private final IntBuffer outputStarts;
+    private final IntBuffer outputEntries;
+    private final IntBuffer entries;
+    private final IntBuffer stringStarts;
+    private final CharBuffer transitionChars;
+    private final CharBuffer stringChars;
+    private final int[] rootTransitions = new int[ROOT_TABLE_SIZE];
+
+    private KnownEntityAutomaton(ByteBuffer data) {
+        this.data = data;
+        IntBuffer header = section(data, 0, HEADER_SIZE * 4).asIntBuffer();
+        if (header.get(0) != MAGIC) {
+            throw new LumifyException("Not a known entity automaton");
+        }
+        if (header.get(1) != VERSION) {
+            throw new LumifyException("Unsupported known entity automaton version " + header.get(1) + ", expected " + VERSION);
+        }
+        this.stateCount = header.get(2);
+        int transitionCount = header.get(3);
+        int outputCount = header.get(4);
+        this.entryCount = header.get(5);
+        int stringCount = header.get(6);
+        int stringCharCount = header.get(7);
+
+        int position = HEADER_SIZE * 4;
+        this.transitionStarts = section(data, position, (stateCount + 1) * 4).asIntBuffer();
+        position += (stateCount + 1) * 4;
+        this.transitionTargets = section(data, position, transitionCount * 4).asIntBuffer();
+        position += transitionCount * 4;
+        this.failStates = section(data, position, stateCount * 4).asIntBuffer();
+        position += stateCount * 4;
+        this.outputLinks = section(data, position, stateCount * 4).asIntBuffer();
+        position += stateCount * 4;
+        this.outputStarts = section(data, position, (stateCount + 1) * 4).asIntBuffer();
+        position += (stateCount + 1) * 4;
+        this.outputEntries = section(data, position, outputCount * 4).asIntBuffer();
+        position += outputCount * 4;
+        this.entries = section(data, position, entryCount * ENTRY_SIZE * 4).asIntBuffer();
+        position += entryCount * ENTRY_SIZE * 4;
+        this.stringStarts = section(data, position, (stringCount + 1) * 4).asIntBuffer();
+        position += (stringCount + 1) * 4;
+        this.transitionChars = section(data, position, transitionCount * 2).asCharBuffer();
+        position += transitionCount * 2;
+        this.stringChars = section(data, position, stringCharCount * 2).asCharBuffer();
+
+        // most characters of the text fall back to the root, so its Latin-1 transitions are looked up in a table
+        for (int c = 0; c < ROOT_TABLE_SIZE; c++) {
+            int next = findTransition(ROOT_STATE, (char) c);
+            rootTransitions[c] = next == NO_STATE ? ROOT_STATE : next;
+        }
+    }
+
+    /**
+     * Memory maps an automaton previously written with {@link #writeTo(OutputStream)}.
+     */
+    public static KnownEntityAutomaton load(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new KnownEntityAutomaton(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer = data.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the reader to the end reporting every dictionary entry found in it. Overlapping entries are all reported,
+     * in order of where they end.
+     */
+    public void match(Reader reader, MatchListener listener) throws IOException {
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int state = ROOT_STATE;
+        int offset = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                state = nextState(state, buffer[i]);
+                offset++;
+                int outputState = hasOutputs(state) ? state : outputLinks.get(state);
+                while (outputState != NO_STATE) {
+                    int outputEnd = outputStarts.get(outputState + 1);
+                    for (int output = outputStarts.get(outputState); output < outputEnd; output++) {
+                        int entry = outputEntries.get(output);
+                        listener.match(entry, offset - getMatchLength(entry), offset);
+                    }
+                    outputState = outputLinks.get(outputState);
+                }
+            }
+        }
+    }
+
+    private int nextState(int state, char c) {
+        while (state != ROOT_STATE) {
+            int next = findTransition(state, c);
+            if (next != NO_STATE) {
+                return next;
+            }
+            state = failStates.get(state);
+        }
+        if (c < ROOT_TABLE_SIZE) {
+            return rootTransitions[c];
+        }
+        int next = findTransition(ROOT_STATE, c);
+        return next == NO_STATE ? ROOT_STATE : next;
+    }
+
+    private int findTransition(int state, char c) {
+        return findTransition(transitionStarts, transitionChars, transitionTargets, state, c);
+    }
+
+    private static int findTransition(IntBuffer transitionStarts, CharBuffer transitionChars, IntBuffer transitionTargets, int state, char c) {
+        int low = transitionStarts.get(state);
+        int high = transitionStarts.get(state + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = transitionChars.get(mid);
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return transitionTargets.get(mid);
+            }
+        }
+        return NO_STATE;
+    }
+
+    private boolean hasOutputs(int state) {
+        return outputStarts.get(state + 1) > outputStarts.get(state);
+    }
+
+    public int getMatchLength(int entry) {
+        return entries.get(entry * ENTRY_SIZE);
+    }
+
+    public String getConceptTitle(int entry) {
+        return getString(entries.get(entry * ENTRY_SIZE + 1));
+    }
+
+    public String getEntityTitle(int entry) {
+        return getString(entries.get(entry * ENTRY_SIZE + 2));
+    }
+
+    private String getString(int index) {
+        int start = stringStarts.get(index);
+        char[] chars = new char[stringStarts.get(index + 1) - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = stringChars.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Size of the automaton in bytes, either on the heap or in the mapped file.
+     */
+    public int getSize() {
+        return data.capacity();
+    }
+
+    private static ByteBuffer section(ByteBuffer data, int position, int length) {
+        ByteBuffer section = data.duplicate();
+        section.clear();
+        section.position(position);
+        section.limit(position + length);
+        return section.slice().order(BYTE_ORDER);
+    }
+
+    public static interface MatchListener {
+        /**
+         * @param entry index of the matched dictionary entry
+         * @param start char offset of the first matched character
+         * @param end   char offset one past the last matched character
+         */
+        void match(int entry, int start, int end);
+    }
+
+    /**
+     * Collects dictionary entries into a trie held as first child and next sibling lists, then lays the states out in
+     * breadth first order and computes the fail and output links.
+     */
+    public static class Builder {
+        private int[] firstChild = new int[1024];
+        private int[] nextSibling = new int[1024];
+        private char[] labels = new char[1024];
+        private int stateCount = 1;
+        private int[] entries = new int[1024 * ENTRY_SIZE];
+        private int[] entryStates = new int[1024];
+        private int entryCount;
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final StringBuilder stringChars = new StringBuilder();
+        private int[] stringStarts = new int[1024];
+        private int stringCount;
+
+        public Builder() {
+            firstChild[ROOT_STATE] = NO_STATE;
+            nextSibling[ROOT_STATE] = NO_STATE;
+        }
+
+        public Builder add(String matchText, String conceptTitle, String entityTitle) {
+            if (matchText.length() == 0) {
+                return this;
+            }
+            int state = ROOT_STATE;
+            for (int i = 0; i < matchText.length(); i++) {
+                state = getOrAddChild(state, matchText.charAt(i));
+            }
+
+            if (entryCount == entryStates.length) {
+                entryStates = Arrays.copyOf(entryStates, entryCount * 2);
+                entries = Arrays.copyOf(entries, entryCount * 2 * ENTRY_SIZE);
+            }
+            entryStates[entryCount] = state;
+            entries[entryCount * ENTRY_SIZE] = matchText.length();
+            entries[entryCount * ENTRY_SIZE + 1] = getStringIndex(conceptTitle);
+            entries[entryCount * ENTRY_SIZE + 2] = getStringIndex(entityTitle);
+            entryCount++;
+            return this;
+        }
+
+        private int getOrAddChild(int state, char c) {
+            for (int child = firstChild[state]; child != NO_STATE; child = nextSibling[child]) {
+                if (labels[child] == c) {
+                    return child;
+                }
+            }
+            if (stateCount == labels.length) {
+                firstChild = Arrays.copyOf(firstChild, stateCount * 2);
+                nextSibling = Arrays.copyOf(nextSibling, stateCount * 2);
+                labels = Arrays.copyOf(labels, stateCount * 2);
+            }
+            int child = stateCount++;
+            labels[child] = c;
+            firstChild[child] = NO_STATE;
+            nextSibling[child] = firstChild[state];
+            firstChild[state] = child;
+            return child;
+        }
+
+        private int getStringIndex(String string) {
+            Integer index = stringIndexes.get(string);
+            if (index == null) {
+                if (stringCount + 1 >= stringStarts.length) {
+                    stringStarts = Arrays.copyOf(stringStarts, stringStarts.length * 2);
+                }
+                index = stringCount++;
+                stringChars.append(string);
+                stringStarts[stringCount] = stringChars.length();
+                stringIndexes.put(string, index);
+            }
+            return index;
+        }
+
+        public KnownEntityAutomaton build() {
+            int transitionCount = stateCount - 1;
+            int[] transitionStarts = new int[stateCount + 1];
+            int[] transitionTargets = new int[transitionCount];
+            char[] transitionChars = new char[transitionCount];
+
+            // number the states in breadth first order, writing each state's transitions sorted by character
+            int[] newStates = new int[stateCount];
+            int[] queue = new int[stateCount];
+            int queueEnd = 1;
+            queue[0] = ROOT_STATE;
+            newStates[ROOT_STATE] = ROOT_STATE;
+            int transition = 0;
+            long[] children = new long[16];
+            for (int newState = 0; newState < stateCount; newState++) {
+                int state = queue[newState];
+                transitionStarts[newState] = transition;
+                int childCount = 0;
+                for (int child = firstChild[state]; child != NO_STATE; child = nextSibling[child]) {
+                    if (childCount == children.length) {
+                        children = Arrays.copyOf(children, childCount * 2);
+                    }
+                    children[childCount++] = ((long) labels[child] << 32) | child;
+                }
+                Arrays.sort(children, 0, childCount);
+                for (int i = 0; i < childCount; i++) {
+                    int child = (int) children[i];
+                    newStates[child] = queueEnd;
+                    queue[queueEnd++] = child;
+                    transitionChars[transition] = (char) (children[i] >>> 32);
+                    transitionTargets[transition] = newStates[child];
+                    transition++;
+                }
+            }
+            transitionStarts[stateCount] = transition;
+
+            IntBuffer transitionStartsBuffer = IntBuffer.wrap(transitionStarts);
+            CharBuffer transitionCharsBuffer = CharBuffer.wrap(transitionChars);
+            IntBuffer transitionTargetsBuffer = IntBuffer.wrap(transitionTargets);
+            int[] failStates = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                for (int t = transitionStarts[state]; t < transitionStarts[state + 1]; t++) {
+                    int target = transitionTargets[t];
+                    if (state == ROOT_STATE) {
+                        failStates[target] = ROOT_STATE;
+                        continue;
+                    }
+                    int fail = failStates[state];
+                    while (true) {
+                        int next = findTransition(transitionStartsBuffer, transitionCharsBuffer, transitionTargetsBuffer, fail, transitionChars[t]);
+                        if (next != NO_STATE) {
+                            failStates[target] = next;
+                            break;
+                        }
+                        if (fail == ROOT_STATE) {
+                            failStates[target] = ROOT_STATE;
+                            break;
+                        }
+                        fail = failStates[fail];
+                    }
+                }
+            }
+
+            int[] outputStarts = new int[stateCount + 1];
+            for (int entry = 0; entry < entryCount; entry++) {
+                outputStarts[newStates[entryStates[entry]] + 1]++;
+            }
+            for (int state = 0; state < stateCount; state++) {
+                outputStarts[state + 1] += outputStarts[state];
+            }
+            int[] outputEntries = new int[entryCount];
+            int[] outputPositions = Arrays.copyOf(outputStarts, stateCount);
+            for (int entry = 0; entry < entryCount; entry++) {
+                outputEntries[outputPositions[newStates[entryStates[entry]]]++] = entry;
+            }
+
+            // link each state to the nearest state on its fail chain that has outputs of its own
+            int[] outputLinks = new int[stateCount];
+            outputLinks[ROOT_STATE] = NO_STATE;
+            for (int state = 1; state < stateCount; state++) {
+                int fail = failStates[state];
+                outputLinks[state] = outputStarts[fail + 1] > outputStarts[fail] ? fail : outputLinks[fail];
+            }
+
+            int size = (HEADER_SIZE + (stateCount + 1) + transitionCount + stateCount + stateCount + (stateCount + 1)
+                    + entryCount + entryCount * ENTRY_SIZE + (stringCount + 1)) * 4
+                    + (transitionCount + stringChars.length()) * 2;
+            ByteBuffer data = ByteBuffer.allocateDirect(size).order(BYTE_ORDER);
+            IntBuffer intData = data.asIntBuffer();
+            intData.put(new int[]{MAGIC, VERSION, stateCount, transitionCount, entryCount, entryCount, stringCount, stringChars.length()});
+            intData.put(transitionStarts);
+            intData.put(transitionTargets);
+            intData.put(failStates);
+            intData.put(outputLinks);
+            intData.put(outputStarts);
+            intData.put(outputEntries);
+            intData.put(entries, 0, entryCount * ENTRY_SIZE);
+            intData.put(stringStarts, 0, stringCount + 1);
+            data.position(intData.position() * 4);
+            CharBuffer charData = data.slice().order(BYTE_ORDER).asCharBuffer();
+            charData.put(transitionChars);
+            charData.put(stringChars.toString());
+            data.clear();
+            return new KnownEntityAutomaton(data);
+        }
+    }
+}
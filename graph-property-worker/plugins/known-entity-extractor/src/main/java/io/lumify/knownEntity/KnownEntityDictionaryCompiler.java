@@ -0,0 +1,103 @@
+package io.lumify.knownEntity;
+
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.List;
+
+/**
+ * Compiles the known entity dictionaries offline into a {@link KnownEntityAutomaton} file which the
+ * {@link KnownEntityExtractorGraphPropertyWorker} memory maps instead of building the automaton itself. The worker
+ * ignores the file once a dictionary is changed, added or removed after it was written, so run this again after every
+ * change to the dictionaries.
+ * <p/>
+ * Usage: KnownEntityDictionaryCompiler &lt;dictionary directory&gt; &lt;automaton file&gt;
+ * <p/>
+ * Both paths may be local or HDFS paths, for example
+ * <code>hdfs:///lumify/config/knownEntities/dictionaries hdfs:///lumify/config/knownEntities/dictionaries.automaton</code>
+ */
+public class KnownEntityDictionaryCompiler {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(KnownEntityDictionaryCompiler.class);
+    public static final String DICTIONARY_EXTENSION = ".dict";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: " + KnownEntityDictionaryCompiler.class.getName() + " <dictionary directory> <automaton file>");
+            System.exit(1);
+        }
+        Configuration hadoopConfiguration = new Configuration();
+        Path dictionaryDirectory = new Path(args[0]);
+        Path automatonPath = new Path(args[1]);
+
+        KnownEntityAutomaton.Builder builder = new KnownEntityAutomaton.Builder();
+        addDictionaries(dictionaryDirectory.getFileSystem(hadoopConfiguration), dictionaryDirectory, builder);
+        KnownEntityAutomaton automaton = builder.build();
+
+        FileSystem automatonFileSystem = automatonPath.getFileSystem(hadoopConfiguration);
+        try (OutputStream out = automatonFileSystem.create(automatonPath, true)) {
+            automaton.writeTo(out);
+        }
+        LOGGER.info("Wrote %d entries, %d states (%d bytes) to %s", automaton.getEntryCount(), automaton.getStateCount(), automaton.getSize(), automatonPath.toString());
+    }
+
+    /**
+     * Adds every dictionary in the directory to the builder. Each dictionary is named after its concept and holds one
+     * "match text,entity title" line per entry.
+     */
+    public static void addDictionaries(FileSystem fs, Path directory, KnownEntityAutomaton.Builder builder) throws IOException {
+        for (FileStatus dictionaryFileStatus : fs.listStatus(directory)) {
+            Path path = dictionaryFileStatus.getPath();
+            if (!isDictionary(path)) {
+                continue;
+            }
+            LOGGER.info("Loading known entity dictionary %s", path.toString());
+            String conceptName = FilenameUtils.getBaseName(path.getName());
+            conceptName = URLDecoder.decode(conceptName, "UTF-8");
+            try (InputStream dictionaryInputStream = fs.open(path)) {
+                addDictionaryEntries(builder, conceptName, dictionaryInputStream);
+            }
+        }
+    }
+
+    /**
+     * @return the time the newest dictionary in the directory was written, or the directory itself last changed, which
+     * is when a dictionary was last added or removed
+     */
+    public static long getModificationTime(FileSystem fs, Path directory) throws IOException {
+        long modificationTime = fs.getFileStatus(directory).getModificationTime();
+        for (FileStatus dictionaryFileStatus : fs.listStatus(directory)) {
+            if (isDictionary(dictionaryFileStatus.getPath())) {
+                modificationTime = Math.max(modificationTime, dictionaryFileStatus.getModificationTime());
+            }
+        }
+        return modificationTime;
+    }
+
+    private static boolean isDictionary(Path path) {
+        return !path.getName().startsWith(".") && path.getName().endsWith(DICTIONARY_EXTENSION);
+    }
+
+    private static void addDictionaryEntries(KnownEntityAutomaton.Builder builder, String type, InputStream dictionaryInputStream) throws IOException {
+        CsvPreference csvPrefs = CsvPreference.EXCEL_PREFERENCE;
+        CsvListReader csvReader = new CsvListReader(new InputStreamReader(dictionaryInputStream), csvPrefs);
+        List<String> line;
+        while ((line = csvReader.read()) != null) {
+            if (line.size() != 2) {
+                throw new RuntimeException("Invalid number of entries on a line. Expected 2 found " + line.size());
+            }
+            builder.add(line.get(0), type, line.get(1));
+        }
+    }
+}
@@ -1,45 +1,49 @@
 package io.lumify.knownEntity;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorker;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerPrepareData;
 import io.lumify.core.model.audit.AuditAction;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.termMention.TermMentionBuilder;
+import io.lumify.core.model.termMention.TermMentionIndex;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.web.clientapi.model.VisibilityJson;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.arabidopsis.ahocorasick.AhoCorasick;
-import org.arabidopsis.ahocorasick.SearchResult;
 import org.securegraph.*;
-import org.supercsv.io.CsvListReader;
-import org.supercsv.prefs.CsvPreference;
+import org.securegraph.query.Compare;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URLDecoder;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
-import static org.securegraph.util.IterableUtils.singleOrDefault;
+import java.io.OutputStream;
+import java.util.*;
 
 public class KnownEntityExtractorGraphPropertyWorker extends GraphPropertyWorker {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(KnownEntityExtractorGraphPropertyWorker.class);
     public static final String PATH_PREFIX_CONFIG = "termextraction.knownEntities.pathPrefix";
     public static final String DEFAULT_PATH_PREFIX = "/lumify/config/knownEntities/";
+    public static final String ENTITY_CACHE_SIZE_CONFIG = "termextraction.knownEntities.entityCacheSize";
+    public static final int DEFAULT_ENTITY_CACHE_SIZE = 10000;
+    public static final String LOCAL_CACHE_DIR_CONFIG = "termextraction.knownEntities.localCacheDir";
+    public static final String AUTOMATON_FILE_NAME = "dictionaries.automaton";
+    private static final int ENTITY_QUERY_BATCH_SIZE = 100;
+    private static final int ENTITY_QUERY_HITS_PER_TITLE = 10;
     private static final String PROCESS = KnownEntityExtractorGraphPropertyWorker.class.getName();
-    private AhoCorasick tree;
+    private KnownEntityAutomaton automaton;
     private String artifactHasEntityIri;
     private String locationIri;
     private String organizationIri;
     private String personIri;
+    private Cache<EntityKey, String> entityVertexIdCache;
 
     @Override
     public void prepare(GraphPropertyWorkerPrepareData workerPrepareData) throws Exception {
@@ -54,52 +58,62 @@ public class KnownEntityExtractorGraphPropertyWorker extends GraphPropertyWorker
         if (pathPrefix == null) {
             pathPrefix = DEFAULT_PATH_PREFIX;
         }
+        String localCacheDir = (String) workerPrepareData.getConfiguration().get(LOCAL_CACHE_DIR_CONFIG);
+        if (localCacheDir == null) {
+            localCacheDir = System.getProperty("java.io.tmpdir");
+        }
         FileSystem fs = workerPrepareData.getHdfsFileSystem();
-        this.tree = loadDictionaries(fs, pathPrefix);
+        this.automaton = loadAutomaton(fs, pathPrefix, new File(localCacheDir));
+
+        Object entityCacheSize = workerPrepareData.getConfiguration().get(ENTITY_CACHE_SIZE_CONFIG);
+        this.entityVertexIdCache = CacheBuilder.newBuilder()
+                .maximumSize(entityCacheSize == null ? DEFAULT_ENTITY_CACHE_SIZE : Long.parseLong(entityCacheSize.toString()))
+                .build();
     }
 
     @Override
     public void execute(InputStream in, GraphPropertyWorkData data) throws Exception {
-        String text = IOUtils.toString(in, "UTF-8"); // TODO convert AhoCorasick to use InputStream
-        Iterator<SearchResult<Match>> searchResults = tree.search(text.toCharArray());
         Vertex sourceVertex = (Vertex) data.getElement();
-        List<Vertex> termMentions = new ArrayList<>();
-        while (searchResults.hasNext()) {
-            SearchResult searchResult = searchResults.next();
-            VisibilityJson visibilityJson = data.getVisibilitySourceJson();
-            List<Vertex> newTermMentions = outputResultToTermMention(sourceVertex, searchResult, data.getProperty().getKey(), visibilityJson, data.getVisibility());
-            termMentions.addAll(newTermMentions);
-            getGraph().flush();
-        }
-        applyTermMentionFilters(sourceVertex, termMentions);
-        pushTextUpdated(data);
-    }
+        VisibilityJson visibilityJson = data.getVisibilitySourceJson();
+        Visibility visibility = data.getVisibility();
 
-    private List<Vertex> outputResultToTermMention(Vertex sourceVertex, SearchResult<Match> searchResult, String propertyKey, VisibilityJson visibilityJson, Visibility visibility) {
-        List<Vertex> termMentions = new ArrayList<>();
-        for (Match match : searchResult.getOutputs()) {
-            int start = searchResult.getLastIndex() - match.getMatchText().length();
-            int end = searchResult.getLastIndex();
-            String title = match.getEntityTitle();
-            String ontologyClassUri = mapToOntologyIri(match.getConceptTitle());
+        final List<TermMentionMatch> matches = new ArrayList<>();
+        final Set<EntityKey> entityKeys = new LinkedHashSet<>();
+        automaton.match(new InputStreamReader(in, "UTF-8"), new KnownEntityAutomaton.MatchListener() {
+            @Override
+            public void match(int entry, int start, int end) {
+                EntityKey entityKey = new EntityKey(automaton.getEntityTitle(entry), mapToOntologyIri(automaton.getConceptTitle(entry)));
+                matches.add(new TermMentionMatch(entityKey, start, end));
+                entityKeys.add(entityKey);
+            }
+        });
 
-            Vertex resolvedToVertex = findOrAddEntity(title, ontologyClassUri, visibility);
-            Edge resolvedEdge = findOrAddEdge(sourceVertex, resolvedToVertex, visibilityJson, visibility);
+        Map<EntityKey, Vertex> resolvedVertices = findOrAddEntities(entityKeys, visibility);
+        Map<String, Edge> resolvedEdges = findOrAddEdges(sourceVertex, resolvedVertices.values(), visibilityJson, visibility);
 
+        TermMentionIndex.Batch termMentionIndexBatch = new TermMentionIndex.Batch(sourceVertex);
+        List<Vertex> termMentions = new ArrayList<>();
+        for (TermMentionMatch match : matches) {
+            Vertex resolvedToVertex = resolvedVertices.get(match.entityKey);
             Vertex termMention = new TermMentionBuilder()
                     .sourceVertex(sourceVertex)
-                    .propertyKey(propertyKey)
-                    .start(start)
-                    .end(end)
-                    .title(title)
-                    .conceptIri(ontologyClassUri)
+                    .propertyKey(data.getProperty().getKey())
+                    .start(match.start)
+                    .end(match.end)
+                    .title(match.entityKey.title)
+                    .conceptIri(match.entityKey.conceptIri)
                     .visibilityJson(visibilityJson)
                     .process(PROCESS)
-                    .resolvedTo(resolvedToVertex, resolvedEdge)
+                    .resolvedTo(resolvedToVertex, resolvedEdges.get(resolvedToVertex.getId()))
+                    .indexBatch(termMentionIndexBatch)
                     .save(getGraph(), getVisibilityTranslator(), getAuthorizations());
             termMentions.add(termMention);
         }
-        return termMentions;
+        termMentionIndexBatch.save(getAuthorizations());
+        getGraph().flush();
+
+        applyTermMentionFilters(sourceVertex, termMentions);
+        pushTextUpdated(data);
     }
 
     protected String mapToOntologyIri(String type) {
@@ -116,32 +130,105 @@ public class KnownEntityExtractorGraphPropertyWorker extends GraphPropertyWorker
         return ontologyClassUri;
     }
 
-    private Edge findOrAddEdge(Vertex sourceVertex, Vertex resolvedToVertex, VisibilityJson visibilityJson, Visibility visibility) {
-        Edge resolvedEdge = singleOrDefault(sourceVertex.getEdges(resolvedToVertex, Direction.BOTH, getAuthorizations()), null);
-        if (resolvedEdge == null) {
-            EdgeBuilder resolvedEdgeBuilder = getGraph().prepareEdge(sourceVertex, resolvedToVertex, artifactHasEntityIri, visibility);
-            LumifyProperties.VISIBILITY_JSON.setProperty(resolvedEdgeBuilder, visibilityJson, visibility);
-            resolvedEdge = resolvedEdgeBuilder.save(getAuthorizations());
-            getAuditRepository().auditRelationship(AuditAction.CREATE, sourceVertex, resolvedToVertex, resolvedEdge, PROCESS, "", getUser(), visibility);
+    /**
+     * Finds the edge between the source vertex and each resolved vertex with a single scan of the source vertex's
+     * edges, creating the ones that are missing.
+     */
+    private Map<String, Edge> findOrAddEdges(Vertex sourceVertex, Collection<Vertex> resolvedToVertices, VisibilityJson visibilityJson, Visibility visibility) {
+        Map<String, Edge> edgesByOtherVertexId = new HashMap<>();
+        if (resolvedToVertices.size() == 0) {
+            return edgesByOtherVertexId;
         }
-        return resolvedEdge;
+        for (Edge edge : sourceVertex.getEdges(Direction.BOTH, getAuthorizations())) {
+            String otherVertexId = edge.getOtherVertexId(sourceVertex.getId());
+            if (!edgesByOtherVertexId.containsKey(otherVertexId)) {
+                edgesByOtherVertexId.put(otherVertexId, edge);
+            }
+        }
+
+        Map<String, Edge> resolvedEdges = new HashMap<>();
+        for (Vertex resolvedToVertex : resolvedToVertices) {
+            if (resolvedEdges.containsKey(resolvedToVertex.getId())) {
+                continue;
+            }
+            Edge resolvedEdge = edgesByOtherVertexId.get(resolvedToVertex.getId());
+            if (resolvedEdge == null) {
+                EdgeBuilder resolvedEdgeBuilder = getGraph().prepareEdge(sourceVertex, resolvedToVertex, artifactHasEntityIri, visibility);
+                LumifyProperties.VISIBILITY_JSON.setProperty(resolvedEdgeBuilder, visibilityJson, visibility);
+                resolvedEdge = resolvedEdgeBuilder.save(getAuthorizations());
+                getAuditRepository().auditRelationship(AuditAction.CREATE, sourceVertex, resolvedToVertex, resolvedEdge, PROCESS, "", getUser(), visibility);
+            }
+            resolvedEdges.put(resolvedToVertex.getId(), resolvedEdge);
+        }
+        return resolvedEdges;
     }
 
-    private Vertex findOrAddEntity(String title, String ontologyClassUri, Visibility visibility) {
-        Vertex vertex = singleOrDefault(getGraph().query(getAuthorizations())
-                .has(LumifyProperties.TITLE.getPropertyName(), title)
-                .has(LumifyProperties.CONCEPT_TYPE.getPropertyName(), ontologyClassUri)
-                .vertices(), null);
-        if (vertex != null) {
-            return vertex;
+    /**
+     * Resolves each distinct title and concept to a vertex. Vertex ids resolved by earlier documents are looked up by
+     * id, the rest are searched for with one query per batch of titles, and anything still missing is created.
+     */
+    private Map<EntityKey, Vertex> findOrAddEntities(Set<EntityKey> entityKeys, Visibility visibility) {
+        Map<EntityKey, Vertex> resolvedVertices = new HashMap<>();
+        if (entityKeys.size() == 0) {
+            return resolvedVertices;
         }
 
-        VertexBuilder vertexElementMutation = getGraph().prepareVertex(visibility);
-        LumifyProperties.TITLE.setProperty(vertexElementMutation, title, visibility);
-        LumifyProperties.CONCEPT_TYPE.setProperty(vertexElementMutation, ontologyClassUri, visibility);
-        vertex = vertexElementMutation.save(getAuthorizations());
-        getGraph().flush();
-        return vertex;
+        Map<String, EntityKey> cachedVertexIds = new HashMap<>();
+        for (EntityKey entityKey : entityKeys) {
+            String vertexId = entityVertexIdCache.getIfPresent(entityKey);
+            if (vertexId != null) {
+                cachedVertexIds.put(vertexId, entityKey);
+            }
+        }
+        if (cachedVertexIds.size() > 0) {
+            for (Vertex vertex : getGraph().getVertices(cachedVertexIds.keySet(), getAuthorizations())) {
+                resolvedVertices.put(cachedVertexIds.get(vertex.getId()), vertex);
+            }
+        }
+
+        List<EntityKey> unresolvedEntityKeys = new ArrayList<>();
+        for (EntityKey entityKey : entityKeys) {
+            if (!resolvedVertices.containsKey(entityKey)) {
+                unresolvedEntityKeys.add(entityKey);
+            }
+        }
+        for (int i = 0; i < unresolvedEntityKeys.size(); i += ENTITY_QUERY_BATCH_SIZE) {
+            findEntities(unresolvedEntityKeys.subList(i, Math.min(unresolvedEntityKeys.size(), i + ENTITY_QUERY_BATCH_SIZE)), resolvedVertices);
+        }
+
+        for (EntityKey entityKey : unresolvedEntityKeys) {
+            Vertex vertex = resolvedVertices.get(entityKey);
+            if (vertex == null) {
+                VertexBuilder vertexElementMutation = getGraph().prepareVertex(visibility);
+                LumifyProperties.TITLE.setProperty(vertexElementMutation, entityKey.title, visibility);
+                LumifyProperties.CONCEPT_TYPE.setProperty(vertexElementMutation, entityKey.conceptIri, visibility);
+                vertex = vertexElementMutation.save(getAuthorizations());
+                resolvedVertices.put(entityKey, vertex);
+            }
+            entityVertexIdCache.put(entityKey, vertex.getId());
+        }
+        return resolvedVertices;
+    }
+
+    private void findEntities(List<EntityKey> entityKeys, Map<EntityKey, Vertex> resolvedVertices) {
+        Set<String> titles = new HashSet<>();
+        Set<String> conceptIris = new HashSet<>();
+        for (EntityKey entityKey : entityKeys) {
+            titles.add(entityKey.title);
+            conceptIris.add(entityKey.conceptIri);
+        }
+        Iterable<Vertex> vertices = getGraph().query(getAuthorizations())
+                .has(LumifyProperties.TITLE.getPropertyName(), Compare.IN, titles.toArray(new String[titles.size()]))
+                .has(LumifyProperties.CONCEPT_TYPE.getPropertyName(), Compare.IN, conceptIris.toArray(new String[conceptIris.size()]))
+                .limit(entityKeys.size() * ENTITY_QUERY_HITS_PER_TITLE)
+                .vertices();
+        Set<EntityKey> wantedEntityKeys = new HashSet<>(entityKeys);
+        for (Vertex vertex : vertices) {
+            EntityKey entityKey = new EntityKey(LumifyProperties.TITLE.getPropertyValue(vertex), LumifyProperties.CONCEPT_TYPE.getPropertyValue(vertex));
+            if (wantedEntityKeys.contains(entityKey) && !resolvedVertices.containsKey(entityKey)) {
+                resolvedVertices.put(entityKey, vertex);
+            }
+        }
     }
 
     @Override
@@ -158,66 +245,104 @@ public class KnownEntityExtractorGraphPropertyWorker extends GraphPropertyWorker
         return !(mimeType == null || !mimeType.startsWith("text"));
     }
 
-    private static AhoCorasick loadDictionaries(FileSystem fs, String pathPrefix) throws IOException {
-        AhoCorasick tree = new AhoCorasick();
+    /**
+     * Memory maps the automaton compiled by {@link KnownEntityDictionaryCompiler} if there is one and it is newer than the
+     * dictionaries, otherwise builds it from the dictionaries.
+     */
+    static KnownEntityAutomaton loadAutomaton(FileSystem fs, String pathPrefix, File localCacheDir) throws IOException {
+        Path automatonPath = new Path(pathPrefix, AUTOMATON_FILE_NAME);
         Path hdfsDirectory = new Path(pathPrefix, "dictionaries");
+        if (fs.exists(automatonPath)) {
+            long automatonModificationTime = fs.getFileStatus(automatonPath).getModificationTime();
+            if (!fs.exists(hdfsDirectory) || automatonModificationTime >= KnownEntityDictionaryCompiler.getModificationTime(fs, hdfsDirectory)) {
+                LOGGER.info("Loading known entity automaton %s", automatonPath.toString());
+                KnownEntityAutomaton automaton = KnownEntityAutomaton.load(getLocalFile(fs, automatonPath, localCacheDir));
+                LOGGER.info("Loaded known entity automaton with %d entries (%d bytes)", automaton.getEntryCount(), automaton.getSize());
+                return automaton;
+            }
+            LOGGER.warn("Known entity dictionaries in %s changed after %s was compiled, building the automaton from the dictionaries instead. Run %s to compile it again.", hdfsDirectory.toString(), automatonPath.toString(), KnownEntityDictionaryCompiler.class.getName());
+        }
+
         if (!fs.exists(hdfsDirectory)) {
             fs.mkdirs(hdfsDirectory);
         }
-        for (FileStatus dictionaryFileStatus : fs.listStatus(hdfsDirectory)) {
-            Path hdfsPath = dictionaryFileStatus.getPath();
-            if (hdfsPath.getName().startsWith(".") || !hdfsPath.getName().endsWith(".dict")) {
-                continue;
-            }
-            LOGGER.info("Loading known entity dictionary %s", hdfsPath.toString());
-            String conceptName = FilenameUtils.getBaseName(hdfsPath.getName());
-            conceptName = URLDecoder.decode(conceptName, "UTF-8");
-            try (InputStream dictionaryInputStream = fs.open(hdfsPath)) {
-                addDictionaryEntriesToTree(tree, conceptName, dictionaryInputStream);
-            }
-        }
-        tree.prepare();
-        return tree;
+        KnownEntityAutomaton.Builder builder = new KnownEntityAutomaton.Builder();
+        KnownEntityDictionaryCompiler.addDictionaries(fs, hdfsDirectory, builder);
+        return builder.build();
     }
 
-    private static void addDictionaryEntriesToTree(AhoCorasick tree, String type, InputStream dictionaryInputStream) throws IOException {
-        CsvPreference csvPrefs = CsvPreference.EXCEL_PREFERENCE;
-        CsvListReader csvReader = new CsvListReader(new InputStreamReader(dictionaryInputStream), csvPrefs);
-        List<String> line;
-        while ((line = csvReader.read()) != null) {
-            if (line.size() != 2) {
-                throw new RuntimeException("Invalid number of entries on a line. Expected 2 found " + line.size());
+    /**
+     * Files on the local file system are mapped in place. Anything else is copied once into the local cache directory
+     * under a name that changes whenever the file does, so workers sharing the directory share the copy.
+     */
+    private static File getLocalFile(FileSystem fs, Path path, File localCacheDir) throws IOException {
+        if ("file".equals(fs.makeQualified(path).toUri().getScheme())) {
+            return new File(path.toUri().getPath());
+        }
+
+        FileStatus fileStatus = fs.getFileStatus(path);
+        File localFile = new File(localCacheDir, "knownEntities-" + fileStatus.getModificationTime() + "-" + fileStatus.getLen() + ".automaton");
+        if (localFile.exists() && localFile.length() == fileStatus.getLen()) {
+            return localFile;
+        }
+        if (!localCacheDir.exists() && !localCacheDir.mkdirs()) {
+            throw new IOException("Could not create directory " + localCacheDir.getAbsolutePath());
+        }
+        File tempFile = File.createTempFile("knownEntities", ".tmp", localCacheDir);
+        try {
+            try (InputStream in = fs.open(path); OutputStream out = new FileOutputStream(tempFile)) {
+                IOUtils.copyLarge(in, out);
+            }
+            if (!tempFile.renameTo(localFile) && !(localFile.exists() && localFile.length() == fileStatus.getLen())) {
+                throw new IOException("Could not move " + tempFile.getAbsolutePath() + " to " + localFile.getAbsolutePath());
+            }
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                LOGGER.warn("Could not delete %s", tempFile.getAbsolutePath());
             }
-            tree.add(line.get(0), new Match(type, line.get(0), line.get(1)));
         }
+        return localFile;
     }
 
-    private static class Match {
-        private final String conceptTitle;
-        private final String entityTitle;
-        private final String matchText;
+    private static class EntityKey {
+        private final String title;
+        private final String conceptIri;
 
-        public Match(String type, String matchText, String entityTitle) {
-            conceptTitle = type;
-            this.matchText = matchText;
-            this.entityTitle = entityTitle;
+        public EntityKey(String title, String conceptIri) {
+            this.title = title;
+            this.conceptIri = conceptIri;
         }
 
-        private String getConceptTitle() {
-            return conceptTitle;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            EntityKey entityKey = (EntityKey) o;
+            return (title == null ? entityKey.title == null : title.equals(entityKey.title))
+                    && (conceptIri == null ? entityKey.conceptIri == null : conceptIri.equals(entityKey.conceptIri));
         }
 
-        private String getEntityTitle() {
-            return entityTitle;
+        @Override
+        public int hashCode() {
+            int result = title != null ? title.hashCode() : 0;
+            result = 31 * result + (conceptIri != null ? conceptIri.hashCode() : 0);
+            return result;
         }
+    }
 
-        private String getMatchText() {
-            return matchText;
-        }
+    private static class TermMentionMatch {
+        private final EntityKey entityKey;
+        private final int start;
+        private final int end;
 
-        @Override
-        public String toString() {
-            return matchText;
+        public TermMentionMatch(EntityKey entityKey, int start, int end) {
+            this.entityKey = entityKey;
+            this.start = start;
+            this.end = end;
         }
     }
 }
@@ -0,0 +1,115 @@
+package io.lumify.knownEntity;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class KnownEntityAutomatonTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesOverlappingEntries() throws IOException {
+        KnownEntityAutomaton automaton = new KnownEntityAutomaton.Builder()
+                .add("he", "person", "He")
+                .add("she", "person", "She")
+                .add("his", "person", "His")
+                .add("hers", "person", "Hers")
+                .add("über", "organization", "Über")
+                .add("東京", "location", "Tokyo")
+                .build();
+
+        assertEquals(Arrays.asList("She[1,4]", "He[2,4]", "Hers[2,6]", "Über[7,11]", "Tokyo[12,14]"),
+                match(automaton, "ushers über 東京"));
+    }
+
+    @Test
+    public void testOffsetsAcrossReadBuffers() throws IOException {
+        KnownEntityAutomaton automaton = new KnownEntityAutomaton.Builder()
+                .add("Joe Ferner", "person", "Joe Ferner")
+                .build();
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        while (text.length() < 50000) {
+            text.append("some filler text ");
+            expected.add("Joe Ferner[" + text.length() + "," + (text.length() + 10) + "]");
+            text.append("Joe Ferner ");
+        }
+
+        assertEquals(expected, match(automaton, text.toString()));
+    }
+
+    @Test
+    public void testMatchesSameAsBruteForce() throws IOException {
+        Random random = new Random(0);
+        KnownEntityAutomaton.Builder builder = new KnownEntityAutomaton.Builder();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String word = randomString(random, 1 + random.nextInt(5));
+            words.add(word);
+            builder.add(word, "thing", word);
+        }
+        String text = randomString(random, 5000);
+
+        List<String> expected = new ArrayList<>();
+        for (int end = 1; end <= text.length(); end++) {
+            for (String word : words) {
+                if (end >= word.length() && text.startsWith(word, end - word.length())) {
+                    expected.add(word + "[" + (end - word.length()) + "," + end + "]");
+                }
+            }
+        }
+        List<String> actual = match(builder.build(), text);
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testWriteAndLoad() throws IOException {
+        KnownEntityAutomaton automaton = new KnownEntityAutomaton.Builder()
+                .add("Joe", "person", "Joe Ferner")
+                .add("Lumify", "organization", "Lumify")
+                .build();
+        File file = temporaryFolder.newFile("dictionaries.automaton");
+        try (OutputStream out = new FileOutputStream(file)) {
+            automaton.writeTo(out);
+        }
+
+        KnownEntityAutomaton loadedAutomaton = KnownEntityAutomaton.load(file);
+        assertEquals(automaton.getSize(), loadedAutomaton.getSize());
+        assertEquals(automaton.getStateCount(), loadedAutomaton.getStateCount());
+        String text = "Joe works on Lumify";
+        assertEquals(match(automaton, text), match(loadedAutomaton, text));
+        assertEquals("organization", loadedAutomaton.getConceptTitle(1));
+    }
+
+    private static List<String> match(final KnownEntityAutomaton automaton, String text) throws IOException {
+        final List<String> matches = new ArrayList<>();
+        automaton.match(new StringReader(text), new KnownEntityAutomaton.MatchListener() {
+            @Override
+            public void match(int entry, int start, int end) {
+                matches.add(automaton.getEntityTitle(entry) + "[" + start + "," + end + "]");
+            }
+        });
+        return matches;
+    }
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(3));
+        }
+        return new String(chars);
+    }
+}
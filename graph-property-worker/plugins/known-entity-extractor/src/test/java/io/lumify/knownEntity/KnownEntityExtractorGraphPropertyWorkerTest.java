@@ -15,8 +15,11 @@ import io.lumify.core.security.VisibilityTranslator;
 import io.lumify.core.user.User;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -25,7 +28,10 @@ import org.securegraph.inmemory.InMemoryAuthorizations;
 import org.securegraph.inmemory.InMemoryGraph;
 import org.securegraph.property.StreamingPropertyValue;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +44,9 @@ import static org.securegraph.util.IterableUtils.toList;
 
 @RunWith(MockitoJUnitRunner.class)
 public class KnownEntityExtractorGraphPropertyWorkerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private KnownEntityExtractorGraphPropertyWorker extractor;
 
     @Mock
@@ -116,4 +125,56 @@ public class KnownEntityExtractorGraphPropertyWorkerTest {
             assertEquals("Joe Ferner", LumifyProperties.TERM_MENTION_TITLE.getPropertyValue(termMention));
         }
     }
+
+    @Test
+    public void textExtractReusesResolvedEntities() throws Exception {
+        Vertex v1 = extract("v1");
+        Vertex v2 = extract("v2");
+
+        List<Vertex> entities = toList(graph.query(authorizations)
+                .has(LumifyProperties.TITLE.getPropertyName(), "Joe Ferner")
+                .vertices());
+        assertEquals(1, entities.size());
+        assertEquals(1, toList(v1.getEdges(entities.get(0), Direction.BOTH, authorizations)).size());
+        assertEquals(1, toList(v2.getEdges(entities.get(0), Direction.BOTH, authorizations)).size());
+    }
+
+    @Test
+    public void testBuildsAutomatonFromDictionariesChangedAfterItWasCompiled() throws Exception {
+        File directory = temporaryFolder.newFolder("knownEntities");
+        File dictionaryDirectory = new File(directory, "dictionaries");
+        assertTrue(dictionaryDirectory.mkdir());
+        File personDictionary = new File(dictionaryDirectory, "person.dict");
+        FileUtils.writeStringToFile(personDictionary, "Joe,Joe Ferner\n");
+        File automatonFile = new File(directory, KnownEntityExtractorGraphPropertyWorker.AUTOMATON_FILE_NAME);
+        try (OutputStream out = new FileOutputStream(automatonFile)) {
+            new KnownEntityAutomaton.Builder().add("Joe", "person", "Joe Ferner").build().writeTo(out);
+        }
+        long compileTime = automatonFile.lastModified();
+        assertTrue(personDictionary.setLastModified(compileTime - 10000));
+        assertTrue(dictionaryDirectory.setLastModified(compileTime - 10000));
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        String pathPrefix = "file://" + directory.getAbsolutePath();
+
+        assertEquals(1, KnownEntityExtractorGraphPropertyWorker.loadAutomaton(fs, pathPrefix, temporaryFolder.getRoot()).getEntryCount());
+
+        File organizationDictionary = new File(dictionaryDirectory, "organization.dict");
+        FileUtils.writeStringToFile(organizationDictionary, "Acme,Acme Corporation\n");
+        assertTrue(organizationDictionary.setLastModified(compileTime + 10000));
+        assertEquals(2, KnownEntityExtractorGraphPropertyWorker.loadAutomaton(fs, pathPrefix, temporaryFolder.getRoot()).getEntryCount());
+    }
+
+    private Vertex extract(String vertexId) throws Exception {
+        InputStream in = getClass().getResourceAsStream("bffls.txt");
+        VertexBuilder vertexBuilder = graph.prepareVertex(vertexId, visibility);
+        StreamingPropertyValue textPropertyValue = new StreamingPropertyValue(in, String.class);
+        LumifyProperties.TEXT.setProperty(vertexBuilder, textPropertyValue, visibility);
+        Vertex vertex = vertexBuilder.save(authorizations);
+
+        in = getClass().getResourceAsStream("bffls.txt");
+        Property property = vertex.getProperty(LumifyProperties.TEXT.getPropertyName());
+        GraphPropertyWorkData workData = new GraphPropertyWorkData(visibilityTranslator, vertex, property, null, null);
+        extractor.execute(in, workData);
+        return vertex;
+    }
 }
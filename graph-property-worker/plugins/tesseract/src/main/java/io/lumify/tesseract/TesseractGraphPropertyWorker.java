@@ -1,17 +1,24 @@
 package io.lumify.tesseract;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
 import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorker;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerPrepareData;
+import io.lumify.core.metrics.MetricsManager;
 import io.lumify.core.model.audit.AuditAction;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.core.util.RowKeyHelper;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import net.sourceforge.vietocr.ImageHelper;
+import org.apache.commons.codec.binary.Hex;
 import org.securegraph.Element;
 import org.securegraph.Metadata;
 import org.securegraph.Property;
@@ -23,6 +30,9 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -31,17 +41,38 @@ public class TesseractGraphPropertyWorker extends GraphPropertyWorker {
     private static final List<String> ICON_MIME_TYPES = Arrays.asList("image/x-icon", "image/vnd.microsoft.icon");
     public static final String TEXT_PROPERTY_KEY = TesseractGraphPropertyWorker.class.getName();
     public static final String CONFIG_DATA_PATH = "tesseract.dataPath";
-    private Tesseract tesseract;
+    public static final String CONFIG_POOL_SIZE = "tesseract.poolSize";
+    public static final String CONFIG_TILE_HEIGHT = "tesseract.tileHeight";
+    public static final int DEFAULT_TILE_HEIGHT = 2000;
+    public static final String CONFIG_RESULT_CACHE_SIZE = "tesseract.resultCacheSize";
+    public static final int DEFAULT_RESULT_CACHE_SIZE = 1000;
+    private MetricsManager metricsManager;
+    private TesseractPool tesseractPool;
+    private Cache<String, String> ocrResultsByImageDigest;
+    private Timer pageTimer;
+    private Counter duplicatePageCounter;
 
     @Override
     public void prepare(GraphPropertyWorkerPrepareData workerPrepareData) throws Exception {
         super.prepare(workerPrepareData);
-        tesseract = Tesseract.getInstance();
 
         String dataPath = getConfiguration().get(CONFIG_DATA_PATH, null);
-        if (dataPath != null) {
-            tesseract.setDatapath(dataPath);
-        }
+        int poolSize = getConfiguration().getInt(CONFIG_POOL_SIZE, Runtime.getRuntime().availableProcessors());
+        int tileHeight = getConfiguration().getInt(CONFIG_TILE_HEIGHT, DEFAULT_TILE_HEIGHT);
+        tesseractPool = new TesseractPool(poolSize, dataPath, tileHeight);
+        ocrResultsByImageDigest = CacheBuilder.newBuilder()
+                .maximumSize(getConfiguration().getInt(CONFIG_RESULT_CACHE_SIZE, DEFAULT_RESULT_CACHE_SIZE))
+                .build();
+
+        String namePrefix = metricsManager.getNamePrefix(this);
+        pageTimer = metricsManager.timer(namePrefix + "page-time");
+        duplicatePageCounter = metricsManager.counter(namePrefix + "duplicate-pages");
+        metricsManager.getRegistry().register(namePrefix + "queue-depth", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return tesseractPool.getQueueDepth();
+            }
+        });
 
         String jaiClassName = "com.sun.media.imageio.plugins.tiff.TIFFImageWriteParam";
         try {
@@ -82,16 +113,60 @@ public class TesseractGraphPropertyWorker extends GraphPropertyWorker {
     }
 
     private String extractTextFromImage(BufferedImage image) throws TesseractException {
-        BufferedImage grayImage = ImageHelper.convertImageToGrayscale(image);
-        String ocrResults = tesseract.doOCR(grayImage).replaceAll("\\n{2,}", "\n");
-        if (ocrResults == null || ocrResults.trim().length() == 0) {
+        String imageDigest = getImageDigest(image);
+        String ocrResults = ocrResultsByImageDigest.getIfPresent(imageDigest);
+        if (ocrResults != null) {
+            LOGGER.debug("Skipping OCR of duplicate image (sha256: %s)", imageDigest);
+            duplicatePageCounter.inc();
+        } else {
+            Timer.Context timerContext = pageTimer.time();
+            try {
+                BufferedImage grayImage = ImageHelper.convertImageToGrayscale(image);
+                ocrResults = tesseractPool.doOCR(grayImage).replaceAll("\\n{2,}", "\n").trim();
+            } finally {
+                timerContext.stop();
+            }
+            ocrResultsByImageDigest.put(imageDigest, ocrResults);
+        }
+        if (ocrResults.length() == 0) {
             return null;
         }
-        ocrResults = ocrResults.trim();
         // TODO remove the trash that doesn't seem to be words
         return ocrResults;
     }
 
+    /**
+     * SHA-256 of the size and decoded pixels of the image, so only images with exactly the same pixels share OCR
+     * results no matter how they were encoded.
+     */
+    static String getImageDigest(BufferedImage image) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            int width = image.getWidth();
+            int height = image.getHeight();
+            digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+            int[] row = new int[width];
+            ByteBuffer rowBytes = ByteBuffer.allocate(width * 4);
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                rowBytes.clear();
+                rowBytes.asIntBuffer().put(row);
+                digest.update(rowBytes.array());
+            }
+            return Hex.encodeHexString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new LumifyException("Could not digest image", ex);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (tesseractPool != null) {
+            tesseractPool.shutdown();
+        }
+        super.shutdown();
+    }
+
     @Override
     public boolean isHandled(Element element, Property property) {
         if (property == null) {
@@ -107,4 +182,9 @@ public class TesseractGraphPropertyWorker extends GraphPropertyWorker {
         }
         return mimeType.startsWith("image");
     }
+
+    @Inject
+    public void setMetricsManager(MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+    }
 }
@@ -0,0 +1,135 @@
+package io.lumify.tesseract;
+
+import io.lumify.core.exception.LumifyException;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import net.sourceforge.tess4j.Tesseract1;
+import net.sourceforge.tess4j.TesseractException;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of native Tesseract engines, each used by one thread at a time. Images taller than the tile height
+ * are cut into horizontal tiles at the lightest row near each boundary, so a cut rarely goes through a line of text,
+ * and the tiles are OCRed in parallel.
+ */
+public class TesseractPool {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(TesseractPool.class);
+    private final BlockingQueue<Tesseract1> engines;
+    private final ThreadPoolExecutor executor;
+    private final int tileHeight;
+
+    public TesseractPool(int size, String dataPath, int tileHeight) {
+        this.tileHeight = tileHeight;
+        this.engines = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Tesseract1 engine = new Tesseract1();
+            if (dataPath != null) {
+                engine.setDatapath(dataPath);
+            }
+            engines.add(engine);
+        }
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-tesseract-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LOGGER.info("Created %d tesseract engines (tile height: %d)", size, tileHeight);
+    }
+
+    public String doOCR(BufferedImage image) throws TesseractException {
+        List<Future<String>> results = new ArrayList<>();
+        for (BufferedImage tile : getTiles(image, tileHeight)) {
+            results.add(executor.submit(new OcrTask(tile)));
+        }
+
+        StringBuilder text = new StringBuilder();
+        try {
+            for (Future<String> result : results) {
+                String tileText = result.get();
+                if (tileText != null) {
+                    text.append(tileText);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LumifyException("Interrupted while running OCR", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TesseractException) {
+                throw (TesseractException) ex.getCause();
+            }
+            throw new LumifyException("Could not OCR image", ex.getCause());
+        } finally {
+            for (Future<String> result : results) {
+                result.cancel(true);
+            }
+        }
+        return text.toString();
+    }
+
+    static List<BufferedImage> getTiles(BufferedImage image, int tileHeight) {
+        List<BufferedImage> tiles = new ArrayList<>();
+        int top = 0;
+        while (image.getHeight() - top > tileHeight + tileHeight / 2) {
+            int bottom = findLightestRow(image, top + tileHeight - tileHeight / 8, top + tileHeight + tileHeight / 8);
+            tiles.add(image.getSubimage(0, top, image.getWidth(), bottom - top));
+            top = bottom;
+        }
+        tiles.add(top == 0 ? image : image.getSubimage(0, top, image.getWidth(), image.getHeight() - top));
+        return tiles;
+    }
+
+    private static int findLightestRow(BufferedImage image, int from, int to) {
+        int lightestRow = from;
+        long lightestRowTotal = -1;
+        for (int y = from; y < to; y++) {
+            long total = 0;
+            for (int x = 0; x < image.getWidth(); x++) {
+                total += image.getRaster().getSample(x, y, 0);
+            }
+            if (total > lightestRowTotal) {
+                lightestRowTotal = total;
+                lightestRow = y;
+            }
+        }
+        return lightestRow;
+    }
+
+    /**
+     * @return the number of tiles waiting for an engine
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private class OcrTask implements Callable<String> {
+        private final BufferedImage tile;
+
+        public OcrTask(BufferedImage tile) {
+            this.tile = tile;
+        }
+
+        @Override
+        public String call() throws Exception {
+            Tesseract1 engine = engines.take();
+            try {
+                return engine.doOCR(tile);
+            } finally {
+                engines.add(engine);
+            }
+        }
+    }
+}
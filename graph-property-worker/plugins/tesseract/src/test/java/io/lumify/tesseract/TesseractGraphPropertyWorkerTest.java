@@ -1,5 +1,6 @@
 package io.lumify.tesseract;
 
+import io.lumify.core.metrics.JmxMetricsManager;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.test.GraphPropertyWorkerTestBase;
 import org.apache.commons.io.IOUtils;
@@ -13,6 +14,7 @@ import org.securegraph.Vertex;
 import org.securegraph.Visibility;
 import org.securegraph.property.StreamingPropertyValue;
 
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.util.List;
@@ -37,6 +39,7 @@ public class TesseractGraphPropertyWorkerTest extends GraphPropertyWorkerTestBas
                 .save(getGraphAuthorizations());
 
         TesseractGraphPropertyWorker gpw = new TesseractGraphPropertyWorker();
+        gpw.setMetricsManager(new JmxMetricsManager());
         run(gpw, getWorkerPrepareData(), v1, v1.getProperty("k1", "image"), new ByteArrayInputStream(imageData));
 
         v1 = getGraph().getVertex("v1", getGraphAuthorizations());
@@ -53,6 +56,17 @@ public class TesseractGraphPropertyWorkerTest extends GraphPropertyWorkerTestBas
         assertEquals(textProperty.getName(), graphPropertyQueueItem.getString("propertyName"));
         assertEquals(textProperty.getKey(), graphPropertyQueueItem.getString("propertyKey"));
         assertEquals(v1.getId(), graphPropertyQueueItem.getString("graphVertexId"));
+        gpw.shutdown();
+    }
+
+    @Test
+    public void testImageDigestIsExact() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        BufferedImage copy = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        copy.setRGB(5, 5, 0x010101);
+        assertNotEquals(TesseractGraphPropertyWorker.getImageDigest(image), TesseractGraphPropertyWorker.getImageDigest(copy));
+        copy.setRGB(5, 5, 0);
+        assertEquals(TesseractGraphPropertyWorker.getImageDigest(image), TesseractGraphPropertyWorker.getImageDigest(copy));
     }
 
     @Override
@@ -0,0 +1,52 @@
+package io.lumify.tesseract;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TesseractPoolTest {
+    @Test
+    public void testSmallImageIsNotTiled() {
+        BufferedImage image = createPage(600, 2500, 40);
+        List<BufferedImage> tiles = TesseractPool.getTiles(image, 2000);
+        assertEquals(1, tiles.size());
+        assertSame(image, tiles.get(0));
+    }
+
+    @Test
+    public void testTilesAreCutBetweenLines() {
+        BufferedImage image = createPage(600, 10000, 40);
+        List<BufferedImage> tiles = TesseractPool.getTiles(image, 2000);
+        assertEquals(5, tiles.size());
+
+        int top = 0;
+        for (BufferedImage tile : tiles) {
+            int bottom = top + tile.getHeight();
+            if (bottom < image.getHeight()) {
+                assertTrue("cut through a line at " + bottom, (bottom % 40) >= 20);
+            }
+            top = bottom;
+        }
+        assertEquals(image.getHeight(), top);
+    }
+
+    /**
+     * A white page with a dark "line of text" in the top half of every lineHeight rows.
+     */
+    private static BufferedImage createPage(int width, int height, int lineHeight) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        for (int y = 0; y < height; y += lineHeight) {
+            g.fillRect(20, y, width - 40 - (y * 7) % (width / 2), lineHeight / 2);
+        }
+        g.dispose();
+        return image;
+    }
+}
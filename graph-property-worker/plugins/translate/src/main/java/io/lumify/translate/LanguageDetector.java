@@ -0,0 +1,339 @@
+package io.lumify.translate;
+
+import com.cybozu.labs.langdetect.util.Messages;
+import com.cybozu.labs.langdetect.util.NGram;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.Character.UnicodeBlock;
+
+/**
+ * Detects the language of a text with the algorithm of the langdetect Detector over a {@link LanguageProfileTable}.
+ * <p/>
+ * Only the first {@link #DEFAULT_MAX_TEXT_LENGTH} characters of the text are read, the same limit the Detector applies
+ * after reading the whole text. All buffers are allocated once with the detector, so detecting a language allocates
+ * nothing, but a detector must only be used by one thread at a time. The random trials are seeded the same way for
+ * every text, so the same text is always detected as the same language.
+ */
+public class LanguageDetector {
+    public static final int DEFAULT_MAX_TEXT_LENGTH = 10000;
+    private static final double ALPHA = 0.5;
+    private static final double ALPHA_WIDTH = 0.05;
+    private static final int TRIAL_COUNT = 7;
+    private static final int ITERATION_LIMIT = 1000;
+    private static final double PROB_THRESHOLD = 0.1;
+    private static final double CONV_THRESHOLD = 0.99999;
+    private static final int BASE_FREQ = 10000;
+    private static final long SEED = 0x5DEECE66DL;
+    private static final char[] NORMALIZED_CHARS = createNormalizedChars();
+    private static final String VI_CHARS = Messages.getString("TO_NORMALIZE_VI_CHARS");
+    private static final String VI_DMARKS = Messages.getString("DMARK_CLASS");
+    private static final String[] VI_NORMALIZED_CHARS = {
+            Messages.getString("NORMALIZED_VI_CHARS_0300"),
+            Messages.getString("NORMALIZED_VI_CHARS_0301"),
+            Messages.getString("NORMALIZED_VI_CHARS_0303"),
+            Messages.getString("NORMALIZED_VI_CHARS_0309"),
+            Messages.getString("NORMALIZED_VI_CHARS_0323")};
+    private final LanguageProfileTable table;
+    private final char[] text;
+    private final int[] ngramSlots;
+    private final double[] probabilities;
+    private final double[] languageProbabilities;
+    private final char[] grams = new char[NGram.N_GRAM];
+    private long randomState;
+    private double nextGaussian;
+    private boolean hasNextGaussian;
+
+    public LanguageDetector(LanguageProfileTable table) {
+        this(table, DEFAULT_MAX_TEXT_LENGTH);
+    }
+
+    public LanguageDetector(LanguageProfileTable table, int maxTextLength) {
+        this.table = table;
+        this.text = new char[maxTextLength];
+        this.ngramSlots = new int[maxTextLength * NGram.N_GRAM];
+        this.probabilities = new double[table.getLanguageCount()];
+        this.languageProbabilities = new double[table.getLanguageCount()];
+    }
+
+    /**
+     * Reads at most the maximum text length from the reader and detects its language.
+     *
+     * @param minTextLength texts shorter than this are not detected
+     * @return the detected language or null if the text is too short or no language is likely enough
+     */
+    public String detect(Reader reader, int minTextLength) throws IOException {
+        int length = 0;
+        int read;
+        while (length < text.length && (read = reader.read(text, length, text.length - length)) != -1) {
+            length += read;
+        }
+        if (length < minTextLength) {
+            return null;
+        }
+        return detect(length);
+    }
+
+    /**
+     * @return the detected language or null if no language is likely enough
+     */
+    public String detect(CharSequence value) {
+        int length = Math.min(value.length(), text.length);
+        for (int i = 0; i < length; i++) {
+            text[i] = value.charAt(i);
+        }
+        return detect(length);
+    }
+
+    private String detect(int length) {
+        length = cleanText(length);
+        int ngramCount = extractNgrams(length);
+        if (ngramCount == 0) {
+            return null;
+        }
+
+        int languageCount = probabilities.length;
+        for (int i = 0; i < languageCount; i++) {
+            languageProbabilities[i] = 0;
+        }
+        randomState = SEED;
+        hasNextGaussian = false;
+        for (int trial = 0; trial < TRIAL_COUNT; trial++) {
+            for (int i = 0; i < languageCount; i++) {
+                probabilities[i] = 1.0 / languageCount;
+            }
+            double weight = (ALPHA + nextGaussian() * ALPHA_WIDTH) / BASE_FREQ;
+            for (int i = 0; ; i++) {
+                updateProbabilities(ngramSlots[nextInt(ngramCount)], weight);
+                if (i % 5 == 0 && (normalizeProbabilities() > CONV_THRESHOLD || i >= ITERATION_LIMIT)) {
+                    break;
+                }
+            }
+            for (int i = 0; i < languageCount; i++) {
+                languageProbabilities[i] += probabilities[i] / TRIAL_COUNT;
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i < languageCount; i++) {
+            if (languageProbabilities[i] > languageProbabilities[best]) {
+                best = i;
+            }
+        }
+        return languageProbabilities[best] > PROB_THRESHOLD ? table.getLanguage(best) : null;
+    }
+
+    /**
+     * Blanks out URLs and e-mail addresses, normalizes Vietnamese, collapses runs of spaces and drops Latin characters
+     * from mostly non-Latin text, in place.
+     *
+     * @return the length of the cleaned text
+     */
+    private int cleanText(int length) {
+        int tokenStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || Character.isWhitespace(text[i])) {
+                if (isUrlOrEmail(tokenStart, i)) {
+                    for (int j = tokenStart; j < i; j++) {
+                        text[j] = ' ';
+                    }
+                }
+                tokenStart = i + 1;
+            }
+        }
+
+        int cleanLength = 0;
+        int latinCount = 0;
+        int nonLatinCount = 0;
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text[i];
+            if (cleanLength > 0) {
+                int dmark = VI_DMARKS.indexOf(c);
+                int alphabet = dmark < 0 ? -1 : VI_CHARS.indexOf(text[cleanLength - 1]);
+                if (alphabet >= 0) {
+                    if (text[cleanLength - 1] <= 'z' && text[cleanLength - 1] >= 'A') {
+                        latinCount--;
+                    }
+                    text[cleanLength - 1] = VI_NORMALIZED_CHARS[dmark].charAt(alphabet);
+                    previous = text[cleanLength - 1];
+                    continue;
+                }
+            }
+            if (c != ' ' || previous != ' ') {
+                text[cleanLength++] = c;
+                if (c <= 'z' && c >= 'A') {
+                    latinCount++;
+                } else if (c >= '\u0300' && UnicodeBlock.of(c) != UnicodeBlock.LATIN_EXTENDED_ADDITIONAL) {
+                    nonLatinCount++;
+                }
+            }
+            previous = c;
+        }
+
+        if (latinCount * 2 < nonLatinCount) {
+            int nonLatinLength = 0;
+            for (int i = 0; i < cleanLength; i++) {
+                char c = text[i];
+                if (c > 'z' || c < 'A') {
+                    text[nonLatinLength++] = c;
+                }
+            }
+            cleanLength = nonLatinLength;
+        }
+        return cleanLength;
+    }
+
+    private boolean isUrlOrEmail(int start, int end) {
+        if (startsWith(start, end, "http://") || startsWith(start, end, "https://")) {
+            return true;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            if (text[i] == '@') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean startsWith(int start, int end, String prefix) {
+        if (end - start <= prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the slots of the 1, 2 and 3-grams of the text the same way as {@link NGram}, keeping only the n-grams
+     * found in the table.
+     *
+     * @return the number of n-grams found
+     */
+    private int extractNgrams(int length) {
+        int count = 0;
+        int gramLength = 1;
+        grams[0] = ' ';
+        boolean capitalWord = false;
+        for (int i = 0; i < length; i++) {
+            char c = NORMALIZED_CHARS[text[i]];
+            char last = grams[gramLength - 1];
+            if (last == ' ') {
+                grams[0] = ' ';
+                gramLength = 1;
+                capitalWord = false;
+                if (c == ' ') {
+                    continue;
+                }
+            } else if (gramLength >= NGram.N_GRAM) {
+                grams[0] = grams[1];
+                grams[1] = grams[2];
+                gramLength--;
+            }
+            grams[gramLength++] = c;
+            if (Character.isUpperCase(c)) {
+                if (Character.isUpperCase(last)) {
+                    capitalWord = true;
+                }
+            } else {
+                capitalWord = false;
+            }
+
+            if (capitalWord) {
+                continue;
+            }
+            for (int n = 1; n <= NGram.N_GRAM && n <= gramLength; n++) {
+                if (n == 1 && c == ' ') {
+                    continue;
+                }
+                int slot = table.find(LanguageProfileTable.key(grams, gramLength, n));
+                if (slot != LanguageProfileTable.NOT_FOUND) {
+                    ngramSlots[count++] = slot;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Multiplies each language probability by the weight plus the probability of the n-gram in that language. Most
+     * languages do not have the n-gram, so all are multiplied by the weight and the few that do are scaled up.
+     */
+    private void updateProbabilities(int slot, double weight) {
+        int entryEnd = table.getEntryEnd(slot);
+        for (int entry = table.getEntryStart(slot); entry < entryEnd; entry++) {
+            probabilities[table.getEntryLanguage(entry)] *= 1.0 + table.getEntryProbability(entry) / weight;
+        }
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] *= weight;
+        }
+    }
+
+    /**
+     * @return the highest probability
+     */
+    private double normalizeProbabilities() {
+        double sum = 0;
+        for (double probability : probabilities) {
+            sum += probability;
+        }
+        double max = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            double probability = probabilities[i] / sum;
+            if (max < probability) {
+                max = probability;
+            }
+            probabilities[i] = probability;
+        }
+        return max;
+    }
+
+    /**
+     * xorshift64* so the trials need no {@link java.util.Random} instance.
+     */
+    private long nextLong() {
+        randomState ^= randomState >>> 12;
+        randomState ^= randomState << 25;
+        randomState ^= randomState >>> 27;
+        return randomState * 2685821657736338717L;
+    }
+
+    private int nextInt(int bound) {
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    private double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    private double nextGaussian() {
+        if (hasNextGaussian) {
+            hasNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        hasNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    private static char[] createNormalizedChars() {
+        char[] normalizedChars = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            normalizedChars[c] = NGram.normalize((char) c);
+        }
+        return normalizedChars;
+    }
+}
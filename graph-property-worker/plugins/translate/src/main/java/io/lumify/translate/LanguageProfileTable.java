@@ -0,0 +1,290 @@
+package io.lumify.translate;
+
+import com.cybozu.labs.langdetect.util.LangProfile;
+import com.cybozu.labs.langdetect.util.NGram;
+import io.lumify.core.exception.LumifyException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The n-gram probabilities of the language profiles kept entirely in primitive arrays. Each n-gram of up to three
+ * characters is packed into a long key and found in an open addressing table with linear probing. The probabilities
+ * of a key are stored sparsely as (language, probability) pairs, since most n-grams appear in only a few languages.
+ * The whole table is a single block of bytes that can be written once with {@link #writeTo(OutputStream)} and memory
+ * mapped by every worker with {@link #load(File)}.
+ */
+public class LanguageProfileTable {
+    public static final int VERSION = 1;
+    public static final int NOT_FOUND = -1;
+    private static final int MAGIC = 0x4c414e47;
+    private static final int HEADER_SIZE = 8;
+    private static final long EMPTY_KEY = 0;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private final ByteBuffer data;
+    private final int languageCount;
+    private final int ngramCount;
+    private final int mask;
+    private final LongBuffer keys;
+    private final IntBuffer entryStarts;
+    private final FloatBuffer entryProbabilities;
+    private final ShortBuffer entryLanguages;
+    private final String[] languages;
+
+    private LanguageProfileTable(ByteBuffer data) {
+        this.data = data;
+        IntBuffer header = section(data, 0, HEADER_SIZE * 4).asIntBuffer();
+        if (header.get(0) != MAGIC) {
+            throw new LumifyException("Not a language profile table");
+        }
+        if (header.get(1) != VERSION) {
+            throw new LumifyException("Unsupported language profile table version " + header.get(1) + ", expected " + VERSION);
+        }
+        this.languageCount = header.get(2);
+        this.ngramCount = header.get(3);
+        int capacity = header.get(4);
+        int entryCount = header.get(5);
+        int languageCharCount = header.get(6);
+        this.mask = capacity - 1;
+
+        int position = HEADER_SIZE * 4;
+        this.keys = section(data, position, capacity * 8).asLongBuffer();
+        position += capacity * 8;
+        this.entryStarts = section(data, position, (capacity + 1) * 4).asIntBuffer();
+        position += (capacity + 1) * 4;
+        IntBuffer languageStarts = section(data, position, (languageCount + 1) * 4).asIntBuffer();
+        position += (languageCount + 1) * 4;
+        this.entryProbabilities = section(data, position, entryCount * 4).asFloatBuffer();
+        position += entryCount * 4;
+        this.entryLanguages = section(data, position, entryCount * 2).asShortBuffer();
+        position += entryCount * 2;
+        CharBuffer languageChars = section(data, position, languageCharCount * 2).asCharBuffer();
+
+        this.languages = new String[languageCount];
+        for (int i = 0; i < languageCount; i++) {
+            int start = languageStarts.get(i);
+            languages[i] = languageChars.subSequence(start, languageStarts.get(i + 1)).toString();
+        }
+    }
+
+    /**
+     * Memory maps a table previously written with {@link #writeTo(OutputStream)}.
+     */
+    public static LanguageProfileTable load(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new LanguageProfileTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer = data.duplicate();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the slot of the n-gram or {@link #NOT_FOUND} if no profile contains it
+     */
+    public int find(long key) {
+        int slot = hash(key) & mask;
+        while (true) {
+            long slotKey = keys.get(slot);
+            if (slotKey == key) {
+                return slot;
+            }
+            if (slotKey == EMPTY_KEY) {
+                return NOT_FOUND;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int getEntryStart(int slot) {
+        return entryStarts.get(slot);
+    }
+
+    public int getEntryEnd(int slot) {
+        return entryStarts.get(slot + 1);
+    }
+
+    public int getEntryLanguage(int entry) {
+        return entryLanguages.get(entry);
+    }
+
+    public double getEntryProbability(int entry) {
+        return entryProbabilities.get(entry);
+    }
+
+    public int getLanguageCount() {
+        return languageCount;
+    }
+
+    public String getLanguage(int index) {
+        return languages[index];
+    }
+
+    public int getNgramCount() {
+        return ngramCount;
+    }
+
+    /**
+     * Size of the table in bytes, either on the heap or in the mapped file.
+     */
+    public int getSize() {
+        return data.capacity();
+    }
+
+    /**
+     * Packs the last n characters before end into a key. Keys are never {@link #EMPTY_KEY} since the length is part of
+     * the key.
+     */
+    public static long key(char[] chars, int end, int n) {
+        long key = n;
+        for (int i = end - n; i < end; i++) {
+            key = (key << 16) | chars[i];
+        }
+        return key;
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private static ByteBuffer section(ByteBuffer data, int position, int length) {
+        ByteBuffer section = data.duplicate();
+        section.clear();
+        section.position(position);
+        section.limit(position + length);
+        return section.slice().order(BYTE_ORDER);
+    }
+
+    /**
+     * Collects the n-gram probabilities of each language profile the same way the langdetect DetectorFactory does,
+     * then lays them out grouped by n-gram in the open addressing table.
+     */
+    public static class Builder {
+        private final List<String> languages = new ArrayList<>();
+        private final Map<Long, Integer> ngramIndexes = new HashMap<>();
+        private long[] ngramKeys = new long[1024];
+        private int[] recordNgrams = new int[1024];
+        private short[] recordLanguages = new short[1024];
+        private float[] recordProbabilities = new float[1024];
+        private int recordCount;
+
+        public Builder addProfile(LangProfile profile) {
+            if (languages.contains(profile.name)) {
+                throw new LumifyException("Duplicate language profile " + profile.name);
+            }
+            if (languages.size() > Short.MAX_VALUE) {
+                throw new LumifyException("Too many language profiles");
+            }
+            short language = (short) languages.size();
+            languages.add(profile.name);
+            for (Map.Entry<String, Integer> freq : profile.freq.entrySet()) {
+                String ngram = freq.getKey();
+                int length = ngram.length();
+                if (length < 1 || length > NGram.N_GRAM) {
+                    continue;
+                }
+                if (recordCount == recordNgrams.length) {
+                    recordNgrams = Arrays.copyOf(recordNgrams, recordCount * 2);
+                    recordLanguages = Arrays.copyOf(recordLanguages, recordCount * 2);
+                    recordProbabilities = Arrays.copyOf(recordProbabilities, recordCount * 2);
+                }
+                recordNgrams[recordCount] = getNgramIndex(key(ngram.toCharArray(), length, length));
+                recordLanguages[recordCount] = language;
+                recordProbabilities[recordCount] = (float) (freq.getValue().doubleValue() / profile.n_words[length - 1]);
+                recordCount++;
+            }
+            return this;
+        }
+
+        private int getNgramIndex(long key) {
+            Integer index = ngramIndexes.get(key);
+            if (index == null) {
+                index = ngramIndexes.size();
+                if (index == ngramKeys.length) {
+                    ngramKeys = Arrays.copyOf(ngramKeys, index * 2);
+                }
+                ngramKeys[index] = key;
+                ngramIndexes.put(key, index);
+            }
+            return index;
+        }
+
+        public LanguageProfileTable build() {
+            int ngramCount = ngramIndexes.size();
+            int capacity = Integer.highestOneBit(Math.max(ngramCount, 1) * 2 - 1) << 1;
+            int mask = capacity - 1;
+
+            // place each n-gram in its slot, then group the records by slot with a counting sort
+            long[] keys = new long[capacity];
+            int[] ngramSlots = new int[ngramCount];
+            for (int ngram = 0; ngram < ngramCount; ngram++) {
+                int slot = hash(ngramKeys[ngram]) & mask;
+                while (keys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = ngramKeys[ngram];
+                ngramSlots[ngram] = slot;
+            }
+            int[] entryStarts = new int[capacity + 1];
+            for (int record = 0; record < recordCount; record++) {
+                entryStarts[ngramSlots[recordNgrams[record]] + 1]++;
+            }
+            for (int slot = 0; slot < capacity; slot++) {
+                entryStarts[slot + 1] += entryStarts[slot];
+            }
+            float[] entryProbabilities = new float[recordCount];
+            short[] entryLanguages = new short[recordCount];
+            int[] entryPositions = Arrays.copyOf(entryStarts, capacity);
+            for (int record = 0; record < recordCount; record++) {
+                int entry = entryPositions[ngramSlots[recordNgrams[record]]]++;
+                entryProbabilities[entry] = recordProbabilities[record];
+                entryLanguages[entry] = recordLanguages[record];
+            }
+
+            int[] languageStarts = new int[languages.size() + 1];
+            StringBuilder languageChars = new StringBuilder();
+            for (int i = 0; i < languages.size(); i++) {
+                languageChars.append(languages.get(i));
+                languageStarts[i + 1] = languageChars.length();
+            }
+
+            int size = HEADER_SIZE * 4 + capacity * 8 + (capacity + 1) * 4 + languageStarts.length * 4
+                    + recordCount * 4 + recordCount * 2 + languageChars.length() * 2;
+            ByteBuffer data = ByteBuffer.allocateDirect(size).order(BYTE_ORDER);
+            data.asIntBuffer().put(new int[]{MAGIC, VERSION, languages.size(), ngramCount, capacity, recordCount, languageChars.length(), 0});
+            data.position(HEADER_SIZE * 4);
+            data.slice().order(BYTE_ORDER).asLongBuffer().put(keys);
+            data.position(data.position() + capacity * 8);
+            IntBuffer intData = data.slice().order(BYTE_ORDER).asIntBuffer();
+            intData.put(entryStarts);
+            intData.put(languageStarts);
+            data.position(data.position() + intData.position() * 4);
+            data.slice().order(BYTE_ORDER).asFloatBuffer().put(entryProbabilities);
+            data.position(data.position() + recordCount * 4);
+            data.slice().order(BYTE_ORDER).asShortBuffer().put(entryLanguages);
+            data.position(data.position() + recordCount * 2);
+            data.slice().order(BYTE_ORDER).asCharBuffer().put(languageChars.toString());
+            data.clear();
+            return new LanguageProfileTable(data);
+        }
+    }
+}
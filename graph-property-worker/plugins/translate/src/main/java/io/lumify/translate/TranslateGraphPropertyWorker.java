@@ -1,11 +1,10 @@
 package io.lumify.translate;
 
-import com.cybozu.labs.langdetect.Detector;
-import com.cybozu.labs.langdetect.DetectorFactory;
-import com.cybozu.labs.langdetect.LangDetectException;
-import com.google.common.io.Files;
+import com.cybozu.labs.langdetect.util.LangProfile;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.inject.Inject;
-import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorker;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerPrepareData;
@@ -21,38 +20,45 @@ import org.securegraph.mutation.ExistingElementMutation;
 import org.securegraph.property.StreamingPropertyValue;
 
 import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class TranslateGraphPropertyWorker extends GraphPropertyWorker {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(TranslateGraphPropertyWorker.class);
+    public static final String LOCAL_CACHE_DIR_CONFIG = "translate.languageProfiles.localCacheDir";
+    private static final int MIN_TEXT_LENGTH = 50;
+    private static final Object languageProfileTableLoadLock = new Object();
+    private static LanguageProfileTable languageProfileTable;
+    private final ThreadLocal<LanguageDetector> languageDetectors = new ThreadLocal<LanguageDetector>() {
+        @Override
+        protected LanguageDetector initialValue() {
+            return new LanguageDetector(languageProfileTable);
+        }
+    };
     private Translator translator;
-    private static final Object detectorFactoryLoadLock = new Object();
-    private static boolean detectorFactoryLoaded = false;
 
     @Override
     public void prepare(GraphPropertyWorkerPrepareData workerPrepareData) throws Exception {
         super.prepare(workerPrepareData);
 
-        synchronized (detectorFactoryLoadLock) {
-            if (!detectorFactoryLoaded) {
-                File profileDirectory = createTempProfileDirectory();
-                DetectorFactory.loadProfile(profileDirectory);
-                detectorFactoryLoaded = true;
+        synchronized (languageProfileTableLoadLock) {
+            if (languageProfileTable == null) {
+                String localCacheDir = (String) workerPrepareData.getConfiguration().get(LOCAL_CACHE_DIR_CONFIG);
+                if (localCacheDir == null) {
+                    localCacheDir = System.getProperty("java.io.tmpdir");
+                }
+                languageProfileTable = loadLanguageProfileTable(new File(localCacheDir));
             }
         }
     }
 
     @Override
     public void execute(InputStream in, GraphPropertyWorkData data) throws Exception {
-        String text = IOUtils.toString(in, "UTF-8");
-        if (text.length() < 50) {
-            LOGGER.debug("Skipping language detection because the text is too short. (length: %d)", text.length());
-            return;
-        }
-
         String language;
         try {
-            language = detectLanguage(text);
+            language = languageDetectors.get().detect(new InputStreamReader(in, "UTF-8"), MIN_TEXT_LENGTH);
             if (language == null) {
+                LOGGER.debug("Could not detect the language of property: %s", data.getProperty().toString());
                 return;
             }
         } catch (Throwable ex) {
@@ -67,7 +73,7 @@ public class TranslateGraphPropertyWorker extends GraphPropertyWorker {
         String translatedTextPropertyKey = data.getProperty().getKey() + "#en";
         if (!language.equals("en") && !hasTranslatedProperty(data, translatedTextPropertyKey)) {
             LOGGER.debug("translating text of property: %s", data.getProperty().toString());
-            String translatedText = translator.translate(text, language, data);
+            String translatedText = translator.translate(getText(data.getProperty()), language, data);
             if (translatedText != null && translatedText.length() > 0) {
                 Object translatedTextValue;
                 if (data.getProperty().getValue() instanceof StreamingPropertyValue) {
@@ -100,14 +106,14 @@ public class TranslateGraphPropertyWorker extends GraphPropertyWorker {
         return data.getElement().getProperty(translatedTextPropertyKey, data.getProperty().getName()) != null;
     }
 
-    private String detectLanguage(String text) throws LangDetectException, IOException {
-        Detector detector = DetectorFactory.create();
-        detector.append(text);
-        String lang = detector.detect();
-        if (lang.length() == 0) {
-            return null;
+    private String getText(Property property) throws IOException {
+        Object value = property.getValue();
+        if (value instanceof StreamingPropertyValue) {
+            try (InputStream in = ((StreamingPropertyValue) value).getInputStream()) {
+                return IOUtils.toString(in, "UTF-8");
+            }
         }
-        return lang;
+        return value.toString();
     }
 
     @Override
@@ -115,33 +121,53 @@ public class TranslateGraphPropertyWorker extends GraphPropertyWorker {
         return isTextProperty(property);
     }
 
-    public File createTempProfileDirectory() throws IOException {
-        File tempDirectory = Files.createTempDir();
-        tempDirectory.deleteOnExit();
-        String[] filesList = getProfileFilesList();
-        for (String profileFileName : filesList) {
-            LOGGER.info("Copying langdetect profile file: %s", profileFileName);
+    /**
+     * Memory maps the language profile table from the local cache directory, building it from the bundled profiles
+     * the first time. Workers sharing the directory share the mapped file.
+     */
+    private static LanguageProfileTable loadLanguageProfileTable(File localCacheDir) throws IOException {
+        // the table is named by a digest of the bundled profiles so a table built from other profiles is never loaded
+        String[] profileFileNames = getProfileFilesList();
+        Map<String, String> profiles = new LinkedHashMap<>();
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (String profileFileName : profileFileNames) {
+            String profile = getFileAsString(profileFileName);
+            profiles.put(profileFileName, profile);
+            hasher.putString(profileFileName, Charsets.UTF_8).putByte((byte) 0).putString(profile, Charsets.UTF_8).putByte((byte) 0);
+        }
+        File tableFile = new File(localCacheDir, "languageProfiles-" + LanguageProfileTable.VERSION + "-" + hasher.hash() + ".table");
+        if (!tableFile.exists()) {
+            LanguageProfileTable.Builder builder = new LanguageProfileTable.Builder();
+            for (Map.Entry<String, String> profile : profiles.entrySet()) {
+                LOGGER.debug("Loading language profile %s", profile.getKey());
+                builder.addProfile(new LangProfile(new JSONObject(profile.getValue())));
+            }
+            LanguageProfileTable table = builder.build();
+
+            if (!localCacheDir.exists() && !localCacheDir.mkdirs()) {
+                throw new IOException("Could not create directory " + localCacheDir.getAbsolutePath());
+            }
+            File tempFile = File.createTempFile("languageProfiles", ".tmp", localCacheDir);
             try {
-                copyProfileFile(profileFileName, tempDirectory);
-            } catch (Exception ex) {
-                throw new LumifyException("Could not load profile file '" + profileFileName + "' to '" + tempDirectory + "'");
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    table.writeTo(out);
+                }
+                if (!tempFile.renameTo(tableFile) && !tableFile.exists()) {
+                    throw new IOException("Could not move " + tempFile.getAbsolutePath() + " to " + tableFile.getAbsolutePath());
+                }
+            } finally {
+                if (tempFile.exists() && !tempFile.delete()) {
+                    LOGGER.warn("Could not delete %s", tempFile.getAbsolutePath());
+                }
             }
         }
-        LOGGER.info("created profile directory: %s", tempDirectory);
-        return tempDirectory;
-    }
 
-    public void copyProfileFile(String profileFileName, File tempDirectory) throws IOException {
-        File profileFile = new File(tempDirectory, profileFileName);
-        String profileFileString = getFileAsString(profileFileName);
-        new JSONObject(profileFileString).length(); // validate the json
-        try (OutputStream profileFileOut = new FileOutputStream(profileFile)) {
-            profileFileOut.write(profileFileString.getBytes("UTF-8"));
-        }
-        profileFile.deleteOnExit();
+        LanguageProfileTable table = LanguageProfileTable.load(tableFile);
+        LOGGER.info("Loaded language profile table %s with %d languages and %d n-grams (%d bytes)", tableFile.getAbsolutePath(), table.getLanguageCount(), table.getNgramCount(), table.getSize());
+        return table;
     }
 
-    public String getFileAsString(String profileFileName) throws IOException {
+    public static String getFileAsString(String profileFileName) throws IOException {
         String profileFileString;
         try (InputStream profileFileIn = TranslateGraphPropertyWorker.class.getResourceAsStream(profileFileName)) {
             profileFileString = IOUtils.toString(profileFileIn, "UTF-8");
@@ -149,7 +175,7 @@ public class TranslateGraphPropertyWorker extends GraphPropertyWorker {
         return profileFileString;
     }
 
-    public String[] getProfileFilesList() throws IOException {
+    public static String[] getProfileFilesList() throws IOException {
         String filesListContents = IOUtils.toString(TranslateGraphPropertyWorker.class.getResourceAsStream("files.list"), "UTF-8");
         return filesListContents.split(System.lineSeparator());
     }
@@ -0,0 +1,85 @@
+package io.lumify.translate;
+
+import com.cybozu.labs.langdetect.util.LangProfile;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LanguageDetectorTest {
+    private static final String ENGLISH = "The quick brown fox jumps over the lazy dog while the farmer watches from the porch of his house.";
+    private static final String GERMAN = "Der schnelle braune Fuchs springt über den faulen Hund, während der Bauer von der Veranda seines Hauses zusieht.";
+    private static final String FRENCH = "Le rapide renard brun saute par-dessus le chien paresseux pendant que le fermier regarde depuis le porche de sa maison.";
+    private static final String RUSSIAN = "Быстрая коричневая лиса прыгает через ленивую собаку, пока фермер смотрит с крыльца своего дома.";
+    private static final String JAPANESE = "素早い茶色の狐が怠け者の犬を飛び越え、農夫は自分の家の玄関からそれを見ている。";
+
+    @ClassRule
+    public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static LanguageProfileTable table;
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        LanguageProfileTable.Builder builder = new LanguageProfileTable.Builder();
+        for (String profileFileName : TranslateGraphPropertyWorker.getProfileFilesList()) {
+            builder.addProfile(new LangProfile(new JSONObject(TranslateGraphPropertyWorker.getFileAsString(profileFileName))));
+        }
+        File file = temporaryFolder.newFile("languageProfiles.table");
+        try (OutputStream out = new FileOutputStream(file)) {
+            builder.build().writeTo(out);
+        }
+        table = LanguageProfileTable.load(file);
+    }
+
+    @Test
+    public void testDetectsLanguages() {
+        LanguageDetector detector = new LanguageDetector(table);
+        assertEquals("en", detector.detect(ENGLISH));
+        assertEquals("de", detector.detect(GERMAN));
+        assertEquals("fr", detector.detect(FRENCH));
+        assertEquals("ru", detector.detect(RUSSIAN));
+        assertEquals("ja", detector.detect(JAPANESE));
+    }
+
+    @Test
+    public void testIgnoresUrlsAndEmailAddresses() {
+        LanguageDetector detector = new LanguageDetector(table);
+        assertEquals("ru", detector.detect("http://www.example.com/the/quick/brown/fox joe@example.com " + RUSSIAN));
+        assertNull(detector.detect("http://www.example.com/the/quick/brown/fox joe@example.com 12345"));
+    }
+
+    @Test
+    public void testReadsAtMostMaxTextLength() throws IOException {
+        LanguageDetector detector = new LanguageDetector(table, 200);
+        StringBuilder text = new StringBuilder(GERMAN);
+        while (text.length() < 10000) {
+            text.append(' ').append(ENGLISH);
+        }
+        assertEquals("de", detector.detect(new StringReader(text.toString()), 50));
+        assertNull(detector.detect(new StringReader(ENGLISH.substring(0, 40)), 50));
+    }
+
+    @Test
+    public void testLookup() {
+        char[] ngram = "the".toCharArray();
+        int slot = table.find(LanguageProfileTable.key(ngram, 3, 3));
+        boolean foundEnglish = false;
+        for (int entry = table.getEntryStart(slot); entry < table.getEntryEnd(slot); entry++) {
+            if (table.getLanguage(table.getEntryLanguage(entry)).equals("en")) {
+                foundEnglish = true;
+            }
+        }
+        assertEquals(true, foundEnglish);
+        assertEquals(LanguageProfileTable.NOT_FOUND, table.find(LanguageProfileTable.key("\u0000\u0001\u0002".toCharArray(), 3, 3)));
+    }
+}
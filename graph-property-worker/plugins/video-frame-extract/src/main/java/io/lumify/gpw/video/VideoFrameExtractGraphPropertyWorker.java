@@ -2,6 +2,7 @@ package io.lumify.gpw.video;
 
 import com.google.common.io.Files;
 import com.google.inject.Inject;
+import io.lumify.core.exception.LumifyException;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkData;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorker;
 import io.lumify.core.ingest.graphProperty.GraphPropertyWorkerPrepareData;
@@ -13,6 +14,7 @@ import io.lumify.core.model.properties.types.IntegerLumifyProperty;
 import io.lumify.core.security.LumifyVisibility;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
+import io.lumify.core.util.PerceptualHash;
 import io.lumify.core.util.ProcessRunner;
 import io.lumify.gpw.util.FFprobeRotationUtil;
 import org.apache.commons.io.FileUtils;
@@ -28,74 +30,180 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.securegraph.util.IterableUtils.toList;
 
 public class VideoFrameExtractGraphPropertyWorker extends GraphPropertyWorker {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(VideoFrameExtractGraphPropertyWorker.class);
+    public static final String FRAMES_PER_BATCH_CONFIG = "videoFrameExtract.framesPerBatch";
+    public static final int DEFAULT_FRAMES_PER_BATCH = 50;
+    public static final String DUPLICATE_FRAME_DISTANCE_CONFIG = "videoFrameExtract.duplicateFrameDistance";
+    public static final int DEFAULT_DUPLICATE_FRAME_DISTANCE = 4;
+    private static final long FRAME_POLL_INTERVAL_MILLIS = 100;
     private ProcessRunner processRunner;
     private IntegerLumifyProperty videoRotationProperty;
+    private ExecutorService ffmpegExecutor;
+    private int framesPerBatch;
+    private int duplicateFrameDistance;
 
     @Override
     public void prepare(GraphPropertyWorkerPrepareData workerPrepareData) throws Exception {
         super.prepare(workerPrepareData);
         getAuthorizationRepository().addAuthorizationToGraph(VideoFrameInfo.VISIBILITY_STRING);
         videoRotationProperty = new IntegerLumifyProperty(getOntologyRepository().getRequiredPropertyIRIByIntent("media.clockwiseRotation"));
+        framesPerBatch = getConfiguration().getInt(FRAMES_PER_BATCH_CONFIG, DEFAULT_FRAMES_PER_BATCH);
+        duplicateFrameDistance = getConfiguration().getInt(DUPLICATE_FRAME_DISTANCE_CONFIG, DEFAULT_DUPLICATE_FRAME_DISTANCE);
+        ffmpegExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-video-frame-extract-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     @Override
-    public void execute(InputStream in, GraphPropertyWorkData data) throws Exception {
-        Integer videoRotation = videoRotationProperty.getPropertyValue(data.getElement(), 0);
+    public void execute(InputStream in, final GraphPropertyWorkData data) throws Exception {
+        final Integer videoRotation = videoRotationProperty.getPropertyValue(data.getElement(), 0);
         Visibility newVisibility = new LumifyVisibility(LumifyVisibility.and(getVisibilityTranslator().toVisibilityNoSuperUser(data.getVisibilityJson()), VideoFrameInfo.VISIBILITY_STRING)).getVisibility();
 
-        Pattern fileNamePattern = Pattern.compile("image-([0-9]+)\\.png");
-        File tempDir = Files.createTempDir();
+        final File tempDir = Files.createTempDir();
         try {
-            Double defaultFPSToExtract = 1.0;
-            extractFrames(data.getLocalFile(), tempDir, data, defaultFPSToExtract, videoRotation);
-
-            List<String> propertyKeys = new ArrayList<String>();
-            long videoDuration = 0;
-            for (File frameFile : tempDir.listFiles()) {
-                Matcher m = fileNamePattern.matcher(frameFile.getName());
-                if (!m.matches()) {
-                    continue;
-                }
-                long frameStartTime = (long) ((Double.parseDouble(m.group(1)) / defaultFPSToExtract) * 1000.0);
-                if (frameStartTime > videoDuration) {
-                    videoDuration = frameStartTime;
-                }
-
-                try (InputStream frameFileIn = new FileInputStream(frameFile)) {
-                    ExistingElementMutation<Vertex> mutation = data.getElement().prepareMutation();
-                    StreamingPropertyValue frameValue = new StreamingPropertyValue(frameFileIn, byte[].class);
-                    frameValue.searchIndex(false);
-                    String key = String.format("%08d", Math.max(0L, frameStartTime));
-                    Metadata metadata = data.createPropertyMetadata();
-                    metadata.add(LumifyProperties.MIME_TYPE.getPropertyName(), "image/png", getVisibilityTranslator().getDefaultVisibility());
-                    metadata.add(MediaLumifyProperties.METADATA_VIDEO_FRAME_START_TIME, frameStartTime, getVisibilityTranslator().getDefaultVisibility());
-
-                    MediaLumifyProperties.VIDEO_FRAME.addPropertyValue(mutation, key, frameValue, metadata, newVisibility);
-                    propertyKeys.add(key);
-                    mutation.save(getAuthorizations());
+            final Double defaultFPSToExtract = 1.0;
+            Future<Void> ffmpeg = ffmpegExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    extractFrames(data.getLocalFile(), tempDir, data, defaultFPSToExtract, videoRotation);
+                    return null;
                 }
+            });
+
+            FrameWriter frameWriter = new FrameWriter(data, newVisibility);
+            try {
+                // ffmpeg writes the frames in order, so a frame is complete once the next one has been started
+                int frameNumber = 1;
+                boolean ffmpegDone;
+                do {
+                    ffmpegDone = ffmpeg.isDone();
+                    File frameFile = getFrameFile(tempDir, frameNumber);
+                    while (frameFile.exists() && (ffmpegDone || getFrameFile(tempDir, frameNumber + 1).exists())) {
+                        long frameStartTime = (long) ((frameNumber / defaultFPSToExtract) * 1000.0);
+                        frameWriter.addFrame(frameFile, frameStartTime);
+                        FileUtils.deleteQuietly(frameFile);
+                        frameNumber++;
+                        frameFile = getFrameFile(tempDir, frameNumber);
+                    }
+                    if (!ffmpegDone) {
+                        Thread.sleep(FRAME_POLL_INTERVAL_MILLIS);
+                    }
+                } while (!ffmpegDone);
+                ffmpeg.get();
+            } catch (ExecutionException ex) {
+                throw new LumifyException("Could not extract frames from " + data.getLocalFile(), ex.getCause());
+            } finally {
+                ffmpeg.cancel(true);
             }
+            frameWriter.finish();
 
             getGraph().flush();
 
             generateAndSaveVideoPreviewImage((Vertex) data.getElement(), videoRotation);
 
-            for (String propertyKey : propertyKeys) {
-                getWorkQueueRepository().pushGraphPropertyQueue(data.getElement(), propertyKey, MediaLumifyProperties.VIDEO_FRAME.getPropertyName());
+            for (List<String> propertyKeys : frameWriter.getPropertyKeyBatches()) {
+                getWorkQueueRepository().pushGraphPropertiesQueue(data.getElement(), propertyKeys, MediaLumifyProperties.VIDEO_FRAME.getPropertyName());
             }
         } finally {
             FileUtils.deleteDirectory(tempDir);
         }
     }
 
+    private static File getFrameFile(File dir, int frameNumber) {
+        return new File(dir, String.format("image-%08d.png", frameNumber));
+    }
+
+    /**
+     * Adds frames to the video vertex, framesPerBatch frames to a mutation. Every frame is saved, since the preview image
+     * and the scrubber expect one frame per second, but a frame whose perceptual hash is within duplicateFrameDistance
+     * bits of the last frame queued is not queued for processing.
+     */
+    private class FrameWriter {
+        private final GraphPropertyWorkData data;
+        private final Visibility visibility;
+        private final List<List<String>> propertyKeyBatches = new ArrayList<>();
+        private ExistingElementMutation<Vertex> mutation;
+        private int mutationFrameCount;
+        private List<String> propertyKeys = new ArrayList<>();
+        private Long lastFrameHash;
+        private int frameCount;
+        private int duplicateFrameCount;
+
+        public FrameWriter(GraphPropertyWorkData data, Visibility visibility) {
+            this.data = data;
+            this.visibility = visibility;
+        }
+
+        public void addFrame(File frameFile, long frameStartTime) throws IOException {
+            frameCount++;
+            byte[] frameData = FileUtils.readFileToByteArray(frameFile);
+            BufferedImage frameImage = ImageIO.read(new ByteArrayInputStream(frameData));
+            if (frameImage == null) {
+                LOGGER.warn("Could not read frame %s of %s", frameFile.getName(), data.getElement().getId());
+                return;
+            }
+            if (mutation == null) {
+                mutation = data.getElement().prepareMutation();
+            }
+            StreamingPropertyValue frameValue = new StreamingPropertyValue(new ByteArrayInputStream(frameData), byte[].class);
+            frameValue.searchIndex(false);
+            String key = String.format("%08d", Math.max(0L, frameStartTime));
+            Metadata metadata = data.createPropertyMetadata();
+            metadata.add(LumifyProperties.MIME_TYPE.getPropertyName(), "image/png", getVisibilityTranslator().getDefaultVisibility());
+            metadata.add(MediaLumifyProperties.METADATA_VIDEO_FRAME_START_TIME, frameStartTime, getVisibilityTranslator().getDefaultVisibility());
+            MediaLumifyProperties.VIDEO_FRAME.addPropertyValue(mutation, key, frameValue, metadata, visibility);
+            mutationFrameCount++;
+
+            long frameHash = PerceptualHash.hash(frameImage);
+            if (lastFrameHash != null && PerceptualHash.distance(lastFrameHash, frameHash) <= duplicateFrameDistance) {
+                duplicateFrameCount++;
+            } else {
+                lastFrameHash = frameHash;
+                propertyKeys.add(key);
+            }
+
+            if (mutationFrameCount >= framesPerBatch) {
+                saveBatch();
+            }
+        }
+
+        private void saveBatch() {
+            if (mutation == null) {
+                return;
+            }
+            mutation.save(getAuthorizations());
+            if (propertyKeys.size() > 0) {
+                propertyKeyBatches.add(propertyKeys);
+            }
+            mutation = null;
+            mutationFrameCount = 0;
+            propertyKeys = new ArrayList<>();
+        }
+
+        public void finish() {
+            saveBatch();
+            LOGGER.info("Extracted %d frames from %s, did not queue %d duplicate frames", frameCount, data.getElement().getId(), duplicateFrameCount);
+        }
+
+        public List<List<String>> getPropertyKeyBatches() {
+            return propertyKeyBatches;
+        }
+    }
+
     private void extractFrames(File videoFileName, File outDir, GraphPropertyWorkData data, double framesPerSecondToExtract, int videoRotation) throws IOException, InterruptedException {
         String[] ffmpegOptionsArray = prepareFFMPEGOptions(videoFileName, outDir, data, framesPerSecondToExtract, videoRotation);
         processRunner.execute(
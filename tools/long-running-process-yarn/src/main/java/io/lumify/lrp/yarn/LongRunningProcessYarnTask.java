@@ -5,7 +5,7 @@ import io.lumify.core.bootstrap.LumifyBootstrap;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.config.ConfigurationLoader;
 import io.lumify.core.exception.LumifyException;
-import io.lumify.core.model.longRunningProcess.LongRunningProcessRunner;
+import io.lumify.core.model.longRunningProcess.LongRunningProcessExecutor;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
@@ -25,21 +25,16 @@ public class LongRunningProcessYarnTask extends TaskBase {
             InjectHelper.ModuleMaker moduleMaker = LumifyBootstrap.bootstrapModuleMaker(configuration);
             WorkQueueRepository workQueueRepository = InjectHelper.getInstance(WorkQueueRepository.class, moduleMaker, configuration);
 
-            LongRunningProcessRunner longRunningProcessRunner = InjectHelper.getInstance(LongRunningProcessRunner.class);
-            longRunningProcessRunner.prepare(configuration.toMap());
+            int threadCount = configuration.getInt(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT, Configuration.LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT_DEFAULT);
+            LongRunningProcessExecutor longRunningProcessExecutor = InjectHelper.getInstance(LongRunningProcessExecutor.class);
+            longRunningProcessExecutor.prepare(configuration.toMap(), threadCount);
 
             while (true) {
                 WorkQueueRepository.LongRunningProcessMessage longRunningProcessMessage = workQueueRepository.getNextLongRunningProcessMessage();
                 if (longRunningProcessMessage == null) {
                     continue;
                 }
-                try {
-                    longRunningProcessRunner.process(longRunningProcessMessage.getMessage());
-                    longRunningProcessMessage.complete();
-                } catch (Throwable ex) {
-                    LOGGER.error("Failed to process long running process: %s", longRunningProcessMessage.getMessage());
-                    longRunningProcessMessage.complete(ex);
-                }
+                longRunningProcessExecutor.submit(longRunningProcessMessage);
             }
         } catch (Exception ex) {
             throw new LumifyException("GraphPropertyRunner failed", ex);
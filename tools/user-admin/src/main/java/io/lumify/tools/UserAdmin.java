@@ -298,6 +298,7 @@ public class UserAdmin extends CommandLineBase {
         }
 
         getUserRepository().delete(user);
+        getWorkQueueRepository().pushUserAccessChange(user);
         System.out.println("Deleted user " + user.getUserId());
         return 0;
     }
@@ -318,6 +319,7 @@ public class UserAdmin extends CommandLineBase {
         if (privileges != null) {
             System.out.println("Assigning privileges " + privileges + " to user " + user.getUserId());
             getUserRepository().setPrivileges(user, privileges);
+            getWorkQueueRepository().pushUserAccessChange(user);
             user = getUserRepository().findById(user.getUserId());
         }
 
@@ -351,6 +353,7 @@ public class UserAdmin extends CommandLineBase {
             System.out.println("Adding authorization:   " + auth);
             getUserRepository().addAuthorization(user, auth);
         }
+        getWorkQueueRepository().pushUserAccessChange(user);
         System.out.println("");
 
         printUser(user);
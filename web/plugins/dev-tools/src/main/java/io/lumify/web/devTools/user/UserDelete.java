@@ -4,6 +4,7 @@ import io.lumify.miniweb.HandlerChain;
 import com.google.inject.Inject;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.model.workspace.WorkspaceRepository;
 import io.lumify.core.user.User;
 import io.lumify.core.util.LumifyLogger;
@@ -18,15 +19,18 @@ import javax.servlet.http.HttpServletResponse;
 public class UserDelete extends BaseRequestHandler {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(UserDelete.class);
     private final Graph graph;
+    private final WorkQueueRepository workQueueRepository;
 
     @Inject
     public UserDelete(
             final UserRepository userRepository,
             final Configuration configuration,
             final WorkspaceRepository workspaceRepository,
-            final Graph graph) {
+            final Graph graph,
+            final WorkQueueRepository workQueueRepository) {
         super(userRepository, workspaceRepository, configuration);
         this.graph = graph;
+        this.workQueueRepository = workQueueRepository;
     }
 
     @Override
@@ -42,6 +46,7 @@ public class UserDelete extends BaseRequestHandler {
         LOGGER.info("deleting user %s", user.getUserId());
         getUserRepository().delete(user);
         this.graph.flush();
+        workQueueRepository.pushUserAccessChange(user);
 
         JSONObject json = new JSONObject();
         respondWithJson(response, json);
@@ -2,6 +2,7 @@ package io.lumify.web.devTools.user;
 
 import io.lumify.core.config.Configuration;
 import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.model.workspace.WorkspaceRepository;
 import io.lumify.core.user.User;
 import io.lumify.web.BaseRequestHandler;
@@ -12,12 +13,16 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 public class UserRemoveAuthorization extends BaseRequestHandler {
+    private final WorkQueueRepository workQueueRepository;
+
     @Inject
     public UserRemoveAuthorization(
             final UserRepository userRepository,
             final WorkspaceRepository workspaceRepository,
-            final Configuration configuration) {
+            final Configuration configuration,
+            final WorkQueueRepository workQueueRepository) {
         super(userRepository, workspaceRepository, configuration);
+        this.workQueueRepository = workQueueRepository;
     }
 
     @Override
@@ -32,6 +37,7 @@ public class UserRemoveAuthorization extends BaseRequestHandler {
         }
 
         getUserRepository().removeAuthorization(user, auth);
+        workQueueRepository.pushUserAccessChange(user);
 
         respondWithJson(response, getUserRepository().toJsonWithAuths(user));
     }
@@ -4,6 +4,7 @@ import io.lumify.miniweb.HandlerChain;
 import com.google.inject.Inject;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
 import io.lumify.core.model.workspace.WorkspaceRepository;
 import io.lumify.web.clientapi.model.Privilege;
 import io.lumify.core.user.User;
@@ -20,15 +21,18 @@ import java.util.Set;
 public class UserUpdatePrivileges extends BaseRequestHandler {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(UserUpdatePrivileges.class);
     private final Graph graph;
+    private final WorkQueueRepository workQueueRepository;
 
     @Inject
     public UserUpdatePrivileges(
             final UserRepository userRepository,
             final WorkspaceRepository workspaceRepository,
             final Configuration configuration,
-            final Graph graph) {
+            final Graph graph,
+            final WorkQueueRepository workQueueRepository) {
         super(userRepository, workspaceRepository, configuration);
         this.graph = graph;
+        this.workQueueRepository = workQueueRepository;
     }
 
     @Override
@@ -44,6 +48,7 @@ public class UserUpdatePrivileges extends BaseRequestHandler {
 
         LOGGER.info("Setting user %s privileges to %s", user.getUserId(), Privilege.toString(privileges));
         getUserRepository().setPrivileges(user, privileges);
+        workQueueRepository.pushUserAccessChange(user);
 
         JSONObject json = getUserRepository().toJsonWithAuths(user);
         respondWithJson(response, json);
@@ -46,6 +46,7 @@ define(['require'], function(require) {
                 }
             })(),
             userWorkspaceChange: NOOP,
+            userAccessChange: NOOP,
             publish: function(data) {
                 // Property undo already publishes propertyChange
                 if (data.objectType !== 'property' || data.publishType !== 'undo') {
@@ -62,7 +63,8 @@ define(['require'], function(require) {
 
                 require(['../util/store'], function(store) {
                     var storeObject = store.getObject(publicData.currentWorkspaceId, type, objectId),
-                        edgeCreation = type === 'edge' && !('propertyName' in data);
+                        edgeCreation = type === 'edge' &&
+                            ('edgeCreated' in data ? data.edgeCreated : !('propertyName' in data));
                     if (storeObject || edgeCreation) {
                         require(['../services/' + type], function(service) {
                             service.properties(objectId)
@@ -95,6 +97,16 @@ define(['require'], function(require) {
                     }
                 });
             },
+            propertiesChange: function(data) {
+                _.each(data.changes, function(change) {
+                    if (change.propertyChange) {
+                        socketHandlers.propertyChange(change);
+                    }
+                    if (change.textUpdated) {
+                        socketHandlers.textUpdated(change);
+                    }
+                });
+            },
             verticesDeleted: function(data) {
                 require(['../util/store'], function(store) {
                     var storeObjects = _.compact(
@@ -34,7 +34,13 @@ define([
             }
             params.filter = JSON.stringify(options.propertyFilters || []);
 
-            return ajax('POST', '/vertex/search', params);
+            return ajax('POST', '/vertex/search', params).then(function(result) {
+                // results are streamed, so a failure part way through is reported in the response
+                if (result.error) {
+                    throw new Error(result.error);
+                }
+                return result;
+            });
         },
 
         'geo-search': function(lat, lon, radius) {
@@ -95,11 +101,11 @@ define([
             })
         },
 
-        'highlighted-text': function(vertexId, propertyKey) {
-            return ajax('GET->HTML', '/vertex/highlighted-text', {
+        'highlighted-text': function(vertexId, propertyKey, range) {
+            return ajax('GET->HTML', '/vertex/highlighted-text', _.extend({
                 graphVertexId: vertexId,
                 propertyKey: propertyKey
-            });
+            }, range && _.pick(range, 'start', 'end')));
         },
 
         related: function(vertexIds, options) {
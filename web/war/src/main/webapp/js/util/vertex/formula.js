@@ -1,6 +1,9 @@
 define([], function() {
     'use strict';
 
+    // Formulas come from the ontology so there are only a few of them, compile each once
+    var compiledFormulas = {};
+
     return formulaFunction;
 
     function formulaFunction(formula, vertex, V, optionalKey) {
@@ -9,31 +12,35 @@ define([], function() {
             longestProp = _.partial(V.longestProp, vertex);
 
         try {
-
-            // If the formula is an expression wrap and return it
-            if (formula.indexOf('return') === -1) {
-                formula = 'return (' + formula + ')';
-            }
-
-            return new Function( // jshint ignore:line
-                // Get property value and converted to string displayValue
-                'prop', 'dependentProp',
-                // Get actual raw property value
-                'propRaw',
-                // Get the longest property value and converted to string displayValue
-                'longestProp',
-                // Vertex Json
-                'vertex',
-                // Inner function string
-                formula)(
-                    prop,
-                    prop,
-                    propRaw,
-                    longestProp,
-                    vertex);
-
+            return compile(formula)(
+                prop,
+                prop,
+                propRaw,
+                longestProp,
+                vertex);
         } catch(e) {
             console.warn('Unable to execute formula: ' + formula + ' Reason: ', e);
         }
     }
+
+    function compile(formula) {
+        if (compiledFormulas.hasOwnProperty(formula)) {
+            return compiledFormulas[formula];
+        }
+
+        // If the formula is an expression wrap and return it
+        var body = formula.indexOf('return') === -1 ? 'return (' + formula + ')' : formula;
+
+        return (compiledFormulas[formula] = new Function( // jshint ignore:line
+            // Get property value and converted to string displayValue
+            'prop', 'dependentProp',
+            // Get actual raw property value
+            'propRaw',
+            // Get the longest property value and converted to string displayValue
+            'longestProp',
+            // Vertex Json
+            'vertex',
+            // Inner function string
+            body));
+    }
 });
@@ -10,8 +10,8 @@ import io.lumify.core.config.Configuration;
 import io.lumify.core.config.ConfigurationLoader;
 import io.lumify.core.ingest.graphProperty.GraphPropertyRunner;
 import io.lumify.core.ingest.video.VideoFrameInfo;
+import io.lumify.core.model.longRunningProcess.LongRunningProcessExecutor;
 import io.lumify.core.model.longRunningProcess.LongRunningProcessRepository;
-import io.lumify.core.model.longRunningProcess.LongRunningProcessRunner;
 import io.lumify.core.model.ontology.OntologyRepository;
 import io.lumify.core.model.termMention.TermMentionRepository;
 import io.lumify.core.model.user.AuthorizationRepository;
@@ -211,39 +211,38 @@ public class ApplicationBootstrap implements ServletContextListener {
             return;
         }
 
-        int threadCount = Integer.parseInt(config.get(Configuration.WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_THREAD_COUNT, Integer.toString(Configuration.WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_THREAD_COUNT_DEFAULT)));
+        int threadCount = config.getInt(Configuration.WEB_APP_EMBEDDED_LONG_RUNNING_PROCESS_RUNNER_THREAD_COUNT,
+                config.getInt(Configuration.LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT, Configuration.LONG_RUNNING_PROCESS_EXECUTOR_THREAD_COUNT_DEFAULT));
 
-        final LongRunningProcessRunner longRunningProcessRunner = InjectHelper.getInstance(LongRunningProcessRunner.class);
-        longRunningProcessRunner.prepare(config.toMap());
+        final LongRunningProcessExecutor longRunningProcessExecutor = InjectHelper.getInstance(LongRunningProcessExecutor.class);
+        longRunningProcessExecutor.prepare(config.toMap(), threadCount);
         final WorkQueueRepository workQueueRepository = InjectHelper.getInstance(WorkQueueRepository.class);
 
         LOGGER.debug("long running process runners: %d", threadCount);
         shouldContinueToRunLongRunningProcess = true;
-        for (int i = 0; i < threadCount; i++) {
-            Thread t = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    delayStart();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                delayStart();
+                try {
                     while (shouldContinueToRunLongRunningProcess) {
                         WorkQueueRepository.LongRunningProcessMessage longRunningProcessMessage = workQueueRepository.getNextLongRunningProcessMessage();
                         if (longRunningProcessMessage == null) {
                             continue;
                         }
-                        try {
-                            longRunningProcessRunner.process(longRunningProcessMessage.getMessage());
-                            longRunningProcessMessage.complete();
-                        } catch (Throwable ex) {
-                            LOGGER.error("Failed to process long running process: %s", longRunningProcessMessage.getMessage());
-                            longRunningProcessMessage.complete(ex);
-                        }
+                        longRunningProcessExecutor.submit(longRunningProcessMessage);
                     }
+                } catch (InterruptedException ex) {
+                    LOGGER.debug("long running process queue reader interrupted");
+                } finally {
+                    longRunningProcessExecutor.shutdown();
                 }
-            });
-            t.setName("long-running-process-runner-" + t.getId());
-            t.setDaemon(true);
-            LOGGER.debug("starting long running process runner thread: %s", t.getName());
-            t.start();
-        }
+            }
+        });
+        t.setName("long-running-process-queue-reader-" + t.getId());
+        t.setDaemon(true);
+        LOGGER.debug("starting long running process queue reader thread: %s", t.getName());
+        t.start();
     }
 
     private void setupGraphPropertyWorkerRunner(Configuration config) {
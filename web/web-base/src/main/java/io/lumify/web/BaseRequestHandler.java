@@ -3,6 +3,7 @@ package io.lumify.web;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
 import io.lumify.core.config.Configuration;
 import io.lumify.core.exception.LumifyAccessDeniedException;
 import io.lumify.core.exception.LumifyException;
@@ -42,9 +43,12 @@ public abstract class BaseRequestHandler extends MinimalRequestHandler {
     private static final String LUMIFY_TIME_ZONE_HEADER_NAME = "Lumify-TimeZone";
     private static final String TIME_ZONE_ATTRIBUTE_NAME = "timeZone";
     private static final String TIME_ZONE_PARAMETER_NAME = "timeZone";
+    private static final String USER_ATTRIBUTE_NAME = "lumify.user";
+    private static final String SECURITY_CONTEXT_ATTRIBUTE_NAME = "lumify.securityContext";
     private final UserRepository userRepository;
     private final WorkspaceRepository workspaceRepository;
     private final ObjectMapper objectMapper = ObjectMapperFactory.getInstance();
+    private SecurityContextRepository securityContextRepository;
 
     protected BaseRequestHandler(UserRepository userRepository, WorkspaceRepository workspaceRepository, Configuration configuration) {
         super(configuration);
@@ -113,6 +117,10 @@ public abstract class BaseRequestHandler extends MinimalRequestHandler {
 
     protected Authorizations getAuthorizations(final HttpServletRequest request, final User user) {
         String workspaceId = getWorkspaceIdOrDefault(request);
+        if (securityContextRepository != null) {
+            return getSecurityContext(request, user, workspaceId).getAuthorizations();
+        }
+
         if (workspaceId != null) {
             if (!this.workspaceRepository.hasReadPermissions(workspaceId, user)) {
                 throw new LumifyAccessDeniedException("You do not have access to workspace: " + workspaceId, user, workspaceId);
@@ -124,9 +132,25 @@ public abstract class BaseRequestHandler extends MinimalRequestHandler {
     }
 
     protected Set<Privilege> getPrivileges(User user) {
+        if (securityContextRepository != null) {
+            return securityContextRepository.get(user, null).getPrivileges();
+        }
         return getUserRepository().getPrivileges(user);
     }
 
+    /**
+     * Resolves the user's access once per request. The context is kept on the request so every later call in the
+     * same request sees the same authorizations, even if they are invalidated part way through.
+     */
+    private SecurityContext getSecurityContext(HttpServletRequest request, User user, String workspaceId) {
+        SecurityContext securityContext = (SecurityContext) request.getAttribute(SECURITY_CONTEXT_ATTRIBUTE_NAME);
+        if (securityContext == null || !securityContext.isFor(user.getUserId(), workspaceId)) {
+            securityContext = securityContextRepository.get(user, workspaceId);
+            request.setAttribute(SECURITY_CONTEXT_ATTRIBUTE_NAME, securityContext);
+        }
+        return securityContext;
+    }
+
     public static void setMaxAge(final HttpServletResponse response, int numberOfSeconds) {
         response.setHeader("Cache-Control", "max-age=" + numberOfSeconds);
     }
@@ -261,8 +285,17 @@ public abstract class BaseRequestHandler extends MinimalRequestHandler {
         configureResponse(ResponseTypes.HTML, response, html);
     }
 
+    /**
+     * @return the current user, loaded at most once per request
+     */
     protected User getUser(HttpServletRequest request) {
-        return new ProxyUser(CurrentUser.get(request), this.userRepository);
+        String userId = CurrentUser.get(request);
+        User user = (User) request.getAttribute(USER_ATTRIBUTE_NAME);
+        if (user == null || userId == null || !userId.equals(user.getUserId())) {
+            user = new ProxyUser(userId, this.userRepository);
+            request.setAttribute(USER_ATTRIBUTE_NAME, user);
+        }
+        return user;
     }
 
     private void configureResponse(final ResponseTypes type, final HttpServletResponse response, final Object responseData) {
@@ -329,4 +362,9 @@ public abstract class BaseRequestHandler extends MinimalRequestHandler {
     public ObjectMapper getObjectMapper() {
         return objectMapper;
     }
+
+    @Inject
+    public void setSecurityContextRepository(SecurityContextRepository securityContextRepository) {
+        this.securityContextRepository = securityContextRepository;
+    }
 }
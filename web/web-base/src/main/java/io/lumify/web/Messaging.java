@@ -2,8 +2,6 @@ package io.lumify.web;
 
 import com.google.inject.Inject;
 import com.google.inject.Injector;
-import org.apache.curator.framework.CuratorFramework;
-import io.lumify.core.config.Configuration;
 import io.lumify.core.exception.LumifyException;
 import io.lumify.core.model.user.UserRepository;
 import io.lumify.core.model.user.UserSessionCounterRepository;
@@ -27,8 +25,7 @@ import org.json.JSONObject;
 
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 @AtmosphereHandlerService(
         path = "/messaging",
@@ -42,16 +39,19 @@ import java.util.List;
         })
 public class Messaging implements AtmosphereHandler { //extends AbstractReflectorAtmosphereHandler {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(Messaging.class);
+    private static final String ROUTED_BROADCASTER_ID_PREFIX = "/messaging/";
 
     private UserRepository userRepository;
 
     // TODO should we save off this broadcaster? When using the BroadcasterFactory
     //      we always get null when trying to get the default broadcaster
     private static Broadcaster broadcaster;
+    private static BroadcasterFactory broadcasterFactory;
+    private final Map<String, String> resourceUserIds = new HashMap<>();
+    private final Map<String, String> resourceWorkspaceIds = new HashMap<>();
+    private final Map<String, Integer> broadcastRouteCounts = new HashMap<>();
     private WorkspaceRepository workspaceRepository;
     private WorkQueueRepository workQueueRepository;
-    private CuratorFramework curatorFramework;
-    private Configuration configuration;
     private UserSessionCounterRepository userSessionCounterRepository;
     private boolean subscribedToBroadcast = false;
 
@@ -86,21 +86,16 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
         }
 
         if (!subscribedToBroadcast) {
-            this.workQueueRepository.subscribeToBroadcastMessages(new WorkQueueRepository.BroadcastConsumer() {
+            this.workQueueRepository.subscribeToRoutedBroadcastMessages(new WorkQueueRepository.BroadcastConsumer() {
                 @Override
                 public void broadcastReceived(JSONObject json) {
-                    if (broadcaster != null) {
-                        broadcaster.broadcast(json.toString());
-                    }
+                    routeBroadcast(json);
                 }
             });
             subscribedToBroadcast = true;
         }
         broadcaster = resource.getBroadcaster();
-
-        if (userSessionCounterRepository == null) {
-            userSessionCounterRepository = new UserSessionCounterRepository(curatorFramework, configuration);
-        }
+        broadcasterFactory = resource.getAtmosphereConfig().getBroadcasterFactory();
     }
 
     @Override
@@ -131,8 +126,12 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
     }
 
     public void onOpen(AtmosphereResource resource) throws IOException {
-        setStatus(resource, UserStatus.ACTIVE);
-        incrementUserSessionCount(resource);
+        if (joinBroadcastRoutes(resource)) {
+            boolean firstSession = userSessionCounterRepository.incrementAndGet(getCurrentUserId(resource)) == 1;
+            if (firstSession) {
+                setStatus(resource, UserStatus.ACTIVE);
+            }
+        }
     }
 
     public void onResume(AtmosphereResourceEvent event, AtmosphereResponse response) throws IOException {
@@ -152,9 +151,13 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
     }
 
     private void onDisconnectOrClose(AtmosphereResourceEvent event) {
-        boolean lastSession = decrementUserSessionCount(event.getResource());
+        String userId = leaveBroadcastRoutes(event.getResource());
+        if (userId == null) {
+            return;
+        }
+        boolean lastSession = userSessionCounterRepository.decrementAndGet(userId) < 1;
         if (lastSession) {
-            LOGGER.info("last session for user %s", getCurrentUserId(event.getResource()));
+            LOGGER.info("last session for user %s", userId);
             setStatus(event.getResource(), UserStatus.OFFLINE);
         }
     }
@@ -208,6 +211,138 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
         }
     }
 
+    /**
+     * Sends a broadcast only to the sessions it is routed to. Sessions join the broadcaster of their user and of
+     * their user's current workspace, and the work queue only delivers routed messages while this server has a
+     * session on that route.
+     */
+    private void routeBroadcast(JSONObject json) {
+        if ("userWorkspaceChange".equals(json.optString("type"))) {
+            JSONObject data = json.optJSONObject("data");
+            if (data != null) {
+                moveUserToWorkspace(data.optString("id"), data.optString("workspaceId", null));
+            }
+        }
+
+        String routingKey = WorkQueueRepository.getBroadcastRoutingKey(json);
+        Broadcaster target;
+        if (WorkQueueRepository.BROADCAST_ROUTING_KEY_GLOBAL.equals(routingKey)) {
+            target = broadcaster;
+        } else {
+            target = lookupRoutedBroadcaster(routingKey, false);
+        }
+        if (target != null) {
+            target.broadcast(json.toString());
+        }
+    }
+
+    /**
+     * @return false if the session had already joined its routes
+     */
+    private boolean joinBroadcastRoutes(AtmosphereResource resource) {
+        String userId = getCurrentUserId(resource);
+        String workspaceId = userRepository.getCurrentWorkspaceId(userId);
+        synchronized (broadcastRouteCounts) {
+            if (resourceUserIds.containsKey(resource.uuid())) {
+                return false;
+            }
+            resourceUserIds.put(resource.uuid(), userId);
+            joinBroadcastRoute(resource, WorkQueueRepository.getUserBroadcastRoutingKey(userId));
+            if (workspaceId != null) {
+                resourceWorkspaceIds.put(resource.uuid(), workspaceId);
+                joinBroadcastRoute(resource, WorkQueueRepository.getWorkspaceBroadcastRoutingKey(workspaceId));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the user of the session or null if the session had already left its routes
+     */
+    private String leaveBroadcastRoutes(AtmosphereResource resource) {
+        synchronized (broadcastRouteCounts) {
+            String userId = resourceUserIds.remove(resource.uuid());
+            if (userId != null) {
+                leaveBroadcastRoute(resource, WorkQueueRepository.getUserBroadcastRoutingKey(userId));
+            }
+            String workspaceId = resourceWorkspaceIds.remove(resource.uuid());
+            if (workspaceId != null) {
+                leaveBroadcastRoute(resource, WorkQueueRepository.getWorkspaceBroadcastRoutingKey(workspaceId));
+            }
+            return userId;
+        }
+    }
+
+    private void moveUserToWorkspace(String userId, String workspaceId) {
+        if (userId == null || userId.length() == 0) {
+            return;
+        }
+        synchronized (broadcastRouteCounts) {
+            Broadcaster userBroadcaster = lookupRoutedBroadcaster(WorkQueueRepository.getUserBroadcastRoutingKey(userId), false);
+            if (userBroadcaster == null) {
+                return;
+            }
+            for (AtmosphereResource resource : new ArrayList<>(userBroadcaster.getAtmosphereResources())) {
+                String previousWorkspaceId = workspaceId == null ? resourceWorkspaceIds.remove(resource.uuid()) : resourceWorkspaceIds.put(resource.uuid(), workspaceId);
+                if (previousWorkspaceId != null && previousWorkspaceId.equals(workspaceId)) {
+                    continue;
+                }
+                if (previousWorkspaceId != null) {
+                    leaveBroadcastRoute(resource, WorkQueueRepository.getWorkspaceBroadcastRoutingKey(previousWorkspaceId));
+                }
+                if (workspaceId != null) {
+                    joinBroadcastRoute(resource, WorkQueueRepository.getWorkspaceBroadcastRoutingKey(workspaceId));
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the broadcastRouteCounts lock. The work queue starts delivering a route's messages to
+     * this server when its first session joins.
+     */
+    private void joinBroadcastRoute(AtmosphereResource resource, String routingKey) {
+        lookupRoutedBroadcaster(routingKey, true).addAtmosphereResource(resource);
+        Integer count = broadcastRouteCounts.get(routingKey);
+        if (count == null) {
+            workQueueRepository.addBroadcastRoute(routingKey);
+            count = 0;
+        }
+        broadcastRouteCounts.put(routingKey, count + 1);
+    }
+
+    /**
+     * Must be called holding the broadcastRouteCounts lock. The route and its broadcaster are removed when its
+     * last session leaves.
+     */
+    private void leaveBroadcastRoute(AtmosphereResource resource, String routingKey) {
+        Broadcaster routedBroadcaster = lookupRoutedBroadcaster(routingKey, false);
+        if (routedBroadcaster != null) {
+            routedBroadcaster.removeAtmosphereResource(resource);
+        }
+        Integer count = broadcastRouteCounts.get(routingKey);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            broadcastRouteCounts.put(routingKey, count - 1);
+            return;
+        }
+        broadcastRouteCounts.remove(routingKey);
+        workQueueRepository.removeBroadcastRoute(routingKey);
+        if (routedBroadcaster != null) {
+            broadcasterFactory.remove(routedBroadcaster.getID());
+            routedBroadcaster.destroy();
+        }
+    }
+
+    private Broadcaster lookupRoutedBroadcaster(String routingKey, boolean createIfNull) {
+        if (broadcasterFactory == null) {
+            return null;
+        }
+        return broadcasterFactory.lookup(ROUTED_BROADCASTER_ID_PREFIX + routingKey, createIfNull);
+    }
+
     private void setStatus(AtmosphereResource resource, UserStatus status) {
         broadcaster = resource.getBroadcaster();
         try {
@@ -229,16 +364,6 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
         }
     }
 
-    private void incrementUserSessionCount(AtmosphereResource resource) {
-        String userId = getCurrentUserId(resource);
-        userSessionCounterRepository.incrementAndGet(userId);
-    }
-
-    private boolean decrementUserSessionCount(AtmosphereResource resource) {
-        String userId = getCurrentUserId(resource);
-        return userSessionCounterRepository.decrementAndGet(userId) < 1;
-    }
-
     private String getCurrentUserId(AtmosphereResource resource) {
         String userId = CurrentUser.get(resource.getRequest());
         if (userId != null && userId.trim().length() > 0) {
@@ -263,12 +388,7 @@ public class Messaging implements AtmosphereHandler { //extends AbstractReflecto
     }
 
     @Inject
-    public void setCuratorFramework(CuratorFramework curatorFramework) {
-        this.curatorFramework = curatorFramework;
-    }
-
-    @Inject
-    public void setConfiguration(Configuration configuration) {
-        this.configuration = configuration;
+    public void setUserSessionCounterRepository(UserSessionCounterRepository userSessionCounterRepository) {
+        this.userSessionCounterRepository = userSessionCounterRepository;
     }
 }
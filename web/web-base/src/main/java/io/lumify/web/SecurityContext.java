@@ -0,0 +1,49 @@
+package io.lumify.web;
+
+import io.lumify.web.clientapi.model.Privilege;
+import org.securegraph.Authorizations;
+
+import java.util.Set;
+
+/**
+ * The resolved authorizations and privileges of a user, either outside of any workspace or within a workspace the
+ * user has read access to. Instances are immutable and shared between requests until
+ * {@link SecurityContextRepository} invalidates them.
+ */
+public class SecurityContext {
+    private final String userId;
+    private final String workspaceId;
+    private final Authorizations authorizations;
+    private final Set<Privilege> privileges;
+
+    public SecurityContext(String userId, String workspaceId, Authorizations authorizations, Set<Privilege> privileges) {
+        this.userId = userId;
+        this.workspaceId = workspaceId;
+        this.authorizations = authorizations;
+        this.privileges = privileges;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the workspace the user was checked for read access to or null
+     */
+    public String getWorkspaceId() {
+        return workspaceId;
+    }
+
+    public Authorizations getAuthorizations() {
+        return authorizations;
+    }
+
+    public Set<Privilege> getPrivileges() {
+        return privileges;
+    }
+
+    public boolean isFor(String userId, String workspaceId) {
+        return this.userId.equals(userId)
+                && (this.workspaceId == null ? workspaceId == null : this.workspaceId.equals(workspaceId));
+    }
+}
@@ -0,0 +1,138 @@
+package io.lumify.web;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyAccessDeniedException;
+import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
+import io.lumify.core.model.workspace.WorkspaceRepository;
+import io.lumify.core.user.User;
+import io.lumify.core.util.LumifyLogger;
+import io.lumify.core.util.LumifyLoggerFactory;
+import io.lumify.web.clientapi.model.Privilege;
+import org.json.JSONObject;
+import org.securegraph.Authorizations;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link SecurityContext} of each user and workspace so requests don't go back to the graph for the
+ * workspace access check, authorizations and privileges on every call. Contexts are dropped when a broadcast says a
+ * user's access or a workspace's users changed, and expire after a while in case a broadcast was missed.
+ */
+@Singleton
+public class SecurityContextRepository {
+    private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(SecurityContextRepository.class);
+    private final UserRepository userRepository;
+    private final WorkspaceRepository workspaceRepository;
+    private final Cache<String, SecurityContext> securityContextCache;
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    @Inject
+    public SecurityContextRepository(
+            final UserRepository userRepository,
+            final WorkspaceRepository workspaceRepository,
+            final WorkQueueRepository workQueueRepository,
+            final Configuration configuration) {
+        this.userRepository = userRepository;
+        this.workspaceRepository = workspaceRepository;
+        this.securityContextCache = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getInt(Configuration.SECURITY_CONTEXT_CACHE_SIZE, Configuration.SECURITY_CONTEXT_CACHE_SIZE_DEFAULT))
+                .expireAfterWrite(configuration.getInt(Configuration.SECURITY_CONTEXT_CACHE_EXPIRE_SECONDS, Configuration.SECURITY_CONTEXT_CACHE_EXPIRE_SECONDS_DEFAULT), TimeUnit.SECONDS)
+                .build();
+
+        // changes to a single user's access are routed to that user, so listen to every route, not only to those of
+        // the users with a websocket on this server
+        workQueueRepository.subscribeToBroadcastMessages(new WorkQueueRepository.BroadcastConsumer() {
+            @Override
+            public void broadcastReceived(JSONObject json) {
+                invalidate(json);
+            }
+        });
+    }
+
+    /**
+     * @param workspaceId the workspace to check the user's read access to and add to the authorizations or null
+     * @throws LumifyAccessDeniedException if the user cannot read the workspace
+     */
+    public SecurityContext get(User user, String workspaceId) {
+        String userId = user.getUserId();
+        if (userId == null) {
+            return resolve(user, workspaceId);
+        }
+
+        String cacheKey = userId + "\u0000" + (workspaceId == null ? "" : workspaceId);
+        SecurityContext securityContext = securityContextCache.getIfPresent(cacheKey);
+        if (securityContext != null) {
+            return securityContext;
+        }
+
+        long invalidationCountBeforeResolve = invalidationCount.get();
+        securityContext = resolve(user, workspaceId);
+        if (invalidationCount.get() == invalidationCountBeforeResolve) {
+            securityContextCache.put(cacheKey, securityContext);
+        }
+        return securityContext;
+    }
+
+    private SecurityContext resolve(User user, String workspaceId) {
+        Authorizations authorizations;
+        if (workspaceId != null) {
+            if (!workspaceRepository.hasReadPermissions(workspaceId, user)) {
+                throw new LumifyAccessDeniedException("You do not have access to workspace: " + workspaceId, user, workspaceId);
+            }
+            authorizations = userRepository.getAuthorizations(user, workspaceId);
+        } else {
+            authorizations = userRepository.getAuthorizations(user);
+        }
+        Set<Privilege> privileges = Collections.unmodifiableSet(new HashSet<>(userRepository.getPrivileges(user)));
+        return new SecurityContext(user.getUserId(), workspaceId, authorizations, privileges);
+    }
+
+    void invalidate(JSONObject json) {
+        String type = json.optString("type");
+        if ("userAccessChange".equals(type)) {
+            JSONObject data = json.optJSONObject("data");
+            if (data != null) {
+                invalidateUser(data.optString("userId"));
+            }
+        } else if ("workspaceChange".equals(type)) {
+            JSONObject data = json.optJSONObject("data");
+            if (data != null) {
+                invalidateWorkspace(data.optString("workspaceId"));
+            }
+        } else if ("workspaceDelete".equals(type)) {
+            invalidateWorkspace(json.optString("workspaceId"));
+        }
+    }
+
+    public void invalidateUser(String userId) {
+        invalidationCount.incrementAndGet();
+        Iterator<SecurityContext> securityContexts = securityContextCache.asMap().values().iterator();
+        while (securityContexts.hasNext()) {
+            if (securityContexts.next().getUserId().equals(userId)) {
+                securityContexts.remove();
+            }
+        }
+        LOGGER.debug("invalidated security contexts of user %s", userId);
+    }
+
+    public void invalidateWorkspace(String workspaceId) {
+        invalidationCount.incrementAndGet();
+        Iterator<SecurityContext> securityContexts = securityContextCache.asMap().values().iterator();
+        while (securityContexts.hasNext()) {
+            if (workspaceId.equals(securityContexts.next().getWorkspaceId())) {
+                securityContexts.remove();
+            }
+        }
+        LOGGER.debug("invalidated security contexts of workspace %s", workspaceId);
+    }
+}
@@ -2,13 +2,10 @@ package io.lumify.web;
 
 import com.google.inject.Inject;
 import io.lumify.core.bootstrap.InjectHelper;
-import io.lumify.core.model.user.UserRepository;
 import io.lumify.core.model.user.UserSessionCounterRepository;
 import io.lumify.core.model.workQueue.WorkQueueRepository;
-import io.lumify.core.user.User;
 import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
-import io.lumify.web.clientapi.model.UserStatus;
 
 import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionBindingListener;
@@ -39,14 +36,8 @@ public class SessionUser implements HttpSessionBindingListener, Serializable {
             UserSessionCounterRepository userSessionCounterRepository = InjectHelper.getInstance(UserSessionCounterRepository.class);
             WorkQueueRepository workQueueRepository = InjectHelper.getInstance(WorkQueueRepository.class);
 
-            int sessionCount = userSessionCounterRepository.decrementAndGet(userId);
-            if (sessionCount < 1) {
-                UserStatus status = UserStatus.OFFLINE;
-                LOGGER.info("setting userId %s status to %s", userId, status);
-                UserRepository userRepository = InjectHelper.getInstance(UserRepository.class);
-                User user = userRepository.setStatus(userId, status);
-                workQueueRepository.pushUserStatusChange(user, status);
-            } else {
+            // the messaging sessions are counted and set the user OFFLINE when the last one closes
+            if (userSessionCounterRepository.getSessionCount(userId) > 0) {
                 workQueueRepository.pushSessionExpiration(userId, event.getSession().getId());
             }
         } catch (Exception ex) {
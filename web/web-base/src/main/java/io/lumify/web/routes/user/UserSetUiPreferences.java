@@ -42,7 +42,7 @@ public class UserSetUiPreferences extends BaseRequestHandler {
             respondWithBadRequest(response, "ui-preferences", "either ui-preferences or name,value are required parameters.");
         }
 
-        user = getUser(request);
+        user = getUserRepository().findById(user.getUserId());
         JSONObject userJson = getUserRepository().toJsonWithAuths(user);
         respondWithJson(response, userJson);
     }
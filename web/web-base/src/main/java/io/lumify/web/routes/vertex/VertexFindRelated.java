@@ -1,7 +1,9 @@
 package io.lumify.web.routes.vertex;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyException;
 import io.lumify.core.model.ontology.Concept;
 import io.lumify.core.model.ontology.OntologyRepository;
 import io.lumify.core.model.properties.LumifyProperties;
@@ -12,20 +14,19 @@ import io.lumify.core.util.ClientApiConverter;
 import io.lumify.miniweb.HandlerChain;
 import io.lumify.web.BaseRequestHandler;
 import io.lumify.web.clientapi.model.ClientApiVertexFindRelatedResponse;
-import org.securegraph.Authorizations;
-import org.securegraph.Direction;
-import org.securegraph.Graph;
-import org.securegraph.Vertex;
+import org.securegraph.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VertexFindRelated extends BaseRequestHandler {
     private final Graph graph;
     private final OntologyRepository ontologyRepository;
+    private final int batchSize;
+    private final ExecutorService executor;
 
     @Inject
     public VertexFindRelated(
@@ -37,8 +38,19 @@ public class VertexFindRelated extends BaseRequestHandler {
         super(userRepository, workspaceRepository, configuration);
         this.ontologyRepository = ontologyRepository;
         this.graph = graph;
-    }
+        batchSize = configuration.getInt(Configuration.FIND_RELATED_BATCH_SIZE, Configuration.FIND_RELATED_BATCH_SIZE_DEFAULT);
+        int threadCount = configuration.getInt(Configuration.FIND_RELATED_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
 
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-vertex-find-related-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 
     @Override
     public void handle(HttpServletRequest request, HttpServletResponse response, HandlerChain chain) throws Exception {
@@ -63,33 +75,104 @@ public class VertexFindRelated extends BaseRequestHandler {
             }
         }
 
-        Set<String> visitedIds = new HashSet<>();
+        // Related vertex ids come from the seeds' edge refs, which also point at vertices the user can not read or that
+        // are hidden. Those are dropped by loading the related vertices without their properties, or only with their
+        // properties to check a concept limit, and only the vertices being returned are loaded in full.
+        Set<String> relatedVertexIds = getRelatedVertexIds(graphVertexIds, limitEdgeLabel, authorizations);
+        List<String> matchingVertexIds = getVisibleVertexIds(relatedVertexIds, limitConceptIds, authorizations);
+        long count = matchingVertexIds.size();
+        List<String> vertexIdsToReturn = matchingVertexIds.subList(0, (int) Math.min(maxVerticesToReturn, matchingVertexIds.size()));
 
         ClientApiVertexFindRelatedResponse result = new ClientApiVertexFindRelatedResponse();
-        long count = visitedIds.size();
-        for (String id : graphVertexIds) {
-            Iterable<Vertex> vertices = graph.getVertex(id, authorizations).getVertices(Direction.BOTH, limitEdgeLabel, authorizations);
-            for (Vertex vertex : vertices) {
-                if (!visitedIds.add(vertex.getId())) {
-                    continue;
+        for (Vertex vertex : graph.getVerticesInOrder(vertexIdsToReturn, authorizations)) {
+            result.getVertices().add(ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations));
+        }
+        result.setCount(count);
+
+        respondWithClientApiObject(response, result);
+    }
+
+    /**
+     * Reads the adjacent vertex ids of every seed in parallel and merges them in seed order.
+     */
+    private Set<String> getRelatedVertexIds(String[] graphVertexIds, final String limitEdgeLabel, final Authorizations authorizations) {
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (final String graphVertexId : graphVertexIds) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    Vertex vertex = graph.getVertex(graphVertexId, FetchHint.EDGE_REFS, authorizations);
+                    if (vertex == null) {
+                        throw new LumifyException("Could not find vertex: " + graphVertexId);
+                    }
+                    Iterable<String> vertexIds;
+                    if (limitEdgeLabel == null) {
+                        vertexIds = vertex.getVertexIds(Direction.BOTH, authorizations);
+                    } else {
+                        vertexIds = vertex.getVertexIds(Direction.BOTH, limitEdgeLabel, authorizations);
+                    }
+                    List<String> results = new ArrayList<>();
+                    Iterables.addAll(results, vertexIds);
+                    return results;
                 }
-                if (limitConceptIds.size() == 0 || !isLimited(vertex, limitConceptIds)) {
-                    if (count < maxVerticesToReturn) {
-                        result.getVertices().add(ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations));
+            }));
+        }
+
+        Set<String> relatedVertexIds = new LinkedHashSet<>();
+        for (Future<List<String>> future : futures) {
+            relatedVertexIds.addAll(getResult(future, futures));
+        }
+        return relatedVertexIds;
+    }
+
+    /**
+     * Loads the vertices in parallel batches and keeps the ids of those the user can see and, if any concepts are
+     * given, that have one of the concepts. Properties are only fetched to check the concepts.
+     */
+    private List<String> getVisibleVertexIds(Set<String> vertexIds, final Set<String> limitConceptIds, final Authorizations authorizations) {
+        final EnumSet<FetchHint> fetchHints = limitConceptIds.size() == 0 ? FetchHint.NONE : EnumSet.of(FetchHint.PROPERTIES);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (final List<String> batch : Iterables.partition(vertexIds, batchSize)) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    List<String> results = new ArrayList<>();
+                    for (Vertex vertex : graph.getVerticesInOrder(batch, fetchHints, authorizations)) {
+                        if (limitConceptIds.size() == 0 || limitConceptIds.contains(LumifyProperties.CONCEPT_TYPE.getPropertyValue(vertex))) {
+                            results.add(vertex.getId());
+                        }
                     }
-                    count++;
+                    return results;
                 }
-            }
+            }));
         }
 
-        result.setCount(count);
+        List<String> matchingVertexIds = new ArrayList<>();
+        for (Future<List<String>> future : futures) {
+            matchingVertexIds.addAll(getResult(future, futures));
+        }
+        return matchingVertexIds;
+    }
 
-        respondWithClientApiObject(response, result);
+    private static <T> T getResult(Future<T> future, List<? extends Future<?>> futures) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new LumifyException("Interrupted while finding related vertices", ex);
+        } catch (ExecutionException ex) {
+            cancel(futures);
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new LumifyException("Could not find related vertices", ex.getCause());
+        }
     }
 
-    private boolean isLimited(Vertex vertex, Set<String> limitConceptIds) {
-        String conceptId = LumifyProperties.CONCEPT_TYPE.getPropertyValue(vertex);
-        return !limitConceptIds.contains(conceptId);
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
     }
 }
-
@@ -6,7 +6,9 @@ import io.lumify.core.config.Configuration;
 import io.lumify.core.ingest.video.VideoTranscript;
 import io.lumify.core.model.properties.LumifyProperties;
 import io.lumify.core.model.properties.MediaLumifyProperties;
+import io.lumify.core.model.termMention.IndexedTermMention;
 import io.lumify.core.model.termMention.TermMentionRepository;
+import io.lumify.core.model.textHighlighting.OffsetItem;
 import io.lumify.core.model.user.UserRepository;
 import io.lumify.core.model.workspace.WorkspaceRepository;
 import io.lumify.core.user.User;
@@ -15,7 +17,6 @@ import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.miniweb.HandlerChain;
 import io.lumify.web.BaseRequestHandler;
-import org.apache.commons.io.IOUtils;
 import org.securegraph.Authorizations;
 import org.securegraph.Graph;
 import org.securegraph.Vertex;
@@ -23,6 +24,11 @@ import org.securegraph.property.StreamingPropertyValue;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
 
 public class VertexHighlightedText extends BaseRequestHandler {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(VertexHighlightedText.class);
@@ -63,24 +69,33 @@ public class VertexHighlightedText extends BaseRequestHandler {
         StreamingPropertyValue textPropertyValue = LumifyProperties.TEXT.getPropertyValue(artifactVertex, propertyKey);
         if (textPropertyValue != null) {
             LOGGER.debug("returning text for vertexId:%s property:%s", artifactVertex.getId(), propertyKey);
-            String highlightedText;
-            String text = IOUtils.toString(textPropertyValue.getInputStream(), "UTF-8");
-            if (text == null) {
-                highlightedText = "";
-            } else {
-                Iterable<Vertex> termMentions = termMentionRepository.findBySourceGraphVertexAndPropertyKey(artifactVertex.getId(), propertyKey, authorizationsWithTermMention);
-                highlightedText = entityHighlighter.getHighlightedText(text, termMentions, workspaceId, authorizationsWithTermMention);
-            }
+            long rangeStart = getOptionalParameterLong(request, "start", 0);
+            long rangeEnd = getOptionalParameterLong(request, "end", Long.MAX_VALUE);
+            List<OffsetItem> offsetItems = getOffsetItems(artifactVertex.getId(), propertyKey, workspaceId, authorizationsWithTermMention);
 
-            respondWithHtml(response, highlightedText);
+            response.setContentType("text/html");
+            response.setCharacterEncoding("UTF-8");
+            try (Reader text = new InputStreamReader(textPropertyValue.getInputStream(), "UTF-8")) {
+                Writer out = response.getWriter();
+                try {
+                    EntityHighlighter.writeHighlightedText(text, offsetItems, rangeStart, rangeEnd, out);
+                } catch (IOException ex) {
+                    if (!response.isCommitted()) {
+                        throw ex;
+                    }
+                    // the status has already been sent, the spans are closed so the client gets well formed html
+                    LOGGER.error("Could not write the highlighted text of vertexId:%s property:%s", artifactVertex.getId(), propertyKey, ex);
+                }
+                out.flush();
+            }
             return;
         }
 
         VideoTranscript videoTranscript = MediaLumifyProperties.VIDEO_TRANSCRIPT.getPropertyValue(artifactVertex, propertyKey);
         if (videoTranscript != null) {
             LOGGER.debug("returning video transcript for vertexId:%s property:%s", artifactVertex.getId(), propertyKey);
-            Iterable<Vertex> termMentions = termMentionRepository.findBySourceGraphVertexAndPropertyKey(artifactVertex.getId(), propertyKey, authorizations);
-            VideoTranscript highlightedVideoTranscript = entityHighlighter.getHighlightedVideoTranscript(videoTranscript, termMentions, workspaceId, authorizations);
+            List<OffsetItem> offsetItems = getOffsetItems(artifactVertex.getId(), propertyKey, workspaceId, authorizationsWithTermMention);
+            VideoTranscript highlightedVideoTranscript = entityHighlighter.getHighlightedVideoTranscript(videoTranscript, offsetItems);
             respondWithJson(response, highlightedVideoTranscript.toJson());
             return;
         }
@@ -88,12 +103,22 @@ public class VertexHighlightedText extends BaseRequestHandler {
         videoTranscript = JsonSerializer.getSynthesisedVideoTranscription(artifactVertex, propertyKey);
         if (videoTranscript != null) {
             LOGGER.debug("returning synthesised video transcript for vertexId:%s property:%s", artifactVertex.getId(), propertyKey);
-            Iterable<Vertex> termMentions = termMentionRepository.findBySourceGraphVertexAndPropertyKey(artifactVertex.getId(), propertyKey, authorizations);
-            VideoTranscript highlightedVideoTranscript = entityHighlighter.getHighlightedVideoTranscript(videoTranscript, termMentions, workspaceId, authorizationsWithTermMention);
+            List<OffsetItem> offsetItems = getOffsetItems(artifactVertex.getId(), propertyKey, workspaceId, authorizationsWithTermMention);
+            VideoTranscript highlightedVideoTranscript = entityHighlighter.getHighlightedVideoTranscript(videoTranscript, offsetItems);
             respondWithJson(response, highlightedVideoTranscript.toJson());
             return;
         }
 
         respondWithNotFound(response);
     }
+
+    private List<OffsetItem> getOffsetItems(String artifactVertexId, String propertyKey, String workspaceId, Authorizations authorizationsWithTermMention) {
+        List<IndexedTermMention> indexedTermMentions = termMentionRepository.findIndexedBySourceGraphVertexAndPropertyKey(artifactVertexId, propertyKey, authorizationsWithTermMention);
+        if (indexedTermMentions != null) {
+            return entityHighlighter.convertIndexedTermMentionsToOffsetItems(indexedTermMentions, workspaceId);
+        }
+        LOGGER.debug("term mentions of vertexId:%s property:%s are not indexed", artifactVertexId, propertyKey);
+        Iterable<Vertex> termMentions = termMentionRepository.findBySourceGraphVertexAndPropertyKey(artifactVertexId, propertyKey, authorizationsWithTermMention);
+        return entityHighlighter.convertTermMentionsToOffsetItems(termMentions, workspaceId, authorizationsWithTermMention);
+    }
 }
@@ -1,5 +1,7 @@
 package io.lumify.web.routes.vertex;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -18,8 +20,8 @@ import io.lumify.core.util.LumifyLogger;
 import io.lumify.core.util.LumifyLoggerFactory;
 import io.lumify.miniweb.HandlerChain;
 import io.lumify.web.BaseRequestHandler;
+import io.lumify.web.ConnectionClosedException;
 import io.lumify.web.clientapi.model.ClientApiVertex;
-import io.lumify.web.clientapi.model.ClientApiVertexSearchResponse;
 import io.lumify.web.clientapi.model.PropertyType;
 import org.apache.commons.lang.StringUtils;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
@@ -32,14 +34,20 @@ import org.securegraph.query.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VertexSearch extends BaseRequestHandler {
     private static final LumifyLogger LOGGER = LumifyLoggerFactory.getLogger(VertexSearch.class);
     private final Graph graph;
     private final OntologyRepository ontologyRepository;
     private int defaultSearchResultCount;
+    private final int conversionBatchSize;
+    private final int conversionThreadCount;
+    private final ExecutorService conversionExecutor;
 
     @Inject
     public VertexSearch(
@@ -52,6 +60,18 @@ public class VertexSearch extends BaseRequestHandler {
         this.ontologyRepository = ontologyRepository;
         this.graph = graph;
         defaultSearchResultCount = configuration.getInt(Configuration.DEFAULT_SEARCH_RESULT_COUNT, 100);
+        conversionBatchSize = configuration.getInt(Configuration.SEARCH_CONVERSION_BATCH_SIZE, Configuration.SEARCH_CONVERSION_BATCH_SIZE_DEFAULT);
+        conversionThreadCount = configuration.getInt(Configuration.SEARCH_CONVERSION_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
+        conversionExecutor = Executors.newFixedThreadPool(conversionThreadCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lumify-vertex-search-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     @Override
@@ -129,8 +149,10 @@ public class VertexSearch extends BaseRequestHandler {
         graphQuery.limit(size);
         graphQuery.skip(offset);
         Iterable<Vertex> searchResults;
+        Iterator<Vertex> searchResultsIterator;
         try {
             searchResults = graphQuery.vertices();
+            searchResultsIterator = searchResults.iterator();
         } catch (SearchPhaseExecutionException ex) {
             respondWithBadRequest(response, "q", "Invalid Query");
             return;
@@ -141,45 +163,119 @@ public class VertexSearch extends BaseRequestHandler {
             scores = ((IterableWithScores<?>) searchResults).getScores();
         }
 
-        long retrievalStartTime = System.nanoTime();
-        List<ClientApiVertex> verticesList = new ArrayList<ClientApiVertex>();
-        for (Vertex vertex : searchResults) {
-            ClientApiVertex v = ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations);
-            if (scores != null) {
-                v.setScore(scores.get(vertex.getId()));
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JsonGenerator jsonGenerator = getObjectMapper().getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        boolean discardResponse = false;
+        try {
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeArrayFieldStart("vertices");
+            long retrievalStartTime = System.nanoTime();
+            int vertexCount;
+            try {
+                vertexCount = writeVertices(jsonGenerator, searchResultsIterator, scores, workspaceId, authorizations);
+            } catch (RuntimeException ex) {
+                if (!response.isCommitted()) {
+                    // nothing is sent before the first batch is converted, so the request can still fail as usual
+                    discardResponse = true;
+                    throw ex;
+                }
+                LOGGER.error("Could not write all results of the search for \"%s\"", queryString, ex);
+                jsonGenerator.writeEndArray();
+                jsonGenerator.writeStringField("error", "Could not write all search results");
+                jsonGenerator.writeEndObject();
+                return;
             }
-            verticesList.add(v);
-        }
-        long retrievalEndTime = System.nanoTime();
+            long retrievalEndTime = System.nanoTime();
+            jsonGenerator.writeEndArray();
 
-        Collections.sort(verticesList, new Comparator<ClientApiVertex>() {
-            @Override
-            public int compare(ClientApiVertex o1, ClientApiVertex o2) {
-                double score1 = o1.getScore(0.0);
-                double score2 = o2.getScore(0.0);
-                return -Double.compare(score1, score2);
+            jsonGenerator.writeNumberField("nextOffset", offset + size);
+            jsonGenerator.writeNumberField("retrievalTime", retrievalEndTime - retrievalStartTime);
+            if (searchResults instanceof IterableWithTotalHits) {
+                jsonGenerator.writeNumberField("totalHits", ((IterableWithTotalHits) searchResults).getTotalHits());
             }
-        });
+            if (searchResults instanceof IterableWithSearchTime) {
+                jsonGenerator.writeNumberField("searchTime", ((IterableWithSearchTime) searchResults).getSearchTimeNanoSeconds());
+            }
+            jsonGenerator.writeNumberField("totalTime", System.nanoTime() - totalStartTime);
+            jsonGenerator.writeEndObject();
 
-        long totalEndTime = System.nanoTime();
+            long endTime = System.nanoTime();
+            LOGGER.info("Search for \"%s\" found %d vertices in %dms", queryString, vertexCount, (endTime - startTime) / 1000 / 1000);
+        } catch (IOException ex) {
+            throw new ConnectionClosedException();
+        } finally {
+            if (!discardResponse) {
+                jsonGenerator.close();
+            }
+        }
+    }
 
-        ClientApiVertexSearchResponse results = new ClientApiVertexSearchResponse();
-        results.getVertices().addAll(verticesList);
-        results.setNextOffset(offset + size);
-        results.setRetrievalTime(retrievalEndTime - retrievalStartTime);
-        results.setTotalTime(totalEndTime - totalStartTime);
+    /**
+     * Converts the search results in batches on the conversion threads while the next results are fetched, and writes
+     * each batch as soon as it and the batches before it are converted so the vertices stay in index order. Nothing
+     * reaches the response before the first batch is written, so a failure after that leaves a partial response that
+     * the caller has to end with an error.
+     *
+     * @return the number of vertices written
+     */
+    private int writeVertices(JsonGenerator jsonGenerator, Iterator<Vertex> searchResults, final Map<String, Double> scores, final String workspaceId, final Authorizations authorizations) throws IOException {
+        Deque<Future<List<ClientApiVertex>>> convertedBatches = new ArrayDeque<>();
+        int vertexCount = 0;
+        try {
+            while (searchResults.hasNext()) {
+                final List<Vertex> batch = new ArrayList<>(conversionBatchSize);
+                while (batch.size() < conversionBatchSize && searchResults.hasNext()) {
+                    batch.add(searchResults.next());
+                }
+                convertedBatches.add(conversionExecutor.submit(new Callable<List<ClientApiVertex>>() {
+                    @Override
+                    public List<ClientApiVertex> call() throws Exception {
+                        return toClientApiVertices(batch, scores, workspaceId, authorizations);
+                    }
+                }));
+                while (convertedBatches.size() > conversionThreadCount) {
+                    vertexCount += writeVertices(jsonGenerator, convertedBatches.removeFirst());
+                }
+            }
+            while (convertedBatches.size() > 0) {
+                vertexCount += writeVertices(jsonGenerator, convertedBatches.removeFirst());
+            }
+        } finally {
+            for (Future<List<ClientApiVertex>> convertedBatch : convertedBatches) {
+                convertedBatch.cancel(true);
+            }
+        }
+        return vertexCount;
+    }
 
-        if (searchResults instanceof IterableWithTotalHits) {
-            results.setTotalHits(((IterableWithTotalHits) searchResults).getTotalHits());
+    private int writeVertices(JsonGenerator jsonGenerator, Future<List<ClientApiVertex>> convertedBatch) throws IOException {
+        List<ClientApiVertex> vertices;
+        try {
+            vertices = convertedBatch.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new LumifyException("Interrupted while converting search results", ex);
+        } catch (ExecutionException ex) {
+            throw new LumifyException("Could not convert search results", ex.getCause());
         }
-        if (searchResults instanceof IterableWithSearchTime) {
-            results.setSearchTime(((IterableWithSearchTime) searchResults).getSearchTimeNanoSeconds());
+        for (ClientApiVertex vertex : vertices) {
+            jsonGenerator.writeObject(vertex);
         }
+        jsonGenerator.flush();
+        return vertices.size();
+    }
 
-        long endTime = System.nanoTime();
-        LOGGER.info("Search for \"%s\" found %d vertices in %dms", queryString, verticesList.size(), (endTime - startTime) / 1000 / 1000);
-
-        respondWithClientApiObject(response, results);
+    private static List<ClientApiVertex> toClientApiVertices(List<Vertex> vertices, Map<String, Double> scores, String workspaceId, Authorizations authorizations) {
+        List<ClientApiVertex> clientApiVertices = new ArrayList<>(vertices.size());
+        for (Vertex vertex : vertices) {
+            ClientApiVertex v = ClientApiConverter.toClientApiVertex(vertex, workspaceId, authorizations);
+            if (scores != null) {
+                v.setScore(scores.get(vertex.getId()));
+            }
+            clientApiVertices.add(v);
+        }
+        return clientApiVertices;
     }
 
     private Query query(String query, String relatedToVertexId, Authorizations authorizations) {
@@ -0,0 +1,156 @@
+package io.lumify.web;
+
+import io.lumify.core.config.Configuration;
+import io.lumify.core.exception.LumifyAccessDeniedException;
+import io.lumify.core.model.user.UserRepository;
+import io.lumify.core.model.workQueue.WorkQueueRepository;
+import io.lumify.core.model.workspace.WorkspaceRepository;
+import io.lumify.core.user.User;
+import io.lumify.web.clientapi.model.Privilege;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.securegraph.Authorizations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SecurityContextRepositoryTest {
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private WorkspaceRepository workspaceRepository;
+
+    @Mock
+    private WorkQueueRepository workQueueRepository;
+
+    @Mock
+    private User user;
+
+    @Mock
+    private Authorizations authorizations;
+
+    private SecurityContextRepository securityContextRepository;
+    private final List<WorkQueueRepository.BroadcastConsumer> broadcastConsumers = new ArrayList<>();
+    private final List<WorkQueueRepository.BroadcastConsumer> routedBroadcastConsumers = new ArrayList<>();
+
+    @Before
+    public void before() {
+        when(user.getUserId()).thenReturn("user1");
+        when(workspaceRepository.hasReadPermissions("ws1", user)).thenReturn(true);
+        when(userRepository.getAuthorizations(user, "ws1")).thenReturn(authorizations);
+        when(userRepository.getPrivileges(user)).thenReturn(Privilege.ALL);
+
+        doAnswer(addBroadcastConsumer(broadcastConsumers)).when(workQueueRepository).subscribeToBroadcastMessages(any(WorkQueueRepository.BroadcastConsumer.class));
+        doAnswer(addBroadcastConsumer(routedBroadcastConsumers)).when(workQueueRepository).subscribeToRoutedBroadcastMessages(any(WorkQueueRepository.BroadcastConsumer.class));
+
+        Configuration configuration = new Configuration(null, new HashMap());
+        securityContextRepository = new SecurityContextRepository(userRepository, workspaceRepository, workQueueRepository, configuration);
+    }
+
+    private Answer addBroadcastConsumer(final List<WorkQueueRepository.BroadcastConsumer> consumers) {
+        return new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                consumers.add((WorkQueueRepository.BroadcastConsumer) invocation.getArguments()[0]);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Delivers the message the way the broadcast exchange does on a server without any websockets, routed consumers
+     * only receive global messages.
+     */
+    private void broadcast(JSONObject json) {
+        for (WorkQueueRepository.BroadcastConsumer broadcastConsumer : broadcastConsumers) {
+            broadcastConsumer.broadcastReceived(json);
+        }
+        if (WorkQueueRepository.getBroadcastRoutingKey(json).equals(WorkQueueRepository.BROADCAST_ROUTING_KEY_GLOBAL)) {
+            for (WorkQueueRepository.BroadcastConsumer broadcastConsumer : routedBroadcastConsumers) {
+                broadcastConsumer.broadcastReceived(json);
+            }
+        }
+    }
+
+    @Test
+    public void testResolvedOnce() {
+        SecurityContext securityContext = securityContextRepository.get(user, "ws1");
+        assertSame(authorizations, securityContext.getAuthorizations());
+        assertEquals(Privilege.ALL, securityContext.getPrivileges());
+        assertSame(securityContext, securityContextRepository.get(user, "ws1"));
+
+        verify(workspaceRepository, times(1)).hasReadPermissions("ws1", user);
+        verify(userRepository, times(1)).getAuthorizations(user, "ws1");
+    }
+
+    @Test(expected = LumifyAccessDeniedException.class)
+    public void testNoReadAccess() {
+        securityContextRepository.get(user, "ws2");
+    }
+
+    @Test
+    public void testInvalidatedByUserAccessChange() {
+        SecurityContext securityContext = securityContextRepository.get(user, "ws1");
+
+        JSONObject json = new JSONObject();
+        json.put("type", "userAccessChange");
+        json.put("data", new JSONObject().put("userId", "user2"));
+        broadcast(json);
+        assertSame(securityContext, securityContextRepository.get(user, "ws1"));
+
+        json.put("data", new JSONObject().put("userId", "user1"));
+        broadcast(json);
+        assertNotSame(securityContext, securityContextRepository.get(user, "ws1"));
+    }
+
+    @Test
+    public void testInvalidatedByWorkspaceChange() {
+        securityContextRepository.get(user, "ws1");
+
+        JSONObject json = new JSONObject();
+        json.put("type", "workspaceChange");
+        json.put("data", new JSONObject().put("workspaceId", "ws1"));
+        broadcast(json);
+
+        when(workspaceRepository.hasReadPermissions("ws1", user)).thenReturn(false);
+        try {
+            securityContextRepository.get(user, "ws1");
+            fail("expected access to be denied after the workspace changed");
+        } catch (LumifyAccessDeniedException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInvalidatedByWorkspaceChangeRoutedToUserWithoutSession() {
+        securityContextRepository.get(user, "ws1");
+
+        JSONObject json = new JSONObject();
+        json.put("type", "workspaceChange");
+        json.put("permissions", new JSONObject().put("users", new JSONArray().put("user1")));
+        json.put("data", new JSONObject().put("workspaceId", "ws1"));
+        assertEquals("user.user1", WorkQueueRepository.getBroadcastRoutingKey(json));
+        broadcast(json);
+
+        when(workspaceRepository.hasReadPermissions("ws1", user)).thenReturn(false);
+        try {
+            securityContextRepository.get(user, "ws1");
+            fail("expected access to be denied after the user was removed from the workspace");
+        } catch (LumifyAccessDeniedException ex) {
+            // expected
+        }
+    }
+}